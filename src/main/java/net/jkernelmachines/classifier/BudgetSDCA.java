@@ -62,7 +62,7 @@ import net.jkernelmachines.util.DebugPrinter;
  * @author picard
  * 
  */
-public class BudgetSDCA<T> implements KernelSVM<T>, OnlineClassifier<T> {
+public class BudgetSDCA<T> implements KernelSVM<T>, WarmStartable, OnlineClassifier<T> {
 
 	private class SV {
 		TrainingSample<T> sample;
@@ -96,6 +96,10 @@ public class BudgetSDCA<T> implements KernelSVM<T>, OnlineClassifier<T> {
 	double capacity = 1.05;
 	double eps = 1e-10;
 
+	// warm start
+	double[] initAlphas;
+	double[] initGradient;
+
 	DebugPrinter debug = new DebugPrinter();
 
 	/**
@@ -127,6 +131,12 @@ public class BudgetSDCA<T> implements KernelSVM<T>, OnlineClassifier<T> {
 	@Override
 	public void train(List<TrainingSample<T>> l) {
 
+		if (initAlphas != null && initAlphas.length == l.size()) {
+			warmStart(l);
+		}
+		initAlphas = null;
+		initGradient = null;
+
 		ListSampleStream<T> strain = new ListSampleStream<>(l);
 		onlineTrain(strain);
 	}
@@ -158,6 +168,53 @@ public class BudgetSDCA<T> implements KernelSVM<T>, OnlineClassifier<T> {
 
 	}
 
+	/**
+	 * adds the samples with non zero initial weights to the expansion
+	 * 
+	 * @param l
+	 *            the training list
+	 */
+	private final void warmStart(List<TrainingSample<T>> l) {
+		synchronized (train) {
+			boolean useGradient = train.isEmpty() && initGradient != null
+					&& initGradient.length == l.size();
+			List<SV> added = new LinkedList<>();
+			for (int i = 0; i < l.size(); i++) {
+				TrainingSample<T> t = l.get(i);
+				double a = max(0, min(C, initAlphas[i]));
+				if (a > 0) {
+					useGradient &= (a == initAlphas[i]);
+					added.add(new SV(t, t.label * a, 0));
+				}
+			}
+			if (useGradient) {
+				for (int i = 0, s = 0; i < l.size(); i++) {
+					if (initAlphas[i] > 0) {
+						SV sv = added.get(s++);
+						sv.z = sv.sample.label - initGradient[i];
+					}
+				}
+			} else {
+				for (SV sv : added) {
+					sv.z = valueOf(sv.sample.sample);
+				}
+				for (SV sv : added) {
+					for (SV s : train) {
+						s.z += sv.alpha
+								* kernel.valueOf(sv.sample.sample, s.sample.sample);
+					}
+				}
+				for (SV sv : added) {
+					for (SV s : added) {
+						s.z += sv.alpha
+								* kernel.valueOf(sv.sample.sample, s.sample.sample);
+					}
+				}
+			}
+			train.addAll(added);
+		}
+	}
+
 	public boolean prune() {
 		if (train.size() > budget) {
 			reprocess();
@@ -432,4 +489,21 @@ public class BudgetSDCA<T> implements KernelSVM<T>, OnlineClassifier<T> {
 	public void setCapacity(double capacity) {
 		this.capacity = capacity;
 	}
+
+	@Override
+	public void setInitialAlphas(double[] a) {
+		initAlphas = a;
+	}
+
+	/**
+	 * Sets the gradient of the dual associated with the initial weights, that is
+	 * g_i = y_i - sum_j alpha_j y_j k(x_i, x_j), in order to avoid its
+	 * computation at the beginning of the next training.
+	 * 
+	 * @param g
+	 *            the initial gradient
+	 */
+	public void setInitialGradient(double[] g) {
+		initGradient = g;
+	}
 }
@@ -35,8 +35,13 @@ import java.util.Arrays;
 import java.util.Collections;
 import java.util.Iterator;
 import java.util.List;
+import java.util.Random;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.Future;
+import java.util.concurrent.ThreadPoolExecutor;
 
 import net.jkernelmachines.kernel.typed.DoubleLinear;
+import net.jkernelmachines.threading.ThreadPoolServer;
 import net.jkernelmachines.type.TrainingSample;
 import net.jkernelmachines.type.TrainingSampleStream;
 import net.jkernelmachines.util.DebugPrinter;
@@ -50,6 +55,12 @@ import net.jkernelmachines.util.DebugPrinter;
  * Shai S. Shwartz, Yoram Singer, Nathan Srebro
  * <i>In Proceedings of the 24th international conference on Machine learning (2007), pp. 807-814.</i>
  * </p>
+ * <p>
+ * Iterations can be run on several threads, each learning its own part of
+ * the training list on its own hyperplane, averaged at the end of training.
+ * The shrinking and projection steps rescale the whole hyperplane, which
+ * cannot be shared between threads without locks.
+ * </p>
  * @author picard
  *
  */
@@ -77,6 +88,9 @@ public class DoublePegasosSVM implements OnlineClassifier<double[]>, Serializabl
 	
 	DebugPrinter debug = new DebugPrinter();
 	private int i = 0;
+	
+	//multithreaded iterations
+	private int nbThreads = 1;
 
 
 
@@ -150,6 +164,12 @@ public class DoublePegasosSVM implements OnlineClassifier<double[]>, Serializabl
 		long tLsize = tList.size();
 		for(int in = 0 ; in < tLsize ; in++)
 			intList.add(in);
+		if(nbThreads > 1 && tLsize >= 2 * nbThreads)
+		{
+			parallelTrain();
+			debug.println(1, "done in "+(System.currentTimeMillis()-time)+" ms");
+			return;
+		}
 		for(int i = 0; i< T; i++)
 		{
 			__train();
@@ -317,6 +337,119 @@ public class DoublePegasosSVM implements OnlineClassifier<double[]>, Serializabl
 			debug.print(2, ".");
 	}
 
+	/**
+	 * Runs the T iterations on several threads. Each thread learns its own part
+	 * of the training list on its own hyperplane with a fixed seed, and the
+	 * hyperplanes are averaged in a fixed order.
+	 */
+	private void parallelTrain() {
+		final int p = nbThreads;
+		final int n = tList.size();
+		final double[][] ws = new double[p][];
+		final double[] bs = new double[p];
+		ThreadPoolExecutor exec = ThreadPoolServer.getThreadPoolExecutor(p);
+		try {
+			List<Future<?>> futures = new ArrayList<Future<?>>(p);
+			for(int id = 0 ; id < p ; id++) {
+				final int from = id * n / p;
+				final int to = (id + 1) * n / p;
+				final int iter = T / p + ((id < T % p) ? 1 : 0);
+				final Random rand = new Random(id);
+				final int k = id;
+				futures.add(exec.submit(new Runnable() {
+					@Override
+					public void run() {
+						double[] wk = w.clone();
+						double bk = b;
+						int[] perm = new int[to - from];
+						for(int m = 0 ; m < perm.length ; m++)
+							perm[m] = from + m;
+						for(int it = 0 ; it < iter ; it++)
+							bk = step(wk, bk, perm, rand);
+						ws[k] = wk;
+						bs[k] = bk;
+					}
+				}));
+			}
+			for(Future<?> f : futures)
+				f.get();
+		} catch (InterruptedException | ExecutionException e) {
+			throw new RuntimeException("Failed threading training", e);
+		} finally {
+			ThreadPoolServer.shutdownNow(exec);
+		}
+		
+		double ba = 0;
+		double[] wa = new double[w.length];
+		for(int id = 0 ; id < p ; id++) {
+			ba += bs[id] / p;
+			for(int m = 0 ; m < wa.length ; m++)
+				wa[m] += ws[id][m] / p;
+		}
+		w = wa;
+		b = ba;
+		if(!bias)
+			b = 0;
+	}
+	
+	/**
+	 * In place iteration on the hyperplane wk with sub samples drawn from perm
+	 * @return the updated bias
+	 */
+	private double step(double[] wk, double bk, int[] perm, Random rand) {
+		int kk = Math.min(k, perm.length);
+		
+		//sub sample selection, partial shuffle
+		for(int m = 0 ; m < kk ; m++) {
+			int r = m + rand.nextInt(perm.length - m);
+			int tmp = perm[m];
+			perm[m] = perm[r];
+			perm[r] = tmp;
+		}
+		
+		//choosing step
+		double eta = 1/(double)(lambda*(i+t0));
+		double omel = (1-eta*lambda);
+		
+		//gradient of samples with y(<w,x>-b) < 1, computed before the update
+		double b_new = 0;
+		double[][] xs = new double[kk][];
+		double[] ys = new double[kk];
+		for(int m = 0 ; m < kk ; m++) {
+			TrainingSample<double[]> t = tList.get(perm[m]);
+			if((kernel.valueOf(wk, t.sample) - bk)*t.label <= 1) {
+				xs[m] = t.sample;
+				ys[m] = t.label;
+				b_new += t.label;
+			}
+		}
+		
+		//half step
+		for(int m = 0 ; m < wk.length ; m++)
+			wk[m] *= omel;
+		for(int m = 0 ; m < kk ; m++) {
+			if(xs[m] == null)
+				continue;
+			double c = eta/(double)(k)*ys[m];
+			double[] x = xs[m];
+			for(int d = 0 ; d < x.length ; d++)
+				if(x[d] != 0)
+					wk[d] += c*x[d];
+		}
+		
+		//projection
+		double norm = Math.sqrt(kernel.valueOf(wk, wk));
+		double min = 1/Math.sqrt(lambda)/norm;
+		if(min > 1)
+			min = 1;
+		for(int m = 0 ; m < wk.length ; m++)
+			wk[m] *= min;
+		
+		if(bias)
+			return min*( omel*bk - eta/(double)k*b_new);
+		return 0;
+	}
+
 	/* (non-Javadoc)
 	 * @see fr.lip6.classifier.Classifier#valueOf(java.lang.Object)
 	 */
@@ -467,6 +600,24 @@ public class DoublePegasosSVM implements OnlineClassifier<double[]>, Serializabl
 		return (DoublePegasosSVM) super.clone();
 	}
 
+	/**
+	 * Tells the number of threads used for training
+	 * @return the number of threads
+	 */
+	public int getNbThreads() {
+		return nbThreads;
+	}
+
+	/**
+	 * Sets the number of threads used for training (default 1, sequential iterations).
+	 * With several threads, the hyperplanes learned by each thread on its own part
+	 * of the training list are averaged.
+	 * @param nbThreads the number of threads
+	 */
+	public void setNbThreads(int nbThreads) {
+		this.nbThreads = Math.max(1, nbThreads);
+	}
+
 	/**
 	 * Tells the C hyperparameter, if set, else return 0
 	 * @return the hyperparameter C
@@ -29,6 +29,7 @@
  *******************************************************************************/
 package net.jkernelmachines.classifier;
 
+import java.io.File;
 import java.io.Serializable;
 import java.util.ArrayList;
 import java.util.Arrays;
@@ -41,6 +42,8 @@ import java.util.concurrent.Future;
 import java.util.concurrent.ThreadPoolExecutor;
 
 import net.jkernelmachines.kernel.Kernel;
+import net.jkernelmachines.kernel.SimpleCacheKernel;
+import net.jkernelmachines.kernel.typed.DoubleDistanceTensor;
 import net.jkernelmachines.kernel.typed.DoubleLinear;
 import net.jkernelmachines.kernel.typed.GeneralizedDoubleGaussL2;
 import net.jkernelmachines.threading.ThreadPoolServer;
@@ -63,7 +66,7 @@ import net.jkernelmachines.util.DebugPrinter;
  * @author dpicard
  *
  */
-public class DoubleQNPKL implements KernelSVM<double[]>, Serializable {
+public class DoubleQNPKL implements KernelSVM<double[]>, WarmStartable, Serializable {
 
 	private static final long serialVersionUID = -5475712590325368437L;
 	List<TrainingSample<double[]>> listOfExamples;
@@ -74,6 +77,8 @@ public class DoubleQNPKL implements KernelSVM<double[]>, Serializable {
 	transient DebugPrinter debug = new DebugPrinter();
 
 	LaSVM<double[]> svm;
+	double[] initAlphas;
+	double[] warmAlphas;
 	DoubleLinear linear = new DoubleLinear();
 
 	double stopGap = 1e-7;
@@ -91,6 +96,13 @@ public class DoubleQNPKL implements KernelSVM<double[]>, Serializable {
 
 	double oldObjective;
 
+	// per dimension distances of the training samples
+	boolean useTensor = false;
+	File tensorDirectory = null;
+	transient DoubleDistanceTensor tensor;
+	// Gram matrix of the last trained svm
+	transient double[][] kmatrix;
+
 	/**
 	 * Default constructor
 	 */
@@ -111,6 +123,11 @@ public class DoubleQNPKL implements KernelSVM<double[]>, Serializable {
 		// 0. init lists
 		listOfExamples = new ArrayList<TrainingSample<double[]>>();
 		listOfExamples.addAll(l);
+		warmAlphas = initAlphas;
+		initAlphas = null;
+		if (useTensor) {
+			tensor = new DoubleDistanceTensor(listOfExamples, tensorDirectory);
+		}
 
 		// 1. init kernels
 		weights = new double[dim];
@@ -136,6 +153,7 @@ public class DoubleQNPKL implements KernelSVM<double[]>, Serializable {
 
 		// 2. big loop
 		double gap = 0;
+		exactGradient = false;
 		do {
 			// perform one step
 			double objEvol = performPKLStep();
@@ -150,6 +168,18 @@ public class DoubleQNPKL implements KernelSVM<double[]>, Serializable {
 			debug.println(1, "+ objective_gap : " + (float) gap);
 			debug.println(1, "+");
 
+			// the single precision gradient of the tensor may stall the
+			// descent before convergence, which is confirmed by a step with
+			// the exact gradient
+			if (tensor != null) {
+				if (gap < stopGap && !exactGradient) {
+					exactGradient = true;
+					gap = stopGap;
+				} else {
+					exactGradient = false;
+				}
+			}
+
 		} while (gap >= stopGap);
 
 		// 3. get minimal objective svm and weights
@@ -166,6 +196,11 @@ public class DoubleQNPKL implements KernelSVM<double[]>, Serializable {
 		double obj = computeObj(a);
 		debug.println(2, "+ final objective : " + obj);
 
+		// release training matrices
+		tensor = null;
+		kmatrix = null;
+		lambda_matrix = null;
+
 		// 4. save examples weights
 		listOfExamples.addAll(l);
 		listOfExampleWeights.clear();
@@ -261,6 +296,7 @@ public class DoubleQNPKL implements KernelSVM<double[]>, Serializable {
 	}
 
 	double[] diffWeights;
+	boolean exactGradient;
 	double[] g;
 	double[] weights;
 	double[] B;
@@ -274,6 +310,26 @@ public class DoubleQNPKL implements KernelSVM<double[]>, Serializable {
 		// for(int x = 0 ; x < dim ; x++)
 		// grad[x] *= kernel.getGammas()[x];
 
+		if (tensor != null && !exactGradient) {
+			// all dimensions in a single pass over the distance tensor
+			double[] t = tensor.gradient(lambda_matrix);
+			for (int i = 0; i < grad.length; i++)
+				grad[i] = 0.5 * t[i];
+		} else {
+			computeGradPerDimension(kernel, grad);
+		}
+
+		// numerical cleaning
+		for (int i = 0; i < grad.length; i++)
+			if (Math.abs(grad[i]) < num_cleaning)
+				grad[i] = 0.0;
+
+		debug.println(3, Arrays.toString(grad));
+		return grad;
+	}
+
+	/** gradient with one job per dimension */
+	private void computeGradPerDimension(GeneralizedDoubleGaussL2 kernel, final double[] grad) {
 		// 1 job par ligne
 		ThreadPoolExecutor threadPool = ThreadPoolServer
 				.getThreadPoolExecutor();
@@ -317,14 +373,6 @@ public class DoubleQNPKL implements KernelSVM<double[]>, Serializable {
 		}
 
 		ThreadPoolServer.shutdownNow(threadPool);
-
-		// numerical cleaning
-		for (int i = 0; i < grad.length; i++)
-			if (Math.abs(grad[i]) < num_cleaning)
-				grad[i] = 0.0;
-
-		debug.println(3, Arrays.toString(grad));
-		return grad;
 	}
 
 	/** calcul du gradient second en chaque beta */
@@ -374,7 +422,8 @@ public class DoubleQNPKL implements KernelSVM<double[]>, Serializable {
 	/** compute the lambda matrix */
 	private void updateLambdaMatrix(final double[] a,
 			GeneralizedDoubleGaussL2 kernel) {
-		final double[][] matrix = kernel.getKernelMatrix(listOfExamples);
+		// Gram matrix used to train the svm
+		final double[][] matrix = kmatrix;
 		if (lambda_matrix == null)
 			lambda_matrix = new double[matrix.length][matrix.length];
 		debug.println(3, "+ update lambda matrix");
@@ -406,11 +455,18 @@ public class DoubleQNPKL implements KernelSVM<double[]>, Serializable {
 	}
 
 	private LaSVM<double[]> trainSVM(GeneralizedDoubleGaussL2 kernel) {
-		LaSVM<double[]> svm = new LaSVM<double[]>(kernel);
+		// computed in double precision from the samples, since the objective is
+		// compared at the precision of the stopping criterion
+		kmatrix = kernel.getKernelMatrix(listOfExamples);
+		LaSVM<double[]> svm = new LaSVM<double[]>(new SimpleCacheKernel<double[]>(kernel, kmatrix));
 		svm.setC(C);
 		svm.setE(10);
+		// warm start from the previous solution
+		svm.setInitialAlphas(warmAlphas);
 		debug.println(3, "+ training svm");
 		svm.train(listOfExamples);
+		svm.setKernel(kernel);
+		warmAlphas = svm.getAlphas();
 		return svm;
 	}
 
@@ -478,6 +534,42 @@ public class DoubleQNPKL implements KernelSVM<double[]>, Serializable {
 		this.num_cleaning = num_cleaning;
 	}
 
+	/**
+	 * Tells if the per dimension distances of the training samples are
+	 * precomputed
+	 * 
+	 * @return true if the distance tensor is used
+	 */
+	public boolean isUseTensor() {
+		return useTensor;
+	}
+
+	/**
+	 * Sets the precomputation of the per dimension distances of the training
+	 * samples, from which all components of the gradient are computed in a
+	 * single pass.
+	 * It requires 2*n^2*d bytes of memory (n samples of dimension d).
+	 * The distances are stored in single precision, and convergence is
+	 * confirmed by a step with the exact gradient.
+	 * 
+	 * @param useTensor
+	 *            true to use the distance tensor
+	 */
+	public void setUseTensor(boolean useTensor) {
+		this.useTensor = useTensor;
+	}
+
+	/**
+	 * Sets the directory in which the distance tensor is stored, instead of
+	 * the memory
+	 * 
+	 * @param directory
+	 *            the directory, or null to keep the tensor in memory
+	 */
+	public void setTensorDirectory(File directory) {
+		this.tensorDirectory = directory;
+	}
+
 	/**
 	 * Tells weights of training samples
 	 * 
@@ -513,6 +605,11 @@ public class DoubleQNPKL implements KernelSVM<double[]>, Serializable {
 		return svm.getAlphas();
 	}
 
+	@Override
+	public void setInitialAlphas(double[] a) {
+		initAlphas = a;
+	}
+
 	@Override
 	public void setKernel(Kernel<double[]> k) {
 		// nothing
@@ -30,10 +30,15 @@
 package net.jkernelmachines.classifier;
 
 import java.io.Serializable;
+import java.util.ArrayList;
 import java.util.Collections;
 import java.util.List;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.Future;
+import java.util.concurrent.ThreadPoolExecutor;
 
 import net.jkernelmachines.kernel.typed.DoubleLinear;
+import net.jkernelmachines.threading.ThreadPoolServer;
 import net.jkernelmachines.type.TrainingSample;
 import net.jkernelmachines.type.TrainingSampleStream;
 
@@ -48,10 +53,20 @@ import net.jkernelmachines.type.TrainingSampleStream;
  * <i>Proceedings of the 19th International Conference on Computational Statistics (COMPSTAT'2010)</i>
  * </p>
  * 
+ * <p>
+ * Epochs can be run on several threads, either lock-free on a shared hyperplane
+ * (Hogwild), or on one hyperplane per thread averaged at the end of the epoch.
+ * </p>
+ * <p>
+ * <b>Hogwild: A Lock-Free Approach to Parallelizing Stochastic Gradient Descent</b>
+ * Feng Niu, Benjamin Recht, Christopher Ré, Stephen J. Wright
+ * <i>Advances in Neural Information Processing Systems 24 (NIPS 2011)</i>
+ * </p>
+ * 
  * @author picard
  *
  */
-public class DoubleSGD implements Classifier<double[]>, OnlineClassifier<double[]>, Serializable {
+public class DoubleSGD implements Classifier<double[]>, OnlineClassifier<double[]>, IterativeClassifier<double[]>, Serializable {
 
 	private static final long serialVersionUID = 3245177176254451010L;
 	
@@ -81,6 +96,14 @@ public class DoubleSGD implements Classifier<double[]>, OnlineClassifier<double[
 	private double wscale;
 	private boolean shuffle = false;
 	
+	//multithreaded epochs
+	private int nbThreads = 1;
+	private boolean averaging = false;
+	// number of samples per thread between two updates of wscale in Hogwild mode
+	private static final int HOGWILD_ROUND = 256;
+	
+	private transient TrainingControl control;
+	
 	//linear kernel
 	DoubleLinear linear = new DoubleLinear();
 
@@ -89,6 +112,7 @@ public class DoubleSGD implements Classifier<double[]>, OnlineClassifier<double[
 		
 		if(l.isEmpty())
 			return;
+		TrainingControl.Run run = getTrainingControl().start();
 		
 		//new w
 		w = new double[l.get(0).sample.length];
@@ -102,9 +126,32 @@ public class DoubleSGD implements Classifier<double[]>, OnlineClassifier<double[
 		double typw = Math.sqrt(maxw);
 		double eta0 = typw / Math.max(1.0, dloss(-typw));
 		t = (long) (1 / (eta0 * lambda));
+		
+		// best model so far, restored when the training stops early
+		double[] bestW = null;
+		double bestScale = 1, bestBias = 0;
+		double bestObj = Double.POSITIVE_INFINITY;
 			  
 		for(int e = 0 ; e < epochs ; e++) {
 			trainOnce(l);
+			// the objective of the last epoch is only needed by the listeners
+			double obj = (e < epochs - 1 || getTrainingControl().hasListeners()) ? objective(l) : Double.NaN;
+			if(obj < bestObj) {
+				if(bestW == null)
+					bestW = new double[w.length];
+				System.arraycopy(w, 0, bestW, 0, w.length);
+				bestScale = wscale;
+				bestBias = bias;
+				bestObj = obj;
+			}
+			if(!run.progress(this, e+1, obj, Double.NaN)) {
+				if(obj > bestObj) {
+					w = bestW;
+					wscale = bestScale;
+					bias = bestBias;
+				}
+				break;
+			}
 		}
 
 	}
@@ -181,6 +228,23 @@ public class DoubleSGD implements Classifier<double[]>, OnlineClassifier<double[
 			Collections.shuffle(l);
 		}
 		
+		if(nbThreads > 1 && imax >= 2 * nbThreads) {
+			ThreadPoolExecutor exec = ThreadPoolServer.getThreadPoolExecutor(nbThreads);
+			try {
+				if(averaging)
+					averagingEpoch(l, exec);
+				else
+					hogwildEpoch(l, exec);
+			} catch (InterruptedException | ExecutionException e) {
+				throw new RuntimeException("Failed threading training", e);
+			} finally {
+				ThreadPoolServer.shutdownNow(exec);
+			}
+			if(!hasBias)
+				bias = 0;
+			return;
+		}
+		
 		for (int i = 0; i < imax; i++) {
 			double eta = 1.0 / (lambda * t);
 			double s = 1 - eta * lambda;
@@ -211,10 +275,191 @@ public class DoubleSGD implements Classifier<double[]>, OnlineClassifier<double[
 			bias = 0;
 	}
 
+	/**
+	 * Lock-free epoch: threads update the shared hyperplane without
+	 * synchronization. The samples are processed in rounds, each thread taking
+	 * every nbThreads sample of the round such that learning rates follow the
+	 * sequential schedule. The scale of w and the bias are only modified
+	 * between rounds, each thread accumulating its own decay and bias update.
+	 */
+	private void hogwildEpoch(final List<TrainingSample<double[]>> l, ThreadPoolExecutor exec)
+			throws InterruptedException, ExecutionException {
+		final int p = nbThreads;
+		final int n = l.size();
+		final double[] decay = new double[p];
+		final double[] dbias = new double[p];
+		List<Future<?>> futures = new ArrayList<Future<?>>(p);
+		
+		for(int start = 0 ; start < n ; start += p * HOGWILD_ROUND) {
+			final int from = start;
+			final int to = Math.min(n, start + p * HOGWILD_ROUND);
+			final double scale = wscale;
+			final double b = bias;
+			final long t0 = t;
+			futures.clear();
+			for(int k = 0 ; k < p ; k++) {
+				final int id = k;
+				futures.add(exec.submit(new Runnable() {
+					@Override
+					public void run() {
+						double ls = 1;
+						double db = 0;
+						for(int i = from + id ; i < to ; i += p) {
+							double eta = 1.0 / (lambda * (t0 + i - from));
+							ls *= 1 - eta * lambda;
+							double sc = scale * ls;
+							double[] x = l.get(i).sample;
+							double y = l.get(i).label;
+							double wx = linear.valueOf(w, x) * sc;
+							double z = y * (wx + b + db);
+
+							if (z < 1 && loss < LOGLOSS) {
+								double etd = eta * dloss(z) * y / sc;
+								for (int d = 0; d < w.length; d++)
+									if(x[d] != 0)
+										w[d] += x[d] * etd;
+								if(hasBias)
+									db += eta * dloss(z) * y * 0.01;
+							}
+						}
+						decay[id] = ls;
+						dbias[id] = db;
+					}
+				}));
+			}
+			for(Future<?> f : futures)
+				f.get();
+			
+			for(int k = 0 ; k < p ; k++) {
+				wscale *= decay[k];
+				bias += dbias[k];
+			}
+			if (wscale < 1e-9) {
+				for (int d = 0; d < w.length; d++)
+					w[d] *= wscale;
+				wscale = 1;
+			}
+			t += to - from;
+		}
+	}
+	
+	/**
+	 * Deterministic epoch: the list is split in one contiguous part per
+	 * thread, each part is learned sequentially on a copy of the hyperplane,
+	 * and the copies are averaged at the end of the epoch.
+	 */
+	private void averagingEpoch(final List<TrainingSample<double[]>> l, ThreadPoolExecutor exec)
+			throws InterruptedException, ExecutionException {
+		final int p = nbThreads;
+		final int n = l.size();
+		final double[][] ws = new double[p][];
+		final double[] bs = new double[p];
+		final long t0 = t;
+		
+		List<Future<?>> futures = new ArrayList<Future<?>>(p);
+		for(int k = 0 ; k < p ; k++) {
+			final int id = k;
+			futures.add(exec.submit(new Runnable() {
+				@Override
+				public void run() {
+					double[] wk = new double[w.length];
+					for (int d = 0; d < w.length; d++)
+						wk[d] = w[d] * wscale;
+					double sk = 1;
+					double bk = bias;
+					long tk = t0;
+					for(int i = id * n / p ; i < (id + 1) * n / p ; i++) {
+						double eta = 1.0 / (lambda * tk);
+						sk *= 1 - eta * lambda;
+						if (sk < 1e-9) {
+							for (int d = 0; d < wk.length; d++)
+								wk[d] *= sk;
+							sk = 1;
+						}
+						double[] x = l.get(i).sample;
+						double y = l.get(i).label;
+						double wx = linear.valueOf(wk, x) * sk;
+						double z = y * (wx + bk);
+
+						if (z < 1 && loss < LOGLOSS) {
+							double etd = eta * dloss(z);
+							for (int d = 0; d < wk.length; d++)
+								wk[d] += x[d] * etd * y / sk;
+							if(hasBias)
+								bk += etd * y * 0.01;
+						}
+						tk += 1;
+					}
+					for (int d = 0; d < wk.length; d++)
+						wk[d] *= sk;
+					ws[id] = wk;
+					bs[id] = bk;
+				}
+			}));
+		}
+		for(Future<?> f : futures)
+			f.get();
+		
+		// average in a fixed order
+		double[] wa = new double[w.length];
+		double ba = 0;
+		for(int k = 0 ; k < p ; k++) {
+			for (int d = 0; d < wa.length; d++)
+				wa[d] += ws[k][d] / p;
+			ba += bs[k] / p;
+		}
+		w = wa;
+		wscale = 1;
+		bias = ba;
+		t += (n + p - 1) / p;
+	}
+
 	@Override
 	public double valueOf(double[] e) {
 		return linear.valueOf(w,e) * wscale + bias;
 	}
+	
+	/**
+	 * primal objective on the training samples
+	 */
+	private double objective(List<TrainingSample<double[]>> l) {
+		double cost = 0;
+		for(TrainingSample<double[]> s : l)
+			cost += loss(s.label * valueOf(s.sample));
+		return cost / l.size() + 0.5 * lambda * linear.valueOf(w, w) * wscale * wscale;
+	}
+	
+	/**
+	 * loss value of a sample output z = y*f(x)
+	 */
+	private double loss(double z)
+	{
+		switch(loss)
+		{
+		case LOGLOSS :
+			if (z >= 0)
+				return Math.log(1+Math.exp(-z));
+			return -z + Math.log(1+Math.exp(z));
+		case LOGLOSSMARGIN :
+			if (z >= 1)
+				return Math.log(1+Math.exp(1-z));
+			return 1-z + Math.log(1+Math.exp(z-1));
+		case SMOOTHHINGELOSS :
+			if (z < 0)
+				return 0.5 - z;
+			if (z < 1)
+				return 0.5 * (1-z) * (1-z);
+			return 0;
+		case SQUAREDHINGELOSS :
+			if (z < 1)
+				return 0.5 * (1 - z) * (1 - z);
+			return 0;
+		default :
+			if (z < 1)
+				return 1 - z;
+			return 0;
+		}
+	}
 	 
 	private double dloss(double z)
 	{
@@ -327,6 +572,53 @@ public class DoubleSGD implements Classifier<double[]>, OnlineClassifier<double[
 		this.shuffle = shuffle;
 	}
 
+	/**
+	 * Tells the number of threads used for each epoch
+	 * @return the number of threads
+	 */
+	public int getNbThreads() {
+		return nbThreads;
+	}
+
+	/**
+	 * Sets the number of threads used for each epoch (default 1, sequential epochs)
+	 * @param nbThreads the number of threads
+	 */
+	public void setNbThreads(int nbThreads) {
+		this.nbThreads = Math.max(1, nbThreads);
+	}
+
+	/**
+	 * Tells if multithreaded epochs average one hyperplane per thread instead of
+	 * updating a shared hyperplane without locks
+	 * @return true if averaging is used
+	 */
+	public boolean isAveraging() {
+		return averaging;
+	}
+
+	/**
+	 * Sets if multithreaded epochs average one hyperplane per thread, which is
+	 * deterministic, instead of updating a shared hyperplane without locks
+	 * (Hogwild, default)
+	 * @param averaging true for averaging
+	 */
+	public void setAveraging(boolean averaging) {
+		this.averaging = averaging;
+	}
+
+	@Override
+	public TrainingControl getTrainingControl() {
+		if(control == null)
+			control = new TrainingControl();
+		return control;
+	}
+
+	@Override
+	public void setTrainingControl(TrainingControl control) {
+		this.control = control;
+	}
+
 	/**
 	 * Creates and returns a copy of this object.
 	 * @see java.lang.Object#clone()
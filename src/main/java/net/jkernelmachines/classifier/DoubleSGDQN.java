@@ -29,12 +29,17 @@
  *******************************************************************************/
 package net.jkernelmachines.classifier;
 
+import java.util.ArrayList;
 import java.util.Arrays;
 import java.util.List;
 import java.util.Vector;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.Future;
+import java.util.concurrent.ThreadPoolExecutor;
 
 import net.jkernelmachines.kernel.Kernel;
 import net.jkernelmachines.kernel.typed.DoubleLinear;
+import net.jkernelmachines.threading.ThreadPoolServer;
 import net.jkernelmachines.type.TrainingSample;
 
 /**
@@ -46,11 +51,17 @@ import net.jkernelmachines.type.TrainingSample;
  * Antoine Bordes, Léon Bottou, and Patrick Gallinari
  * <i>J. Mach. Learn. Res. 10 (December 2009), 1737-1754.</i>
  * </p>
+ * <p>
+ * Epochs can be run on several threads, each learning its own part of the
+ * training list on its own copy of the hyperplane and scaling, averaged at the
+ * end of the epoch. The scaling is estimated from the secant of consecutive
+ * updates, which cannot be measured on a hyperplane shared without locks.
+ * </p>
  * 
  * @author picard
  *
  */
-public class DoubleSGDQN implements Classifier<double[]> {
+public class DoubleSGDQN implements IterativeClassifier<double[]> {
 	
 	// Available losses
 	/** Type of loss function using hinge */
@@ -72,7 +83,6 @@ public class DoubleSGDQN implements Classifier<double[]> {
 	private double[] Bc = null;
 	//skipping decay update parameter
 	private int skip = 0;
-	private int count;
 	private long t;
 	private long t0 = 0;
 	private double lambda = 1e-4;
@@ -93,6 +103,11 @@ public class DoubleSGDQN implements Classifier<double[]> {
 	//pretraitement
 	private boolean normalize = false;
 	
+	//multithreaded epochs
+	private int nbThreads = 1;
+	
+	private TrainingControl control;
+	
 	//le noyau linéaire
 	private final Kernel<double[]> dot = new DoubleLinear();
 	
@@ -102,6 +117,8 @@ public class DoubleSGDQN implements Classifier<double[]> {
 	@Override
 	public void train(List<TrainingSample<double[]>> l) {
 		
+		TrainingControl.Run run = getTrainingControl().start();
+		
 		//0. copy samples
 		tlist = new Vector<TrainingSample<double[]>>();
 		tlist.addAll(l);
@@ -169,15 +186,34 @@ public class DoubleSGDQN implements Classifier<double[]> {
 		initSVM();
 		calibrate(0, size - 1);
 		long tmptime = System.currentTimeMillis();
+		// best hyperplane so far, restored when the training stops early
+		double[] bestW = null;
+		double bestObj = Double.POSITIVE_INFINITY;
 		for(int i = 0 ; i < epochs ; i++)
 		{
-			train(0, tlist.size()-1);
+			if(nbThreads > 1 && size >= 2 * nbThreads)
+				parallelTrain();
+			else
+				train(0, tlist.size()-1);
 			if(VERBOSE)
 			{
 				long t = System.currentTimeMillis();
 				System.out.println("epoch "+i+" time : "+(t - tmptime)+" ms.");
 				tmptime = t;
 			}
+			// the objective of the last epoch is only needed by the listeners
+			double obj = (i < epochs - 1 || getTrainingControl().hasListeners()) ? test(0, size - 1) : Double.NaN;
+			if(obj < bestObj) {
+				if(bestW == null)
+					bestW = new double[w.length];
+				System.arraycopy(w, 0, bestW, 0, w.length);
+				bestObj = obj;
+			}
+			if(!run.progress(this, i+1, obj, Double.NaN)) {
+				if(obj > bestObj)
+					w = bestW;
+				break;
+			}
 		}
 		if(VERBOSE)
 			System.out.println("done in "+(System.currentTimeMillis()-time)+" ms.");
@@ -208,7 +244,17 @@ public class DoubleSGDQN implements Classifier<double[]> {
 	
 	private void train(int from, int to)
 	{
-		count = skip;
+		t = train(from, to, w, Bc, t);
+	}
+	
+	/**
+	 * Learns samples from to to on the given hyperplane and scaling, starting at
+	 * iteration t.
+	 * @return the iteration after the last sample
+	 */
+	private long train(int from, int to, double[] w, double[] Bc, long t)
+	{
+		int count = skip;
 		boolean updateB = false;
 		
 		for(int i = from ; i <= to ; i++)
@@ -270,8 +316,57 @@ public class DoubleSGDQN implements Classifier<double[]> {
 				}
 			}
 			
-			t += 1;
+			t++;
+		}
+		return t;
+	}
+	
+	/**
+	 * One epoch on several threads. Each thread learns a contiguous part of the
+	 * list on its own copy of the hyperplane and scaling, and the copies are
+	 * averaged in a fixed order.
+	 */
+	private void parallelTrain()
+	{
+		final int p = nbThreads;
+		final int n = tlist.size();
+		final long t0 = t;
+		final double[][] ws = new double[p][];
+		final double[][] bs = new double[p][];
+		ThreadPoolExecutor exec = ThreadPoolServer.getThreadPoolExecutor(p);
+		try {
+			List<Future<?>> futures = new ArrayList<Future<?>>(p);
+			for(int k = 0 ; k < p ; k++)
+			{
+				final int id = k;
+				futures.add(exec.submit(new Runnable() {
+					@Override
+					public void run() {
+						ws[id] = w.clone();
+						bs[id] = Bc.clone();
+						train(id * n / p, (id + 1) * n / p - 1, ws[id], bs[id], t0);
+					}
+				}));
+			}
+			for(Future<?> f : futures)
+				f.get();
+		} catch (InterruptedException | ExecutionException e) {
+			throw new RuntimeException("Failed threading training", e);
+		} finally {
+			ThreadPoolServer.shutdownNow(exec);
+		}
+		
+		Arrays.fill(w, 0);
+		Arrays.fill(Bc, 0);
+		for(int k = 0 ; k < p ; k++)
+		{
+			for(int d = 0 ; d < w.length ; d++)
+			{
+				w[d] += ws[k][d] / p;
+				Bc[d] += bs[k][d] / p;
+			}
 		}
+		t += (n + p - 1) / p;
 	}
 	
 	/** test the objective function on a subsample of training set */
@@ -502,6 +597,36 @@ public class DoubleSGDQN implements Classifier<double[]> {
 		this.epochs = epochs;
 	}
 
+	@Override
+	public TrainingControl getTrainingControl() {
+		if(control == null)
+			control = new TrainingControl();
+		return control;
+	}
+
+	@Override
+	public void setTrainingControl(TrainingControl control) {
+		this.control = control;
+	}
+
+	/**
+	 * Tells the number of threads used for each epoch
+	 * @return the number of threads
+	 */
+	public int getNbThreads() {
+		return nbThreads;
+	}
+
+	/**
+	 * Sets the number of threads used for each epoch (default 1, sequential epochs).
+	 * With several threads, the copies learned by each thread on its own part of
+	 * the training list are averaged.
+	 * @param nbThreads the number of threads
+	 */
+	public void setNbThreads(int nbThreads) {
+		this.nbThreads = Math.max(1, nbThreads);
+	}
+
 	/**
 	 * Tells if training datas are centered/reduced as preprocessing before learning
 	 * @return true if center/reduce
@@ -48,7 +48,7 @@ import net.jkernelmachines.util.DebugPrinter;
  *
  * @param <T> inputspace datatype
  */
-public class GradMKL<T> implements Classifier<T>, KernelSVM<T>, MKL<T> {
+public class GradMKL<T> implements Classifier<T>, KernelSVM<T>, WarmStartable, KernelCaching, MKL<T> {
 
 	ArrayList<TrainingSample<T>> listOfExamples;
 	ArrayList<Double> listOfExampleWeights;
@@ -56,6 +56,8 @@ public class GradMKL<T> implements Classifier<T>, KernelSVM<T>, MKL<T> {
 	ArrayList<Double> listOfKernelWeights;
 	
 	KernelSVM<T> svm;
+	double[] initAlphas;
+	boolean keepCache = false;
 	
 	double stopGap = 1e-7;
 	double eps_regul = 1e-3;
@@ -87,13 +89,15 @@ public class GradMKL<T> implements Classifier<T>, KernelSVM<T>, MKL<T> {
 		debug.println(2, "training on "+listOfKernels.size()+" kernels and "+l.size()+" examples");
 		
 		//1. init kernels
+		// Gaussian kernels differing only by gamma share their distance matrix
+		List<SimpleCacheKernel<T>> cache = SimpleCacheKernel.cacheKernels(listOfKernels, l);
 		ArrayList<SimpleCacheKernel<T>> kernels = new ArrayList<SimpleCacheKernel<T>>();
 		ArrayList<Double> weights = new ArrayList<Double>();
 		
 		//normalize to cst trace and init weights to 1/N
 		for(int i = 0 ; i < listOfKernels.size(); i++)
 		{
-			SimpleCacheKernel<T> sck = new SimpleCacheKernel<T>(listOfKernels.get(i), l);
+			SimpleCacheKernel<T> sck = cache.get(i);
 			sck.setName(listOfKernels.get(i).toString());
 			double[][] matrix = sck.getKernelMatrix(l);
 			//compute trace
@@ -123,6 +127,10 @@ public class GradMKL<T> implements Classifier<T>, KernelSVM<T>, MKL<T> {
 			svm = new SMOSVM<T>(null);
 		svm.setKernel(tsk);
 		svm.setC(C);
+		if(svm instanceof KernelCaching)
+			((KernelCaching) svm).setKeepKernelCache(keepCache);
+		warmStartSVM(initAlphas);
+		initAlphas = null;
 		svm.train(l);
 		
 		//2. big loop
@@ -136,8 +144,9 @@ public class GradMKL<T> implements Classifier<T>, KernelSVM<T>, MKL<T> {
 			for(int i = 0 ; i < kernels.size(); i++)
 				tsk.addKernel(kernels.get(i), weights.get(i));
 		
-			//train svm
+			//train svm, warm started from the previous solution
 			svm.setKernel(tsk);
+			warmStartSVM(svm.getAlphas());
 			svm.train(l);
 			
 			//compute sum of example weights and gradient direction
@@ -176,6 +185,7 @@ public class GradMKL<T> implements Classifier<T>, KernelSVM<T>, MKL<T> {
 			tsk.addKernel(listOfKernels.get(i), listOfKernelWeights.get(i));
 		//train svm
 		svm.setKernel(tsk);
+		warmStartSVM(svm.getAlphas());
 		svm.train(l);
 		
 		//5. save examples weights
@@ -305,6 +315,13 @@ public class GradMKL<T> implements Classifier<T>, KernelSVM<T>, MKL<T> {
 			sum += Math.abs(d);
 		return sum;
 	}
+	
+	/** warm start of the svm, when supported */
+	private void warmStartSVM(double[] a)
+	{
+		if(svm instanceof WarmStartable)
+			((WarmStartable) svm).setInitialAlphas(a);
+	}
 
 	@Override
 	public double valueOf(T e) {
@@ -456,6 +473,20 @@ public class GradMKL<T> implements Classifier<T>, KernelSVM<T>, MKL<T> {
 		return svm.getAlphas();
 	}
 
+	/**
+	 * Sets the weights used as starting point by the first svm training of the
+	 * next call to train.
+	 */
+	@Override
+	public void setInitialAlphas(double[] a) {
+		initAlphas = a;
+	}
+
+	@Override
+	public void setKeepKernelCache(boolean keep) {
+		keepCache = keep;
+	}
+
         @Override
         public Kernel<T> getKernel() {
             return svm.getKernel();
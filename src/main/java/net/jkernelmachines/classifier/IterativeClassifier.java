@@ -0,0 +1,72 @@
+/*******************************************************************************
+ * Copyright (c) 2016, David Picard.
+ * All rights reserved.
+ *
+ * Redistribution and use in source and binary forms, with or without modification,
+ * are permitted provided that the following conditions are met:
+ *
+ * 1. Redistributions of source code must retain the above copyright notice, this
+ * list of conditions and the following disclaimer.
+ *
+ * 2. Redistributions in binary form must reproduce the above copyright notice,
+ * this list of conditions and the following disclaimer in the documentation and/or
+ * other materials provided with the distribution.
+ *
+ * 3. Neither the name of the copyright holder nor the names of its contributors
+ * may be used to endorse or promote products derived from this software without
+ * specific prior written permission.
+ *
+ * THIS SOFTWARE IS PROVIDED BY THE COPYRIGHT HOLDERS AND CONTRIBUTORS "AS IS" AND
+ * ANY EXPRESS OR IMPLIED WARRANTIES, INCLUDING, BUT NOT LIMITED TO, THE IMPLIED
+ * WARRANTIES OF MERCHANTABILITY AND FITNESS FOR A PARTICULAR PURPOSE ARE
+ * DISCLAIMED. IN NO EVENT SHALL THE COPYRIGHT HOLDER OR CONTRIBUTORS BE LIABLE FOR
+ * ANY DIRECT, INDIRECT, INCIDENTAL, SPECIAL, EXEMPLARY, OR CONSEQUENTIAL DAMAGES
+ * (INCLUDING, BUT NOT LIMITED TO, PROCUREMENT OF SUBSTITUTE GOODS OR SERVICES;
+ * LOSS OF USE, DATA, OR PROFITS; OR BUSINESS INTERRUPTION) HOWEVER CAUSED AND ON
+ * ANY THEORY OF LIABILITY, WHETHER IN CONTRACT, STRICT LIABILITY, OR TORT
+ * (INCLUDING NEGLIGENCE OR OTHERWISE) ARISING IN ANY WAY OUT OF THE USE OF THIS
+ * SOFTWARE, EVEN IF ADVISED OF THE POSSIBILITY OF SUCH DAMAGE.
+ *******************************************************************************/
+package net.jkernelmachines.classifier;
+
+/**
+ * <p>
+ * Interface for classifiers trained by an iterative solver, which report
+ * their progress to the listeners of a {@link TrainingControl} and stop as
+ * soon as it tells so, keeping the current model. For the dual solvers
+ * ({@link SMOSVM}, {@link LaSVM}, {@link SDCA}) and {@link SimpleMKL}, this
+ * is the last feasible solution; the stochastic gradient learners
+ * ({@link DoubleSGD}, {@link DoubleSGDQN}) evaluate the primal objective after
+ * each epoch and restore the epoch with the lowest one, as the last iterate
+ * is not necessarily the best one.
+ * </p>
+ * <p>
+ * The following solvers do not support a training control and always train
+ * to completion: {@link DoublePegasosSVM}, {@link DoubleQNPKL}, {@link GradMKL},
+ * {@link TSMKL}, {@link LaSVMI}, {@link BudgetSDCA} and
+ * {@link MulticlassSDCA}.
+ * </p>
+ * 
+ * @author picard
+ *
+ */
+public interface IterativeClassifier<T> extends Classifier<T> {
+
+	/**
+	 * Tells the control of the training procedure
+	 * 
+	 * @return the training control
+	 */
+	public TrainingControl getTrainingControl();
+
+	/**
+	 * Sets the control of the training procedure. The same control may be
+	 * shared by several classifiers, even trained concurrently, in order to
+	 * cancel them all at once.
+	 * 
+	 * @param control
+	 *            the training control
+	 */
+	public void setTrainingControl(TrainingControl control);
+
+}
@@ -43,6 +43,7 @@ import net.jkernelmachines.threading.ThreadedMatrixOperator;
 import net.jkernelmachines.type.TrainingSample;
 import net.jkernelmachines.type.TrainingSampleStream;
 import net.jkernelmachines.util.DebugPrinter;
+import net.jkernelmachines.util.metrics.Metrics;
 
 /**
  * <p>
@@ -56,7 +57,7 @@ import net.jkernelmachines.util.DebugPrinter;
  * @author picard
  *
  */
-public final class LaSVM<T> implements KernelSVM<T>, Serializable, OnlineClassifier<T> {
+public final class LaSVM<T> implements KernelSVM<T>, WarmStartable, KernelCaching, Serializable, OnlineClassifier<T>, IterativeClassifier<T> {
 
 	private static final long serialVersionUID = -831288193185967121L;
 
@@ -73,12 +74,20 @@ public final class LaSVM<T> implements KernelSVM<T>, Serializable, OnlineClassif
 	private int imin, imax;
 	private double gmin, gmax;
 	private double[][] kmatrix;
+	private Kernel<T> kmatrixKernel;
+	private List<TrainingSample<T>> kmatrixList;
+	private boolean keepCache = false;
 	private boolean minmaxFlag = false;
 	private double[] kmaxmin;
 	private LinkedList<Integer> trainQueue;
+	private transient TrainingControl control;
 	
 	private double b = 0; // bias
 	
+	// warm start
+	private double[] initAlphas;
+	private double[] initGradient;
+	
 	private double C = 1.0; //hyperparameter C
 	private int E = 5; //number of epochs
 	private static final double tau = 1e-15;
@@ -113,7 +122,7 @@ public final class LaSVM<T> implements KernelSVM<T>, Serializable, OnlineClassif
 				tlist.add(t);
 			}
 			//compute kernel
-			kmatrix = kernel.getKernelMatrix(tlist);
+			updateKernelMatrix();
 			
 			
 			int idx = tlist.size()-1;
@@ -202,10 +211,12 @@ public final class LaSVM<T> implements KernelSVM<T>, Serializable, OnlineClassif
 	}
 	
 	
-	@SuppressWarnings("unchecked")
 	private void train()
 	{
+		long start = Metrics.start();
+		long iterations = 0, violations = 0;
 		trainQueue = new LinkedList<Integer>();
+		TrainingControl.Run run = getTrainingControl().start();
 		
 		for(int e = 0 ; e < E ; e++)
 		{
@@ -215,16 +226,37 @@ public final class LaSVM<T> implements KernelSVM<T>, Serializable, OnlineClassif
 //			Collections.shuffle(trainQueue);
 			while(!trainQueue.isEmpty())
 			{
+				if((iterations & 255) == 255 && run.shouldStop())
+					break;
 				//step 2.
 				process(trainQueue.poll());
 				//	step 3
 //				while(optim(-1, -1));
-				reprocess();
+				if(reprocess())
+					violations++;
+				iterations++;
+			}
+			if(!progress(run, e+1))
+			{
+				debug.println(2, "lasvm : training stopped at epoch "+(e+1));
+				break;
 			}
 		}
+		finish(run);
+		Metrics.stop(Metrics.TIME_OPTIMIZATION, this, start);
+		Metrics.count(Metrics.SOLVER_ITERATIONS, this, iterations);
+		Metrics.count(Metrics.SOLVER_KKT_VIOLATIONS, this, violations);
+	}
+	
+	/**
+	 * final optimization, computation of the bias and release of the cache
+	 */
+	@SuppressWarnings("unchecked")
+	private void finish(TrainingControl.Run run)
+	{
 		// step 4
 		int iter = 100000;
-		while(optim(-1, -1) && iter-- > 0);
+		while(!run.shouldStop() && optim(-1, -1) && iter-- > 0);
 		if(iter == 0)
 			debug.println(2, "*** lasvm : too much reprocess.");
 		reprocess();
@@ -248,16 +280,106 @@ public final class LaSVM<T> implements KernelSVM<T>, Serializable, OnlineClassif
 			tarray[i] = tlist.get(i).sample;
 		
 		//clear cache
-		kmatrix = null;
+		if(!keepCache) {
+			kmatrix = null;
+			kmatrixList = null;
+		}
 
 	}
 	
+	/**
+	 * Train again the classifier starting from the current support vectors,
+	 * with weights clipped to the current value of C. The Gram matrix is only
+	 * computed again if the kernel has changed or if the cache was not kept.
+	 */
 	public void retrain()
 	{
+		if(tlist == null || g == null) {
+			return;
+		}
+		
+		TrainingControl.Run run = getTrainingControl().start();
+		
 		//rebuild matrix
-		kmatrix = kernel.getKernelMatrix(tlist);
+		computeKernelMatrix();
+		
+		//new box constraints
+		for(int i = 0 ; i < Cmin.length ; i++)
+		{
+			Cmin[i] = Math.min(C*y[i] , 0);
+			Cmax[i] = Math.max(C*y[i], 0);
+		}
+		clipAlphas();
 		
 		//rebuild gradient
+		computeGradient();
+		minmaxFlag = false;
+	
+		// refresh all sv
+		finish(run);
+	}
+	
+	/**
+	 * computes the Gram matrix of the training list, if not already in the cache
+	 */
+	private void computeKernelMatrix()
+	{
+		if(kmatrix == null || kmatrixKernel != kernel || !sameSamples(kmatrixList, tlist)) {
+			Metrics.count(Metrics.CACHE_MISSES, this, 1);
+			kmatrix = kernel.getKernelMatrix(tlist);
+			kmatrixKernel = kernel;
+			kmatrixList = new ArrayList<TrainingSample<T>>(tlist);
+		}
+		else {
+			Metrics.count(Metrics.CACHE_HITS, this, 1);
+		}
+	}
+	
+	/**
+	 * adds the last sample of the training list to the Gram matrix, the other
+	 * lines being reused if they are in the cache
+	 */
+	private void updateKernelMatrix()
+	{
+		int n = tlist.size();
+		if(kmatrix == null || kmatrix.length != n-1 || kmatrixKernel != kernel || !sameSamples(kmatrixList, tlist.subList(0, n-1))) {
+			computeKernelMatrix();
+			return;
+		}
+		Metrics.count(Metrics.CACHE_HITS, this, 1);
+		Metrics.count(Metrics.KERNEL_EVALUATIONS, kernel, n);
+		double[][] m = new double[n][];
+		T xn = tlist.get(n-1).sample;
+		for(int i = 0 ; i < n-1 ; i++) {
+			m[i] = Arrays.copyOf(kmatrix[i], n);
+			m[i][n-1] = kernel.valueOf(tlist.get(i).sample, xn);
+		}
+		m[n-1] = new double[n];
+		for(int i = 0 ; i < n-1 ; i++)
+			m[n-1][i] = m[i][n-1];
+		m[n-1][n-1] = kernel.valueOf(xn, xn);
+		kmatrix = m;
+		kmatrixList = new ArrayList<TrainingSample<T>>(tlist);
+	}
+	
+	/**
+	 * checks that two lists hold the same samples in the same order
+	 */
+	private boolean sameSamples(List<TrainingSample<T>> l1, List<TrainingSample<T>> l2)
+	{
+		if(l1 == null || l2 == null || l1.size() != l2.size())
+			return false;
+		for(int i = 0 ; i < l1.size() ; i++)
+			if(l1.get(i).sample != l2.get(i).sample)
+				return false;
+		return true;
+	}
+	
+	/**
+	 * computes the gradient for all samples in S
+	 */
+	private void computeGradient()
+	{
 		final double[] tmp = new double[g.length];
 		(new ThreadedMatrixOperator(){
 
@@ -274,16 +396,39 @@ public final class LaSVM<T> implements KernelSVM<T>, Serializable, OnlineClassif
 				}
 			}}).getMatrix(kmatrix);
 		g = tmp;
+	}
 	
-		// refresh all sv
-		// step 4
-		int iter = 100000;
-		while(optim(-1, -1) && iter-- > 0);
-		if(iter == 0)
-			debug.println(2, "*** lasvm : too much reprocess.");
-		reprocess();
-		
-
+	/**
+	 * clips the weights to the box constraints and restores sum_i alpha_i = 0
+	 * @return true if the weights were modified
+	 */
+	private boolean clipAlphas()
+	{
+		boolean changed = false;
+		double pos = 0, neg = 0;
+		for(int i = 0 ; i < alphas.length ; i++)
+		{
+			double a = Math.max(Cmin[i], Math.min(Cmax[i], alphas[i]));
+			if(a != alphas[i]) {
+				alphas[i] = a;
+				changed = true;
+			}
+			if(a > 0)
+				pos += a;
+			else
+				neg -= a;
+		}
+		if(Math.abs(pos - neg) > tau)
+		{
+			// scale down the heaviest class
+			boolean scalePos = pos > neg;
+			double r = scalePos ? neg/pos : pos/neg;
+			for(int i = 0 ; i < alphas.length ; i++)
+				if((alphas[i] > 0) == scalePos)
+					alphas[i] *= r;
+			changed = true;
+		}
+		return changed;
 	}
 	
 	//init by adding a few samples to S
@@ -311,7 +456,7 @@ public final class LaSVM<T> implements KernelSVM<T>, Serializable, OnlineClassif
 		}
 		
 		//compute kernel
-		kmatrix = kernel.getKernelMatrix(tlist);
+		computeKernelMatrix();
 		
 		//add at most min(initSampling, maxpos) positives examples
 		//and min(initSampling, maxneg) negatives samples
@@ -334,6 +479,22 @@ public final class LaSVM<T> implements KernelSVM<T>, Serializable, OnlineClassif
 				break;
 		}
 		
+		//warm start
+		if(initAlphas != null && initAlphas.length == alphas.length)
+		{
+			for(int i = 0 ; i < alphas.length ; i++)
+				alphas[i] = y[i] * initAlphas[i];
+			boolean changed = clipAlphas();
+			for(int i = 0 ; i < alphas.length ; i++)
+				if(alphas[i] != 0)
+					S[i] = true;
+			if(!changed && initGradient != null && initGradient.length == g.length)
+				g = initGradient.clone();
+			else
+				computeGradient();
+		}
+		initAlphas = null;
+		initGradient = null;
 	}
 	
 	private final void minmax()
@@ -456,6 +617,24 @@ public final class LaSVM<T> implements KernelSVM<T>, Serializable, OnlineClassif
 		return true;
 	}
 	
+	/**
+	 * notifies the listeners of the training control, with the dual objective
+	 * and the gap of the most violating pair
+	 */
+	private boolean progress(TrainingControl.Run run, long epoch)
+	{
+		if(!getTrainingControl().hasListeners())
+			return !run.shouldStop();
+		
+		// g_s = y_s - sum_t alpha_t k_st
+		double dual = 0;
+		for(int s = 0 ; s < S.length ; s++)
+			if(S[s])
+				dual += 0.5 * alphas[s] * (y[s] + g[s]);
+		minmax();
+		return run.progress(this, epoch, dual, gmax - gmin);
+	}
+	
 	private boolean reprocess()
 	{
 		//optim violating pair
@@ -573,6 +752,42 @@ public final class LaSVM<T> implements KernelSVM<T>, Serializable, OnlineClassif
 	public void setB(double b) {
 		this.b = b;
 	}
+	
+	@Override
+	public TrainingControl getTrainingControl() {
+		if(control == null)
+			control = new TrainingControl();
+		return control;
+	}
+	
+	@Override
+	public void setTrainingControl(TrainingControl control) {
+		this.control = control;
+	}
+	
+	@Override
+	public void setInitialAlphas(double[] a) {
+		initAlphas = a;
+	}
+	
+	/**
+	 * Sets the gradient of the dual associated with the initial weights, that is
+	 * g_i = y_i - sum_j alpha_j y_j k(x_i, x_j), in order to avoid its
+	 * computation at the beginning of the next training.
+	 * @param g the initial gradient
+	 */
+	public void setInitialGradient(double[] g) {
+		initGradient = g;
+	}
+	
+	@Override
+	public void setKeepKernelCache(boolean keep) {
+		keepCache = keep;
+		if(!keep) {
+			kmatrix = null;
+			kmatrixList = null;
+		}
+	}
 
 	/**
 	 * Tells the kernel used by this classifier
@@ -588,6 +803,8 @@ public final class LaSVM<T> implements KernelSVM<T>, Serializable, OnlineClassif
 	 */
 	public void setKernel(Kernel<T> kernel) {
 		this.kernel = kernel;
+		// the kept Gram matrix may have been computed with other parameters
+		kmatrixKernel = null;
 	}
 
 	/**
@@ -52,7 +52,7 @@ import net.jkernelmachines.util.DebugPrinter;
  * @author picard
  * 
  */
-public class LaSVMI<T> implements KernelSVM<T> {
+public class LaSVMI<T> implements KernelSVM<T>, WarmStartable, KernelCaching {
 
 	Kernel<T> kernel;
 
@@ -74,6 +74,13 @@ public class LaSVMI<T> implements KernelSVM<T> {
 	DebugPrinter debug = new DebugPrinter();
 	boolean cache = true;
 	double[][] kmatrix;
+	Kernel<T> kmatrixKernel;
+	List<TrainingSample<T>> kmatrixList;
+	boolean keepCache = false;
+
+	// warm start
+	double[] initAlphas;
+	double[] initGradient;
 
 	/**
 	 * Default constructor provideing the kernel
@@ -120,8 +127,45 @@ public class LaSVMI<T> implements KernelSVM<T> {
 		// max number of non SV in expansion
 		m = Math.min(1 + train.size() / 100, 100);
 
-		if (cache)
+		if (cache && !(keepCache && isCached())) {
 			kmatrix = kernel.getKernelMatrix(train);
+			kmatrixKernel = kernel;
+			kmatrixList = train;
+		}
+
+		// warm start
+		if (initAlphas != null && initAlphas.length == alpha.length) {
+			boolean changed = false;
+			for (int n = 0; n < alpha.length; n++) {
+				int y = train.get(n).label;
+				double a = Math.max(0, Math.min(C, initAlphas[n]));
+				changed |= (a != initAlphas[n]);
+				alpha[n] = y * a;
+				A[n] = Math.min(0, C * y);
+				B[n] = Math.max(0, C * y);
+				keset[n] = (alpha[n] != 0);
+			}
+			if (!changed && initGradient != null
+					&& initGradient.length == gset.length) {
+				gset = initGradient.clone();
+			} else {
+				for (int i = 0; i < train.size(); i++) {
+					if (!keset[i])
+						continue;
+					double gi = train.get(i).label;
+					T xi = train.get(i).sample;
+					for (int n = 0; n < train.size(); n++) {
+						if (keset[n])
+							gi -= alpha[n]
+									* ((cache) ? kmatrix[i][n] : kernel
+											.valueOf(xi, train.get(n).sample));
+					}
+					gset[i] = gi;
+				}
+			}
+		}
+		initAlphas = null;
+		initGradient = null;
 
 		// 2) online iterations
 		for (int e = 0; e < E; e++)
@@ -168,7 +212,24 @@ public class LaSVMI<T> implements KernelSVM<T> {
 			}
 		clean();
 
+		if (!keepCache) {
+			kmatrix = null;
+			kmatrixList = null;
+		}
+	}
 
+	/**
+	 * tells if the cached Gram matrix was computed on the current training
+	 * list with the current kernel
+	 */
+	private boolean isCached() {
+		if (kmatrix == null || kmatrixKernel != kernel || kmatrixList == null
+				|| kmatrixList.size() != train.size())
+			return false;
+		for (int n = 0; n < train.size(); n++)
+			if (kmatrixList.get(n).sample != train.get(n).sample)
+				return false;
+		return true;
 	}
 
 	private void clean() {
@@ -278,6 +339,19 @@ public class LaSVMI<T> implements KernelSVM<T> {
 
 		TrainingSample<T> xi = train.get(i);
 
+		// 0. remove the previous contribution of xi from the gradient
+		if (keset[i] && alpha[i] != 0) {
+			for (int n = 0; n < train.size(); n++) {
+				if (keset[n]) {
+					if (cache)
+						gset[n] += alpha[i] * kmatrix[i][n];
+					else
+						gset[n] += alpha[i]
+								* kernel.valueOf(xi.sample, train.get(n).sample);
+				}
+			}
+		}
+
 		// 1.
 		// set new alpha
 		alpha[i] = 0;
@@ -287,10 +361,10 @@ public class LaSVMI<T> implements KernelSVM<T> {
 		for (int n = 0; n < train.size(); n++) {
 			if (keset[n]) {
 				if (cache)
+					gi -= alpha[n] * kmatrix[i][n];
+				else
 					gi -= alpha[n]
 							* kernel.valueOf(xi.sample, train.get(n).sample);
-				else
-					gi -= alpha[n] * kmatrix[i][n];
 			}
 		}
 		gset[i] = gi;
@@ -438,6 +512,33 @@ public class LaSVMI<T> implements KernelSVM<T> {
 	 */
 	public void setKernel(Kernel<T> kernel) {
 		this.kernel = kernel;
+		// the kept Gram matrix may have been computed with other parameters
+		kmatrixKernel = null;
+	}
+
+	@Override
+	public void setInitialAlphas(double[] a) {
+		initAlphas = a;
+	}
+
+	/**
+	 * Sets the gradient of the dual associated with the initial weights, that is
+	 * g_i = y_i - sum_j alpha_j y_j k(x_i, x_j), in order to avoid its
+	 * computation at the beginning of the next training.
+	 * 
+	 * @param g the initial gradient
+	 */
+	public void setInitialGradient(double[] g) {
+		initGradient = g;
+	}
+
+	@Override
+	public void setKeepKernelCache(boolean keep) {
+		keepCache = keep;
+		if (!keep) {
+			kmatrix = null;
+			kmatrixList = null;
+		}
 	}
 
 	/**
@@ -52,6 +52,16 @@ public class NystromLSSVM<T> implements Classifier<T>, OnlineClassifier<T> {
 	NystromKernel<T> kernel;
 	DoubleSAG svm;
 
+	/** Landmarks selected by active learning */
+	public static final int ACTIVE = 0;
+	/** Landmarks selected by k-means */
+	public static final int KMEANS = 1;
+	/** Landmarks sampled according to leverage scores */
+	public static final int LEVERAGE = 2;
+	/** Landmarks taken as pivots of an incomplete Cholesky decomposition */
+	public static final int CHOLESKY = 3;
+
+	int landmarkSelection = ACTIVE;
 	double percent = 0.01;
 	int iteration = 5;
 	double C = 10;
@@ -93,7 +103,19 @@ public class NystromLSSVM<T> implements Classifier<T>, OnlineClassifier<T> {
 		if (p <= 0)
 			p = 1;
 		debug.println(3, "n = " + n + ", m = " + m + ", p = " + p);
-		kernel.activeTrain(l, iteration, p, m);
+		switch (landmarkSelection) {
+		case KMEANS:
+			kernel.trainKMeans(l, m);
+			break;
+		case LEVERAGE:
+			kernel.trainLeverage(l, m, 1. / C);
+			break;
+		case CHOLESKY:
+			kernel.trainIncompleteCholesky(l, m);
+			break;
+		default:
+			kernel.activeTrain(l, iteration, p, m);
+		}
 		List<TrainingSample<double[]>> dl = kernel.projectList(l);
 		svm = new DoubleSAG();
 		svm.setLambda(1. / (C * n));
@@ -177,6 +199,26 @@ public class NystromLSSVM<T> implements Classifier<T>, OnlineClassifier<T> {
 		this.iteration = iteration;
 	}
 
+	/**
+	 * Tells the landmark selection strategy of the Nystrom approximation
+	 * 
+	 * @return the strategy (ACTIVE, KMEANS, LEVERAGE or CHOLESKY)
+	 */
+	public int getLandmarkSelection() {
+		return landmarkSelection;
+	}
+
+	/**
+	 * Sets the landmark selection strategy of the Nystrom approximation
+	 * (default ACTIVE)
+	 * 
+	 * @param landmarkSelection
+	 *            the strategy (ACTIVE, KMEANS, LEVERAGE or CHOLESKY)
+	 */
+	public void setLandmarkSelection(int landmarkSelection) {
+		this.landmarkSelection = landmarkSelection;
+	}
+
 	/**
 	 * Get the C svm hyperparameter
 	 * 
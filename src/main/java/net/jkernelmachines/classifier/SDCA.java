@@ -36,11 +36,14 @@ import java.util.ArrayList;
 import java.util.Arrays;
 import java.util.Collections;
 import java.util.List;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.Future;
+import java.util.concurrent.ThreadPoolExecutor;
 
 import net.jkernelmachines.kernel.Kernel;
+import net.jkernelmachines.threading.ThreadPoolServer;
 import net.jkernelmachines.type.TrainingSample;
 import net.jkernelmachines.type.TrainingSampleStream;
-import net.jkernelmachines.util.algebra.VectorOperations;
 
 /**
  * <p>
@@ -52,11 +55,24 @@ import net.jkernelmachines.util.algebra.VectorOperations;
  * Shai Shalev-Shwartz, Tong Zhang
  * JMLR, 2013.
  * </p>
+ * <p>
+ * The margins of the training samples are maintained along the updates, such
+ * that a row of the Gram matrix is only needed when a dual variable changes.
+ * With several threads, each epoch is split in mini-batches optimized in
+ * parallel and merged with the safe additive aggregation of CoCoA+:
+ * </p>
+ * <p>
+ * Adding vs. Averaging in Distributed Primal-Dual Optimization,
+ * 
+ * Chenxin Ma, Virginia Smith, Martin Jaggi, Michael I. Jordan, Peter Richtarik,
+ * Martin Takac
+ * ICML, 2015.
+ * </p>
  * 
  * @author picard
  * 
  */
-public class SDCA<T> implements KernelSVM<T>, OnlineClassifier<T> {
+public class SDCA<T> implements KernelSVM<T>, WarmStartable, KernelCaching, OnlineClassifier<T>, IterativeClassifier<T> {
 
 	Kernel<T> kernel;
 	T[] samples;
@@ -71,7 +87,17 @@ public class SDCA<T> implements KernelSVM<T>, OnlineClassifier<T> {
 	// tmp variables
 	private int n;
 	private double[][] km;
+	private Kernel<T> kmKernel;
+	private T[] kmSamples;
 	private boolean cacheKernel = true;
+	private boolean keepCache = false;
+	private double[] diag;
+	private double[] margins;
+	private int nbThreads = 1;
+	private TrainingControl control;
+	
+	// warm start
+	private double[] initAlphas;
 
 	/**
 	 * @param kernel kernel
@@ -116,14 +142,11 @@ public class SDCA<T> implements KernelSVM<T>, OnlineClassifier<T> {
 	@SuppressWarnings("unchecked")
 	@Override
 	public void train(List<TrainingSample<T>> l) {
+		TrainingControl.Run run = getTrainingControl().start();
 		n = l.size();
 		train = new ArrayList<TrainingSample<T>>(n);
 		train.addAll(l);
 
-		if (cacheKernel && l.size()*l.size()*8 < Runtime.getRuntime().freeMemory()) {
-			km = kernel.getKernelMatrix(train);
-		}
-
 		samples = (T[]) new Object[n];
 		labels = new int[n];
 
@@ -133,28 +156,214 @@ public class SDCA<T> implements KernelSVM<T>, OnlineClassifier<T> {
 			labels[i] = t.label;
 		}
 
+		if (cacheKernel && !(keepCache && isCached())
+				&& l.size()*l.size()*8 < Runtime.getRuntime().freeMemory()) {
+			km = kernel.getKernelMatrix(train);
+			kmKernel = kernel;
+			kmSamples = samples;
+		}
+		if (!cacheKernel || !isCached()) {
+			km = null;
+			kmSamples = null;
+		}
+
 		alphas = new double[n];
+		if (initAlphas != null && initAlphas.length == n) {
+			for (int i = 0; i < n; i++) {
+				alphas[i] = labels[i] * max(0, min(C, initAlphas[i]));
+			}
+		}
+		initAlphas = null;
+
+		// diagonal and margins z_j = sum_i alpha_i k(x_i, x_j)
+		diag = new double[n];
+		for (int i = 0; i < n; i++) {
+			diag[i] = (km != null) ? km[i][i] : kernel.valueOf(samples[i],
+					samples[i]);
+		}
+		margins = new double[n];
+		for (int i = 0; i < n; i++) {
+			if (alphas[i] != 0) {
+				addRow(i, alphas[i], 0, n);
+			}
+		}
 
 		List<Integer> indices = new ArrayList<Integer>(n);
 		for (int i = 0; i < n; i++) {
 			indices.add(i);
 		}
 
-		if (cacheKernel) {
+		ThreadPoolExecutor exec = null;
+		if (nbThreads > 1 && n > nbThreads) {
+			exec = ThreadPoolServer.getThreadPoolExecutor(nbThreads);
+		}
+		try {
+			double[] delta = (exec != null) ? new double[n] : null;
+			double[] local = (exec != null) ? new double[n] : null;
 			for (int e = 0; e < E; e++) {
 				Collections.shuffle(indices);
-				for (int i = 0; i < n; i++) {
-					update(indices.get(i));
+				if (exec != null) {
+					parallelEpoch(indices, exec, delta, local);
+				} else {
+					int b = 0;
+					for (int i : indices) {
+						if ((++b & 255) == 0 && run.shouldStop()) {
+							break;
+						}
+						double da = step(i, margins[i], alphas[i], 1.0);
+						if (da != 0) {
+							alphas[i] += da;
+							addRow(i, da, 0, n);
+						}
+					}
+				}
+				if (!progress(run, e + 1)) {
+					break;
 				}
 			}
-		} else {
-			for (int e = 0; e < E; e++) {
-				Collections.shuffle(indices);
-				for (int i = 0; i < n; i++) {
-					updateNoCache(indices.get(i));
+		} catch (InterruptedException ex) {
+			// the dual variables are only updated once all the blocks are
+			// done, they are kept as the best model so far
+			Thread.currentThread().interrupt();
+			run.shouldStop();
+		} catch (ExecutionException ex) {
+			throw new RuntimeException("Failed threading training", ex);
+		} finally {
+			if (exec != null) {
+				ThreadPoolServer.shutdownNow(exec);
+			}
+		}
+		margins = null;
+		diag = null;
+	}
+
+	/**
+	 * One epoch of mini-batch updates: the shuffled samples are split in one
+	 * block per thread, each block is optimized locally with its own margins
+	 * on a subproblem scaled by the number of blocks, and the updates are
+	 * added (CoCoA+), which is safe for any number of blocks.
+	 */
+	private void parallelEpoch(final List<Integer> indices,
+			ThreadPoolExecutor exec, final double[] delta,
+			final double[] local) throws InterruptedException,
+			ExecutionException {
+		final int p = nbThreads;
+		final boolean[] changed = new boolean[n];
+
+		// local updates
+		List<Future<?>> futures = new ArrayList<Future<?>>(p);
+		for (int w = 0; w < p; w++) {
+			final int from = w * n / p;
+			final int to = (w + 1) * n / p;
+			futures.add(exec.submit(new Runnable() {
+				@Override
+				public void run() {
+					for (int b = from; b < to; b++) {
+						local[b] = margins[indices.get(b)];
+					}
+					for (int b = from; b < to; b++) {
+						int i = indices.get(b);
+						double da = step(i, local[b], alphas[i], p);
+						delta[i] = da;
+						if (da == 0) {
+							continue;
+						}
+						changed[i] = true;
+						// only the next samples of the block are visited
+						for (int c = b + 1; c < to; c++) {
+							local[c] += p * da * kernelValue(i, indices.get(c));
+						}
+					}
 				}
+			}));
+		}
+		for (Future<?> f : futures) {
+			f.get();
+		}
+
+		// aggregation
+		final List<Integer> updated = new ArrayList<Integer>();
+		for (int i = 0; i < n; i++) {
+			if (changed[i]) {
+				updated.add(i);
+				alphas[i] += delta[i];
 			}
 		}
+		futures.clear();
+		for (int w = 0; w < p; w++) {
+			final int from = w * n / p;
+			final int to = (w + 1) * n / p;
+			futures.add(exec.submit(new Runnable() {
+				@Override
+				public void run() {
+					for (int i : updated) {
+						addRow(i, delta[i], from, to);
+					}
+				}
+			}));
+		}
+		for (Future<?> f : futures) {
+			f.get();
+		}
+	}
+
+	/**
+	 * notifies the listeners of the training control, with the primal
+	 * objective and the duality gap computed from the margins
+	 */
+	private boolean progress(TrainingControl.Run run, long epoch) {
+		if (!getTrainingControl().hasListeners()) {
+			return !run.shouldStop();
+		}
+		double ww = 0, loss = 0, sum = 0;
+		for (int i = 0; i < n; i++) {
+			ww += alphas[i] * margins[i];
+			loss += max(0, 1 - labels[i] * margins[i]);
+			sum += labels[i] * alphas[i];
+		}
+		double primal = (0.5 * ww + C * loss) / n;
+		double dual = (sum - 0.5 * ww) / n;
+		return run.progress(this, epoch, primal, primal - dual);
+	}
+
+	/**
+	 * dual variable update from the margin of the sample
+	 * 
+	 * @param i
+	 *            index of the dual variable
+	 * @param z
+	 *            current margin of the sample
+	 * @param a
+	 *            current dual variable
+	 * @param sigma
+	 *            scaling of the quadratic term
+	 * @return the increment of the dual variable
+	 */
+	private final double step(int i, double z, double a, double sigma) {
+		double y = labels[i];
+		double da = (1 - y * z) / (sigma * diag[i]) + y * a;
+		return y * max(0, min(C, da)) - a;
+	}
+
+	/**
+	 * adds da * k(x_i, x_j) to the margins of samples j in [from, to)
+	 */
+	private final void addRow(int i, double da, int from, int to) {
+		if (km != null) {
+			double[] row = km[i];
+			for (int j = from; j < to; j++) {
+				margins[j] += da * row[j];
+			}
+		} else {
+			for (int j = from; j < to; j++) {
+				margins[j] += da * kernel.valueOf(samples[i], samples[j]);
+			}
+		}
+	}
+
+	private final double kernelValue(int i, int j) {
+		return (km != null) ? km[i][j] : kernel.valueOf(samples[i],
+				samples[j]);
 	}
 
 	/*
@@ -194,17 +403,20 @@ public class SDCA<T> implements KernelSVM<T>, OnlineClassifier<T> {
 	}
 
 	/**
-	 * dual variable update
-	 * 
-	 * @param i
-	 *            index f the dual variable
+	 * tells if the cached Gram matrix was computed on the current samples
+	 * with the current kernel
 	 */
-	private final void update(int i) {
-		double y = labels[i];
-		double z = (VectorOperations.dot(alphas, km[i]));
-		double da = (1 - y * z) / km[i][i] + y * alphas[i];
-		alphas[i] = y * max(0, min(C, da));
-
+	private boolean isCached() {
+		if (km == null || kmKernel != kernel || kmSamples == null
+				|| kmSamples.length != samples.length) {
+			return false;
+		}
+		for (int i = 0; i < samples.length; i++) {
+			if (kmSamples[i] != samples[i]) {
+				return false;
+			}
+		}
+		return true;
 	}
 
 	/**
@@ -271,6 +483,8 @@ public class SDCA<T> implements KernelSVM<T>, OnlineClassifier<T> {
 	@Override
 	public void setKernel(Kernel<T> k) {
 		this.kernel = k;
+		// the kept Gram matrix may have been computed with other parameters
+		kmKernel = null;
 	}
 
 	@Override
@@ -332,6 +546,19 @@ public class SDCA<T> implements KernelSVM<T>, OnlineClassifier<T> {
 		return kernel;
 	}
 
+	@Override
+	public TrainingControl getTrainingControl() {
+		if (control == null) {
+			control = new TrainingControl();
+		}
+		return control;
+	}
+
+	@Override
+	public void setTrainingControl(TrainingControl control) {
+		this.control = control;
+	}
+
 	public boolean isCacheKernel() {
 		return cacheKernel;
 	}
@@ -340,4 +567,35 @@ public class SDCA<T> implements KernelSVM<T>, OnlineClassifier<T> {
 		this.cacheKernel = cacheKernel;
 	}
 
+	/**
+	 * Tells the number of threads used for mini-batch parallel epochs
+	 * 
+	 * @return the number of threads
+	 */
+	public int getNbThreads() {
+		return nbThreads;
+	}
+
+	/**
+	 * Sets the number of threads. With more than one thread, each epoch is
+	 * split in as many mini-batches optimized in parallel (default 1,
+	 * sequential updates).
+	 * 
+	 * @param nbThreads
+	 *            the number of threads
+	 */
+	public void setNbThreads(int nbThreads) {
+		this.nbThreads = Math.max(1, nbThreads);
+	}
+
+	@Override
+	public void setInitialAlphas(double[] a) {
+		initAlphas = a;
+	}
+
+	@Override
+	public void setKeepKernelCache(boolean keep) {
+		keepCache = keep;
+	}
+
 }
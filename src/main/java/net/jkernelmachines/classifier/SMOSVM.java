@@ -39,6 +39,7 @@ import net.jkernelmachines.density.SMODensity;
 import net.jkernelmachines.kernel.Kernel;
 import net.jkernelmachines.type.TrainingSample;
 import net.jkernelmachines.util.DebugPrinter;
+import net.jkernelmachines.util.metrics.Metrics;
 
 /**
  * <p>
@@ -54,7 +55,7 @@ import net.jkernelmachines.util.DebugPrinter;
  *
  * @param <T> Datatype of training samples
  */
-public class SMOSVM<T> implements KernelSVM<T>, Serializable, Cloneable {
+public class SMOSVM<T> implements KernelSVM<T>, WarmStartable, KernelCaching, IterativeClassifier<T>, Serializable, Cloneable {
 	/**
 	 * 
 	 */
@@ -70,9 +71,19 @@ public class SMOSVM<T> implements KernelSVM<T>, Serializable, Cloneable {
 	//le noyau
 	private Kernel<T> kernel;
 	private double[][] kcache;
+	private Kernel<T> kcacheKernel;
+	private List<TrainingSample<T>> kcacheList;
+	private boolean keepCache = false;
+	
+	//démarrage à chaud
+	private double[] initAlpha;
+	private double[] initGradient;
 	
 	//outil pour l'optim (cache d'erreur et générateur aléatoire)
 	private double[] ecache;
+	// number of samples violating the KKT conditions examined during training
+	private transient long kktViolations;
+	private transient TrainingControl control;
 	private Random ran;
 	
 	//paramètres du SVM
@@ -123,22 +134,72 @@ public class SMOSVM<T> implements KernelSVM<T>, Serializable, Cloneable {
 		ts = new ArrayList<TrainingSample<T>>();
 		ts.addAll(t);
 		
-		alpha = new double[ts.size()];
-		
-		b = 0;
-		
 		size = ts.size();
 		
+		if(initAlpha != null && initAlpha.length == size)
+		{
+			// warm start, b is kept from the previous training
+			alpha = initAlpha.clone();
+			if(clipAlphas())
+				initGradient = null;
+		}
+		else
+		{
+			alpha = new double[size];
+			b = 0;
+			initGradient = null;
+		}
+		initAlpha = null;
+		
 		train();
 	}
 
 	/**
-	 * Train again the classifier (default restart from scratch)
+	 * Train again the classifier, starting from the current weights clipped to
+	 * the current value of C.
 	 */
 	public void retrain()
 	{
+		if(alpha == null || alpha.length != size)
+			alpha = new double[size];
+		else if(clipAlphas())
+			initGradient = null;
 		train();
 	}
+	
+	/**
+	 * clip the weights to [0, C] and restore the equality constraint sum_i alpha_i y_i = 0
+	 * @return true if the weights were modified
+	 */
+	private boolean clipAlphas()
+	{
+		boolean changed = false;
+		double pos = 0, neg = 0;
+		for(int i = 0 ; i < size; i++)
+		{
+			double a = Math.max(0, Math.min(C, alpha[i]));
+			if(a != alpha[i])
+			{
+				alpha[i] = a;
+				changed = true;
+			}
+			if(ts.get(i).label > 0)
+				pos += a;
+			else
+				neg += a;
+		}
+		if(Math.abs(pos - neg) > eps)
+		{
+			// scale down the heaviest class
+			int y = (pos > neg)? 1 : -1;
+			double r = (pos > neg)? neg/pos : pos/neg;
+			for(int i = 0 ; i < size; i++)
+				if((ts.get(i).label > 0) == (y > 0))
+					alpha[i] *= r;
+			changed = true;
+		}
+		return changed;
+	}
 
 	/**
 	 * private training procedure
@@ -147,6 +208,7 @@ public class SMOSVM<T> implements KernelSVM<T>, Serializable, Cloneable {
 	{
 		
 		long timeStart = System.currentTimeMillis();
+		TrainingControl.Run run = getTrainingControl().start();
 
 		//génération du tableau des alpha_i * y_i
 		double[] t_alphay = new double[size];
@@ -198,10 +260,20 @@ public class SMOSVM<T> implements KernelSVM<T>, Serializable, Cloneable {
 		}
 		
 		//cache de noyau
-		debug.println(3, "building cache.");
-		kcache = kernel.getKernelMatrix(ts);
-		debug.println(4, "kcache size : "+kcache.length);
-		debug.println(3, "kcache built.");
+		if(kcache == null || kcache.length != size || kcacheKernel != kernel || !sameSamples(kcacheList, ts))
+		{
+			debug.println(3, "building cache.");
+			Metrics.count(Metrics.CACHE_MISSES, this, 1);
+			kcache = kernel.getKernelMatrix(ts);
+			kcacheKernel = kernel;
+			kcacheList = ts;
+			debug.println(4, "kcache size : "+kcache.length);
+			debug.println(3, "kcache built.");
+		}
+		else {
+			Metrics.count(Metrics.CACHE_HITS, this, 1);
+			debug.println(3, "reusing cache.");
+		}
 		
 		////-----------------------------------------------------------------------------------------
 
@@ -210,7 +282,13 @@ public class SMOSVM<T> implements KernelSVM<T>, Serializable, Cloneable {
 		boolean bExaminerTout = true;
 
 		//remplissage du cache d'erreur
-		for (int i=0;i<size;i++)
+		if(initGradient != null && initGradient.length == size)
+		{
+			// g_i = y_i - sum_j alpha_j y_j k_ij
+			for (int i=0;i<size;i++)
+				ecache[i] = -initGradient[i] - b;
+		}
+		else for (int i=0;i<size;i++)
 		{
 			double sum = 0;
 			for(int j = 0 ; j < size; j++)
@@ -220,9 +298,12 @@ public class SMOSVM<T> implements KernelSVM<T>, Serializable, Cloneable {
 			}
 			ecache[i] =  (sum - b) - ts.get(i).label;
 		}
+		initGradient = null;
 		debug.println(4, "smotrain : ecache="+Arrays.toString(ecache));
 
 		long timeCache = System.currentTimeMillis();
+		long start = Metrics.start();
+		kktViolations = 0;
 		
 		
 		// On examine les exemples, de préférence ceux qui ne sont pas au bords (qui ne
@@ -236,14 +317,18 @@ public class SMOSVM<T> implements KernelSVM<T>, Serializable, Cloneable {
 			{
 				//printf ("Boucle sur tous les points...");
 				for (int i=0;i<size;i++)
-					if (examiner (i))
+					if((i & 255) == 255 && run.shouldStop())
+						break;
+					else if (examiner (i))
 						nChange ++;
 			}
 			else
 			{
 				//printf ("Boucle sur les points KKT...");
 				for (int i=0;i<size;i++)
-					if (alpha[i] > eps && alpha[i] < (C-eps))
+					if((i & 255) == 255 && run.shouldStop())
+						break;
+					else if (alpha[i] > eps && alpha[i] < (C-eps))
 						if (examiner (i))
 							nChange ++;
 			}
@@ -262,6 +347,12 @@ public class SMOSVM<T> implements KernelSVM<T>, Serializable, Cloneable {
 			
 			if(ite%10000 == 0)
 				debug.println(1, "iteration : "+ite);
+			
+			if(!progress(run, ite))
+			{
+				debug.println(2, "training stopped at iteration "+ite);
+				break;
+			}
 
 		}
 		
@@ -287,9 +378,29 @@ public class SMOSVM<T> implements KernelSVM<T>, Serializable, Cloneable {
 			 alphay[i] = alpha[i]*ts.get(i).label; // alphai * yi
 		
 		long timeTrain = System.currentTimeMillis();
+		Metrics.stop(Metrics.TIME_OPTIMIZATION, this, start);
+		Metrics.count(Metrics.SOLVER_ITERATIONS, this, ite);
+		Metrics.count(Metrics.SOLVER_KKT_VIOLATIONS, this, kktViolations);
 		
 		debug.println(3, "training done in "+ite+" iterations timeCache="+(timeCache - timeStart)+" timeTrain="+(timeTrain-timeCache));
-		kcache = null; // empty memory
+		if(!keepCache)
+		{
+			kcache = null; // empty memory
+			kcacheList = null;
+		}
+	}
+	
+	/**
+	 * checks that two lists hold the same samples in the same order
+	 */
+	private boolean sameSamples(List<TrainingSample<T>> l1, List<TrainingSample<T>> l2)
+	{
+		if(l1 == null || l2 == null || l1.size() != l2.size())
+			return false;
+		for(int i = 0 ; i < l1.size(); i++)
+			if(l1.get(i).sample != l2.get(i).sample)
+				return false;
+		return true;
 	}
 	
 	/**
@@ -306,6 +417,7 @@ public class SMOSVM<T> implements KernelSVM<T>, Serializable, Cloneable {
 		// alpha[i1] doit-il est pris en compte pour optimiser ?
 		if ((r1 < -tolerance && a1 < C-eps) || (r1 > tolerance && a1 > eps))
 		{
+			kktViolations++;
 			// On cherche i2 de 3 façon différentes...
 
 			// Recherche 1: maximiser |E1-E2| parmis les exemples qui ne sont
@@ -537,6 +649,30 @@ public class SMOSVM<T> implements KernelSVM<T>, Serializable, Cloneable {
 		
 
 
+	/**
+	 * notifies the listeners of the training control, with the primal
+	 * objective and the duality gap computed from the error cache
+	 */
+	private boolean progress(TrainingControl.Run run, long ite)
+	{
+		if(!getTrainingControl().hasListeners())
+			return !run.shouldStop();
+		
+		// ecache_i = sum_j alpha_j y_j k_ij - b - y_i
+		double ww = 0, sumAlpha = 0, loss = 0;
+		for(int i = 0 ; i < size; i++)
+		{
+			int y = ts.get(i).label;
+			double out = ecache[i] + y;
+			ww += alpha[i] * y * (out + b);
+			sumAlpha += alpha[i];
+			loss += Math.max(0, 1 - y*out);
+		}
+		double primal = 0.5*ww + C*loss;
+		double dual = sumAlpha - 0.5*ww;
+		return run.progress(this, ite, primal, primal - dual);
+	}
+
 	/* (non-Javadoc)
 	 * @see fr.lip6.classifier.Classifier#valueOf(java.lang.Object)
 	 */
@@ -589,6 +725,8 @@ public class SMOSVM<T> implements KernelSVM<T>, Serializable, Cloneable {
 	public void setKernel(Kernel<T> k)
 	{
 		kernel = k;
+		// the kept Gram matrix may have been computed with other parameters
+		kcacheKernel = null;
 	}
 	
 	/**
@@ -600,6 +738,34 @@ public class SMOSVM<T> implements KernelSVM<T>, Serializable, Cloneable {
 		alpha = a;
 	}
 	
+	@Override
+	public void setInitialAlphas(double[] a)
+	{
+		initAlpha = a;
+	}
+	
+	/**
+	 * Sets the gradient of the dual associated with the initial weights, that is
+	 * g_i = y_i - sum_j alpha_j y_j k(x_i, x_j), in order to avoid its
+	 * computation at the beginning of the next training.
+	 * @param g the initial gradient
+	 */
+	public void setInitialGradient(double[] g)
+	{
+		initGradient = g;
+	}
+	
+	@Override
+	public void setKeepKernelCache(boolean keep)
+	{
+		keepCache = keep;
+		if(!keep)
+		{
+			kcache = null;
+			kcacheList = null;
+		}
+	}
+	
 	/**
 	 * Sets the list of training samples
 	 * @param t the list of training samples
@@ -610,6 +776,18 @@ public class SMOSVM<T> implements KernelSVM<T>, Serializable, Cloneable {
 	}
 
 
+	@Override
+	public TrainingControl getTrainingControl() {
+		if(control == null)
+			control = new TrainingControl();
+		return control;
+	}
+
+	@Override
+	public void setTrainingControl(TrainingControl control) {
+		this.control = control;
+	}
+
 	/**
 	 * Creates and returns a copy of this object.
 	 * @see java.lang.Object#clone()
@@ -36,16 +36,22 @@ import java.text.DecimalFormat;
 import java.util.ArrayList;
 import java.util.Arrays;
 import java.util.HashMap;
+import java.util.LinkedList;
 import java.util.List;
 import java.util.Map;
+import java.util.Queue;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.Future;
+import java.util.concurrent.ThreadPoolExecutor;
 
 import net.jkernelmachines.kernel.Kernel;
 import net.jkernelmachines.kernel.SimpleCacheKernel;
-import net.jkernelmachines.kernel.ThreadedKernel;
 import net.jkernelmachines.kernel.adaptative.ThreadedSumKernel;
+import net.jkernelmachines.threading.ThreadPoolServer;
 import net.jkernelmachines.threading.ThreadedMatrixOperator;
 import net.jkernelmachines.type.TrainingSample;
 import net.jkernelmachines.util.DebugPrinter;
+import net.jkernelmachines.util.algebra.VectorOperations;
 
 /**
  * <p>
@@ -62,7 +68,7 @@ import net.jkernelmachines.util.DebugPrinter;
  *
  * @param <T> Datatype of training samples
  */
-public class SimpleMKL<T> implements Classifier<T>, KernelSVM<T>, MKL<T>, Serializable {
+public class SimpleMKL<T> implements Classifier<T>, KernelSVM<T>, WarmStartable, KernelCaching, MKL<T>, IterativeClassifier<T>, Serializable {
 	
 	private static final long serialVersionUID = 7563788821457267923L;
 	
@@ -76,6 +82,17 @@ public class SimpleMKL<T> implements Classifier<T>, KernelSVM<T>, MKL<T>, Serial
 	protected boolean checkDualGap = true, checkKKT = true;
 	
 	protected KernelSVM<T> svm;
+	protected List<TrainingSample<T>> svmList;
+	protected double[] initAlphas;
+	protected boolean keepCache = false;
+	
+	// weights and training outputs of the last svm trained in the mkl loop
+	private transient List<Double> trainedWeights;
+	private transient double[] trainedOutputs;
+	private static final int BLOCK = 16;
+	private transient TrainingControl control;
+	// control of the inner svm, stopping with the current training
+	private transient TrainingControl svmControl;
 	
 	private DecimalFormat format = new DecimalFormat("#0.0000");
 	transient DebugPrinter debug = new DebugPrinter();
@@ -125,9 +142,19 @@ public class SimpleMKL<T> implements Classifier<T>, KernelSVM<T>, MKL<T>, Serial
 		if(list == null) {
 			return;
 		}
-		
+		TrainingControl.Run run = getTrainingControl().start();
+		svmControl = run.nested();
+		try {
+			retrain(run);
+		} finally {
+			svmControl = null;
+		}
+	}
+	
+	private void retrain(TrainingControl.Run run) {
 		//caching matrices
-		ArrayList<SimpleCacheKernel<T>> km = new ArrayList<SimpleCacheKernel<T>>();
+		// Gaussian kernels differing only by gamma share their distance matrix
+		List<SimpleCacheKernel<T>> km = SimpleCacheKernel.cacheKernels(kernels, list);
 		ArrayList<Double> dm = new ArrayList<Double>();
 		double dm0 = 1./kernels.size();
 		double sumWeights = 0;
@@ -137,10 +164,7 @@ public class SimpleMKL<T> implements Classifier<T>, KernelSVM<T>, MKL<T>, Serial
 		boolean init = (abs(sumWeights - 1) < numPrec)?false:true;
 		for(int i = 0 ; i < kernels.size(); i++)
 		{
-			Kernel<T> k = kernels.get(i);
-			SimpleCacheKernel<T> csk = new SimpleCacheKernel<T>(new ThreadedKernel<T>(k), list);
-			csk.setName(k.toString());
-			km.add(csk);
+			km.get(i).setName(kernels.get(i).toString());
 			if(init) {
 				dm.add(dm0);
 			}
@@ -152,9 +176,8 @@ public class SimpleMKL<T> implements Classifier<T>, KernelSVM<T>, MKL<T>, Serial
 		//------------------------------
 		//			INIT
 		//------------------------------
-		//creating kernel
-		ThreadedSumKernel<T> tsk = buildKernel(km, dm);
-		retrainSVM(tsk, list);
+		//training svm
+		trainedWeights = null;
 		double oldObj = svmObj(km, dm, list);
 		ArrayList<Double> grad = gradSVM(km, dm, list);
 		debug.println(1, "iter \t | \t obj \t\t | \t dualgap \t | \t KKT");
@@ -165,7 +188,7 @@ public class SimpleMKL<T> implements Classifier<T>, KernelSVM<T>, MKL<T>, Serial
 		//------------------------------
 		boolean loop = true;
 		int iteration = 1;
-		while(loop && iteration < maxIteration)
+		while(loop && iteration < maxIteration && !run.shouldStop())
 		{
 			
 			//------------------------------
@@ -232,11 +255,10 @@ public class SimpleMKL<T> implements Classifier<T>, KernelSVM<T>, MKL<T>, Serial
 			//		Duality gap
 			//-------------------------------
 			
-			// computing hinge losses
+			// computing hinge losses from the outputs of the svm trained by gradSVM
 			double err = 0;
 			for(int i = 0 ; i < list.size() ; i++) {
-				TrainingSample<T> t = list.get(i);
-				err += C* Math.max(0, 1-t.label*svm.valueOf(t.sample));
+				err += C* Math.max(0, 1-list.get(i).label*trainedOutputs[i]);
 			}			
 			//computing sum alpha
 			sum = 0.;
@@ -282,6 +304,12 @@ public class SimpleMKL<T> implements Classifier<T>, KernelSVM<T>, MKL<T>, Serial
 				debug.println(1, "No improvement during iteration, stoping (old : "+oldObj+" new : "+newObj+")");
 //				stop = true;
 			}
+			//listeners, time budget and cancellation
+			if(!run.progress(this, iteration, newObj, dualGap))
+			{
+				debug.println(1, "Training stopped at iteration "+iteration);
+				stop = true;
+			}
 			if(stop)
 				loop = false;
 			
@@ -291,10 +319,19 @@ public class SimpleMKL<T> implements Classifier<T>, KernelSVM<T>, MKL<T>, Serial
 			iteration++;
 		}
 		
-		kernelWeights = dm;
-		//creating kernel
-		tsk = buildKernel(km, dm);
-		retrainSVM(tsk, list);
+		if(run.isStopped() && trainedWeights != null) {
+			// keep the svm of the last iteration and its weights, on the
+			// uncached kernel
+			dm = new ArrayList<Double>(trainedWeights);
+			kernelWeights = dm;
+			svm.setKernel(buildKernel(km, dm));
+		}
+		else {
+			kernelWeights = dm;
+			retrainSVM(buildKernel(km, dm), list);
+		}
+		trainedWeights = null;
+		trainedOutputs = null;
 		
 	}
 	
@@ -309,7 +346,7 @@ public class SimpleMKL<T> implements Classifier<T>, KernelSVM<T>, MKL<T>, Serial
 			List<Double> dm, final List<TrainingSample<T>> l) {
 
 		debug.print(3, "[");
-		//creating kernel
+		//creating kernel, its matrix is summed from the cached matrices
 		ThreadedSumKernel<T> k = buildKernel(km, dm);
 		SimpleCacheKernel<T> csk = new SimpleCacheKernel<T>(k, l);
 		double kmatrix[][] = csk.getKernelMatrix(l);
@@ -324,8 +361,12 @@ public class SimpleMKL<T> implements Classifier<T>, KernelSVM<T>, MKL<T>, Serial
 		//verbosity
 		debug.println(4, "svmObj : alphas = "+Arrays.toString(alp));
 //		debug.println(4, "svmObj : b="+svm.getB());
+		
+		//coefficients of the support vectors
+		final int[] sv = supportVectors(alp);
+		final double[] c = coefficients(alp, l);
 				
-		//parallelized
+		//parallelized, outputs without bias on all training samples
 		final double[] resLine = new double[kmatrix.length];
 		ThreadedMatrixOperator objFactory = new ThreadedMatrixOperator()
 		{
@@ -333,30 +374,27 @@ public class SimpleMKL<T> implements Classifier<T>, KernelSVM<T>, MKL<T>, Serial
 			public void doLines(double[][] matrix, int from , int to) {
 				for(int index = from ; index < to ; index++)
 				{
-					resLine[index] = 0;
-					if(abs(alp[index]) > 0)
-					{
-						double al1 = abs(alp[index]) * l.get(index).label;
-						for(int j = 0 ; j < matrix[index].length ; j++)
-						{
-							if(abs(alp[j]) > 0)
-								resLine[index] += al1 * abs(alp[j]) * l.get(j).label * matrix[index][j];
-						}
-					}
+					double[] row = matrix[index];
+					double r = 0;
+					for(int j : sv)
+						r += c[j] * row[j];
+					resLine[index] = r;
 				}
 			}	
 		};
 		
 		objFactory.getMatrix(kmatrix);
 		double obj1 = 0;
-		for(double d : resLine)
-			obj1 += d;
+		for(int i : sv)
+			obj1 += c[i] * resLine[i];
 		
+		double[] out = trainingOutputs(resLine, l);
 		double obj2 = 0;
 		for(int i = 0 ; i < l.size() ; i++) {
-			TrainingSample<T> t = l.get(i);
-			obj2 += C* Math.max(0, 1-t.label*svm.valueOf(t.sample));
+			obj2 += C* Math.max(0, 1-l.get(i).label*out[i]);
 		}
+		trainedWeights = new ArrayList<Double>(dm);
+		trainedOutputs = out;
 		
 		double obj = 0.5*obj1 + obj2;
 		
@@ -383,50 +421,107 @@ public class SimpleMKL<T> implements Classifier<T>, KernelSVM<T>, MKL<T>, Serial
 	 * @return gradient w.r.t. the kernel weights
 	 */
 	private ArrayList<Double> gradSVM(List<SimpleCacheKernel<T>> km, List<Double> dm, final List<TrainingSample<T>> l) {
-		//creating kernel
-		ThreadedSumKernel<T> tsk = buildKernel(km, dm);		
-		
-		//updating svm
-		retrainSVM(tsk, l);
+		//updating svm, unless it is already trained with these weights
+		if(!dm.equals(trainedWeights)) {
+			svmObj(km, dm, l);
+		}
 		final double alp[] = svm.getAlphas();
+		final int[] sv = supportVectors(alp);
+		final double[] c = coefficients(alp, l);
 		
-		//computing grad
-		ArrayList<Double> grad = new ArrayList<Double>();
-		for(int i = 0 ; i < km.size(); i++)
-		{
-			Kernel<T> k = km.get(i);
-			double kmatrix[][] = k.getKernelMatrix(l);
-						
-			//parallelized
-			final double[] resLine = new double[kmatrix.length];
-			ThreadedMatrixOperator gradFactory = new ThreadedMatrixOperator()
-			{
-				@Override
-				public void doLines(double[][] matrix , int from , int to) {
-					for(int index = from ; index < to ; index++)
-					{
-						resLine[index] = 0;
-						if(alp[index] > 0)
-						{
-							double al1 = -0.5 * alp[index] * l.get(index).label;
-							for(int j = 0 ; j < matrix[index].length ; j++)
-							{
-								resLine[index] += al1 * alp[j] * l.get(j).label * matrix[index][j];
+		final double[][][] matrices = new double[km.size()][][];
+		for(int m = 0 ; m < km.size(); m++)
+			matrices[m] = km.get(m).getKernelMatrix(l);
+		
+		//computing alpha^T K_m alpha for all kernels in one pass over the support vectors
+		final double[] g = new double[km.size()];
+		ThreadPoolExecutor exec = ThreadPoolServer.getThreadPoolExecutor();
+		Queue<Future<?>> futures = new LinkedList<Future<?>>();
+		try {
+			for(int b = 0 ; b < sv.length ; b += BLOCK) {
+				final int from = b;
+				final int to = Math.min(sv.length, b + BLOCK);
+				futures.add(exec.submit(new Runnable() {
+					@Override
+					public void run() {
+						double[] part = new double[matrices.length];
+						for(int m = 0 ; m < matrices.length ; m++) {
+							for(int s = from ; s < to ; s++) {
+								double[] row = matrices[m][sv[s]];
+								double r = 0;
+								for(int j : sv)
+									r += c[j] * row[j];
+								part[m] += c[sv[s]] * r;
 							}
 						}
+						synchronized(g) {
+							VectorOperations.addi(g, g, 1.0, part);
+						}
 					}
-				}	
-			};
-			
-			gradFactory.getMatrix(kmatrix);
-			double g = 0;
-			for(double d : resLine)
-				g += d;
-			grad.add(i, g);
+				}));
+			}
+			ThreadPoolServer.awaitAll(futures);
+		} catch (ExecutionException e) {
+			throw new RuntimeException("Failed threading gradient", e);
+		} finally {
+			ThreadPoolServer.shutdownNow(exec);
 		}
 		
+		ArrayList<Double> grad = new ArrayList<Double>();
+		for(int m = 0 ; m < km.size(); m++)
+			grad.add(m, -0.5 * g[m]);
+		
 		return grad;
 	}
+	
+	/**
+	 * indices of the non zero alphas
+	 */
+	private int[] supportVectors(double[] alp) {
+		int n = 0;
+		for(double a : alp)
+			if(a != 0)
+				n++;
+		int[] sv = new int[n];
+		n = 0;
+		for(int i = 0 ; i < alp.length; i++)
+			if(alp[i] != 0)
+				sv[n++] = i;
+		return sv;
+	}
+	
+	/**
+	 * signed coefficients of the expansion of the svm on the training samples
+	 */
+	private double[] coefficients(double[] alp, List<TrainingSample<T>> l) {
+		double[] c = new double[alp.length];
+		for(int i = 0 ; i < alp.length; i++)
+			c[i] = abs(alp[i]) * l.get(i).label;
+		return c;
+	}
+	
+	/**
+	 * Training outputs of the svm from the expansion on the training samples.
+	 * The bias is recovered from the output on the first sample and checked on
+	 * the last one, outputs are evaluated by the svm if the check fails.
+	 * @param r outputs without bias
+	 * @param l list of training samples
+	 * @return outputs of the svm
+	 */
+	private double[] trainingOutputs(double[] r, List<TrainingSample<T>> l) {
+		int n = r.length;
+		double b = svm.valueOf(l.get(0).sample) - r[0];
+		double[] out = new double[n];
+		for(int i = 0 ; i < n ; i++)
+			out[i] = r[i] + b;
+		double f = svm.valueOf(l.get(n-1).sample);
+		if(abs(f - out[n-1]) > 1e-8 * (1 + abs(f))) {
+			debug.println(3, "trainingOutputs : svm does not expand on the training samples");
+			for(int i = 0 ; i < n ; i++)
+				out[i] = svm.valueOf(l.get(i).sample);
+		}
+		return out;
+	}
 
 	/**
 	 * performs an update of the weights in the mkl
@@ -693,10 +788,7 @@ public class SimpleMKL<T> implements Classifier<T>, KernelSVM<T>, MKL<T>, Serial
 			}
 		}
 		
-		//creating kernel
-		ThreadedSumKernel<T> tsk = buildKernel(km, dm);		
 		//updating svm
-		retrainSVM(tsk, l);
 		costNew = svmObj(km, dm, l);
 		
 		//verbosity
@@ -734,7 +826,33 @@ public class SimpleMKL<T> implements Classifier<T>, KernelSVM<T>, MKL<T>, Serial
 		//new settings
 		svm.setKernel(k);		
 		svm.setC(C);
-		svm.train(l);
+		if(svm instanceof KernelCaching) {
+			((KernelCaching) svm).setKeepKernelCache(keepCache);
+		}
+		//warm start from the previous solution on the same samples
+		if(svm instanceof WarmStartable) {
+			if(initAlphas != null) {
+				((WarmStartable) svm).setInitialAlphas(initAlphas);
+			}
+			else if(svmList == l) {
+				((WarmStartable) svm).setInitialAlphas(svm.getAlphas());
+			}
+		}
+		initAlphas = null;
+		//the inner solver stops with the current training
+		TrainingControl previous = null;
+		if(svmControl != null && svm instanceof IterativeClassifier) {
+			previous = ((IterativeClassifier<T>) svm).getTrainingControl();
+			((IterativeClassifier<T>) svm).setTrainingControl(svmControl);
+		}
+		try {
+			svm.train(l);
+		} finally {
+			if(previous != null) {
+				((IterativeClassifier<T>) svm).setTrainingControl(previous);
+			}
+		}
+		svmList = l;
 	}
 
 	@Override
@@ -763,6 +881,20 @@ public class SimpleMKL<T> implements Classifier<T>, KernelSVM<T>, MKL<T>, Serial
 	public double[] getAlphas() {
 		return svm.getAlphas();
 	}
+	
+	/**
+	 * Sets the weights used as starting point by the first svm training of the
+	 * next call to train.
+	 */
+	@Override
+	public void setInitialAlphas(double[] a) {
+		initAlphas = a;
+	}
+
+	@Override
+	public void setKeepKernelCache(boolean keep) {
+		keepCache = keep;
+	}
 
 	@SuppressWarnings("unchecked")
 	@Override
@@ -856,6 +988,18 @@ public class SimpleMKL<T> implements Classifier<T>, KernelSVM<T>, MKL<T>, Serial
 		return (SimpleMKL<T>) super.clone();
 	}
 
+	@Override
+	public TrainingControl getTrainingControl() {
+		if(control == null)
+			control = new TrainingControl();
+		return control;
+	}
+
+	@Override
+	public void setTrainingControl(TrainingControl control) {
+		this.control = control;
+	}
+
 	/**
 	 * Returns the classifier used by this MKL algorithm
 	 * @return svm
@@ -35,6 +35,7 @@ import java.util.List;
 import java.util.Map;
 
 import net.jkernelmachines.kernel.Kernel;
+import net.jkernelmachines.kernel.SimpleCacheKernel;
 import net.jkernelmachines.kernel.adaptative.ThreadedSumKernel;
 import net.jkernelmachines.kernel.typed.DoubleLinear;
 import net.jkernelmachines.type.TrainingSample;
@@ -53,7 +54,7 @@ import net.jkernelmachines.type.TrainingSample;
  * @author David Picard
  *
  */
-public class TSMKL<T> implements KernelSVM<T>, MKL<T> {
+public class TSMKL<T> implements KernelSVM<T>, WarmStartable, KernelCaching, MKL<T> {
 	
 	
 	LaSVM<T> lasvm;
@@ -67,6 +68,10 @@ public class TSMKL<T> implements KernelSVM<T>, MKL<T> {
 	double t = 1;
 	private DoubleLinear linear = new DoubleLinear();
 	
+	double[] initAlphas;
+	double[] initGradient;
+	boolean keepCache = false;
+	
 	
 
 	/* (non-Javadoc)
@@ -83,8 +88,9 @@ public class TSMKL<T> implements KernelSVM<T>, MKL<T> {
 			return;
 		
 		// 1. generate kernel matrices 
+		// Gaussian kernels differing only by gamma share their distance matrix
 		List<double[][]> matrices = new ArrayList<double[][]>();
-		for(Kernel<T> k : kernels)
+		for(SimpleCacheKernel<T> k : SimpleCacheKernel.cacheKernels(kernels, tlist))
 			matrices.add(k.getKernelMatrix(tlist));
 		
 		// 2. generate samples in K-space		
@@ -195,6 +201,11 @@ public class TSMKL<T> implements KernelSVM<T>, MKL<T> {
 				tsk.addKernel(kernels.get(k), beta[k]);
 		lasvm = new LaSVM<T>(tsk);
 		lasvm.setC(C);
+		lasvm.setKeepKernelCache(keepCache);
+		lasvm.setInitialAlphas(initAlphas);
+		lasvm.setInitialGradient(initGradient);
+		initAlphas = null;
+		initGradient = null;
 		lasvm.train(tlist);
 	}
 
@@ -258,6 +269,32 @@ public class TSMKL<T> implements KernelSVM<T>, MKL<T> {
 	public double getC() {
 		return C;
 	}
+
+	/* (non-Javadoc)
+	 * @see net.jkernelmachines.classifier.WarmStartable#setInitialAlphas(double[])
+	 */
+	@Override
+	public void setInitialAlphas(double[] a) {
+		initAlphas = a;
+	}
+
+	/**
+	 * Sets the gradient of the dual associated with the initial weights, used
+	 * by the first svm training of the next call to train.
+	 * @param g the initial gradient
+	 * @see LaSVM#setInitialGradient(double[])
+	 */
+	public void setInitialGradient(double[] g) {
+		initGradient = g;
+	}
+
+	/* (non-Javadoc)
+	 * @see net.jkernelmachines.classifier.KernelCaching#setKeepKernelCache(boolean)
+	 */
+	@Override
+	public void setKeepKernelCache(boolean keep) {
+		keepCache = keep;
+	}
 	
 	/**
 	 * tells the weights of the kernel combination
@@ -0,0 +1,268 @@
+/*******************************************************************************
+ * Copyright (c) 2016, David Picard.
+ * All rights reserved.
+ *
+ * Redistribution and use in source and binary forms, with or without modification,
+ * are permitted provided that the following conditions are met:
+ *
+ * 1. Redistributions of source code must retain the above copyright notice, this
+ * list of conditions and the following disclaimer.
+ *
+ * 2. Redistributions in binary form must reproduce the above copyright notice,
+ * this list of conditions and the following disclaimer in the documentation and/or
+ * other materials provided with the distribution.
+ *
+ * 3. Neither the name of the copyright holder nor the names of its contributors
+ * may be used to endorse or promote products derived from this software without
+ * specific prior written permission.
+ *
+ * THIS SOFTWARE IS PROVIDED BY THE COPYRIGHT HOLDERS AND CONTRIBUTORS "AS IS" AND
+ * ANY EXPRESS OR IMPLIED WARRANTIES, INCLUDING, BUT NOT LIMITED TO, THE IMPLIED
+ * WARRANTIES OF MERCHANTABILITY AND FITNESS FOR A PARTICULAR PURPOSE ARE
+ * DISCLAIMED. IN NO EVENT SHALL THE COPYRIGHT HOLDER OR CONTRIBUTORS BE LIABLE FOR
+ * ANY DIRECT, INDIRECT, INCIDENTAL, SPECIAL, EXEMPLARY, OR CONSEQUENTIAL DAMAGES
+ * (INCLUDING, BUT NOT LIMITED TO, PROCUREMENT OF SUBSTITUTE GOODS OR SERVICES;
+ * LOSS OF USE, DATA, OR PROFITS; OR BUSINESS INTERRUPTION) HOWEVER CAUSED AND ON
+ * ANY THEORY OF LIABILITY, WHETHER IN CONTRACT, STRICT LIABILITY, OR TORT
+ * (INCLUDING NEGLIGENCE OR OTHERWISE) ARISING IN ANY WAY OUT OF THE USE OF THIS
+ * SOFTWARE, EVEN IF ADVISED OF THE POSSIBILITY OF SUCH DAMAGE.
+ *******************************************************************************/
+package net.jkernelmachines.classifier;
+
+import java.util.List;
+import java.util.concurrent.CopyOnWriteArrayList;
+
+/**
+ * <p>
+ * Control of the training procedure of an {@link IterativeClassifier}.
+ * </p>
+ * <p>
+ * The solver calls {@link #start()} when the training begins, which returns
+ * the {@link Run} holding the deadline and the state of this training, and
+ * {@link Run#progress(Classifier, long, double, double)} after each
+ * iteration. Training stops early, keeping the current model, when a listener
+ * asks for it, when the wall-clock time budget is exhausted, when
+ * {@link #cancel()} is called from any thread, or when the training thread is
+ * interrupted. The interrupt status of the thread is left untouched, such
+ * that the caller can check it afterwards.
+ * </p>
+ * <p>
+ * Since the state of each training is kept in its run, a control can be
+ * shared by classifiers trained concurrently: each one gets its own time
+ * budget, and {@link #cancel()} stops them all.
+ * </p>
+ * 
+ * @author picard
+ *
+ */
+public class TrainingControl {
+
+	private final List<TrainingListener> listeners = new CopyOnWriteArrayList<TrainingListener>();
+	private volatile long timeBudget = 0;
+	private volatile boolean cancelled = false;
+	// run of the enclosing solver, for controls of inner solvers
+	private final Run parent;
+	private volatile Run last;
+
+	/**
+	 * Default constructor
+	 */
+	public TrainingControl() {
+		this(null);
+	}
+
+	private TrainingControl(Run parent) {
+		this.parent = parent;
+	}
+
+	/**
+	 * Adds a listener notified after each iteration
+	 * 
+	 * @param listener
+	 *            the listener
+	 */
+	public void addListener(TrainingListener listener) {
+		listeners.add(listener);
+	}
+
+	/**
+	 * Removes a listener
+	 * 
+	 * @param listener
+	 *            the listener
+	 */
+	public void removeListener(TrainingListener listener) {
+		listeners.remove(listener);
+	}
+
+	/**
+	 * Tells if listeners are registered, such that solvers only compute the
+	 * objective when it is used
+	 * 
+	 * @return true if at least one listener is registered
+	 */
+	public boolean hasListeners() {
+		return !listeners.isEmpty();
+	}
+
+	/**
+	 * Tells the wall-clock time budget of a training
+	 * 
+	 * @return the budget in milliseconds, 0 if unlimited
+	 */
+	public long getTimeBudget() {
+		return timeBudget;
+	}
+
+	/**
+	 * Sets the wall-clock time budget of a training, counted from the call to
+	 * {@link #start()}.
+	 * 
+	 * @param millis
+	 *            the budget in milliseconds, 0 for unlimited (default)
+	 */
+	public void setTimeBudget(long millis) {
+		if (millis < 0) {
+			throw new IllegalArgumentException("negative time budget: " + millis);
+		}
+		timeBudget = millis;
+	}
+
+	/**
+	 * Requests the current training, and the following ones until
+	 * {@link #reset()}, to stop as soon as possible.
+	 */
+	public void cancel() {
+		cancelled = true;
+	}
+
+	/**
+	 * Tells if the training was cancelled
+	 * 
+	 * @return true if {@link #cancel()} was called since the last reset
+	 */
+	public boolean isCancelled() {
+		return cancelled;
+	}
+
+	/**
+	 * Clears the cancellation request
+	 */
+	public void reset() {
+		cancelled = false;
+	}
+
+	/**
+	 * Tells if the last training started with this control stopped before
+	 * convergence. When the control is shared by concurrent trainings, use
+	 * {@link Run#isStopped()} instead.
+	 * 
+	 * @return true if the last training was stopped early
+	 */
+	public boolean isStopped() {
+		Run r = last;
+		return r != null && r.isStopped();
+	}
+
+	/**
+	 * Starts a new training, with its own time budget. Called by the solvers.
+	 * 
+	 * @return the run of this training
+	 */
+	public Run start() {
+		long budget = timeBudget;
+		long deadline = (budget > 0) ? System.nanoTime() + budget * 1000000L
+				: Long.MAX_VALUE;
+		if (parent != null && parent.deadline - deadline < 0) {
+			deadline = parent.deadline;
+		}
+		Run r = new Run(deadline);
+		last = r;
+		return r;
+	}
+
+	/**
+	 * <p>
+	 * State of a single training: its deadline and whether it was stopped.
+	 * </p>
+	 * <p>
+	 * The run is only used from the training thread, except for the stop
+	 * state which may be read from any thread.
+	 * </p>
+	 */
+	public final class Run {
+
+		private final long deadline;
+		private volatile boolean stopped = false;
+
+		private Run(long deadline) {
+			this.deadline = deadline;
+		}
+
+		/**
+		 * Tells if the training has to stop, without notifying the
+		 * listeners. This check is cheap enough to be done in the inner loops
+		 * of the solvers.
+		 * 
+		 * @return true if the training was cancelled, interrupted, or is out
+		 *         of time
+		 */
+		public boolean shouldStop() {
+			if (stopped) {
+				return true;
+			}
+			if (cancelled || Thread.currentThread().isInterrupted()
+					|| (deadline != Long.MAX_VALUE && System.nanoTime() - deadline > 0)
+					|| (parent != null && parent.shouldStop())) {
+				stopped = true;
+			}
+			return stopped;
+		}
+
+		/**
+		 * Notifies the listeners of an iteration and tells if the training
+		 * may continue. Called by the solvers.
+		 * 
+		 * @param classifier
+		 *            the classifier being trained
+		 * @param iteration
+		 *            the number of iterations done so far
+		 * @param objective
+		 *            the current objective, NaN if not available
+		 * @param gap
+		 *            the current duality gap, NaN if not available
+		 * @return true if the training may continue
+		 */
+		public boolean progress(Classifier<?> classifier, long iteration,
+				double objective, double gap) {
+			for (TrainingListener l : listeners) {
+				if (!l.iteration(classifier, iteration, objective, gap)) {
+					stopped = true;
+				}
+			}
+			return !shouldStop();
+		}
+
+		/**
+		 * Tells if this training stopped before convergence
+		 * 
+		 * @return true if the training was stopped early
+		 */
+		public boolean isStopped() {
+			return stopped;
+		}
+
+		/**
+		 * Creates a control for a solver running inside this training, such
+		 * as the svm of an MKL algorithm. The inner trainings stop when this
+		 * one has to stop, and their budget never exceeds this deadline. The
+		 * listeners of this control are not notified of their iterations.
+		 * 
+		 * @return the control of the inner solver
+		 */
+		public TrainingControl nested() {
+			return new TrainingControl(this);
+		}
+	}
+
+}
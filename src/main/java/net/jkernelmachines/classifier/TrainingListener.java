@@ -0,0 +1,59 @@
+/*******************************************************************************
+ * Copyright (c) 2016, David Picard.
+ * All rights reserved.
+ *
+ * Redistribution and use in source and binary forms, with or without modification,
+ * are permitted provided that the following conditions are met:
+ *
+ * 1. Redistributions of source code must retain the above copyright notice, this
+ * list of conditions and the following disclaimer.
+ *
+ * 2. Redistributions in binary form must reproduce the above copyright notice,
+ * this list of conditions and the following disclaimer in the documentation and/or
+ * other materials provided with the distribution.
+ *
+ * 3. Neither the name of the copyright holder nor the names of its contributors
+ * may be used to endorse or promote products derived from this software without
+ * specific prior written permission.
+ *
+ * THIS SOFTWARE IS PROVIDED BY THE COPYRIGHT HOLDERS AND CONTRIBUTORS "AS IS" AND
+ * ANY EXPRESS OR IMPLIED WARRANTIES, INCLUDING, BUT NOT LIMITED TO, THE IMPLIED
+ * WARRANTIES OF MERCHANTABILITY AND FITNESS FOR A PARTICULAR PURPOSE ARE
+ * DISCLAIMED. IN NO EVENT SHALL THE COPYRIGHT HOLDER OR CONTRIBUTORS BE LIABLE FOR
+ * ANY DIRECT, INDIRECT, INCIDENTAL, SPECIAL, EXEMPLARY, OR CONSEQUENTIAL DAMAGES
+ * (INCLUDING, BUT NOT LIMITED TO, PROCUREMENT OF SUBSTITUTE GOODS OR SERVICES;
+ * LOSS OF USE, DATA, OR PROFITS; OR BUSINESS INTERRUPTION) HOWEVER CAUSED AND ON
+ * ANY THEORY OF LIABILITY, WHETHER IN CONTRACT, STRICT LIABILITY, OR TORT
+ * (INCLUDING NEGLIGENCE OR OTHERWISE) ARISING IN ANY WAY OUT OF THE USE OF THIS
+ * SOFTWARE, EVEN IF ADVISED OF THE POSSIBILITY OF SUCH DAMAGE.
+ *******************************************************************************/
+package net.jkernelmachines.classifier;
+
+/**
+ * Listener notified by iterative classifiers after each iteration (or epoch)
+ * of their training procedure.
+ * 
+ * @author picard
+ *
+ */
+public interface TrainingListener {
+
+	/**
+	 * Called from the training thread after an iteration of the solver.
+	 * 
+	 * @param classifier
+	 *            the classifier being trained
+	 * @param iteration
+	 *            the number of iterations done so far
+	 * @param objective
+	 *            the current value of the objective function, NaN if not
+	 *            available for this solver
+	 * @param gap
+	 *            the current duality gap or violation of the optimality
+	 *            conditions, NaN if not available for this solver
+	 * @return false to stop the training and keep the current model
+	 */
+	public boolean iteration(Classifier<?> classifier, long iteration,
+			double objective, double gap);
+
+}
@@ -0,0 +1,220 @@
+/*******************************************************************************
+ * Copyright (c) 2016, David Picard.
+ * All rights reserved.
+ *
+ * Redistribution and use in source and binary forms, with or without modification,
+ * are permitted provided that the following conditions are met:
+ *
+ * 1. Redistributions of source code must retain the above copyright notice, this
+ * list of conditions and the following disclaimer.
+ *
+ * 2. Redistributions in binary form must reproduce the above copyright notice,
+ * this list of conditions and the following disclaimer in the documentation and/or
+ * other materials provided with the distribution.
+ *
+ * 3. Neither the name of the copyright holder nor the names of its contributors
+ * may be used to endorse or promote products derived from this software without
+ * specific prior written permission.
+ *
+ * THIS SOFTWARE IS PROVIDED BY THE COPYRIGHT HOLDERS AND CONTRIBUTORS "AS IS" AND
+ * ANY EXPRESS OR IMPLIED WARRANTIES, INCLUDING, BUT NOT LIMITED TO, THE IMPLIED
+ * WARRANTIES OF MERCHANTABILITY AND FITNESS FOR A PARTICULAR PURPOSE ARE
+ * DISCLAIMED. IN NO EVENT SHALL THE COPYRIGHT HOLDER OR CONTRIBUTORS BE LIABLE FOR
+ * ANY DIRECT, INDIRECT, INCIDENTAL, SPECIAL, EXEMPLARY, OR CONSEQUENTIAL DAMAGES
+ * (INCLUDING, BUT NOT LIMITED TO, PROCUREMENT OF SUBSTITUTE GOODS OR SERVICES;
+ * LOSS OF USE, DATA, OR PROFITS; OR BUSINESS INTERRUPTION) HOWEVER CAUSED AND ON
+ * ANY THEORY OF LIABILITY, WHETHER IN CONTRACT, STRICT LIABILITY, OR TORT
+ * (INCLUDING NEGLIGENCE OR OTHERWISE) ARISING IN ANY WAY OUT OF THE USE OF THIS
+ * SOFTWARE, EVEN IF ADVISED OF THE POSSIBILITY OF SUCH DAMAGE.
+ *******************************************************************************/
+package net.jkernelmachines.classifier.multiclass;
+
+import java.util.ArrayList;
+import java.util.List;
+
+import net.jkernelmachines.classifier.KernelSVM;
+import net.jkernelmachines.kernel.Kernel;
+import net.jkernelmachines.type.TrainingSample;
+import net.jkernelmachines.util.algebra.MatrixVectorOperations;
+import net.jkernelmachines.util.algebra.VectorOperations;
+
+/**
+ * <p>
+ * Compiled set of kernel machines sharing the same kernel and trained on
+ * subsets of the same list of samples.
+ * </p>
+ * <p>
+ * Each machine is written as f_k(x) = sum_j c_kj k(x_j, x) + b_k over the union
+ * of all support vectors, such that the kernel is evaluated only once per
+ * distinct support vector and all outputs are obtained by a single
+ * matrix*vector product.
+ * </p>
+ *
+ * @author picard
+ *
+ * @param <T>
+ *            datatype of input space
+ */
+public class KernelExpansion<T> {
+
+	private final Kernel<T> kernel;
+	private final List<TrainingSample<T>> samples;
+
+	// machines before compilation
+	private List<KernelSVM<T>> models;
+	private List<double[]> coefficients;
+
+	// compiled expansion
+	private T[] sv;
+	private double[][] coef;
+	private double[] bias;
+
+	/**
+	 * Constructor with the shared kernel and the list of samples used for
+	 * training all machines
+	 *
+	 * @param k
+	 *            the shared kernel
+	 * @param l
+	 *            the list of training samples
+	 */
+	public KernelExpansion(Kernel<T> k, List<TrainingSample<T>> l) {
+		kernel = k;
+		samples = l;
+		models = new ArrayList<KernelSVM<T>>();
+		coefficients = new ArrayList<double[]>();
+	}
+
+	/**
+	 * Adds a trained machine to the expansion.
+	 *
+	 * @param svm
+	 *            the trained machine
+	 * @param indices
+	 *            indices in the list of samples of the training samples of the
+	 *            machine, in the order used for training
+	 * @param labels
+	 *            labels used for training the machine
+	 * @return false if the machine does not use the shared kernel or if its
+	 *         weights do not match the training samples
+	 */
+	public boolean add(KernelSVM<T> svm, int[] indices, int[] labels) {
+		if (svm == null || svm.getKernel() != kernel) {
+			return false;
+		}
+		double[] a;
+		try {
+			a = svm.getAlphas();
+		} catch (RuntimeException e) {
+			return false;
+		}
+		if (a == null || a.length != indices.length) {
+			return false;
+		}
+		double[] c = new double[samples.size()];
+		for (int i = 0; i < indices.length; i++) {
+			c[indices[i]] += a[i] * labels[i];
+		}
+		models.add(svm);
+		coefficients.add(c);
+		return true;
+	}
+
+	/**
+	 * Builds the union of support vectors and the matrix of coefficients. The
+	 * biases are recovered from the outputs of the machines on a first sample,
+	 * and the expansion is checked against the machines on a second sample.
+	 *
+	 * @return false if the expansion does not reproduce the outputs of the
+	 *         machines
+	 */
+	@SuppressWarnings("unchecked")
+	public boolean compile() {
+		int n = samples.size();
+		int K = models.size();
+		if (n < 2 || K == 0) {
+			return false;
+		}
+
+		// union of support vectors
+		int[] index = new int[n];
+		int nsv = 0;
+		for (int j = 0; j < n; j++) {
+			index[j] = -1;
+			for (double[] c : coefficients) {
+				if (c[j] != 0) {
+					index[j] = nsv++;
+					break;
+				}
+			}
+		}
+		if (nsv == 0) {
+			return false;
+		}
+
+		sv = (T[]) new Object[nsv];
+		coef = new double[K][nsv];
+		for (int j = 0; j < n; j++) {
+			if (index[j] >= 0) {
+				sv[index[j]] = samples.get(j).sample;
+				for (int k = 0; k < K; k++) {
+					coef[k][index[j]] = coefficients.get(k)[j];
+				}
+			}
+		}
+
+		// biases from the first sample
+		bias = new double[K];
+		T x = samples.get(0).sample;
+		double[] v = expansion(x);
+		for (int k = 0; k < K; k++) {
+			bias[k] = models.get(k).valueOf(x) - v[k];
+		}
+
+		// check on the last sample
+		x = samples.get(n - 1).sample;
+		v = valueOf(x);
+		for (int k = 0; k < K; k++) {
+			double f = models.get(k).valueOf(x);
+			if (Math.abs(f - v[k]) > 1e-8 * (1 + Math.abs(f))) {
+				sv = null;
+				return false;
+			}
+		}
+
+		// release machines
+		models = null;
+		coefficients = null;
+		return true;
+	}
+
+	/**
+	 * Computes the outputs of all machines on a sample
+	 *
+	 * @param e
+	 *            the sample
+	 * @return the array of outputs in the order of insertion of the machines
+	 */
+	public double[] valueOf(T e) {
+		double[] v = expansion(e);
+		return VectorOperations.addi(v, v, 1.0, bias);
+	}
+
+	private double[] expansion(T e) {
+		double[] kx = new double[sv.length];
+		for (int j = 0; j < sv.length; j++) {
+			kx[j] = kernel.valueOf(sv[j], e);
+		}
+		return MatrixVectorOperations.rMul(coef, kx);
+	}
+
+	/**
+	 * Tells the number of distinct support vectors
+	 *
+	 * @return the number of support vectors
+	 */
+	public int getNumberOfSupportVectors() {
+		return (sv == null) ? 0 : sv.length;
+	}
+
+}
@@ -35,16 +35,22 @@ import java.util.ArrayList;
 import java.util.Arrays;
 import java.util.Collections;
 import java.util.HashMap;
+import java.util.LinkedHashMap;
 import java.util.List;
 import java.util.Map;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.Future;
+import java.util.concurrent.ThreadPoolExecutor;
 
 import net.jkernelmachines.classifier.Classifier;
+import net.jkernelmachines.classifier.KernelCaching;
 import net.jkernelmachines.classifier.KernelSVM;
 import net.jkernelmachines.kernel.Kernel;
+import net.jkernelmachines.threading.ThreadPoolServer;
 import net.jkernelmachines.type.TrainingSample;
-import net.jkernelmachines.util.algebra.MatrixOperations;
-import net.jkernelmachines.util.algebra.MatrixVectorOperations;
+import net.jkernelmachines.util.DebugPrinter;
 import net.jkernelmachines.util.algebra.VectorOperations;
+import net.jkernelmachines.util.metrics.Metrics;
 
 /**
  * 
@@ -58,11 +64,18 @@ import net.jkernelmachines.util.algebra.VectorOperations;
  * Shai Shalev-Shwartz, Tong Zhang
  * JMLR, 2013.
  * </p>
+ * <p>
+ * The margins of all training samples are maintained along the updates, such
+ * that each coordinate step costs one row of the Gram matrix only when the
+ * sample is misclassified. The Gram matrix is stored if it fits in the memory
+ * budget, otherwise its rows are cached on demand. With several threads, each
+ * epoch is split in mini-batches optimized locally and averaged (CoCoA).
+ * </p>
  * 
  * @author picard
  * 
  */
-public class MulticlassSDCA<T> implements MulticlassClassifier<T>, KernelSVM<T> {
+public class MulticlassSDCA<T> implements MulticlassClassifier<T>, KernelSVM<T>, KernelCaching {
 
 	Kernel<T> kernel;
 	List<TrainingSample<T>> tlist;
@@ -74,6 +87,26 @@ public class MulticlassSDCA<T> implements MulticlassClassifier<T>, KernelSVM<T>
 	double C = 1.;
 	double E = 25;
 
+	// kernel cache
+	double[][] k_matrix;
+	Kernel<T> k_matrixKernel;
+	List<TrainingSample<T>> k_matrixList;
+	boolean keepCache = false;
+	long memoryBudget = Runtime.getRuntime().maxMemory() / 2;
+	RowCache rowCache;
+	double[] k_diag;
+
+	// class index and margins of training samples
+	int[] ty;
+	double[][] margins;
+
+	int nbThreads = 1;
+
+	// warm start
+	double[][] initAlpha;
+
+	DebugPrinter debug = new DebugPrinter();
+
 	public MulticlassSDCA(Kernel<T> k) {
 		this.kernel = k;
 		nb_classes = 0;
@@ -89,115 +122,378 @@ public class MulticlassSDCA<T> implements MulticlassClassifier<T>, KernelSVM<T>
 
 		tlist = new ArrayList<TrainingSample<T>>();
 		tlist.addAll(l);
-
-		// kernel matrix
-		double[][] k_matrix = kernel.getKernelMatrix(tlist);
+		int n = tlist.size();
 
 		nb_classes = 0;
 		classes = new ArrayList<Integer>();
 		List<Integer> perm = new ArrayList<Integer>();
+		ty = new int[n];
 		int ts = 0;
 		for (TrainingSample<T> t : tlist) {
 			if (!classes.contains(t.label)) {
 				nb_classes++;
 				classes.add(t.label);
 			}
+			ty[ts] = classes.indexOf(t.label);
 			perm.add(ts++);
 		}
 
-		alpha = new double[tlist.size()][nb_classes];
-		double[][] alphaTrans = new double[nb_classes][tlist.size()];
-		double[] values = new double[nb_classes];
-		for (int e = 0; e < E * nb_classes; e++) {
-			Collections.shuffle(perm);
-			for (int i : perm) {
-				TrainingSample<T> t = tlist.get(i);
-				int ty = classes.indexOf(t.label);
-
-				// early bail out if correct class
-				MatrixVectorOperations
-						.rMuli(values,
-								MatrixOperations.transi(alphaTrans, alpha),
-								k_matrix[i]);
-				boolean stop = true;
-				for (int y = 0; y < nb_classes; y++) {
-					if (y != ty && values[y] >= values[ty]) {
-						stop = false;
-					}
+		// kernel matrix if it fits in memory, row cache otherwise
+		if (!(keepCache && isCached())) {
+			k_matrix = null;
+			k_matrixList = null;
+			if (8L * n * n < memoryBudget) {
+				k_matrix = kernel.getKernelMatrix(tlist);
+				k_matrixKernel = kernel;
+				k_matrixList = tlist;
+			}
+		}
+		k_diag = new double[n];
+		rowCache = null;
+		if (k_matrix != null) {
+			for (int i = 0; i < n; i++) {
+				k_diag[i] = k_matrix[i][i];
+			}
+		} else {
+			rowCache = new RowCache((int) Math.max(1,
+					Math.min(n, memoryBudget / (8L * n))));
+			for (int i = 0; i < n; i++) {
+				T x = tlist.get(i).sample;
+				k_diag[i] = kernel.valueOf(x, x);
+			}
+		}
+
+		alpha = new double[n][nb_classes];
+		if (initAlpha != null && initAlpha.length == n) {
+			for (int i = 0; i < initAlpha.length; i++) {
+				if (initAlpha[i].length == nb_classes) {
+					alpha[i] = clip(initAlpha[i], ty[i]);
 				}
-				if (stop) {
+			}
+		}
+		initAlpha = null;
+
+		// margins f_j = sum_i alpha_i k(x_i, x_j), maintained along updates
+		margins = new double[n][nb_classes];
+		for (int i = 0; i < n; i++) {
+			if (alpha[i][ty[i]] != 0) {
+				addRow(i, alpha[i], 1.0, 0, n);
+			}
+		}
+
+		ThreadPoolExecutor exec = null;
+		if (nbThreads > 1 && n > nbThreads) {
+			exec = ThreadPoolServer.getThreadPoolExecutor(nbThreads);
+		}
+		try {
+			double[] g = new double[nb_classes];
+			double[] d = new double[nb_classes];
+			double[][] delta = (exec != null) ? new double[n][nb_classes]
+					: null;
+			double[][] local = (exec != null) ? new double[n][] : null;
+			for (int e = 0; e < E * nb_classes; e++) {
+				Collections.shuffle(perm);
+				if (exec != null) {
+					parallelEpoch(perm, exec, delta, local);
 					continue;
 				}
+				for (int i : perm) {
+					if (update(i, alpha[i], margins[i], g, d)) {
+						VectorOperations.addi(alpha[i], alpha[i], 1.0, d);
+						addRow(i, d, 1.0, 0, n);
+					}
+				}
+			}
+		} catch (ExecutionException ex) {
+			if (ex.getCause() instanceof IllegalStateException) {
+				throw (IllegalStateException) ex.getCause();
+			}
+			throw new RuntimeException("Failed threading training", ex);
+		} catch (InterruptedException ex) {
+			throw new RuntimeException("Failed threading training", ex);
+		} finally {
+			if (exec != null) {
+				ThreadPoolServer.shutdownNow(exec);
+			}
+		}
 
-				// init grad
-				double[] g = new double[nb_classes];
-				Arrays.fill(g, 1);
+		// System.out.println("alpha: "+Arrays.deepToString(alpha));
 
-				// full grad
-				double[] kij_aj = new double[nb_classes];
-				for (int j = 0; j < tlist.size(); j++) {
-					VectorOperations.muli(kij_aj, alpha[j], k_matrix[i][j]);
-					VectorOperations.addi(g, g, 1.0, kij_aj);
-				}
-				VectorOperations.muli(g, g, -1.0 / k_matrix[i][i]);
-				g[ty] = 0;
+		margins = null;
+		rowCache = null;
+		k_diag = null;
+		if (!keepCache) {
+			k_matrix = null;
+			k_matrixList = null;
+		}
+	}
 
-				// box constraints on gradient
-				double sum = 0;
-				for (int y = 0; y < nb_classes; y++) {
-					if (y != ty) {
-						if (alpha[i][y] >= 0 && g[y] > 0) {
-							g[y] = 0;
-						}
-						if (alpha[i][y] + g[y] > 0) {
-							g[y] = -alpha[i][y];
+	/**
+	 * One epoch of mini-batch updates: the shuffled samples are split in one
+	 * block per thread, each block is optimized locally with its own
+	 * margins, and the updates are averaged such that the dual variables stay
+	 * feasible (CoCoA with averaging).
+	 */
+	private void parallelEpoch(final List<Integer> perm,
+			ThreadPoolExecutor exec, final double[][] delta,
+			final double[][] local) throws InterruptedException,
+			ExecutionException {
+		final int n = perm.size();
+		final int p = nbThreads;
+		final boolean[] changed = new boolean[n];
+
+		// local updates
+		List<Future<?>> futures = new ArrayList<Future<?>>(p);
+		for (int w = 0; w < p; w++) {
+			final int from = w * n / p;
+			final int to = (w + 1) * n / p;
+			futures.add(exec.submit(new Runnable() {
+				@Override
+				public void run() {
+					double[] g = new double[nb_classes];
+					for (int b = from; b < to; b++) {
+						int i = perm.get(b);
+						if (local[b] == null) {
+							local[b] = new double[nb_classes];
 						}
-						sum += g[y];
+						System.arraycopy(margins[i], 0, local[b], 0,
+								nb_classes);
 					}
-				}
-				// box on ty
-				if (alpha[i][ty] - sum > C) {
-					// System.out.println("box 2 sum: "+sum+" aiy: "+alpha[i][ty]);
-					for (int y = 0; y < nb_classes; y++) {
-						if (y != ty) {
-							g[y] *= (alpha[i][ty] - C) / sum;
+					for (int b = from; b < to; b++) {
+						int i = perm.get(b);
+						double[] d = delta[i];
+						if (!update(i, alpha[i], local[b], g, d)) {
+							continue;
+						}
+						changed[i] = true;
+						// only the next samples of the block are visited
+						double[] row = row(i);
+						for (int c = b + 1; c < to; c++) {
+							double k = row[perm.get(c)];
+							double[] f = local[c];
+							for (int y = 0; y < nb_classes; y++) {
+								f[y] += k * d[y];
+							}
 						}
 					}
-					sum = alpha[i][ty] - C;
 				}
-				g[ty] = -sum;
-
-				// System.out.println("g: "+Arrays.toString(g)+" ty: "+ty);
-
-				// update
-				double[] a_new = VectorOperations.add(alpha[i], 1, g);
+			}));
+		}
+		for (Future<?> f : futures) {
+			f.get();
+		}
 
-				// num cleaning
-				for (int y = 0; y < nb_classes; y++) {
-					if (y != ty) {
-						if (a_new[y] > 0) {
-							a_new[y] = 0;
-						}
+		// averaged aggregation
+		final List<Integer> updated = new ArrayList<Integer>();
+		for (int i = 0; i < n; i++) {
+			if (changed[i]) {
+				updated.add(i);
+				VectorOperations.addi(alpha[i], alpha[i], 1.0 / p, delta[i]);
+			}
+		}
+		futures.clear();
+		for (int w = 0; w < p; w++) {
+			final int from = w * n / p;
+			final int to = (w + 1) * n / p;
+			futures.add(exec.submit(new Runnable() {
+				@Override
+				public void run() {
+					for (int i : updated) {
+						addRow(i, delta[i], 1.0 / p, from, to);
 					}
 				}
+			}));
+		}
+		for (Future<?> f : futures) {
+			f.get();
+		}
+	}
 
-				sum = 0;
-				for (int d = 0; d < nb_classes; d++) {
-					sum += a_new[d];
+	/**
+	 * Computes the update of the dual variables of sample i.
+	 * 
+	 * @param i
+	 *            index of the sample
+	 * @param a
+	 *            current dual variables of the sample
+	 * @param f
+	 *            current margins of the sample
+	 * @param g
+	 *            buffer for the gradient
+	 * @param d
+	 *            output buffer for the update
+	 * @return false if the sample is correctly classified and no update is
+	 *         needed
+	 */
+	private boolean update(int i, double[] a, double[] f, double[] g,
+			double[] d) {
+		int t = ty[i];
+
+		// early bail out if correct class
+		boolean stop = true;
+		for (int y = 0; y < nb_classes; y++) {
+			if (y != t && f[y] >= f[t]) {
+				stop = false;
+			}
+		}
+		if (stop) {
+			return false;
+		}
+
+		// full grad from the margins
+		double kii = k_diag[i];
+		for (int y = 0; y < nb_classes; y++) {
+			g[y] = -(1 + f[y]) / kii;
+		}
+		g[t] = 0;
+
+		// box constraints on gradient
+		double sum = 0;
+		for (int y = 0; y < nb_classes; y++) {
+			if (y != t) {
+				if (a[y] >= 0 && g[y] > 0) {
+					g[y] = 0;
+				}
+				if (a[y] + g[y] > 0) {
+					g[y] = -a[y];
 				}
-				if (abs(sum) > 1e-10) {
-					System.out.println("error with " + i + " sum(a)= " + sum
-							+ " a: " + Arrays.toString(a_new));
-					System.exit(0);
+				sum += g[y];
+			}
+		}
+		// box on ty
+		if (a[t] - sum > C) {
+			for (int y = 0; y < nb_classes; y++) {
+				if (y != t) {
+					g[y] *= (a[t] - C) / sum;
 				}
+			}
+			sum = a[t] - C;
+		}
+		g[t] = -sum;
+
+		// update with num cleaning
+		sum = 0;
+		for (int y = 0; y < nb_classes; y++) {
+			double an = a[y] + g[y];
+			if (y != t && an > 0) {
+				an = 0;
+			}
+			d[y] = an - a[y];
+			sum += an;
+		}
+		if (abs(sum) > 1e-10) {
+			debug.println(1, "error with " + i + " sum(a)= " + sum + " a: "
+					+ Arrays.toString(a) + " d: " + Arrays.toString(d));
+			throw new IllegalStateException("Dual variables of sample " + i
+					+ " do not sum to zero: " + sum);
+		}
+		return true;
+	}
 
-				// save
-				alpha[i] = a_new;
+	/**
+	 * adds lambda * k(x_i, x_j) * d to the margins of samples j in [from, to)
+	 */
+	private void addRow(int i, double[] d, double lambda, int from, int to) {
+		double[] row = row(i);
+		for (int j = from; j < to; j++) {
+			double k = lambda * row[j];
+			double[] f = margins[j];
+			for (int y = 0; y < nb_classes; y++) {
+				f[y] += k * d[y];
 			}
 		}
+	}
 
-		// System.out.println("alpha: "+Arrays.deepToString(alpha));
+	/**
+	 * row of the Gram matrix, from the full matrix or the row cache
+	 */
+	private double[] row(int i) {
+		if (k_matrix != null) {
+			return k_matrix[i];
+		}
+		double[] row = rowCache.get(i);
+		if (row == null) {
+			T xi = tlist.get(i).sample;
+			row = new double[tlist.size()];
+			for (int j = 0; j < row.length; j++) {
+				row[j] = kernel.valueOf(xi, tlist.get(j).sample);
+			}
+			Metrics.count(Metrics.KERNEL_EVALUATIONS, kernel, row.length);
+			rowCache.put(i, row);
+		}
+		return row;
+	}
+
+	/**
+	 * Least recently used rows of the Gram matrix, shared between threads.
+	 */
+	private static class RowCache {
+
+		private final Map<Integer, double[]> rows;
+
+		@SuppressWarnings("serial")
+		RowCache(final int capacity) {
+			rows = new LinkedHashMap<Integer, double[]>(16, 0.75f, true) {
+				@Override
+				protected boolean removeEldestEntry(
+						Map.Entry<Integer, double[]> eldest) {
+					if (size() > capacity) {
+						Metrics.count(Metrics.CACHE_EVICTIONS, RowCache.this, 1);
+						return true;
+					}
+					return false;
+				}
+			};
+		}
 
+		synchronized double[] get(int i) {
+			double[] row = rows.get(i);
+			Metrics.count((row == null) ? Metrics.CACHE_MISSES
+					: Metrics.CACHE_HITS, this, 1);
+			return row;
+		}
+
+		synchronized void put(int i, double[] row) {
+			rows.put(i, row);
+		}
+	}
+
+	/**
+	 * tells if the cached Gram matrix was computed on the current training
+	 * list with the current kernel
+	 */
+	private boolean isCached() {
+		if (k_matrix == null || k_matrixKernel != kernel
+				|| k_matrixList == null || k_matrixList.size() != tlist.size()) {
+			return false;
+		}
+		for (int i = 0; i < tlist.size(); i++) {
+			if (k_matrixList.get(i).sample != tlist.get(i).sample) {
+				return false;
+			}
+		}
+		return true;
+	}
+
+	/**
+	 * clips the dual variables of a sample to the constraints a_y &lt;= 0 for
+	 * the wrong classes, 0 &lt;= a_ty &lt;= C and sum_y a_y = 0
+	 */
+	private double[] clip(double[] a, int ty) {
+		double[] c = new double[a.length];
+		double sum = 0;
+		for (int y = 0; y < a.length; y++) {
+			if (y != ty) {
+				c[y] = Math.min(0, a[y]);
+				sum += c[y];
+			}
+		}
+		if (-sum > C) {
+			VectorOperations.muli(c, c, C / -sum);
+			sum = -C;
+		}
+		c[ty] = -sum;
+		return c;
 	}
 
 	/*
@@ -211,11 +507,7 @@ public class MulticlassSDCA<T> implements MulticlassClassifier<T>, KernelSVM<T>
 		if (nb_classes <= 0) {
 			return 0;
 		}
-		double[] v = new double[nb_classes];
-		for (int j = 0; j < tlist.size(); j++) {
-			VectorOperations.addi(v, v, kernel.valueOf(e, tlist.get(j).sample),
-					alpha[j]);
-		}
+		double[] v = values(e);
 		int idmax = 0;
 		double vmax = Double.NEGATIVE_INFINITY;
 		for (int d = 0; d < nb_classes; d++) {
@@ -227,6 +519,23 @@ public class MulticlassSDCA<T> implements MulticlassClassifier<T>, KernelSVM<T>
 		return classes.get(idmax);
 	}
 
+	/**
+	 * outputs of all classes, skipping samples with null dual variables
+	 */
+	private double[] values(T e) {
+		double[] v = new double[nb_classes];
+		for (int j = 0; j < tlist.size(); j++) {
+			double[] a = alpha[j];
+			if (a[ty[j]] != 0) {
+				double k = kernel.valueOf(e, tlist.get(j).sample);
+				for (int y = 0; y < nb_classes; y++) {
+					v[y] += k * a[y];
+				}
+			}
+		}
+		return v;
+	}
+
 	/*
 	 * (non-Javadoc)
 	 * 
@@ -249,11 +558,7 @@ public class MulticlassSDCA<T> implements MulticlassClassifier<T>, KernelSVM<T>
 		if (nb_classes <= 0) {
 			return 0;
 		}
-		double[] v = new double[nb_classes];
-		for (int j = 0; j < tlist.size(); j++) {
-			VectorOperations.addi(v, v, kernel.valueOf(t, tlist.get(j).sample),
-					alpha[j]);
-		}
+		double[] v = values(t);
 		double vmax = Double.NEGATIVE_INFINITY;
 		for (int d = 0; d < nb_classes; d++) {
 			if (v[d] > vmax) {
@@ -274,11 +579,7 @@ public class MulticlassSDCA<T> implements MulticlassClassifier<T>, KernelSVM<T>
 		if (nb_classes <= 0) {
 			return null;
 		}
-		double[] v = new double[nb_classes];
-		for (int j = 0; j < tlist.size(); j++) {
-			VectorOperations.addi(v, v, kernel.valueOf(t, tlist.get(j).sample),
-					alpha[j]);
-		}
+		double[] v = values(t);
 
 		HashMap<Integer, Double> map = new HashMap<>();
 		for (int i = 0; i < v.length; i++) {
@@ -295,6 +596,8 @@ public class MulticlassSDCA<T> implements MulticlassClassifier<T>, KernelSVM<T>
 	@Override
 	public void setKernel(Kernel<T> kernel) {
 		this.kernel = kernel;
+		// the kept Gram matrix may have been computed with other parameters
+		k_matrixKernel = null;
 	}
 
 	@Override
@@ -325,11 +628,76 @@ public class MulticlassSDCA<T> implements MulticlassClassifier<T>, KernelSVM<T>
 		E = e;
 	}
 
+	/**
+	 * Tells the number of threads used for mini-batch parallel epochs
+	 * 
+	 * @return the number of threads
+	 */
+	public int getNbThreads() {
+		return nbThreads;
+	}
+
+	/**
+	 * Sets the number of threads. With more than one thread, each epoch is
+	 * split in as many mini-batches optimized in parallel, and their updates
+	 * are averaged (default 1, sequential updates).
+	 * 
+	 * @param nbThreads
+	 *            the number of threads
+	 */
+	public void setNbThreads(int nbThreads) {
+		this.nbThreads = Math.max(1, nbThreads);
+	}
+
+	/**
+	 * Tells the memory budget in bytes above which the Gram matrix is not
+	 * stored and its rows are cached instead
+	 * 
+	 * @return the memory budget in bytes
+	 */
+	public long getMemoryBudget() {
+		return memoryBudget;
+	}
+
+	/**
+	 * Sets the memory budget in bytes above which the Gram matrix is not
+	 * stored and its rows are cached instead (default half the maximum heap
+	 * size)
+	 * 
+	 * @param memoryBudget
+	 *            the memory budget in bytes
+	 */
+	public void setMemoryBudget(long memoryBudget) {
+		this.memoryBudget = memoryBudget;
+	}
+
 	@Override
 	public double[] getAlphas() {
 		throw new RuntimeException("operation not possible");
 	}
 
+	/**
+	 * Sets the matrix of dual variables used as starting point by the next
+	 * training, in the order [sample, class] of
+	 * {@link #getMulticlassAlphas()}. The variables are clipped to the
+	 * constraints of the current C.
+	 * 
+	 * @param a
+	 *            matrix of initial weights
+	 */
+	public void setInitialMulticlassAlphas(double[][] a) {
+		initAlpha = a;
+	}
+
+	@Override
+	public void setKeepKernelCache(boolean keep) {
+		keepCache = keep;
+		if (!keep) {
+			k_matrix = null;
+			k_matrixList = null;
+		}
+	}
+
 	/**
 	 * Returns the matrix of dual variables in the order [sample, class]
 	 * 
@@ -39,6 +39,10 @@ import java.util.concurrent.Future;
 import java.util.concurrent.ThreadPoolExecutor;
 
 import net.jkernelmachines.classifier.Classifier;
+import net.jkernelmachines.classifier.KernelSVM;
+import net.jkernelmachines.classifier.MKL;
+import net.jkernelmachines.kernel.Kernel;
+import net.jkernelmachines.kernel.SimpleCacheKernel;
 import net.jkernelmachines.threading.ThreadPoolServer;
 import net.jkernelmachines.type.TrainingSample;
 import net.jkernelmachines.util.DebugPrinter;
@@ -51,6 +55,14 @@ import net.jkernelmachines.util.DebugPrinter;
  * The classification algorithm for each case is not set in this classifier, and
  * should be provided.
  * </p>
+ * <p>
+ * If the provided classifier is a kernel machine, the Gram matrix is computed
+ * once and shared by all binary problems, which only differ by their labels.
+ * The number of binary problems trained in parallel is bounded by a memory
+ * budget. After training, the machines sharing the same kernel are compiled in
+ * a single {@link KernelExpansion} such that the kernel is evaluated once per
+ * distinct support vector for all classes.
+ * </p>
  * 
  * @author picard
  * 
@@ -63,6 +75,10 @@ public class OneAgainstAll<T> implements MulticlassClassifier<T> {
 	List<Classifier<T>> listOfClassifiers;
 	List<TrainingSample<T>> tlist;
 	int nbclasses = 0;
+	KernelExpansion<T> expansion;
+
+	boolean shareKernelCache = true;
+	long memoryBudget = Runtime.getRuntime().maxMemory() / 2;
 
 	DebugPrinter debug = new DebugPrinter();
 
@@ -100,6 +116,7 @@ public class OneAgainstAll<T> implements MulticlassClassifier<T> {
 		// init
 		classIndices = new ArrayList<Integer>();
 		listOfClassifiers = new ArrayList<Classifier<T>>();
+		expansion = null;
 
 		// count classes
 		nbclasses = 0;
@@ -113,7 +130,28 @@ public class OneAgainstAll<T> implements MulticlassClassifier<T> {
 		}
 		debug.println(1, "Number of Classes: " + nbclasses);
 
-		ThreadPoolExecutor ex = ThreadPoolServer.getThreadPoolExecutor();
+		// Gram matrix shared by all binary problems
+		final Kernel<T> kernel = getBaseKernel();
+		final long n = tlist.size();
+		Kernel<T> cache = null;
+		if (kernel != null && shareKernelCache
+				&& 8 * n * n < Math.min(memoryBudget, Runtime.getRuntime()
+						.freeMemory())) {
+			debug.println(2, "Computing shared Gram matrix");
+			cache = new SimpleCacheKernel<T>(kernel, tlist);
+		}
+		final Kernel<T> sharedKernel = cache;
+
+		// each kernel machine not sharing the cache computes its own Gram matrix
+		int nbThreads = nbclasses;
+		if (kernel != null && sharedKernel == null && n > 0) {
+			nbThreads = (int) Math.min(nbThreads, memoryBudget / (8 * n * n));
+		}
+		debug.println(2, "Training at most " + nbThreads
+				+ " classifiers in parallel");
+
+		ThreadPoolExecutor ex = ThreadPoolServer
+				.getThreadPoolExecutor(nbThreads);
 		List<Future<Object>> futures = new ArrayList<>();
 
 		// learning N one against all classifiers
@@ -152,7 +190,14 @@ public class OneAgainstAll<T> implements MulticlassClassifier<T> {
 					}
 
 					// training
-					cls.train(train);
+					if (sharedKernel != null) {
+						((KernelSVM<T>) cls).setKernel(sharedKernel);
+						cls.train(train);
+						// release the shared matrix
+						((KernelSVM<T>) cls).setKernel(kernel);
+					} else {
+						cls.train(train);
+					}
 
 					// storing
 					synchronized (listOfClassifiers) {
@@ -181,23 +226,63 @@ public class OneAgainstAll<T> implements MulticlassClassifier<T> {
 		}
 
 		ThreadPoolServer.shutdownNow(ex);
+
+		// compile all machines in a single expansion
+		if (kernel != null) {
+			compile(kernel);
+		}
 	}
 
-	/*
-	 * (non-Javadoc)
+	/**
+	 * Builds the union of support vectors of all binary machines
 	 * 
-	 * @see fr.lip6.classifier.Classifier#valueOf(java.lang.Object)
+	 * @param kernel
+	 *            the kernel shared by all machines
 	 */
-	@Override
-	public double valueOf(T e) {
-		final T t = e;
-		if (listOfClassifiers == null || listOfClassifiers.isEmpty())
-			return 0;
+	@SuppressWarnings("unchecked")
+	private void compile(Kernel<T> kernel) {
+		int n = tlist.size();
+		int[] indices = new int[n];
+		for (int i = 0; i < n; i++) {
+			indices[i] = i;
+		}
+		KernelExpansion<T> exp = new KernelExpansion<T>(kernel, tlist);
+		for (int c = 0; c < nbclasses; c++) {
+			int[] labels = new int[n];
+			for (int i = 0; i < n; i++) {
+				labels[i] = (tlist.get(i).label == classIndices.get(c)) ? 1 : -1;
+			}
+			Classifier<T> cls = listOfClassifiers.get(c);
+			if (!(cls instanceof KernelSVM)
+					|| !exp.add((KernelSVM<T>) cls, indices, labels)) {
+				return;
+			}
+		}
+		if (exp.compile()) {
+			debug.println(2, "Compiled expansion with "
+					+ exp.getNumberOfSupportVectors() + " support vectors");
+			expansion = exp;
+		}
+	}
+
+	/**
+	 * Computes the outputs of all one against all classifiers
+	 * 
+	 * @param e
+	 *            the sample to evaluate
+	 * @return the outputs in the order of classIndices
+	 */
+	private double[] getValues(final T e) {
+		if (expansion != null) {
+			return expansion.valueOf(e);
+		}
 
 		final double[] values = new double[listOfClassifiers.size()];
 
-		if (nbclasses >  Runtime.getRuntime().availableProcessors()) {
-			ThreadPoolExecutor ex = ThreadPoolServer.getThreadPoolExecutor();
+		if (nbclasses > ThreadPoolServer.getNbCpu()
+				&& !ThreadPoolServer.isSharedThread()) {
+			ThreadPoolExecutor ex = ThreadPoolServer
+					.getSharedThreadPoolExecutor();
 			List<Future<Object>> futures = new ArrayList<>(
 					listOfClassifiers.size());
 			for (int i = 0; i < listOfClassifiers.size(); i++) {
@@ -206,7 +291,7 @@ public class OneAgainstAll<T> implements MulticlassClassifier<T> {
 
 					@Override
 					public Object call() throws Exception {
-						values[id] = listOfClassifiers.get(id).valueOf(t);
+						values[id] = listOfClassifiers.get(id).valueOf(e);
 						return null;
 					}
 
@@ -219,17 +304,45 @@ public class OneAgainstAll<T> implements MulticlassClassifier<T> {
 				} catch (InterruptedException | ExecutionException e1) {
 					debug.println(1, "unable to thread evaluation");
 					e1.printStackTrace();
-					return -1;
+					return null;
 				}
 			}
-
-			ThreadPoolServer.shutdownNow(ex);
-		}
-		else {
-			for(int i = 0 ; i < nbclasses ; i++) {
+		} else {
+			for (int i = 0; i < nbclasses; i++) {
 				values[i] = listOfClassifiers.get(i).valueOf(e);
 			}
 		}
+		return values;
+	}
+
+	/**
+	 * Tells the kernel of the base classifier if its Gram matrix can be shared
+	 * 
+	 * @return the kernel, or null if the base classifier is not a kernel
+	 *         machine using a single kernel
+	 */
+	@SuppressWarnings("unchecked")
+	private Kernel<T> getBaseKernel() {
+		if (!(baseClassifier instanceof KernelSVM)
+				|| baseClassifier instanceof MKL) {
+			return null;
+		}
+		return ((KernelSVM<T>) baseClassifier).getKernel();
+	}
+
+	/*
+	 * (non-Javadoc)
+	 * 
+	 * @see fr.lip6.classifier.Classifier#valueOf(java.lang.Object)
+	 */
+	@Override
+	public double valueOf(T e) {
+		if (listOfClassifiers == null || listOfClassifiers.isEmpty())
+			return 0;
+
+		final double[] values = getValues(e);
+		if (values == null)
+			return -1;
 
 		// find max output
 		int imax = -1;
@@ -256,11 +369,11 @@ public class OneAgainstAll<T> implements MulticlassClassifier<T> {
 			return 0;
 
 		// find max output
+		double[] values = getValues(e);
 		double max = Double.NEGATIVE_INFINITY;
-		for (int i = 0; i < listOfClassifiers.size(); i++) {
-			double v = listOfClassifiers.get(i).valueOf(e);
-			if (v > max) {
-				max = v;
+		for (int i = 0; i < values.length; i++) {
+			if (values[i] > max) {
+				max = values[i];
 			}
 		}
 
@@ -278,9 +391,10 @@ public class OneAgainstAll<T> implements MulticlassClassifier<T> {
 		if (listOfClassifiers == null || listOfClassifiers.isEmpty())
 			return null;
 
+		double[] values = getValues(e);
 		HashMap<Integer, Double> map = new HashMap<>();
-		for (int i = 0; i < listOfClassifiers.size(); i++) {
-			map.put(classIndices.get(i), listOfClassifiers.get(i).valueOf(e));
+		for (int i = 0; i < values.length; i++) {
+			map.put(classIndices.get(i), values[i]);
 		}
 		return map;
 	}
@@ -308,6 +422,47 @@ public class OneAgainstAll<T> implements MulticlassClassifier<T> {
 		return map;
 	}
 
+	/**
+	 * Tells if the Gram matrix is shared between binary problems
+	 * 
+	 * @return true if the Gram matrix is computed once for all classes
+	 */
+	public boolean isShareKernelCache() {
+		return shareKernelCache;
+	}
+
+	/**
+	 * Sets whether the Gram matrix is computed once and shared between binary
+	 * problems, when the base classifier is a kernel machine (default true)
+	 * 
+	 * @param shareKernelCache
+	 *            true to share the Gram matrix
+	 */
+	public void setShareKernelCache(boolean shareKernelCache) {
+		this.shareKernelCache = shareKernelCache;
+	}
+
+	/**
+	 * Tells the memory budget in bytes used to bound the number of binary
+	 * problems trained in parallel
+	 * 
+	 * @return the memory budget in bytes
+	 */
+	public long getMemoryBudget() {
+		return memoryBudget;
+	}
+
+	/**
+	 * Sets the memory budget in bytes used to bound the number of binary
+	 * problems trained in parallel (default half the maximum heap size)
+	 * 
+	 * @param memoryBudget
+	 *            the memory budget in bytes
+	 */
+	public void setMemoryBudget(long memoryBudget) {
+		this.memoryBudget = memoryBudget;
+	}
+
 	/*
 	 * (non-Javadoc)
 	 * 
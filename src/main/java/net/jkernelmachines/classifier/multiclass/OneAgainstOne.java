@@ -0,0 +1,512 @@
+/*******************************************************************************
+ * Copyright (c) 2016, David Picard.
+ * All rights reserved.
+ *
+ * Redistribution and use in source and binary forms, with or without modification,
+ * are permitted provided that the following conditions are met:
+ *
+ * 1. Redistributions of source code must retain the above copyright notice, this
+ * list of conditions and the following disclaimer.
+ *
+ * 2. Redistributions in binary form must reproduce the above copyright notice,
+ * this list of conditions and the following disclaimer in the documentation and/or
+ * other materials provided with the distribution.
+ *
+ * 3. Neither the name of the copyright holder nor the names of its contributors
+ * may be used to endorse or promote products derived from this software without
+ * specific prior written permission.
+ *
+ * THIS SOFTWARE IS PROVIDED BY THE COPYRIGHT HOLDERS AND CONTRIBUTORS "AS IS" AND
+ * ANY EXPRESS OR IMPLIED WARRANTIES, INCLUDING, BUT NOT LIMITED TO, THE IMPLIED
+ * WARRANTIES OF MERCHANTABILITY AND FITNESS FOR A PARTICULAR PURPOSE ARE
+ * DISCLAIMED. IN NO EVENT SHALL THE COPYRIGHT HOLDER OR CONTRIBUTORS BE LIABLE FOR
+ * ANY DIRECT, INDIRECT, INCIDENTAL, SPECIAL, EXEMPLARY, OR CONSEQUENTIAL DAMAGES
+ * (INCLUDING, BUT NOT LIMITED TO, PROCUREMENT OF SUBSTITUTE GOODS OR SERVICES;
+ * LOSS OF USE, DATA, OR PROFITS; OR BUSINESS INTERRUPTION) HOWEVER CAUSED AND ON
+ * ANY THEORY OF LIABILITY, WHETHER IN CONTRACT, STRICT LIABILITY, OR TORT
+ * (INCLUDING NEGLIGENCE OR OTHERWISE) ARISING IN ANY WAY OUT OF THE USE OF THIS
+ * SOFTWARE, EVEN IF ADVISED OF THE POSSIBILITY OF SUCH DAMAGE.
+ *******************************************************************************/
+package net.jkernelmachines.classifier.multiclass;
+
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.Future;
+import java.util.concurrent.Semaphore;
+import java.util.concurrent.ThreadPoolExecutor;
+
+import net.jkernelmachines.classifier.Classifier;
+import net.jkernelmachines.classifier.KernelSVM;
+import net.jkernelmachines.classifier.MKL;
+import net.jkernelmachines.kernel.Kernel;
+import net.jkernelmachines.kernel.SimpleCacheKernel;
+import net.jkernelmachines.threading.ThreadPoolServer;
+import net.jkernelmachines.type.TrainingSample;
+import net.jkernelmachines.util.DebugPrinter;
+
+/**
+ * <p>
+ * Multiclass classifier with N(N-1)/2 One against One scheme and majority
+ * vote.
+ * </p>
+ * <p>
+ * The classification algorithm for each pair of classes is not set in this
+ * classifier, and should be provided.
+ * </p>
+ * <p>
+ * If the provided classifier is a kernel machine, the Gram matrix is computed
+ * once, and each binary problem is trained on a sub-block of it. Pairs are
+ * trained in parallel on the shared pool of threads, within a memory budget.
+ * After training, the machines are compiled in a single
+ * {@link KernelExpansion} such that support vectors common to several pairs
+ * are evaluated only once.
+ * </p>
+ *
+ * @author picard
+ *
+ */
+public class OneAgainstOne<T> implements MulticlassClassifier<T> {
+
+	Classifier<T> baseClassifier;
+
+	List<Integer> classIndices;
+	List<int[]> pairs;
+	List<Classifier<T>> listOfClassifiers;
+	List<TrainingSample<T>> tlist;
+	int nbclasses = 0;
+	KernelExpansion<T> expansion;
+
+	boolean shareKernelCache = true;
+	long memoryBudget = Runtime.getRuntime().maxMemory() / 2;
+
+	DebugPrinter debug = new DebugPrinter();
+
+	/**
+	 * <p>
+	 * Default constructor with underlying classifier algorithm.
+	 * </p>
+	 * <p>
+	 * The classifier given as argument is cloned N(N-1)/2 times at each
+	 * training, in order to provide a binary classification for each pair of
+	 * categories.
+	 * </p>
+	 *
+	 * @param c
+	 *            the classifier class to use
+	 */
+	public OneAgainstOne(Classifier<T> c) {
+		baseClassifier = c;
+	}
+
+	/*
+	 * (non-Javadoc)
+	 *
+	 * @see net.jkernelmachines.classifier.Classifier#train(java.util.List)
+	 */
+	@Override
+	public void train(List<TrainingSample<T>> l) {
+		tlist = new ArrayList<TrainingSample<T>>();
+		tlist.addAll(l);
+
+		train();
+	}
+
+	private void train() {
+		// init
+		classIndices = new ArrayList<Integer>();
+		pairs = new ArrayList<int[]>();
+		listOfClassifiers = new ArrayList<Classifier<T>>();
+		expansion = null;
+
+		// count classes
+		nbclasses = 0;
+		List<List<Integer>> samplesOfClass = new ArrayList<List<Integer>>();
+		for (int i = 0; i < tlist.size(); i++) {
+			int c = classIndices.indexOf(tlist.get(i).label);
+			if (c < 0) {
+				c = nbclasses++;
+				classIndices.add(tlist.get(i).label);
+				samplesOfClass.add(new ArrayList<Integer>());
+			}
+			samplesOfClass.get(c).add(i);
+		}
+		debug.println(1, "Number of Classes: " + nbclasses);
+
+		// pairs of classes
+		final List<int[]> indices = new ArrayList<int[]>();
+		for (int a = 0; a < nbclasses; a++) {
+			for (int b = a + 1; b < nbclasses; b++) {
+				pairs.add(new int[] { a, b });
+				listOfClassifiers.add(null);
+				// merge indices to keep the order of the training list
+				List<Integer> la = samplesOfClass.get(a);
+				List<Integer> lb = samplesOfClass.get(b);
+				int[] idx = new int[la.size() + lb.size()];
+				for (int i = 0, ia = 0, ib = 0; i < idx.length; i++) {
+					if (ib >= lb.size()
+							|| (ia < la.size() && la.get(ia) < lb.get(ib))) {
+						idx[i] = la.get(ia++);
+					} else {
+						idx[i] = lb.get(ib++);
+					}
+				}
+				indices.add(idx);
+			}
+		}
+
+		// Gram matrix shared by all pairs
+		final Kernel<T> kernel = getBaseKernel();
+		long n = tlist.size();
+		double[][] matrix = null;
+		if (kernel != null && shareKernelCache
+				&& 8 * n * n < Math.min(memoryBudget, Runtime.getRuntime()
+						.freeMemory())) {
+			debug.println(2, "Computing shared Gram matrix");
+			matrix = new SimpleCacheKernel<T>(kernel, tlist)
+					.getKernelMatrix(tlist);
+		}
+		final double[][] sharedMatrix = matrix;
+
+		// memory used by each pair is bounded in units of 1kB
+		long budget = memoryBudget;
+		if (sharedMatrix != null) {
+			budget -= 8 * n * n;
+		}
+		final int permits = (int) Math.max(1,
+				Math.min(Integer.MAX_VALUE, budget / 1024));
+		final Semaphore memory = new Semaphore(permits);
+
+		List<Callable<Object>> tasks = new ArrayList<Callable<Object>>();
+		for (int id = 0; id < pairs.size(); id++) {
+			final int p = id;
+			tasks.add(new Callable<Object>() {
+
+				@Override
+				public Object call() throws Exception {
+					int[] pair = pairs.get(p);
+					int[] idx = indices.get(p);
+					int ca = classIndices.get(pair[0]);
+
+					Classifier<T> cls = null;
+					synchronized (listOfClassifiers) {
+						// building classifier
+						try {
+							cls = (Classifier<T>) baseClassifier.copy();
+						} catch (Exception e) {
+							debug.println(1, "ERROR: Classifier not Cloneable!");
+							throw new UnsupportedOperationException(
+									baseClassifier.getClass().getSimpleName()
+											+ " is not clonable.");
+						}
+					}
+
+					// building ad hoc train list
+					List<TrainingSample<T>> train = new ArrayList<TrainingSample<T>>(
+							idx.length);
+					for (int i : idx) {
+						TrainingSample<T> t = tlist.get(i);
+						train.add(new TrainingSample<T>(t.sample,
+								(t.label == ca) ? 1 : -1));
+					}
+
+					long size = (kernel != null) ? 8L * idx.length
+							* idx.length / 1024 : 0;
+					int mem = (int) Math.max(1, Math.min(permits, size));
+					memory.acquire(mem);
+					try {
+						debug.println(2, pair[0] + "/" + pair[1]
+								+ ": learning!");
+						if (sharedMatrix != null) {
+							// sub-block of the shared Gram matrix
+							double[][] m = new double[idx.length][idx.length];
+							for (int i = 0; i < idx.length; i++) {
+								double[] row = sharedMatrix[idx[i]];
+								for (int j = 0; j < idx.length; j++) {
+									m[i][j] = row[idx[j]];
+								}
+							}
+							((KernelSVM<T>) cls)
+									.setKernel(new SimpleCacheKernel<T>(
+											kernel, m));
+							cls.train(train);
+							// release the sub-block
+							((KernelSVM<T>) cls).setKernel(kernel);
+						} else {
+							cls.train(train);
+						}
+					} finally {
+						memory.release(mem);
+					}
+
+					// storing
+					synchronized (listOfClassifiers) {
+						listOfClassifiers.set(p, cls);
+					}
+
+					debug.println(1, pair[0] + "/" + pair[1] + ": done!");
+					return null;
+				}
+
+			});
+		}
+
+		try {
+			if (ThreadPoolServer.isSharedThread()) {
+				for (Callable<Object> c : tasks) {
+					c.call();
+				}
+			} else {
+				ThreadPoolExecutor ex = ThreadPoolServer
+						.getSharedThreadPoolExecutor();
+				List<Future<Object>> futures = new ArrayList<Future<Object>>();
+				for (Callable<Object> c : tasks) {
+					futures.add(ex.submit(c));
+				}
+				for (Future<Object> f : futures) {
+					f.get();
+				}
+			}
+		} catch (InterruptedException | ExecutionException e) {
+			debug.println(1, "Error in learning on classifier");
+			e.printStackTrace();
+			throw new RuntimeException("Failed threading training");
+		} catch (Exception e) {
+			debug.println(1, "Error in learning on classifier");
+			e.printStackTrace();
+			throw new RuntimeException("Failed training");
+		}
+
+		// compile all machines in a single expansion
+		if (kernel != null) {
+			compile(kernel, indices);
+		}
+	}
+
+	/**
+	 * Builds the union of support vectors of all pairwise machines
+	 *
+	 * @param kernel
+	 *            the kernel shared by all machines
+	 * @param indices
+	 *            indices of the training samples of each pair
+	 */
+	@SuppressWarnings("unchecked")
+	private void compile(Kernel<T> kernel, List<int[]> indices) {
+		KernelExpansion<T> exp = new KernelExpansion<T>(kernel, tlist);
+		for (int p = 0; p < pairs.size(); p++) {
+			int[] idx = indices.get(p);
+			int ca = classIndices.get(pairs.get(p)[0]);
+			int[] labels = new int[idx.length];
+			for (int i = 0; i < idx.length; i++) {
+				labels[i] = (tlist.get(idx[i]).label == ca) ? 1 : -1;
+			}
+			Classifier<T> cls = listOfClassifiers.get(p);
+			if (!(cls instanceof KernelSVM)
+					|| !exp.add((KernelSVM<T>) cls, idx, labels)) {
+				return;
+			}
+		}
+		if (exp.compile()) {
+			debug.println(2, "Compiled expansion with "
+					+ exp.getNumberOfSupportVectors() + " support vectors");
+			expansion = exp;
+		}
+	}
+
+	/**
+	 * Tells the kernel of the base classifier if its Gram matrix can be shared
+	 *
+	 * @return the kernel, or null if the base classifier is not a kernel
+	 *         machine using a single kernel
+	 */
+	@SuppressWarnings("unchecked")
+	private Kernel<T> getBaseKernel() {
+		if (!(baseClassifier instanceof KernelSVM)
+				|| baseClassifier instanceof MKL) {
+			return null;
+		}
+		return ((KernelSVM<T>) baseClassifier).getKernel();
+	}
+
+	/**
+	 * Computes the votes of all pairwise classifiers. Ties are broken by the
+	 * sum of the outputs of the pairwise classifiers in favor of each class,
+	 * which is added as a fractional part lower than one.
+	 *
+	 * @param e
+	 *            the sample to evaluate
+	 * @return the votes in the order of classIndices
+	 */
+	private double[] getVotes(T e) {
+		double[] values;
+		if (expansion != null) {
+			values = expansion.valueOf(e);
+		} else {
+			values = new double[pairs.size()];
+			for (int p = 0; p < pairs.size(); p++) {
+				values[p] = listOfClassifiers.get(p).valueOf(e);
+			}
+		}
+
+		double[] votes = new double[nbclasses];
+		double[] sums = new double[nbclasses];
+		double max = 0;
+		for (int p = 0; p < pairs.size(); p++) {
+			int[] pair = pairs.get(p);
+			if (values[p] > 0) {
+				votes[pair[0]]++;
+			} else {
+				votes[pair[1]]++;
+			}
+			sums[pair[0]] += values[p];
+			sums[pair[1]] -= values[p];
+			max = Math.max(max, Math.abs(values[p]));
+		}
+		for (int c = 0; c < nbclasses; c++) {
+			// in (0, 1) for all classes
+			votes[c] += 0.5 + 0.5 * sums[c] / (pairs.size() * max + 1);
+		}
+		return votes;
+	}
+
+	/*
+	 * (non-Javadoc)
+	 *
+	 * @see net.jkernelmachines.classifier.Classifier#valueOf(java.lang.Object)
+	 */
+	@Override
+	public double valueOf(T e) {
+		if (listOfClassifiers == null || listOfClassifiers.isEmpty()) {
+			return (nbclasses == 1) ? classIndices.get(0) : 0;
+		}
+
+		double[] votes = getVotes(e);
+		int imax = 0;
+		for (int c = 1; c < nbclasses; c++) {
+			if (votes[c] > votes[imax]) {
+				imax = c;
+			}
+		}
+		return classIndices.get(imax);
+	}
+
+	/*
+	 * (non-Javadoc)
+	 *
+	 * @see net.jkernelmachines.classifier.multiclass.MulticlassClassifier#
+	 * getConfidence(java.lang.Object)
+	 */
+	@Override
+	public double getConfidence(T t) {
+		if (listOfClassifiers == null || listOfClassifiers.isEmpty())
+			return 0;
+
+		double max = Double.NEGATIVE_INFINITY;
+		for (double v : getVotes(t)) {
+			if (v > max) {
+				max = v;
+			}
+		}
+		return max;
+	}
+
+	/*
+	 * (non-Javadoc)
+	 *
+	 * @see net.jkernelmachines.classifier.multiclass.MulticlassClassifier#
+	 * getConfidences(java.lang.Object)
+	 */
+	@Override
+	public Map<Integer, Double> getConfidences(T t) {
+		if (listOfClassifiers == null || listOfClassifiers.isEmpty())
+			return null;
+
+		double[] votes = getVotes(t);
+		HashMap<Integer, Double> map = new HashMap<>();
+		for (int c = 0; c < nbclasses; c++) {
+			map.put(classIndices.get(c), votes[c]);
+		}
+		return map;
+	}
+
+	/**
+	 * Returns the list of one against one classifiers used, in the order of
+	 * {@link #getPairs()}
+	 *
+	 * @return the list of classifiers
+	 */
+	public List<Classifier<T>> getListOfClassifiers() {
+		return listOfClassifiers;
+	}
+
+	/**
+	 * Returns the pairs of class labels {positive, negative} of each one
+	 * against one classifier
+	 *
+	 * @return the list of pairs of labels
+	 */
+	public List<int[]> getPairs() {
+		List<int[]> l = new ArrayList<int[]>(pairs.size());
+		for (int[] p : pairs) {
+			l.add(new int[] { classIndices.get(p[0]), classIndices.get(p[1]) });
+		}
+		return l;
+	}
+
+	/**
+	 * Tells if the Gram matrix is shared between binary problems
+	 *
+	 * @return true if the Gram matrix is computed once for all pairs
+	 */
+	public boolean isShareKernelCache() {
+		return shareKernelCache;
+	}
+
+	/**
+	 * Sets whether the Gram matrix is computed once and shared between binary
+	 * problems, when the base classifier is a kernel machine (default true)
+	 *
+	 * @param shareKernelCache
+	 *            true to share the Gram matrix
+	 */
+	public void setShareKernelCache(boolean shareKernelCache) {
+		this.shareKernelCache = shareKernelCache;
+	}
+
+	/**
+	 * Tells the memory budget in bytes used to bound the number of binary
+	 * problems trained in parallel
+	 *
+	 * @return the memory budget in bytes
+	 */
+	public long getMemoryBudget() {
+		return memoryBudget;
+	}
+
+	/**
+	 * Sets the memory budget in bytes used to bound the number of binary
+	 * problems trained in parallel (default half the maximum heap size)
+	 *
+	 * @param memoryBudget
+	 *            the memory budget in bytes
+	 */
+	public void setMemoryBudget(long memoryBudget) {
+		this.memoryBudget = memoryBudget;
+	}
+
+	/*
+	 * (non-Javadoc)
+	 *
+	 * @see net.jkernelmachines.classifier.Classifier#copy()
+	 */
+	@SuppressWarnings("unchecked")
+	@Override
+	public OneAgainstOne<T> copy() throws CloneNotSupportedException {
+		return (OneAgainstOne<T>) super.clone();
+	}
+
+}
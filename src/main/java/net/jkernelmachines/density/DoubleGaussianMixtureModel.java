@@ -29,18 +29,24 @@
  *******************************************************************************/
 package net.jkernelmachines.density;
 
-import static java.lang.Math.abs;
 import static java.lang.Math.exp;
+import static java.lang.Math.log;
 import static java.lang.Math.sqrt;
 
 import java.util.ArrayList;
 import java.util.Arrays;
+import java.util.LinkedList;
 import java.util.List;
-import java.util.Random;
-
+import java.util.Queue;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.Future;
+import java.util.concurrent.ThreadPoolExecutor;
+
+import net.jkernelmachines.threading.ThreadPoolServer;
+import net.jkernelmachines.type.TrainingSample;
+import net.jkernelmachines.type.TrainingSampleStream;
 import net.jkernelmachines.util.DebugPrinter;
 import net.jkernelmachines.util.algebra.MatrixOperations;
-import net.jkernelmachines.util.algebra.MatrixVectorOperations;
 import net.jkernelmachines.util.algebra.VectorOperations;
 
 /**
@@ -49,7 +55,17 @@ import net.jkernelmachines.util.algebra.VectorOperations;
  * </p>
  * <p>
  * The initialization of the Gaussian centers is performed by k-means, then the
- * EM algorithm runs until the centers stabilize.
+ * EM algorithm runs until the average log-likelihood stabilizes. The
+ * covariance matrices are either full, diagonal or spherical. Densities are
+ * evaluated in log space from the Cholesky factors of the covariances, and the
+ * responsibilities are normalized with the log-sum-exp trick. The E-step is
+ * computed in parallel, each thread accumulating its own sufficient
+ * statistics. An online EM is available for streams of samples.
+ * </p>
+ * <p>
+ * <b>On-line expectation-maximization algorithm for latent data models</b>
+ * Olivier Cappé, Eric Moulines <i>Journal of the Royal Statistical Society B
+ * 71(3), 2009</i>
  * </p>
  * 
  * @author picard
@@ -59,11 +75,45 @@ public class DoubleGaussianMixtureModel implements DensityFunction<double[]> {
 
 	private static final long serialVersionUID = -6989529384513214743L;
 
+	/** Full covariance matrices */
+	public static final int FULL_COVARIANCE = 0;
+	/** Diagonal covariance matrices */
+	public static final int DIAGONAL_COVARIANCE = 1;
+	/** Covariance matrices proportional to the identity */
+	public static final int SPHERICAL_COVARIANCE = 2;
+
+	// responsibilities below are not accumulated
+	private static final double MIN_RESPONSIBILITY = 1e-10;
+	// maximum number of doubles in the statistics of all threads
+	private static final long MAX_STATISTICS = 1 << 24;
+	// Lloyd iterations of the k-means initialization, which only has to be
+	// rough since EM refines it
+	private static final int INIT_ITERATIONS = 20;
+	// exponent of the step size of online EM
+	private static final double STEP_EXPONENT = 0.6;
+	private static final double LOG_2PI = log(2 * Math.PI);
+
 	int k;
 	double[] w;
 	double[][] mu;
+	// inverse covariance matrices, computed on demand
 	double[][][] sigma;
 
+	// Cholesky factors of full covariances, or inverse variances of diagonal
+	// ones
+	double[][][] chol;
+	double[][] precision;
+	// log of the normalization constant of each Gaussian
+	double[] logNorm;
+
+	int covariance = FULL_COVARIANCE;
+	int maxIterations = 10000;
+	double tolerance = 1e-6;
+	double regularization = 1e-6;
+	int batchSize = 1024;
+	// number of batches seen by online EM
+	long batches;
+
 	List<double[]> train;
 
 	DebugPrinter debug = new DebugPrinter();
@@ -80,7 +130,6 @@ public class DoubleGaussianMixtureModel implements DensityFunction<double[]> {
 	 */
 	@Override
 	public void train(double[] e) {
-		// TODO Auto-generated method stub
 		if (train == null) {
 			train = new ArrayList<double[]>();
 		}
@@ -101,161 +150,360 @@ public class DoubleGaussianMixtureModel implements DensityFunction<double[]> {
 		train.addAll(e);
 
 		int n = train.size();
-		int dim = train.get(0).length;
-
-		w = new double[k];
-		mu = new double[k][dim];
-		sigma = new double[k][dim][dim];
-
-		double[] oldmu = new double[dim];
 
-		// init
-		double[][] like = new double[n][k];
-
-		Random rand = new Random();
-
-		int t = 0;
-		// init with k-means
-		int c[] = new int[n];
-		for (int i = 0; i < n; i++) {
-			c[i] = rand.nextInt(k);
-			VectorOperations.addi(mu[c[i]], mu[c[i]], 1, train.get(i));
-			w[c[i]] += 1;
+		ThreadPoolExecutor exec = ThreadPoolServer.getThreadPoolExecutor();
+		try {
+			// init with k-means
+			DoubleKMeans km = new DoubleKMeans(k);
+			km.setMaxIterations(INIT_ITERATIONS);
+			km.train(train);
+			maximize(expectation(train, km.getMeans(), exec));
+
+			debug.println(3, "init k-means :");
+			for (int i = 0; i < k; i++)
+				debug.println(3, " mu" + i + " = " + Arrays.toString(mu[i]));
+
+			double old = Double.NEGATIVE_INFINITY;
+			int t;
+			for (t = 0; t < maxIterations; t++) {
+				Statistics s = expectation(train, null, exec);
+				maximize(s);
+
+				// if no improvements, quit
+				double ll = s.logLikelihood / n;
+				debug.println(4, "t = " + t + " log-likelihood = " + ll);
+				if (ll - old < tolerance)
+					break;
+				old = ll;
+			}
+			batches = 0;
+
+			debug.println(3, "t = " + t);
+			debug.println(3, "pop= " + Arrays.toString(w));
+			for (int i = 0; i < k; i++)
+				debug.println(3, "mu" + i + " = " + Arrays.toString(mu[i]));
+		} catch (ExecutionException ex) {
+			throw new RuntimeException("Failed threading EM", ex);
+		} finally {
+			ThreadPoolServer.shutdownNow(exec);
 		}
-		for (int g = 0; g < k; g++) {
-			if(w[g] > 0) {
-				VectorOperations.muli(mu[g], mu[g], 1. / w[g]);
+	}
+
+	/**
+	 * <p>
+	 * Train the mixture with mini-batches of samples drawn from the stream
+	 * until no sample can be drawn. The sufficient statistics of each batch
+	 * are averaged with the running ones using a decreasing step size, then
+	 * the parameters are updated from the running statistics.
+	 * </p>
+	 * <p>
+	 * If the mixture is not trained yet, or was trained with another type of
+	 * covariance, it is first trained by batch EM on the first samples of the
+	 * stream (at least ten per component). Otherwise, the training continues
+	 * from the current parameters.
+	 * </p>
+	 * 
+	 * @param stream
+	 *            the stream of samples
+	 */
+	public void onlineTrain(TrainingSampleStream<double[]> stream) {
+		List<double[]> batch;
+		if (mu == null || logNorm == null
+				|| (chol != null) != (covariance == FULL_COVARIANCE)) {
+			batch = nextBatch(stream, Math.max(batchSize, 10 * k));
+			if (batch.isEmpty()) {
+				return;
 			}
-			else {
-				Arrays.fill(mu[g], 0);
+			train(batch);
+		}
+
+		Statistics s = statistics();
+		ThreadPoolExecutor exec = ThreadPoolServer.getThreadPoolExecutor();
+		try {
+			while (!(batch = nextBatch(stream, batchSize)).isEmpty()) {
+				Statistics b = expectation(batch, null, exec);
+				batches++;
+				double eta = Math.pow(batches + 1, -STEP_EXPONENT);
+				s.scale(1 - eta);
+				s.add(eta / batch.size(), b);
+				maximize(s);
 			}
+		} catch (ExecutionException ex) {
+			throw new RuntimeException("Failed threading EM", ex);
+		} finally {
+			ThreadPoolServer.shutdownNow(exec);
+		}
+	}
+
+	/**
+	 * draws at most size samples from the stream
+	 */
+	private List<double[]> nextBatch(TrainingSampleStream<double[]> stream,
+			int size) {
+		List<double[]> batch = new ArrayList<double[]>(size);
+		TrainingSample<double[]> t;
+		while (batch.size() < size && (t = stream.nextSample()) != null) {
+			batch.add(t.sample);
 		}
+		return batch;
+	}
 
-		for (; t < 1000; t++) {
-			boolean cont = false;
-			// E
-			for (int i = 0; i < n; i++) {
-				double[] x = train.get(i);
-				double dmin = Double.POSITIVE_INFINITY;
-				int cmin = -1;
-				for (int g = 0; g < k; g++) {
-					double d = VectorOperations.d2p2(x, mu[g]);
-					if (d < dmin) {
-						cmin = g;
-						dmin = d;
+	/**
+	 * E-step: sufficient statistics of the samples, computed in parallel on
+	 * ranges of samples. If means is not null, the samples are hard assigned
+	 * to their nearest mean instead.
+	 */
+	private Statistics expectation(final List<double[]> samples,
+			final double[][] means, ThreadPoolExecutor exec)
+			throws ExecutionException {
+		final int n = samples.size();
+		final int dim = samples.get(0).length;
+		final boolean full = (covariance == FULL_COVARIANCE);
+
+		// bound the memory used by the statistics of each thread
+		long size = (long) k * (full ? dim * dim : dim);
+		int p = (int) Math.min(Math.min(ThreadPoolServer.getNbCpu(), n),
+				Math.max(1, MAX_STATISTICS / Math.max(1, size)));
+
+		final Statistics[] local = new Statistics[p];
+		Queue<Future<?>> futures = new LinkedList<Future<?>>();
+		for (int b = 0; b < p; b++) {
+			final int from = (int) ((long) b * n / p);
+			final int to = (int) ((long) (b + 1) * n / p);
+			final Statistics s = new Statistics(k, dim, full);
+			local[b] = s;
+			futures.add(exec.submit(new Runnable() {
+				@Override
+				public void run() {
+					double[] r = new double[k];
+					double[] tmp = new double[dim];
+					for (int i = from; i < to; i++) {
+						double[] x = samples.get(i);
+						if (means != null) {
+							Arrays.fill(r, 0);
+							r[nearest(x, means)] = 1;
+						} else {
+							s.logLikelihood += posterior(x, r, tmp);
+						}
+						s.accumulate(x, r);
 					}
 				}
-				if (cmin != c[i])
-					cont = true;
-				c[i] = cmin;
+			}));
+		}
+		ThreadPoolServer.awaitAll(futures);
+
+		for (int b = 1; b < p; b++) {
+			local[0].add(1, local[b]);
+		}
+		return local[0];
+	}
+
+	/**
+	 * index of the nearest mean
+	 */
+	private static int nearest(double[] x, double[][] means) {
+		double dmin = Double.POSITIVE_INFINITY;
+		int cmin = 0;
+		for (int g = 0; g < means.length; g++) {
+			double d = VectorOperations.d2p2(x, means[g]);
+			if (d < dmin) {
+				cmin = g;
+				dmin = d;
 			}
+		}
+		return cmin;
+	}
+
+	/**
+	 * M-step: parameters maximizing the likelihood given the sufficient
+	 * statistics. Components without responsibility get a null weight and
+	 * keep their previous Gaussian.
+	 */
+	private void maximize(Statistics s) {
+		int dim = s.s1[0].length;
+		boolean full = s.full;
+		double total = 0;
+		for (double n : s.s0) {
+			total += n;
+		}
 
-			if (!cont)
-				break;
+		double[][][] newChol = full ? new double[k][][] : null;
+		double[][] newPrecision = full ? null : new double[k][];
+		if (w == null || w.length != k || mu == null || mu.length != k) {
+			w = new double[k];
+			mu = new double[k][];
+		}
+		double[] newNorm = new double[k];
 
-			// M
-			for (int g = 0; g < k; g++) {
-				Arrays.fill(mu[g], 0);
+		for (int g = 0; g < k; g++) {
+			double n = s.s0[g];
+			double logdet = 0;
+			if (n <= MIN_RESPONSIBILITY * total) {
 				w[g] = 0;
-			}
-			for (int i = 0; i < n; i++) {
-				VectorOperations.addi(mu[c[i]], mu[c[i]], 1, train.get(i));
-				w[c[i]] += 1;
-			}
-			for (int g = 0; g < k; g++) {
-				if(w[g] > 0) {
-					VectorOperations.muli(mu[g], mu[g], 1. / w[g]);
+				if (mu[g] == null || mu[g].length != dim) {
+					mu[g] = new double[dim];
 				}
-				else {
-					Arrays.fill(mu[g], 0);
+				if (full) {
+					newChol[g] = (chol != null && g < chol.length) ? chol[g]
+							: identity(dim);
+					for (int d = 0; d < dim; d++) {
+						logdet += 2 * log(newChol[g][d][d]);
+					}
+				} else {
+					newPrecision[g] = (precision != null && g < precision.length)
+							? precision[g] : ones(dim);
+					for (int d = 0; d < dim; d++) {
+						logdet -= log(newPrecision[g][d]);
+					}
+				}
+			} else {
+				w[g] = n / total;
+				double[] m = VectorOperations.mul(s.s1[g], 1. / n);
+				mu[g] = m;
+				if (full) {
+					double[][] c = new double[dim][dim];
+					double[][] s2 = s.s2[g];
+					for (int i = 0; i < dim; i++) {
+						for (int j = i; j < dim; j++) {
+							c[i][j] = s2[i][j] / n - m[i] * m[j];
+							c[j][i] = c[i][j];
+						}
+						c[i][i] += regularization;
+					}
+					double[][] l;
+					try {
+						l = MatrixOperations.cholesky(c);
+					} catch (ArithmeticException ex) {
+						// not positive definite, use the diagonal only
+						debug.println(3, "covariance " + g
+								+ " not positive definite, using diagonal");
+						l = new double[dim][dim];
+						for (int d = 0; d < dim; d++) {
+							l[d][d] = sqrt(Math.max(c[d][d], regularization));
+						}
+					}
+					newChol[g] = l;
+					for (int d = 0; d < dim; d++) {
+						logdet += 2 * log(l[d][d]);
+					}
+				} else {
+					double[] v = new double[dim];
+					double[] s2 = s.s2[g][0];
+					for (int d = 0; d < dim; d++) {
+						v[d] = Math.max(s2[d] / n - m[d] * m[d], 0)
+								+ regularization;
+					}
+					if (covariance == SPHERICAL_COVARIANCE) {
+						double a = 0;
+						for (double vd : v) {
+							a += vd;
+						}
+						Arrays.fill(v, a / dim);
+					}
+					for (int d = 0; d < dim; d++) {
+						logdet += log(v[d]);
+						v[d] = 1. / v[d];
+					}
+					newPrecision[g] = v;
 				}
 			}
+			newNorm[g] = -0.5 * (dim * LOG_2PI + logdet);
 		}
 
-		debug.println(3, "init k-means :");
-		debug.println(3, " t = " + t);
-		for (int i = 0; i < k; i++)
-			debug.println(3, " mu" + i + " = " + Arrays.toString(mu[i]));
+		chol = newChol;
+		precision = newPrecision;
+		logNorm = newNorm;
+		sigma = null;
+	}
 
-		// diag cov
+	/**
+	 * sufficient statistics corresponding to the current parameters
+	 */
+	private Statistics statistics() {
+		int dim = mu[0].length;
+		boolean full = (chol != null);
+		Statistics s = new Statistics(k, dim, full);
 		for (int g = 0; g < k; g++) {
-			w[g] /= n;
-			for (int d = 0; d < dim; d++) {
-				sigma[g][d][d] = 1.0;
-			}
-		}
-		for (t = 0; t < 10000; t++) {
-			// E
-			for (int x = 0; x < n; x++) {
-				double[] xt = train.get(x);
-				double sum = 0;
-				for (int g = 0; g < k; g++) {
-					double[] xtc = VectorOperations.add(xt, -1, mu[g]);
-					double[] o = MatrixVectorOperations.rMul(sigma[g], xtc);
-					like[x][g] = (w[g])
-							* exp((-0.5 * VectorOperations.dot(xtc, o)));
-					if (like[x][g] < 1e-15)
-						like[x][g] = 0;
-					sum += like[x][g];
+			double[] m = mu[g];
+			s.s0[g] = w[g];
+			VectorOperations.addi(s.s1[g], s.s1[g], w[g], m);
+			if (full) {
+				double[][] l = chol[g];
+				for (int i = 0; i < dim; i++) {
+					for (int j = i; j < dim; j++) {
+						// (L L')_ij, with L lower triangular
+						double c = 0;
+						for (int d = 0; d <= i; d++) {
+							c += l[i][d] * l[j][d];
+						}
+						s.s2[g][i][j] = w[g] * (c + m[i] * m[j]);
+					}
 				}
-				if (abs(sum) > 1e-15)
-					VectorOperations.muli(like[x], like[x], 1. / sum);
-			}
-			// M
-			for (int g = 0; g < k; g++) {
-				w[g] = 0;
-				Arrays.fill(mu[g], 0);
+			} else {
 				for (int d = 0; d < dim; d++) {
-					Arrays.fill(sigma[g][d], 0);
+					s.s2[g][0][d] = w[g] * (1. / precision[g][d] + m[d] * m[d]);
 				}
 			}
-			// weights and means
-			for (int x = 0; x < n; x++) {
-				double[] xt = train.get(x);
-				for (int g = 0; g < k; g++) {
-					w[g] += like[x][g];
-					VectorOperations.addi(mu[g], mu[g], like[x][g], xt);
+		}
+		return s;
+	}
+
+	/**
+	 * squared Mahalanobis distance of x to the Gaussian g, tmp being a buffer
+	 * of size dim
+	 */
+	private double mahalanobis(int g, double[] x, double[] tmp) {
+		double[] m = mu[g];
+		double r = 0;
+		if (chol != null) {
+			// forward substitution L z = x - mu, then |z|^2
+			double[][] l = chol[g];
+			for (int i = 0; i < m.length; i++) {
+				double[] li = l[i];
+				double z = x[i] - m[i];
+				for (int j = 0; j < i; j++) {
+					z -= li[j] * tmp[j];
 				}
+				z /= li[i];
+				tmp[i] = z;
+				r += z * z;
 			}
-			for (int g = 0; g < k; g++) {
-				VectorOperations.muli(mu[g], mu[g], 1. / w[g]);
+		} else {
+			double[] p = precision[g];
+			for (int d = 0; d < m.length; d++) {
+				double z = x[d] - m[d];
+				r += z * z * p[d];
 			}
-			// covariances
-			for (int x = 0; x < n; x++) {
-				double[] xt = train.get(x);
-				for (int g = 0; g < k; g++) {
-					double[] xtc = VectorOperations.add(xt, -1, mu[g]);
-					VectorOperations.muli(xtc, xtc, sqrt(like[x][g]));
-					MatrixVectorOperations.addXXTrans(sigma[g], xtc);
-				}
+		}
+		return r;
+	}
+
+	/**
+	 * responsibilities of each Gaussian for x, stored in r
+	 * 
+	 * @return the log-density of x
+	 */
+	private double posterior(double[] x, double[] r, double[] tmp) {
+		double max = Double.NEGATIVE_INFINITY;
+		for (int g = 0; g < k; g++) {
+			if (w[g] > 0) {
+				r[g] = log(w[g]) + logNorm[g] - 0.5 * mahalanobis(g, x, tmp);
+			} else {
+				r[g] = Double.NEGATIVE_INFINITY;
 			}
-			for (int g = 0; g < k; g++) {
-				for (int d = 0; d < dim; d++) {
-					VectorOperations.muli(sigma[g][d], sigma[g][d],
-							1. / (2 * w[g]));
-				}
-				sigma[g] = MatrixOperations.inv(sigma[g]);
+			if (r[g] > max) {
+				max = r[g];
 			}
-			// normalize weights
-			VectorOperations.muli(w, w, 1. / n);
-
-			// if no improvements, quit
-			if (VectorOperations.d2p2(mu[0], oldmu)
-					/ VectorOperations.n2p2(oldmu) < 1e-12)
-				break;
-			oldmu = Arrays.copyOf(mu[0], dim);
-
 		}
-		debug.println(3, "t = " + t);
-		debug.println(3, "pop= " + Arrays.toString(w));
-
-		for (int i = 0; i < k; i++)
-			debug.println(3, "mu" + i + " = " + Arrays.toString(mu[i]));
-
-		for (int i = 0; i < k; i++) {
-			debug.println(3,
-					"sigma" + i + " = " + Arrays.deepToString(sigma[i]));
+		double sum = 0;
+		for (int g = 0; g < k; g++) {
+			r[g] = exp(r[g] - max);
+			sum += r[g];
+		}
+		for (int g = 0; g < k; g++) {
+			r[g] /= sum;
 		}
+		return max + log(sum);
 	}
 
 	/*
@@ -266,34 +514,53 @@ public class DoubleGaussianMixtureModel implements DensityFunction<double[]> {
 	 */
 	@Override
 	public double valueOf(double[] e) {
+		double[] tmp = new double[e.length];
 		double sum = 0;
 		for (int g = 0; g < k; g++) {
-			double[] xtc = VectorOperations.add(e, -1, mu[g]);
-			double[] o = MatrixVectorOperations.rMul(sigma[g], xtc);
-			sum += w[g] * exp(-0.5 * VectorOperations.dot(xtc, o));
-
+			sum += w[g] * exp(-0.5 * mahalanobis(g, e, tmp));
 		}
 		return sum;
 	}
-	
+
 	/**
 	 * Return a vector containing the likelihood to each Gaussian component
 	 * @param e the sample to evaluate
 	 * @return the vector of likelihood
 	 */
 	public double[] likelihood(double[] e) {
+		double[] tmp = new double[e.length];
 		double[] l = new double[k];
-		
 		for (int g = 0; g < k; g++) {
-			double[] xtc = VectorOperations.add(e, -1, mu[g]);
-			double[] o = MatrixVectorOperations.rMul(sigma[g], xtc);
-			l[g] = w[g] * exp(-0.5 * VectorOperations.dot(xtc, o));
-
-		}		
-		
+			l[g] = w[g] * exp(-0.5 * mahalanobis(g, e, tmp));
+		}
 		return l;
 	}
 
+	/**
+	 * Computes the logarithm of the normalized density of the mixture
+	 * 
+	 * @param e
+	 *            the sample to evaluate
+	 * @return the log-density of the sample
+	 */
+	public double logDensity(double[] e) {
+		return posterior(e, new double[k], new double[e.length]);
+	}
+
+	/**
+	 * Computes the posterior probability of each Gaussian component given
+	 * the sample, which sum to one
+	 * 
+	 * @param e
+	 *            the sample to evaluate
+	 * @return the vector of posterior probabilities
+	 */
+	public double[] posterior(double[] e) {
+		double[] r = new double[k];
+		posterior(e, r, new double[e.length]);
+		return r;
+	}
+
 	/**
 	 * Get the number of components in the mixture
 	 * 
@@ -359,11 +626,28 @@ public class DoubleGaussianMixtureModel implements DensityFunction<double[]> {
 	 *         matrix of associated Gaussian
 	 */
 	public double[][][] getSigma() {
+		if (sigma == null && logNorm != null) {
+			double[][][] s = new double[k][][];
+			for (int g = 0; g < k; g++) {
+				if (chol != null) {
+					double[][] li = lowerInverse(chol[g]);
+					s[g] = MatrixOperations.transMul(li, li);
+				} else {
+					int dim = precision[g].length;
+					s[g] = new double[dim][dim];
+					for (int d = 0; d < dim; d++) {
+						s[g][d][d] = precision[g][d];
+					}
+				}
+			}
+			sigma = s;
+		}
 		return sigma;
 	}
 
 	/**
-	 * Sets the inverse covariance matrices of each component of the mixture
+	 * Sets the inverse covariance matrices of each component of the mixture.
+	 * The covariances are then considered full.
 	 * 
 	 * @param sigma
 	 *            an array of double[][], each being the inverse covariance
@@ -371,6 +655,233 @@ public class DoubleGaussianMixtureModel implements DensityFunction<double[]> {
 	 */
 	public void setSigma(double[][][] sigma) {
 		this.sigma = sigma;
+		covariance = FULL_COVARIANCE;
+		precision = null;
+		chol = new double[sigma.length][][];
+		logNorm = new double[sigma.length];
+		for (int g = 0; g < sigma.length; g++) {
+			int dim = sigma[g].length;
+			chol[g] = MatrixOperations.cholesky(MatrixOperations.inv(sigma[g]));
+			double logdet = 0;
+			for (int d = 0; d < dim; d++) {
+				logdet += 2 * log(chol[g][d][d]);
+			}
+			logNorm[g] = -0.5 * (dim * LOG_2PI + logdet);
+		}
+	}
+
+	/**
+	 * inverse of a lower triangular matrix
+	 */
+	private static double[][] lowerInverse(double[][] l) {
+		int dim = l.length;
+		double[][] li = new double[dim][dim];
+		for (int c = 0; c < dim; c++) {
+			li[c][c] = 1. / l[c][c];
+			for (int i = c + 1; i < dim; i++) {
+				double z = 0;
+				for (int j = c; j < i; j++) {
+					z -= l[i][j] * li[j][c];
+				}
+				li[i][c] = z / l[i][i];
+			}
+		}
+		return li;
+	}
+
+	private static double[][] identity(int dim) {
+		double[][] m = new double[dim][dim];
+		for (int d = 0; d < dim; d++) {
+			m[d][d] = 1;
+		}
+		return m;
+	}
+
+	private static double[] ones(int dim) {
+		double[] v = new double[dim];
+		Arrays.fill(v, 1);
+		return v;
+	}
+
+	/**
+	 * Tells the type of covariance matrices
+	 * 
+	 * @return FULL_COVARIANCE, DIAGONAL_COVARIANCE or SPHERICAL_COVARIANCE
+	 */
+	public int getCovariance() {
+		return covariance;
+	}
+
+	/**
+	 * Sets the type of covariance matrices, used by the next training
+	 * 
+	 * @param covariance
+	 *            FULL_COVARIANCE (default), DIAGONAL_COVARIANCE or
+	 *            SPHERICAL_COVARIANCE
+	 */
+	public void setCovariance(int covariance) {
+		this.covariance = covariance;
+	}
+
+	/**
+	 * Tells the maximum number of EM iterations
+	 * 
+	 * @return the maximum number of iterations
+	 */
+	public int getMaxIterations() {
+		return maxIterations;
+	}
+
+	/**
+	 * Sets the maximum number of EM iterations (default 10000)
+	 * 
+	 * @param maxIterations
+	 *            the maximum number of iterations
+	 */
+	public void setMaxIterations(int maxIterations) {
+		this.maxIterations = maxIterations;
+	}
+
+	/**
+	 * Tells the stopping tolerance on the increase of the average
+	 * log-likelihood
+	 * 
+	 * @return the tolerance
+	 */
+	public double getTolerance() {
+		return tolerance;
+	}
+
+	/**
+	 * Sets the stopping tolerance on the increase of the average
+	 * log-likelihood (default 1e-6)
+	 * 
+	 * @param tolerance
+	 *            the tolerance
+	 */
+	public void setTolerance(double tolerance) {
+		this.tolerance = tolerance;
+	}
+
+	/**
+	 * Tells the value added to the diagonal of the covariances
+	 * 
+	 * @return the regularization
+	 */
+	public double getRegularization() {
+		return regularization;
+	}
+
+	/**
+	 * Sets the value added to the diagonal of the covariances, which keeps
+	 * them positive definite (default 1e-6)
+	 * 
+	 * @param regularization
+	 *            the regularization
+	 */
+	public void setRegularization(double regularization) {
+		this.regularization = regularization;
+	}
+
+	/**
+	 * Tells the number of samples of each mini-batch of
+	 * {@link #onlineTrain(TrainingSampleStream)}
+	 * 
+	 * @return the size of the mini-batches
+	 */
+	public int getBatchSize() {
+		return batchSize;
+	}
+
+	/**
+	 * Sets the number of samples of each mini-batch of
+	 * {@link #onlineTrain(TrainingSampleStream)} (default 1024)
+	 * 
+	 * @param batchSize
+	 *            the size of the mini-batches
+	 */
+	public void setBatchSize(int batchSize) {
+		this.batchSize = batchSize;
+	}
+
+	/**
+	 * Sufficient statistics of a set of samples: sums of the
+	 * responsibilities, of the weighted samples and of their weighted second
+	 * moments. Only the upper triangle of the second moments is stored for
+	 * full covariances, and only their diagonal otherwise.
+	 */
+	private static final class Statistics {
+		final boolean full;
+		final double[] s0;
+		final double[][] s1;
+		final double[][][] s2;
+		double logLikelihood;
+
+		Statistics(int k, int dim, boolean full) {
+			this.full = full;
+			s0 = new double[k];
+			s1 = new double[k][dim];
+			s2 = full ? new double[k][dim][dim] : new double[k][1][dim];
+		}
+
+		/**
+		 * adds the sample x with responsibilities r
+		 */
+		void accumulate(double[] x, double[] r) {
+			for (int g = 0; g < r.length; g++) {
+				double rg = r[g];
+				if (rg < MIN_RESPONSIBILITY) {
+					continue;
+				}
+				s0[g] += rg;
+				VectorOperations.addi(s1[g], s1[g], rg, x);
+				if (full) {
+					for (int i = 0; i < x.length; i++) {
+						double rx = rg * x[i];
+						if (rx == 0) {
+							continue;
+						}
+						double[] row = s2[g][i];
+						for (int j = i; j < x.length; j++) {
+							row[j] += rx * x[j];
+						}
+					}
+				} else {
+					double[] row = s2[g][0];
+					for (int d = 0; d < x.length; d++) {
+						row[d] += rg * x[d] * x[d];
+					}
+				}
+			}
+		}
+
+		/**
+		 * this += a * o
+		 */
+		void add(double a, Statistics o) {
+			VectorOperations.addi(s0, s0, a, o.s0);
+			for (int g = 0; g < s0.length; g++) {
+				VectorOperations.addi(s1[g], s1[g], a, o.s1[g]);
+				for (int i = 0; i < s2[g].length; i++) {
+					VectorOperations.addi(s2[g][i], s2[g][i], a, o.s2[g][i]);
+				}
+			}
+			logLikelihood += a * o.logLikelihood;
+		}
+
+		/**
+		 * this *= a
+		 */
+		void scale(double a) {
+			VectorOperations.muli(s0, s0, a);
+			for (int g = 0; g < s0.length; g++) {
+				VectorOperations.muli(s1[g], s1[g], a);
+				for (int i = 0; i < s2[g].length; i++) {
+					VectorOperations.muli(s2[g][i], s2[g][i], a);
+				}
+			}
+			logLikelihood *= a;
+		}
 	}
 
 }
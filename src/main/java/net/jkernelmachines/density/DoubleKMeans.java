@@ -29,16 +29,44 @@
  *******************************************************************************/
 package net.jkernelmachines.density;
 
+import java.util.ArrayList;
 import java.util.Arrays;
+import java.util.LinkedList;
 import java.util.List;
+import java.util.Queue;
 import java.util.Random;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.Future;
+import java.util.concurrent.ThreadPoolExecutor;
+import java.util.concurrent.atomic.AtomicInteger;
 
+import net.jkernelmachines.threading.ThreadPoolServer;
+import net.jkernelmachines.type.TrainingSample;
+import net.jkernelmachines.type.TrainingSampleStream;
 import net.jkernelmachines.util.DebugPrinter;
 import net.jkernelmachines.util.algebra.VectorOperations;
 
 /**
- * Very basic KMeans algorithm with a shifting codeword procedure to ensure no
- * empty cluster and balanced distortion
+ * <p>
+ * KMeans algorithm with a shifting codeword procedure to ensure no empty
+ * cluster and balanced distortion.
+ * </p>
+ * <p>
+ * The means are seeded with k-means++ and the Lloyd iterations skip the
+ * samples that cannot change of cluster, using the distance bounds of
+ * Hamerly. Assignments and updates of the means are computed in parallel.
+ * A mini-batch variant is available for streams of samples.
+ * </p>
+ * <p>
+ * <b>k-means++: The Advantages of Careful Seeding</b> David Arthur, Sergei
+ * Vassilvitskii <i>SODA 2007</i>
+ * </p>
+ * <p>
+ * <b>Making k-means even faster</b> Greg Hamerly <i>SDM 2010</i>
+ * </p>
+ * <p>
+ * <b>Web-Scale K-Means Clustering</b> D. Sculley <i>WWW 2010</i>
+ * </p>
  * 
  * @author picard
  * 
@@ -47,10 +75,24 @@ public class DoubleKMeans implements DensityFunction<double[]> {
 
 	private static final long serialVersionUID = -376280133933635170L;
 
+	/** Initialization by random assignment of the samples to the clusters */
+	public static final int RANDOM_INIT = 0;
+	/** Initialization by k-means++ seeding */
+	public static final int KMEANSPP_INIT = 1;
+
+	// number of samples per parallel job
+	private static final int CHUNK = 1024;
+
 	int K;
 	double[][] means;
+	// number of samples assigned to each mean, used by mini-batch updates
+	long[] counts;
 
 	double shiftRatio = 20;
+	int init = KMEANSPP_INIT;
+	int maxIterations = 10000;
+	int batchSize = 1024;
+	Random rand = new Random();
 
 	DebugPrinter debug = new DebugPrinter();
 
@@ -85,112 +127,457 @@ public class DoubleKMeans implements DensityFunction<double[]> {
 	@Override
 	public void train(List<double[]> train) {
 		int n = train.size();
-		int dim = train.get(0).length;
 
 		if (K > n) {
 			throw new ArithmeticException("Too few data points: " + n + " < "
 					+ K);
 		}
 
-		double[] w = new double[K];
-		double[][] mu = new double[K][dim];
-		Random rand = new Random();
-
-		int t = 0;
-		// init with k-means
+		int dim = train.get(0).length;
+		long[] w = new long[K];
 		int c[] = new int[n];
-		for (int i = 0; i < n; i++) {
-			c[i] = rand.nextInt(K);
-			VectorOperations.addi(mu[c[i]], mu[c[i]], 1, train.get(i));
-			w[c[i]] += 1;
+		// distance to the mean of the cluster, and lower bound of the
+		// distance to the other means
+		double[] upper = new double[n];
+		double[] lower = new double[n];
+		Arrays.fill(upper, Double.POSITIVE_INFINITY);
+
+		ThreadPoolExecutor exec = ThreadPoolServer.getThreadPoolExecutor();
+		try {
+			double[][] mu = initialMeans(train, c, exec);
+
+			for (int t = 0; t < maxIterations; t++) {
+				// E
+				boolean cont = assign(train, mu, c, upper, lower, exec) > 0;
+
+				// M
+				double[][] old = mu;
+				mu = updateMeans(train, c, old, w, exec);
+				double[] moves = new double[K];
+				for (int g = 0; g < K; g++) {
+					moves[g] = Math.sqrt(VectorOperations.d2p2(old[g], mu[g]));
+				}
+				updateBounds(c, upper, lower, moves);
+
+				if (!cont) {
+					// try codeword shifting
+					double[] dist = distortion(train, mu, c, upper, exec);
+					double dtot = 0;
+					for (double d : dist) {
+						dtot += d;
+					}
+					debug.println(3, "d: " + Arrays.toString(dist));
+					debug.println(2, "total dist: " + dtot);
+					double dmin = Double.POSITIVE_INFINITY, dmax = -1;
+					int imin = -1, imax = -1;
+					for (int g = 0; g < K; g++) {
+						if (dist[g] < dmin) {
+							dmin = dist[g];
+							imin = g;
+						}
+						if (dist[g] > dmax) {
+							dmax = dist[g];
+							imax = g;
+						}
+					}
+					debug.println(3, "dmin: " + dmin + "\tdmax: " + dmax);
+					if (K > 1 && (dmin == 0 || dmax / dmin > shiftRatio)) {
+						// shift
+						int comp = rand.nextInt(dim);
+						double[] oldMin = mu[imin];
+						double[] oldMax = mu[imax].clone();
+						mu[imin] = Arrays.copyOf(mu[imax], dim);
+						double no = VectorOperations.n2(mu[imax]);
+						mu[imin][comp] += 1e-6 * no;
+						mu[imax][comp] -= 1e-6 * no;
+						Arrays.fill(moves, 0);
+						moves[imin] = Math.sqrt(VectorOperations.d2p2(oldMin, mu[imin]));
+						moves[imax] = Math.sqrt(VectorOperations.d2p2(oldMax, mu[imax]));
+						updateBounds(c, upper, lower, moves);
+						debug.println(2, "shifting done");
+					} else {
+						break;
+					}
+				}
+			}
+
+			// save means
+			means = mu;
+			counts = w;
+		} catch (ExecutionException e) {
+			throw new RuntimeException("Failed threading k-means", e);
+		} finally {
+			ThreadPoolServer.shutdownNow(exec);
 		}
-		for (int g = 0; g < K; g++) {
-			if (w[g] > 0) {
-				VectorOperations.muli(mu[g], mu[g], 1. / w[g]);
+	}
+
+	/**
+	 * <p>
+	 * Train the means with mini-batches of samples drawn from the stream until
+	 * no sample can be drawn. Each sample of a batch is assigned to its
+	 * nearest mean, which is then moved towards the sample with a learning
+	 * rate inversely proportional to the number of samples it received.
+	 * </p>
+	 * <p>
+	 * If the means are not trained yet, they are initialized on the first
+	 * samples of the stream (at least ten per cluster). Otherwise, the
+	 * training continues from the current means.
+	 * </p>
+	 * 
+	 * @param stream
+	 *            the stream of samples
+	 */
+	public void onlineTrain(TrainingSampleStream<double[]> stream) {
+		ThreadPoolExecutor exec = ThreadPoolServer.getThreadPoolExecutor();
+		try {
+			List<double[]> batch;
+			if (means == null) {
+				batch = nextBatch(stream, Math.max(batchSize, 10 * K));
+				if (K > batch.size()) {
+					throw new ArithmeticException("Too few data points: "
+							+ batch.size() + " < " + K);
+				}
+				means = initialMeans(batch, new int[batch.size()], exec);
+				counts = new long[K];
 			} else {
-				Arrays.fill(mu[g], 0);
+				batch = nextBatch(stream, batchSize);
+			}
+			while (!batch.isEmpty()) {
+				int[] c = nearest(batch, means, exec);
+				for (int j = 0; j < c.length; j++) {
+					int g = c[j];
+					counts[g]++;
+					double eta = 1. / counts[g];
+					VectorOperations.muli(means[g], means[g], 1 - eta);
+					VectorOperations.addi(means[g], means[g], eta, batch.get(j));
+				}
+				batch = nextBatch(stream, batchSize);
 			}
+		} catch (ExecutionException e) {
+			throw new RuntimeException("Failed threading k-means", e);
+		} finally {
+			ThreadPoolServer.shutdownNow(exec);
 		}
+	}
 
-		for (; t < 10000; t++) {
-			boolean cont = false;
-			// E
-			for (int i = 0; i < n; i++) {
-				double[] x = train.get(i);
-				double dmin = Double.POSITIVE_INFINITY;
-				int cmin = -1;
-				for (int g = 0; g < K; g++) {
-					double d = VectorOperations.d2p2(x, mu[g]);
-					if (d < dmin) {
-						cmin = g;
-						dmin = d;
-					}
-				}
-				if (cmin != c[i])
-					cont = true;
-				c[i] = cmin;
+	/**
+	 * draws at most size samples from the stream
+	 */
+	private List<double[]> nextBatch(TrainingSampleStream<double[]> stream,
+			int size) {
+		List<double[]> batch = new ArrayList<double[]>(size);
+		TrainingSample<double[]> t;
+		while (batch.size() < size && (t = stream.nextSample()) != null) {
+			batch.add(t.sample);
+		}
+		return batch;
+	}
+
+	/**
+	 * initial means, with random assignment or k-means++ seeding
+	 */
+	private double[][] initialMeans(List<double[]> train, int[] c,
+			ThreadPoolExecutor exec) throws ExecutionException {
+		if (init == RANDOM_INIT) {
+			for (int i = 0; i < c.length; i++) {
+				c[i] = rand.nextInt(K);
 			}
+			int dim = train.get(0).length;
+			return updateMeans(train, c, new double[K][dim], new long[K], exec);
+		}
+		return seed(train, exec);
+	}
 
-			// M
-			for (int g = 0; g < K; g++) {
-				Arrays.fill(mu[g], 0);
-				w[g] = 0;
+	/**
+	 * k-means++ seeding: each new mean is a sample drawn with probability
+	 * proportional to its squared distance to the nearest previous mean.
+	 */
+	private double[][] seed(final List<double[]> train, ThreadPoolExecutor exec)
+			throws ExecutionException {
+		final int n = train.size();
+		final int nbChunks = (n + CHUNK - 1) / CHUNK;
+		final double[][] mu = new double[K][];
+		final double[] d = new double[n];
+		final double[] sums = new double[nbChunks];
+		Arrays.fill(d, Double.POSITIVE_INFINITY);
+
+		mu[0] = train.get(rand.nextInt(n)).clone();
+		Queue<Future<?>> futures = new LinkedList<Future<?>>();
+		for (int k = 1; k < K; k++) {
+			final double[] last = mu[k - 1];
+			for (int ch = 0; ch < nbChunks; ch++) {
+				final int chunk = ch;
+				futures.add(exec.submit(new Runnable() {
+					@Override
+					public void run() {
+						double s = 0;
+						int to = Math.min(n, (chunk + 1) * CHUNK);
+						for (int i = chunk * CHUNK; i < to; i++) {
+							double di = VectorOperations.d2p2(train.get(i), last);
+							if (di < d[i]) {
+								d[i] = di;
+							}
+							s += d[i];
+						}
+						sums[chunk] = s;
+					}
+				}));
 			}
-			for (int i = 0; i < n; i++) {
-				VectorOperations.addi(mu[c[i]], mu[c[i]], 1, train.get(i));
-				w[c[i]] += 1;
+			ThreadPoolServer.awaitAll(futures);
+
+			double total = 0;
+			for (double s : sums) {
+				total += s;
 			}
-			for (int g = 0; g < K; g++) {
-				if (w[g] > 0) {
-					VectorOperations.muli(mu[g], mu[g], 1. / w[g]);
-				} else {
-					Arrays.fill(mu[g], 0);
+			int index = rand.nextInt(n);
+			if (total > 0) {
+				// chunk, then sample
+				double r = rand.nextDouble() * total;
+				int ch = 0;
+				while (ch < nbChunks - 1 && r >= sums[ch]) {
+					r -= sums[ch];
+					ch++;
+				}
+				int to = Math.min(n, (ch + 1) * CHUNK);
+				for (int i = ch * CHUNK; i < to; i++) {
+					if (d[i] > 0) {
+						index = i;
+						r -= d[i];
+						if (r < 0) {
+							break;
+						}
+					}
 				}
 			}
+			mu[k] = train.get(index).clone();
+		}
+		return mu;
+	}
 
-			if (!cont) {
-				// try codeword shifting
-				double[] dist = new double[K];
-				double dtot = 0;
-				for (int i = 0; i < n; i++) {
-					double[] x = train.get(i);
-					double d = VectorOperations.d2p2(x, mu[c[i]]);
-					dist[c[i]] += d;
-					dtot += d;
-				}
-				debug.println(3, "d: " + Arrays.toString(dist));
-				debug.println(2, "total dist: " + dtot);
-				double dmin = Double.POSITIVE_INFINITY, dmax = -1;
-				int imin = -1, imax = -1;
-				for (int g = 0; g < K; g++) {
-					if (dist[g] < dmin) {
-						dmin = dist[g];
-						imin = g;
+	/**
+	 * Assignment step with Hamerly bounds: a sample keeps its cluster if the
+	 * upper bound of the distance to its mean is below the lower bound of the
+	 * distance to the other means, or below half the distance between its
+	 * mean and the nearest other mean.
+	 * 
+	 * @return the number of samples which changed of cluster
+	 */
+	private int assign(final List<double[]> train, final double[][] mu,
+			final int[] c, final double[] upper, final double[] lower,
+			ThreadPoolExecutor exec) throws ExecutionException {
+		final int n = train.size();
+		final double[] s = halfSeparations(mu, exec);
+		final AtomicInteger changed = new AtomicInteger();
+		Queue<Future<?>> futures = new LinkedList<Future<?>>();
+		for (int i = 0; i < n; i += CHUNK) {
+			final int from = i;
+			final int to = Math.min(n, i + CHUNK);
+			futures.add(exec.submit(new Runnable() {
+				@Override
+				public void run() {
+					int ch = 0;
+					for (int i = from; i < to; i++) {
+						double m = Math.max(s[c[i]], lower[i]);
+						if (upper[i] <= m) {
+							continue;
+						}
+						double[] x = train.get(i);
+						upper[i] = Math.sqrt(VectorOperations.d2p2(x, mu[c[i]]));
+						if (upper[i] <= m) {
+							continue;
+						}
+						double d1 = Double.POSITIVE_INFINITY, d2 = Double.POSITIVE_INFINITY;
+						int cmin = -1;
+						for (int g = 0; g < mu.length; g++) {
+							double d = VectorOperations.d2p2(x, mu[g]);
+							if (d < d1) {
+								d2 = d1;
+								d1 = d;
+								cmin = g;
+							} else if (d < d2) {
+								d2 = d;
+							}
+						}
+						if (cmin != c[i]) {
+							c[i] = cmin;
+							ch++;
+						}
+						upper[i] = Math.sqrt(d1);
+						lower[i] = Math.sqrt(d2);
 					}
-					if (dist[g] > dmax) {
-						dmax = dist[g];
-						imax = g;
+					changed.addAndGet(ch);
+				}
+			}));
+		}
+		ThreadPoolServer.awaitAll(futures);
+		return changed.get();
+	}
+
+	/**
+	 * half of the distance of each mean to its nearest other mean
+	 */
+	private double[] halfSeparations(final double[][] mu,
+			ThreadPoolExecutor exec) throws ExecutionException {
+		final int k = mu.length;
+		final double[] s = new double[k];
+		final int block = Math.max(1, k / (4 * ThreadPoolServer.getNbCpu()));
+		Queue<Future<?>> futures = new LinkedList<Future<?>>();
+		for (int g = 0; g < k; g += block) {
+			final int from = g;
+			final int to = Math.min(k, g + block);
+			futures.add(exec.submit(new Runnable() {
+				@Override
+				public void run() {
+					for (int g = from; g < to; g++) {
+						double dmin = Double.POSITIVE_INFINITY;
+						for (int h = 0; h < k; h++) {
+							if (h != g) {
+								dmin = Math.min(dmin, VectorOperations.d2p2(mu[g], mu[h]));
+							}
+						}
+						s[g] = 0.5 * Math.sqrt(dmin);
 					}
 				}
-				debug.println(3, "dmin: " + dmin + "\tdmax: " + dmax);
-				if (dmin == 0 || dmax / dmin > shiftRatio) {
-					// shift
-					int comp = rand.nextInt(dim);
-					mu[imin] = Arrays.copyOf(mu[imax], dim);
-					double no = VectorOperations.n2(mu[imax]);
-//					for(int comp = 0 ; comp < dim ; comp++) {
-						mu[imin][comp] += 1e-6*no;
-						mu[imax][comp] -= 1e-6*no;
-//					}
-					debug.println(2, "shifting done");
-				} else {
-					break;
+			}));
+		}
+		ThreadPoolServer.awaitAll(futures);
+		return s;
+	}
+
+	/**
+	 * moves the bounds according to the displacement of the means
+	 */
+	private void updateBounds(int[] c, double[] upper, double[] lower,
+			double[] moves) {
+		int first = 0;
+		double max1 = 0, max2 = 0;
+		for (int g = 0; g < moves.length; g++) {
+			if (moves[g] > max1) {
+				max2 = max1;
+				max1 = moves[g];
+				first = g;
+			} else if (moves[g] > max2) {
+				max2 = moves[g];
+			}
+		}
+		if (max1 == 0) {
+			return;
+		}
+		for (int i = 0; i < c.length; i++) {
+			upper[i] += moves[c[i]];
+			lower[i] -= (c[i] == first) ? max2 : max1;
+		}
+	}
+
+	/**
+	 * Update step: each mean is the average of the samples of its cluster,
+	 * the dimensions being summed in parallel. Empty clusters keep their
+	 * previous mean.
+	 */
+	private double[][] updateMeans(final List<double[]> train, final int[] c,
+			double[][] old, long[] w, ThreadPoolExecutor exec)
+			throws ExecutionException {
+		final int n = train.size();
+		final int dim = old[0].length;
+		final double[][] mu = new double[K][dim];
+		Arrays.fill(w, 0);
+		for (int i = 0; i < n; i++) {
+			w[c[i]]++;
+		}
+
+		int p = Math.min(dim, ThreadPoolServer.getNbCpu());
+		Queue<Future<?>> futures = new LinkedList<Future<?>>();
+		for (int b = 0; b < p; b++) {
+			final int from = b * dim / p;
+			final int to = (b + 1) * dim / p;
+			futures.add(exec.submit(new Runnable() {
+				@Override
+				public void run() {
+					for (int i = 0; i < n; i++) {
+						double[] x = train.get(i);
+						double[] m = mu[c[i]];
+						for (int d = from; d < to; d++) {
+							m[d] += x[d];
+						}
+					}
 				}
+			}));
+		}
+		ThreadPoolServer.awaitAll(futures);
+
+		for (int g = 0; g < K; g++) {
+			if (w[g] > 0) {
+				VectorOperations.muli(mu[g], mu[g], 1. / w[g]);
+			} else {
+				mu[g] = old[g].clone();
 			}
 		}
+		return mu;
+	}
 
-		// save means
-		means = mu;
+	/**
+	 * sum of the squared distances of the samples to their mean, for each
+	 * cluster. The upper bounds are set to the exact distances.
+	 */
+	private double[] distortion(final List<double[]> train,
+			final double[][] mu, final int[] c, final double[] upper,
+			ThreadPoolExecutor exec) throws ExecutionException {
+		final int n = train.size();
+		final int p = Math.max(1, Math.min(n / CHUNK, ThreadPoolServer.getNbCpu()));
+		final double[][] dist = new double[p][K];
+		Queue<Future<?>> futures = new LinkedList<Future<?>>();
+		for (int b = 0; b < p; b++) {
+			final int from = b * n / p;
+			final int to = (b + 1) * n / p;
+			final double[] local = dist[b];
+			futures.add(exec.submit(new Runnable() {
+				@Override
+				public void run() {
+					for (int i = from; i < to; i++) {
+						double d = VectorOperations.d2p2(train.get(i), mu[c[i]]);
+						local[c[i]] += d;
+						upper[i] = Math.sqrt(d);
+					}
+				}
+			}));
+		}
+		ThreadPoolServer.awaitAll(futures);
+		for (int b = 1; b < p; b++) {
+			VectorOperations.addi(dist[0], dist[0], 1, dist[b]);
+		}
+		return dist[0];
+	}
+
+	/**
+	 * index of the nearest mean of each sample
+	 */
+	private int[] nearest(final List<double[]> samples, final double[][] mu,
+			ThreadPoolExecutor exec) throws ExecutionException {
+		final int n = samples.size();
+		final int[] c = new int[n];
+		Queue<Future<?>> futures = new LinkedList<Future<?>>();
+		for (int i = 0; i < n; i += CHUNK) {
+			final int from = i;
+			final int to = Math.min(n, i + CHUNK);
+			futures.add(exec.submit(new Runnable() {
+				@Override
+				public void run() {
+					for (int i = from; i < to; i++) {
+						double[] x = samples.get(i);
+						double dmin = Double.POSITIVE_INFINITY;
+						for (int g = 0; g < mu.length; g++) {
+							double d = VectorOperations.d2p2(x, mu[g]);
+							if (d < dmin) {
+								dmin = d;
+								c[i] = g;
+							}
+						}
+					}
+				}
+			}));
+		}
+		ThreadPoolServer.awaitAll(futures);
+		return c;
 	}
 
 	/*
@@ -213,6 +600,15 @@ public class DoubleKMeans implements DensityFunction<double[]> {
 		return index;
 	}
 
+	/**
+	 * Tells the means of the clusters
+	 * 
+	 * @return the array of means
+	 */
+	public double[][] getMeans() {
+		return means;
+	}
+
 	/**
 	 * Return an array containing the squared distances to each clusters
 	 * 
@@ -227,4 +623,63 @@ public class DoubleKMeans implements DensityFunction<double[]> {
 		}
 		return d;
 	}
+
+	/**
+	 * Tells the initialization method of the means
+	 * 
+	 * @return RANDOM_INIT or KMEANSPP_INIT (default)
+	 */
+	public int getInit() {
+		return init;
+	}
+
+	/**
+	 * Sets the initialization method of the means
+	 * 
+	 * @param init
+	 *            RANDOM_INIT or KMEANSPP_INIT (default)
+	 */
+	public void setInit(int init) {
+		this.init = init;
+	}
+
+	/**
+	 * Tells the maximum number of Lloyd iterations
+	 * 
+	 * @return the maximum number of iterations
+	 */
+	public int getMaxIterations() {
+		return maxIterations;
+	}
+
+	/**
+	 * Sets the maximum number of Lloyd iterations (default 10000)
+	 * 
+	 * @param maxIterations
+	 *            the maximum number of iterations
+	 */
+	public void setMaxIterations(int maxIterations) {
+		this.maxIterations = maxIterations;
+	}
+
+	/**
+	 * Tells the number of samples of each mini-batch of
+	 * {@link #onlineTrain(TrainingSampleStream)}
+	 * 
+	 * @return the size of the mini-batches
+	 */
+	public int getBatchSize() {
+		return batchSize;
+	}
+
+	/**
+	 * Sets the number of samples of each mini-batch of
+	 * {@link #onlineTrain(TrainingSampleStream)} (default 1024)
+	 * 
+	 * @param batchSize
+	 *            the size of the mini-batches
+	 */
+	public void setBatchSize(int batchSize) {
+		this.batchSize = batchSize;
+	}
 }
@@ -38,7 +38,6 @@ import java.util.List;
 
 import net.jkernelmachines.kernel.Kernel;
 import net.jkernelmachines.kernel.SimpleCacheKernel;
-import net.jkernelmachines.kernel.ThreadedKernel;
 import net.jkernelmachines.kernel.adaptative.ThreadedSumKernel;
 import net.jkernelmachines.threading.ThreadedMatrixOperator;
 import net.jkernelmachines.type.TrainingSample;
@@ -119,15 +118,12 @@ public class SimpleMKLDensity<T> implements DensityFunction<T> {
 			list.add(new TrainingSample<T>(l.get(i), 1));
 		}
 		// caching matrices
-		ArrayList<SimpleCacheKernel<T>> km = new ArrayList<SimpleCacheKernel<T>>();
+		// Gaussian kernels differing only by gamma share their distance matrix
+		List<SimpleCacheKernel<T>> km = SimpleCacheKernel.cacheKernels(kernels, list);
 		ArrayList<Double> dm = new ArrayList<Double>();
 		double dm0 = 1. / kernels.size();
 		for (int i = 0; i < kernels.size(); i++) {
-			Kernel<T> k = kernels.get(i);
-			SimpleCacheKernel<T> csk = new SimpleCacheKernel<T>(
-					new ThreadedKernel<T>(k), list);
-			csk.setName(k.toString());
-			km.add(csk);
+			km.get(i).setName(kernels.get(i).toString());
 			dm.add(dm0);
 		}
 
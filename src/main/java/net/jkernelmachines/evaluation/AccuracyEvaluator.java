@@ -34,6 +34,7 @@ import java.util.List;
 import net.jkernelmachines.classifier.Classifier;
 import net.jkernelmachines.type.TrainingSample;
 import net.jkernelmachines.util.DebugPrinter;
+import net.jkernelmachines.util.metrics.Metrics;
 
 /**
  * Simple evaluation class for computing the accuracy on a testing set.
@@ -85,6 +86,7 @@ public class AccuracyEvaluator<T> implements Evaluator<T> {
 		}
 		if(testList != null) {
 			long time = System.currentTimeMillis();
+			long start = Metrics.start();
 			double good = 0;
 			for(TrainingSample<T> t : testList) {
 				double v = classifier.valueOf(t.sample);
@@ -92,6 +94,7 @@ public class AccuracyEvaluator<T> implements Evaluator<T> {
 					good++;
 			}
 			accuracy = good / (double) testList.size();
+			Metrics.stop(Metrics.TIME_PREDICTION, classifier, start);
 			debug.println(2, "evaluation done in "+(System.currentTimeMillis()-time)+"ms.");
 		}
 	}
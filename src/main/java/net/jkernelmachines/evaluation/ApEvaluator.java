@@ -40,6 +40,7 @@ import java.util.concurrent.TimeUnit;
 import net.jkernelmachines.classifier.Classifier;
 import net.jkernelmachines.type.TrainingSample;
 import net.jkernelmachines.util.DebugPrinter;
+import net.jkernelmachines.util.metrics.Metrics;
 
 /**
  * <p>
@@ -100,7 +101,9 @@ public class ApEvaluator<T> implements Serializable, Evaluator<T>
                     debug.println(2, "training done in "+(System.currentTimeMillis()-time)+" ms");
                 }
 		time = System.currentTimeMillis();
+		long start = Metrics.start();
 		esResults = evaluateSet(test);
+		Metrics.stop(Metrics.TIME_PREDICTION, classifier, start);
 		debug.println(2, "testingset done in "+(System.currentTimeMillis()-time));
 	}
 	
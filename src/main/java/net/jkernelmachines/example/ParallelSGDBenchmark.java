@@ -0,0 +1,131 @@
+/*******************************************************************************
+ * Copyright (c) 2016, David Picard.
+ * All rights reserved.
+ *
+ * Redistribution and use in source and binary forms, with or without modification,
+ * are permitted provided that the following conditions are met:
+ *
+ * 1. Redistributions of source code must retain the above copyright notice, this
+ * list of conditions and the following disclaimer.
+ *
+ * 2. Redistributions in binary form must reproduce the above copyright notice,
+ * this list of conditions and the following disclaimer in the documentation and/or
+ * other materials provided with the distribution.
+ *
+ * 3. Neither the name of the copyright holder nor the names of its contributors
+ * may be used to endorse or promote products derived from this software without
+ * specific prior written permission.
+ *
+ * THIS SOFTWARE IS PROVIDED BY THE COPYRIGHT HOLDERS AND CONTRIBUTORS "AS IS" AND
+ * ANY EXPRESS OR IMPLIED WARRANTIES, INCLUDING, BUT NOT LIMITED TO, THE IMPLIED
+ * WARRANTIES OF MERCHANTABILITY AND FITNESS FOR A PARTICULAR PURPOSE ARE
+ * DISCLAIMED. IN NO EVENT SHALL THE COPYRIGHT HOLDER OR CONTRIBUTORS BE LIABLE FOR
+ * ANY DIRECT, INDIRECT, INCIDENTAL, SPECIAL, EXEMPLARY, OR CONSEQUENTIAL DAMAGES
+ * (INCLUDING, BUT NOT LIMITED TO, PROCUREMENT OF SUBSTITUTE GOODS OR SERVICES;
+ * LOSS OF USE, DATA, OR PROFITS; OR BUSINESS INTERRUPTION) HOWEVER CAUSED AND ON
+ * ANY THEORY OF LIABILITY, WHETHER IN CONTRACT, STRICT LIABILITY, OR TORT
+ * (INCLUDING NEGLIGENCE OR OTHERWISE) ARISING IN ANY WAY OUT OF THE USE OF THIS
+ * SOFTWARE, EVEN IF ADVISED OF THE POSSIBILITY OF SUCH DAMAGE.
+ *******************************************************************************/
+package net.jkernelmachines.example;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Random;
+
+import net.jkernelmachines.classifier.Classifier;
+import net.jkernelmachines.classifier.DoublePegasosSVM;
+import net.jkernelmachines.classifier.DoubleSGD;
+import net.jkernelmachines.classifier.DoubleSGDQN;
+import net.jkernelmachines.type.TrainingSample;
+
+/**
+ * <p>Throughput of the multithreaded linear learners.</p>
+ * 
+ * <p>It generates samples with few non zero coordinates, stored as dense
+ * arrays as expected by the learners (n * dim * 8 bytes), then trains DoubleSGD,
+ * DoublePegasosSVM and DoubleSGDQN with an increasing number of threads.
+ * DoubleSGD runs in Hogwild and averaging modes, the other ones only average
+ * one model per thread. The number of samples processed per second
+ * and the training accuracy are printed for each setting.</p>
+ * 
+ * @author picard
+ *
+ */
+public class ParallelSGDBenchmark {
+
+	/**
+	 * @param args main arguments: number of samples, dimension and number of
+	 * non zero coordinates per sample
+	 */
+	public static void main(String[] args) {
+		
+		// defaults fit in about 160MB of heap
+		int n = (args.length > 0) ? Integer.parseInt(args[0]) : 20000;
+		int dim = (args.length > 1) ? Integer.parseInt(args[1]) : 1000;
+		int nnz = (args.length > 2) ? Integer.parseInt(args[2]) : 50;
+		int epochs = 5;
+		
+		//sparse samples labeled by a random hyperplane
+		Random rand = new Random(0);
+		double[] h = new double[dim];
+		for(int d = 0 ; d < dim ; d++)
+			h[d] = rand.nextGaussian();
+		List<TrainingSample<double[]>> train = new ArrayList<TrainingSample<double[]>>(n);
+		for(int i = 0 ; i < n ; i++) {
+			double[] x = new double[dim];
+			double v = 0;
+			for(int j = 0 ; j < nnz ; j++) {
+				int d = rand.nextInt(dim);
+				x[d] = rand.nextGaussian() / Math.sqrt(nnz);
+				v += h[d] * x[d];
+			}
+			train.add(new TrainingSample<double[]>(x, (v > 0) ? 1 : -1));
+		}
+		
+		int nbcpu = Runtime.getRuntime().availableProcessors();
+		System.out.println("samples: "+n+" dimension: "+dim+" non zero: "+nnz+" cpus: "+nbcpu);
+		System.out.println("classifier\tmode\tthreads\tsamples/s\taccuracy");
+		for(int mode = 0 ; mode < 2 ; mode++) {
+			boolean averaging = (mode == 1);
+			for(int p = 1 ; p <= nbcpu ; p *= 2) {
+				DoubleSGD sgd = new DoubleSGD();
+				sgd.setEpochs(epochs);
+				sgd.setNbThreads(p);
+				sgd.setAveraging(averaging);
+				run("DoubleSGD", sgd, train, (long) epochs * n, averaging, p);
+				if(!averaging)
+					continue;
+				
+				// the hyperplane goes through the origin
+				DoublePegasosSVM pegasos = new DoublePegasosSVM();
+				pegasos.setBias(false);
+				pegasos.setLambda(1e-2);
+				pegasos.setT(epochs * n / pegasos.getK());
+				pegasos.setNbThreads(p);
+				run("DoublePegasosSVM", pegasos, train, (long) epochs * n, averaging, p);
+				
+				DoubleSGDQN sgdqn = new DoubleSGDQN();
+				sgdqn.setEpochs(epochs);
+				sgdqn.setNbThreads(p);
+				run("DoubleSGDQN", sgdqn, train, (long) epochs * n, averaging, p);
+			}
+		}
+	}
+	
+	private static void run(String name, Classifier<double[]> c,
+			List<TrainingSample<double[]>> train, long samples, boolean averaging, int p) {
+		long time = System.nanoTime();
+		c.train(train);
+		double sec = (System.nanoTime() - time) / 1e9;
+		
+		int good = 0;
+		for(TrainingSample<double[]> t : train)
+			if(t.label * c.valueOf(t.sample) > 0)
+				good++;
+		
+		System.out.println(name+"\t"+(averaging ? "averaging" : "hogwild")+"\t"+p+"\t"
+				+(long) (samples / sec)+"\t"+(good / (double) train.size()));
+	}
+
+}
@@ -29,8 +29,6 @@
  *******************************************************************************/
 package net.jkernelmachines.kernel;
 
-import java.util.Map;
-
 /**
  * Not so useful &lt; key,value &gt; based caching method for Gaussian kernels
  * @author picard
@@ -46,8 +44,8 @@ public class GaussianICKernel<S, T> extends GaussianKernel<S> {
 	private static final long serialVersionUID = -8504726802546629864L;
 
 
-	private double[][] matrix;
-	private Map<S, Integer> map;
+	private float[][] matrix;
+	private IndexedCacheKernel<S, T> cache;
 	private double gamma = 1.0;
 	
 	/**
@@ -56,33 +54,28 @@ public class GaussianICKernel<S, T> extends GaussianKernel<S> {
 	 */
 	public GaussianICKernel(IndexedCacheKernel<S, T> k) {
 		
-		this.map = k.getMap();
-		double[][] m = k.getCacheMatrix();
+		this.cache = k;
+		int n = k.getMap().size();
 		
-		matrix = new double[m.length][m.length];
-		for(int x = 0 ; x < m.length ; x++)
-		for(int y = 0 ; y < m.length ; y++) {
-			double tmp = - Math.log(m[x][y]);
+		matrix = new float[n][n];
+		for(int x = 0 ; x < n ; x++)
+		for(int y = 0 ; y < n ; y++) {
+			double tmp = - Math.log(k.valueOf(x, y));
 			if(tmp < 1e-4)
 				matrix[x][y] = 0;
 			else
-				matrix[x][y] = tmp;
+				matrix[x][y] = (float) tmp;
 		}
 		
 	}
 	
 	@Override
 	public double distanceValueOf(S t1, S t2) {
-		assert(map.containsKey(t1) && map.containsKey(t2));
-		
-//		{
-//			System.err.println("<"+t1+","+t2+"> not in matrix !!!");
-//			return 0;
-//		}
-		int id1 = map.get(t1);
-		int id2 = map.get(t2);
+		int id1 = cache.indexOf(t1);
+		int id2 = cache.indexOf(t2);
+		assert(id1 >= 0 && id2 >= 0);
 		
-		return ((double)(float)matrix[id1][id2]);
+		return matrix[id1][id2];
 	}
 
 	@Override
@@ -100,7 +93,7 @@ public class GaussianICKernel<S, T> extends GaussianKernel<S> {
 		double tmp = -gamma*distanceValueOf(t1, t2);
 		if(tmp >= 10) //num cleaning
 			return 0;
-		return Math.exp(-gamma*distanceValueOf(t1, t2));
+		return Math.exp(tmp);
 	}
 
 	@Override
@@ -73,6 +73,35 @@ public abstract class GaussianKernel<T> extends Kernel<T> {
 	 */
 	public abstract double distanceValueOf(T t1, T t2);
 	
+	/**
+	 * Tells the value of this kernel for a given inner distance.
+	 * Subclasses overriding this method should also override {@link #isExponential()}.
+	 * @param d the distance between two samples
+	 * @return exp(-gamma * d)
+	 */
+	public double valueOfDistance(double d) {
+		return Math.exp(-getGamma() * d);
+	}
+	
+	/**
+	 * Tells if this kernel is exactly exp(-gamma * dist(x1, x2)), such that a product
+	 * of such kernels is the exponential of a weighted sum of distances.
+	 * @return true by default, false for kernels with another profile of the distance
+	 */
+	public boolean isExponential() {
+		return true;
+	}
+	
+	/**
+	 * Tells if another Gaussian kernel uses the same inner distance as this one,
+	 * such that both kernels only differ by gamma and can share the same distance matrix.
+	 * @param k the other kernel
+	 * @return true if both kernels have the same distance, false by default
+	 */
+	public boolean isSameDistance(GaussianKernel<T> k) {
+		return false;
+	}
+	
 	/**
 	 * Tells the distance matrix for a specified list of samples.
 	 * This is a threaded operation.
@@ -29,18 +29,32 @@
  *******************************************************************************/
 package net.jkernelmachines.kernel;
 
+import java.io.IOException;
+import java.io.ObjectInputStream;
+import java.io.ObjectOutputStream;
 import java.util.HashMap;
-import java.util.Iterator;
+import java.util.LinkedList;
+import java.util.List;
 import java.util.Map;
+import java.util.Queue;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.Future;
+import java.util.concurrent.ThreadPoolExecutor;
 
-import net.jkernelmachines.threading.ThreadedMatrixOperator;
+import net.jkernelmachines.threading.ThreadPoolServer;
+import net.jkernelmachines.type.TrainingSample;
 
 /**
  * <p>
  * Simple method of pair &lt; Key,Value &gt; for caching a kernel function.
  * </p>
  * <p>
- * A unique Key is assigned to each sample, and similarities between two samples are cached in Hashmaps using the keys.
+ * A unique Key is assigned to each sample, and similarities between two samples are cached using the keys.
+ * Keys are resolved to integer ids by an open addressing table, and similarities are stored in single precision.
+ * Since the kernel is symmetric, only the upper triangle of the matrix is stored, packed by lines.
+ * Once resolved with {@link #indexOf(Object)}, ids give direct access to the values and to the lines of the cache.
+ * The table depends on the hash codes of the keys, which may change between two executions
+ * (e.g. for enums), hence only the keys are serialized and the table is rebuilt on deserialization.
  * Warning: Safety granted by assertion. Disable assertion for a faster but riskier execution.
  * </p>
  * @author picard
@@ -54,12 +68,20 @@ public final class IndexedCacheKernel<S,T> extends Kernel<S> {
 	/**
 	 * 
 	 */
-	private static final long serialVersionUID = 1706425748759430692L;
+	private static final long serialVersionUID = -3472518830950238617L;
 	
-	private double[][] matrix;
-	private HashMap<S, Integer> map;
+	// packed upper triangle, line x holds the values (x,y) for y >= x
+	private float[] matrix;
+	private int size;
+	// start of the lines in the packed triangle, shifted by the id of the line
+	private transient int[] lineStart;
 	final private transient Kernel<T> kernel;
 	
+	// open addressing table of keys and ids, rebuilt on deserialization
+	private transient Object[] keys;
+	private transient int[] ids;
+	private transient int mask;
+	
 	/**
 	 * Constructor using an underlying kernel and a map of &lt; Key, Sample &gt;
 	 * @param k the underlying kernel
@@ -68,87 +90,257 @@ public final class IndexedCacheKernel<S,T> extends Kernel<S> {
 	public IndexedCacheKernel(Kernel<T> k, final Map<S, T> signatures)
 	{
 		this.kernel = k;
+		int n = signatures.size();
 		
-		matrix = new double[signatures.size()][signatures.size()];
-	
 		//adding index
-		map = new HashMap<S, Integer>(signatures.size());
-		final HashMap<Integer, S> rmap = new HashMap<Integer, S>(signatures.size());
+		Object[] byId = new Object[n];
+		@SuppressWarnings("unchecked")
+		final T[] samples = (T[]) new Object[n];
 		int index = 0;
-		for(S s : signatures.keySet())
+		for(Map.Entry<S, T> e : signatures.entrySet())
 		{
-			map.put(s, index);
-			rmap.put(index, s);
+			byId[index] = e.getKey();
+			samples[index] = e.getValue();
 			index++;
 		}
+		buildTable(byId);
 		
-		//computing matrix				
-		ThreadedMatrixOperator factory = new ThreadedMatrixOperator()
-		{
-			@Override
-			public void doLines(double[][] matrix, int from, int to) {
-				for(int index = from ; index < to ; index++)
-				{
-					//reverse search through mapping S <-> index
-					S s1 = rmap.get(index);
-					//mapped signature
-					T t1 = signatures.get(s1);
-
-					//all mapping S <-> T
-					for(Iterator<S> iter = map.keySet().iterator() ; iter.hasNext() ;)
-					{
-						S s2 = iter.next();
-						//get index of s2
-						int j = map.get(s2);
-						//get signature of s2
-						T t2 = signatures.get(s2);
-						//add value of kernel
-						matrix[index][j] = kernel.valueOf(t1, t2);
+		//computing upper triangle of the matrix by blocks of lines
+		size = n;
+		buildLines();
+		matrix = new float[(int) ((long) n * (n + 1) / 2)];
+		ThreadPoolExecutor threadPool = ThreadPoolServer.getThreadPoolExecutor();
+		Queue<Future<?>> futures = new LinkedList<Future<?>>();
+		try {
+			for(int i = 0 ; i < n ; i += 16) {
+				final int from = i;
+				final int to = Math.min(n, i + 16);
+				futures.add(threadPool.submit(new Runnable() {
+					@Override
+					public void run() {
+						for(int x = from ; x < to ; x++) {
+							int start = lineStart[x];
+							for(int y = x ; y < size ; y++) {
+								matrix[start + y] = (float) kernel.valueOf(samples[x], samples[y]);
+							}
+						}
 					}
-				}
-			};
-		};
-
-
-		/* do the actuel computing of the matrix */
-		matrix = factory.getMatrix(matrix);
-				
+				}));
+			}
+			while(!futures.isEmpty()) {
+				futures.remove().get();
+			}
+		} catch (InterruptedException | ExecutionException e) {
+			throw new RuntimeException("Failed threading cache computation", e);
+		} finally {
+			ThreadPoolServer.shutdownNow(threadPool);
+		}
+	}
+	
+	/**
+	 * builds the open addressing table from the keys in the order of ids
+	 */
+	private void buildTable(Object[] byId) {
+		int capacity = 2;
+		while(capacity < 2 * byId.length)
+			capacity <<= 1;
+		keys = new Object[capacity];
+		ids = new int[capacity];
+		mask = capacity - 1;
+		for(int id = 0 ; id < byId.length ; id++) {
+			int slot = slot(byId[id]);
+			keys[slot] = byId[id];
+			ids[slot] = id;
+		}
+	}
+	
+	/**
+	 * builds the starts of the lines in the packed triangle
+	 */
+	private void buildLines() {
+		lineStart = new int[size];
+		int start = 0;
+		for(int x = 0 ; x < size ; x++) {
+			lineStart[x] = start - x;
+			start += size - x;
+		}
+	}
+	
+	/**
+	 * packed value between two ids
+	 */
+	private float get(int id1, int id2) {
+		return (id1 <= id2) ? matrix[lineStart[id1] + id2] : matrix[lineStart[id2] + id1];
+	}
+	
+	/**
+	 * slot of a key in the table: either the key itself or the first empty slot
+	 */
+	private int slot(Object key) {
+		int h = key.hashCode() * 0x9E3779B9;
+		int slot = (h ^ (h >>> 16)) & mask;
+		while(keys[slot] != null && !keys[slot].equals(key)) {
+			slot = (slot + 1) & mask;
+		}
+		return slot;
+	}
+	
+	/**
+	 * Tells the id of a key in the cache
+	 * @param key the key
+	 * @return the id, or -1 if the key is not in the cache
+	 */
+	public int indexOf(S key) {
+		int slot = slot(key);
+		return (keys[slot] == null) ? -1 : ids[slot];
 	}
 	
 	@Override
 	public final double valueOf(S t1, S t2) {
+		int id1 = indexOf(t1);
+		int id2 = indexOf(t2);
 		//return 0 if doesn't know of
-		assert(map.containsKey(t1) && map.containsKey(t2));
-		
-//		{
-//			System.err.println("<"+t1+","+t2+"> not in matrix !!!");
-//			return 0;
-//		}
-		int id1 = map.get(t1);
-		int id2 = map.get(t2);
+		assert(id1 >= 0 && id2 >= 0);
 		
-		return ((double)(float)matrix[id1][id2]);
+		return get(id1, id2);
 	}
 
 	@Override
 	public double valueOf(S t1) {
 		//return 0 if doesn't know of
-		if(!map.containsKey(t1))
+		int id = indexOf(t1);
+		if(id < 0)
 		{
 			System.err.println("<"+t1+","+t1+"> not in matrix !!!");
 			return 0;
 		}
 		
-		int id = map.get(t1);
-		return ((double)(float)matrix[id][id]);
+		return get(id, id);
+	}
+	
+	/**
+	 * Cached value between two ids
+	 * @param id1 id of the first sample
+	 * @param id2 id of the second sample
+	 * @return the kernel value
+	 */
+	public double valueOf(int id1, int id2) {
+		return get(id1, id2);
+	}
+	
+	/**
+	 * Line of the cache for a given id, in the order of ids
+	 * @param id the id of the sample
+	 * @return the line of the cache, rebuilt from the packed triangle
+	 */
+	public float[] getCacheLine(int id) {
+		float[] line = new float[size];
+		for(int y = 0 ; y < id ; y++) {
+			line[y] = matrix[lineStart[y] + id];
+		}
+		System.arraycopy(matrix, lineStart[id] + id, line, id, size - id);
+		return line;
+	}
+	
+	@Override
+	public double[][] getKernelMatrix(List<TrainingSample<S>> l) {
+		int[] id = new int[l.size()];
+		for(int i = 0 ; i < id.length ; i++) {
+			id[i] = indexOf(l.get(i).sample);
+			if(id[i] < 0) {
+				return super.getKernelMatrix(l);
+			}
+		}
+		double[][] m = new double[id.length][id.length];
+		for(int i = 0 ; i < id.length ; i++) {
+			double[] mi = m[i];
+			for(int j = i ; j < id.length ; j++) {
+				mi[j] = get(id[i], id[j]);
+				m[j][i] = mi[j];
+			}
+		}
+		return m;
+	}
+	
+	@Override
+	public double[] getKernelMatrixLine(S x, List<TrainingSample<S>> l) {
+		int idx = indexOf(x);
+		if(idx < 0) {
+			return super.getKernelMatrixLine(x, l);
+		}
+		double[] ki = new double[l.size()];
+		for(int i = 0 ; i < ki.length ; i++) {
+			int id = indexOf(l.get(i).sample);
+			if(id < 0) {
+				return super.getKernelMatrixLine(x, l);
+			}
+			ki[i] = get(idx, id);
+		}
+		return ki;
 	}
 	
+	/**
+	 * Map of keys and ids. The map is built at each call.
+	 * @return the map of keys and ids
+	 */
+	@SuppressWarnings("unchecked")
 	public Map<S, Integer> getMap() {
+		Map<S, Integer> map = new HashMap<S, Integer>(size);
+		for(int slot = 0 ; slot < keys.length ; slot++) {
+			if(keys[slot] != null) {
+				map.put((S) keys[slot], ids[slot]);
+			}
+		}
 		return map;
 	}
 	
+	/**
+	 * Cached matrix in single precision, in the order of ids
+	 * @return the cached matrix, rebuilt from the packed triangle
+	 */
+	public float[][] getFloatCacheMatrix() {
+		float[][] m = new float[size][size];
+		for(int x = 0 ; x < size ; x++) {
+			int start = lineStart[x];
+			for(int y = x ; y < size ; y++) {
+				m[x][y] = matrix[start + y];
+				m[y][x] = m[x][y];
+			}
+		}
+		return m;
+	}
+	
+	private void writeObject(ObjectOutputStream out) throws IOException {
+		out.defaultWriteObject();
+		Object[] byId = new Object[size];
+		for(int slot = 0 ; slot < keys.length ; slot++) {
+			if(keys[slot] != null) {
+				byId[ids[slot]] = keys[slot];
+			}
+		}
+		out.writeObject(byId);
+	}
+	
+	private void readObject(ObjectInputStream in) throws IOException, ClassNotFoundException {
+		in.defaultReadObject();
+		buildTable((Object[]) in.readObject());
+		buildLines();
+	}
+	
+	/**
+	 * Cached matrix in double precision, in the order of ids
+	 * @return a copy of the cached matrix
+	 */
 	public double[][] getCacheMatrix() {
-		return matrix;
+		double[][] m = new double[size][size];
+		for(int x = 0 ; x < size ; x++) {
+			int start = lineStart[x];
+			for(int y = x ; y < size ; y++) {
+				m[x][y] = matrix[start + y];
+				m[y][x] = m[x][y];
+			}
+		}
+		return m;
 	}
 
 }
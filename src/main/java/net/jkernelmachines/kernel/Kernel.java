@@ -35,6 +35,7 @@ import java.util.List;
 
 import net.jkernelmachines.threading.ThreadedMatrixOperator;
 import net.jkernelmachines.type.TrainingSample;
+import net.jkernelmachines.util.metrics.Metrics;
 
 /**
  * Base class for kernels
@@ -94,6 +95,7 @@ public abstract class Kernel<T> implements Serializable {
 	 * @return double[][] containing similarities in the order of the list.
 	 */
 	public double[][] getKernelMatrix(final List<TrainingSample<T>> l) {
+		long start = Metrics.start();
 		double[][] matrix = new double[l.size()][l.size()];
 
 		// computing matrix
@@ -112,6 +114,8 @@ public abstract class Kernel<T> implements Serializable {
 
 		factory.getMatrix(matrix);
 
+		Metrics.count(Metrics.KERNEL_EVALUATIONS, this, (long) l.size() * (l.size() + 1) / 2);
+		Metrics.stop(Metrics.TIME_GRAM, this, start);
 		return matrix;
 	}
 
@@ -152,6 +156,7 @@ public abstract class Kernel<T> implements Serializable {
 		for (int i = 0; i < l.size(); i++) {
 			ki[i] = valueOf(x, l.get(i).sample);
 		}
+		Metrics.count(Metrics.KERNEL_EVALUATIONS, this, l.size());
 		return ki;
 	}
 
@@ -29,8 +29,11 @@
  *******************************************************************************/
 package net.jkernelmachines.kernel;
 
+import java.util.ArrayList;
+import java.util.Arrays;
 import java.util.List;
 
+import net.jkernelmachines.threading.ThreadedMatrixOperator;
 import net.jkernelmachines.type.TrainingSample;
 
 /**
@@ -64,6 +67,19 @@ public final class SimpleCacheKernel<T> extends Kernel<T> {
 		matrix = new ThreadedKernel<>(k).getKernelMatrix(l);
 	}
 
+	/**
+	 * Constructor using a kernel and its already computed Gram matrix
+	 * 
+	 * @param k
+	 *            the underlying of this caching kernel
+	 * @param m
+	 *            the Gram matrix of k on the list of samples
+	 */
+	public SimpleCacheKernel(Kernel<T> k, double[][] m) {
+		kernel = k;
+		matrix = m;
+	}
+
 	@Override
 	final public double valueOf(T t1, T t2) {
 		return kernel.valueOf(t1, t2);
@@ -90,6 +106,65 @@ public final class SimpleCacheKernel<T> extends Kernel<T> {
 		return kernel;
 	}
 
+	/**
+	 * Caches the Gram matrices of a list of kernels on the same list of
+	 * samples. Gaussian kernels that only differ by gamma (see
+	 * {@link GaussianKernel#isSameDistance(GaussianKernel)}) share a single
+	 * distance matrix, from which their Gram matrices are derived.
+	 * 
+	 * @param kernels
+	 *            the list of kernels
+	 * @param l
+	 *            the list on which to compute the Gram matrices
+	 * @return the list of caching kernels, in the order of the input kernels
+	 */
+	@SuppressWarnings("unchecked")
+	public static <T> List<SimpleCacheKernel<T>> cacheKernels(
+			List<? extends Kernel<T>> kernels, List<TrainingSample<T>> l) {
+		SimpleCacheKernel<T>[] cache = new SimpleCacheKernel[kernels.size()];
+		for (int i = 0; i < kernels.size(); i++) {
+			if (cache[i] != null) {
+				continue;
+			}
+			Kernel<T> k = kernels.get(i);
+			if (!(k instanceof GaussianKernel)) {
+				cache[i] = new SimpleCacheKernel<T>(k, l);
+				continue;
+			}
+			// family of kernels sharing the distance of k
+			GaussianKernel<T> g = (GaussianKernel<T>) k;
+			List<Integer> family = new ArrayList<Integer>();
+			family.add(i);
+			for (int j = i + 1; j < kernels.size(); j++) {
+				if (cache[j] == null && kernels.get(j) instanceof GaussianKernel
+						&& g.isSameDistance((GaussianKernel<T>) kernels.get(j))) {
+					family.add(j);
+				}
+			}
+			if (family.size() == 1) {
+				cache[i] = new SimpleCacheKernel<T>(k, l);
+				continue;
+			}
+			final double[][] dist = g.getDistanceMatrix(l);
+			for (int j : family) {
+				final GaussianKernel<T> gj = (GaussianKernel<T>) kernels.get(j);
+				ThreadedMatrixOperator factory = new ThreadedMatrixOperator() {
+					@Override
+					public void doLines(double[][] matrix, int from, int to) {
+						for (int index = from; index < to; index++) {
+							for (int x = 0; x < matrix.length; x++) {
+								matrix[index][x] = gj.valueOfDistance(dist[index][x]);
+							}
+						}
+					}
+				};
+				cache[j] = new SimpleCacheKernel<T>(gj,
+						factory.getMatrix(new double[l.size()][l.size()]));
+			}
+		}
+		return Arrays.asList(cache);
+	}
+
 	@Override
 	public String toString() {
 		return kernel.toString();
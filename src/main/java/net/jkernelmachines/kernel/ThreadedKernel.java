@@ -33,6 +33,7 @@ import java.util.List;
 
 import net.jkernelmachines.threading.ThreadedMatrixOperator;
 import net.jkernelmachines.type.TrainingSample;
+import net.jkernelmachines.util.metrics.Metrics;
 
 /**
  * Simple multithreaded implementation over a given Kernel. The multithreading comes only when
@@ -76,6 +77,7 @@ public class ThreadedKernel<T> extends Kernel<T> {
 	@Override
 	public double[][] getKernelMatrix(final List<TrainingSample<T>> l) {
 		
+		long start = Metrics.start();
 		final List<TrainingSample<T>> e = l;
 		double[][] matrix = new double[e.size()][e.size()];
 				
@@ -99,6 +101,8 @@ public class ThreadedKernel<T> extends Kernel<T> {
 		/* do the actuel computing of the matrix */
 		matrix = factory.getMatrix(matrix);
 		
+		Metrics.count(Metrics.KERNEL_EVALUATIONS, k, (long) l.size() * (l.size() + 1) / 2);
+		Metrics.stop(Metrics.TIME_GRAM, k, start);
 		return matrix;
 	}
 
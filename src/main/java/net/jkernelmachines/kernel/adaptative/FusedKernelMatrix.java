@@ -0,0 +1,270 @@
+/*******************************************************************************
+ * Copyright (c) 2016, David Picard.
+ * All rights reserved.
+ *
+ * Redistribution and use in source and binary forms, with or without modification,
+ * are permitted provided that the following conditions are met:
+ *
+ * 1. Redistributions of source code must retain the above copyright notice, this
+ * list of conditions and the following disclaimer.
+ *
+ * 2. Redistributions in binary form must reproduce the above copyright notice,
+ * this list of conditions and the following disclaimer in the documentation and/or
+ * other materials provided with the distribution.
+ *
+ * 3. Neither the name of the copyright holder nor the names of its contributors
+ * may be used to endorse or promote products derived from this software without
+ * specific prior written permission.
+ *
+ * THIS SOFTWARE IS PROVIDED BY THE COPYRIGHT HOLDERS AND CONTRIBUTORS "AS IS" AND
+ * ANY EXPRESS OR IMPLIED WARRANTIES, INCLUDING, BUT NOT LIMITED TO, THE IMPLIED
+ * WARRANTIES OF MERCHANTABILITY AND FITNESS FOR A PARTICULAR PURPOSE ARE
+ * DISCLAIMED. IN NO EVENT SHALL THE COPYRIGHT HOLDER OR CONTRIBUTORS BE LIABLE FOR
+ * ANY DIRECT, INDIRECT, INCIDENTAL, SPECIAL, EXEMPLARY, OR CONSEQUENTIAL DAMAGES
+ * (INCLUDING, BUT NOT LIMITED TO, PROCUREMENT OF SUBSTITUTE GOODS OR SERVICES;
+ * LOSS OF USE, DATA, OR PROFITS; OR BUSINESS INTERRUPTION) HOWEVER CAUSED AND ON
+ * ANY THEORY OF LIABILITY, WHETHER IN CONTRACT, STRICT LIABILITY, OR TORT
+ * (INCLUDING NEGLIGENCE OR OTHERWISE) ARISING IN ANY WAY OUT OF THE USE OF THIS
+ * SOFTWARE, EVEN IF ADVISED OF THE POSSIBILITY OF SUCH DAMAGE.
+ *******************************************************************************/
+package net.jkernelmachines.kernel.adaptative;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.LinkedList;
+import java.util.List;
+import java.util.Map;
+import java.util.Queue;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.Future;
+import java.util.concurrent.ThreadPoolExecutor;
+
+import net.jkernelmachines.kernel.GaussianKernel;
+import net.jkernelmachines.kernel.Kernel;
+import net.jkernelmachines.kernel.SimpleCacheKernel;
+import net.jkernelmachines.threading.ThreadPoolServer;
+import net.jkernelmachines.type.TrainingSample;
+import net.jkernelmachines.util.metrics.Metrics;
+
+/**
+ * Gram matrix of a combination of kernels, computed in a single parallel sweep
+ * over tiles of the matrix. In each tile, all active kernels are evaluated and
+ * accumulated, such that no intermediate matrix is built for each kernel.
+ * Kernels with their own Gram matrix computation (overriding
+ * {@link Kernel#getKernelMatrix(List)}, such as {@link SimpleCacheKernel} or
+ * the bag kernels over an element cache) have their matrix computed once and
+ * read instead of being evaluated pair by pair.
+ * 
+ * @author picard
+ * 
+ * @param <T>
+ *            samples datatype
+ */
+final class FusedKernelMatrix<T> {
+
+	/** K = sum_i w_i k_i */
+	static final int SUM = 0;
+	/** K = prod_i k_i^w_i */
+	static final int PRODUCT = 1;
+	/**
+	 * K = exp(-sum_i w_i d_i), d_i distance of Gaussian kernel i, for
+	 * exponential kernels, times prod_j k_j with gamma_j = w_j for the others
+	 */
+	static final int GAUSSIAN = 2;
+
+	private static final int TILE = 64;
+
+	private final int mode;
+	private final Kernel<T>[] kernels;
+	private final double[] weights;
+	// Gaussian kernels which are not exp(-gamma d), null if none
+	private final boolean[] nonExponential;
+
+	/**
+	 * Compiles the active kernels (non zero weights) into flat arrays.
+	 */
+	@SuppressWarnings("unchecked")
+	FusedKernelMatrix(int mode, List<? extends Kernel<T>> k, List<Double> w) {
+		this.mode = mode;
+		int n = 0;
+		for (double d : w) {
+			if (d != 0) {
+				n++;
+			}
+		}
+		kernels = new Kernel[n];
+		weights = new double[n];
+		n = 0;
+		for (int i = 0; i < k.size(); i++) {
+			if (w.get(i) != 0) {
+				kernels[n] = k.get(i);
+				weights[n] = w.get(i);
+				n++;
+			}
+		}
+		boolean[] ne = null;
+		if (mode == GAUSSIAN) {
+			for (int i = 0; i < n; i++) {
+				GaussianKernel<T> g = (GaussianKernel<T>) kernels[i];
+				if (!g.isExponential()) {
+					if (ne == null) {
+						ne = new boolean[n];
+					}
+					ne[i] = true;
+					g.setGamma(weights[i]);
+				}
+			}
+		}
+		nonExponential = ne;
+	}
+
+	/**
+	 * Compiles the active kernels of a map of weights.
+	 */
+	static <T> FusedKernelMatrix<T> fromMap(int mode,
+			Map<? extends Kernel<T>, Double> map) {
+		List<Kernel<T>> k = new ArrayList<Kernel<T>>();
+		List<Double> w = new ArrayList<Double>();
+		synchronized (map) {
+			for (Map.Entry<? extends Kernel<T>, Double> e : map.entrySet()) {
+				k.add(e.getKey());
+				w.add(e.getValue());
+			}
+		}
+		return new FusedKernelMatrix<T>(mode, k, w);
+	}
+
+	/**
+	 * Computes the Gram matrix on a list of samples
+	 */
+	double[][] getKernelMatrix(final List<TrainingSample<T>> l) {
+		long start = Metrics.start();
+		final int n = l.size();
+		final double[][] matrix = new double[n][n];
+
+		// matrices of kernels with their own Gram computation, the distances
+		// of Gaussian kernels are always evaluated by pairs
+		final double[][][] cached = new double[kernels.length][][];
+		if (mode != GAUSSIAN) {
+			for (int k = 0; k < kernels.length; k++) {
+				if (hasOwnKernelMatrix(kernels[k])) {
+					cached[k] = kernels[k].getKernelMatrix(l);
+				}
+			}
+		}
+
+		ThreadPoolExecutor exec = ThreadPoolServer.getThreadPoolExecutor();
+		Queue<Future<?>> futures = new LinkedList<Future<?>>();
+		try {
+			for (int bi = 0; bi < n; bi += TILE) {
+				for (int bj = bi; bj < n; bj += TILE) {
+					final int i0 = bi;
+					final int j0 = bj;
+					futures.add(exec.submit(new Runnable() {
+						@Override
+						public void run() {
+							tile(l, matrix, cached, i0, Math.min(n, i0 + TILE),
+									j0, Math.min(n, j0 + TILE));
+						}
+					}));
+				}
+			}
+			ThreadPoolServer.awaitAll(futures);
+		} catch (ExecutionException e) {
+			throw new RuntimeException("Failed threading kernel matrix", e);
+		} finally {
+			ThreadPoolServer.shutdownNow(exec);
+		}
+		for (int k = 0; k < kernels.length; k++) {
+			if (cached[k] == null) {
+				Metrics.count(Metrics.KERNEL_EVALUATIONS, kernels[k], (long) n * (n + 1) / 2);
+			}
+		}
+		Metrics.stop(Metrics.TIME_GRAM, this, start);
+		return matrix;
+	}
+
+	/**
+	 * tells if a kernel overrides the pairwise Gram matrix of {@link Kernel}
+	 */
+	static boolean hasOwnKernelMatrix(Kernel<?> kernel) {
+		try {
+			return kernel.getClass().getMethod("getKernelMatrix", List.class)
+					.getDeclaringClass() != Kernel.class;
+		} catch (NoSuchMethodException e) {
+			return false;
+		}
+	}
+
+	/**
+	 * computes the tile [i0,i1[ x [j0,j1[ of the upper triangle and its
+	 * symmetric
+	 */
+	private void tile(List<TrainingSample<T>> l, double[][] matrix,
+			double[][][] cached, int i0, int i1, int j0, int j1) {
+		double[][] acc = new double[i1 - i0][j1 - j0];
+		double init = (mode == PRODUCT) ? 1 : 0;
+		for (double[] a : acc) {
+			Arrays.fill(a, init);
+		}
+		// product of the non exponential Gaussian kernels
+		double[][] prod = null;
+		if (nonExponential != null) {
+			prod = new double[i1 - i0][j1 - j0];
+			for (double[] p : prod) {
+				Arrays.fill(p, 1);
+			}
+		}
+
+		for (int k = 0; k < kernels.length; k++) {
+			Kernel<T> kernel = kernels[k];
+			double w = weights[k];
+			double[][] m = cached[k];
+			if (nonExponential != null && nonExponential[k]) {
+				GaussianKernel<T> g = (GaussianKernel<T>) kernel;
+				for (int i = i0; i < i1; i++) {
+					T xi = l.get(i).sample;
+					double[] p = prod[i - i0];
+					for (int j = Math.max(i, j0); j < j1; j++) {
+						p[j - j0] *= g.valueOfDistance(g.distanceValueOf(xi,
+								l.get(j).sample));
+					}
+				}
+				continue;
+			}
+			for (int i = i0; i < i1; i++) {
+				T xi = l.get(i).sample;
+				double[] a = acc[i - i0];
+				for (int j = Math.max(i, j0); j < j1; j++) {
+					double v;
+					if (m != null) {
+						v = m[i][j];
+					} else if (mode == GAUSSIAN) {
+						v = ((GaussianKernel<T>) kernel).distanceValueOf(xi,
+								l.get(j).sample);
+					} else {
+						v = kernel.valueOf(xi, l.get(j).sample);
+					}
+					if (mode == PRODUCT) {
+						a[j - j0] *= (w == 1) ? v : Math.pow(v, w);
+					} else {
+						a[j - j0] += w * v;
+					}
+				}
+			}
+		}
+
+		for (int i = i0; i < i1; i++) {
+			double[] a = acc[i - i0];
+			for (int j = Math.max(i, j0); j < j1; j++) {
+				double v = (mode == GAUSSIAN) ? Math.exp(-a[j - j0]) : a[j - j0];
+				if (prod != null) {
+					v *= prod[i - i0][j - j0];
+				}
+				matrix[i][j] = v;
+				matrix[j][i] = v;
+			}
+		}
+	}
+
+}
@@ -29,14 +29,12 @@
  *******************************************************************************/
 package net.jkernelmachines.kernel.adaptative;
 
-import java.util.Arrays;
 import java.util.HashMap;
 import java.util.List;
 import java.util.Map;
 
 import net.jkernelmachines.kernel.GaussianKernel;
 import net.jkernelmachines.kernel.Kernel;
-import net.jkernelmachines.threading.ThreadedMatrixOperator;
 import net.jkernelmachines.type.TrainingSample;
 
 /**
@@ -142,17 +140,26 @@ public class GaussianProductKernel<T> extends Kernel<T> {
 	
 	@Override
 	public double valueOf(T t1, T t2) {
-		double sum = 1.;
-		for(GaussianKernel<T> k : kernels.keySet())
+		double sum = 0.;
+		double prod = 1.;
+		for(Map.Entry<GaussianKernel<T>, Double> e : kernels.entrySet())
 		{
-			double w = kernels.get(k);
+			double w = e.getValue();
 			if(w != 0) {
-				k.setGamma(w);
-				sum *= k.valueOf(t1, t2);
+				GaussianKernel<T> k = e.getKey();
+				double d = k.distanceValueOf(t1, t2);
+				if(k.isExponential()) {
+					sum += w * d;
+				}
+				else {
+					if(k.getGamma() != w)
+						k.setGamma(w);
+					prod *= k.valueOfDistance(d);
+				}
 			}
 		}
 		
-		return sum;
+		return prod * Math.exp(-sum);
 	}
 
 	@Override
@@ -169,46 +176,16 @@ public class GaussianProductKernel<T> extends Kernel<T> {
 		return kernels;
 	}
 	
+	/**
+	 * Computes the Gram matrix in a single pass over tiles of the matrix, using
+	 * exp(-sum_i w_i d_i) with d_i the distance of minor kernel i, such that
+	 * only one exponential is evaluated per pair of samples. Minor kernels which
+	 * are not exponentials of their distance ({@link GaussianKernel#isExponential()})
+	 * are evaluated with gamma set to their weight and multiplied.
+	 */
 	@Override
 	public double[][] getKernelMatrix(List<TrainingSample<T>> list)
 	{
-		final List<TrainingSample<T>> l = list;
-		//init matrix with ones
-		double matrix[][] = new double[l.size()][l.size()];
-		for(double[] lines : matrix)
-			Arrays.fill(lines, 1.);
-		
-
-		for(final GaussianKernel<T> k : kernels.keySet())
-		{
-			final double w = kernels.get(k);
-			
-			//check w
-			if(w == 0)
-				continue;
-			
-			k.setGamma(w);
-			final double[][] m = k.getKernelMatrix(l);
-			// specific factory
-			ThreadedMatrixOperator tmo = new ThreadedMatrixOperator(){
-				
-				@Override
-				public void doLines(double[][] matrix , int from , int to) {
-					
-					for(int index = from ; index < to ; index++)
-					{
-						for(int i = 0 ; i < m[index].length ; i++)
-						{
-							matrix[index][i] *= m[index][i];
-						}
-					}
-				};
-				
-			};
-			
-			matrix = tmo.getMatrix(matrix);
-		}
-		
-		return matrix;
+		return FusedKernelMatrix.fromMap(FusedKernelMatrix.GAUSSIAN, kernels).getKernelMatrix(list);
 	}
 }
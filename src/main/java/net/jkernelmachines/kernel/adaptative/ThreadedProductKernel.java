@@ -29,13 +29,11 @@
  *******************************************************************************/
 package net.jkernelmachines.kernel.adaptative;
 
-import java.util.Arrays;
 import java.util.HashMap;
 import java.util.List;
 import java.util.Map;
 
 import net.jkernelmachines.kernel.Kernel;
-import net.jkernelmachines.threading.ThreadedMatrixOperator;
 import net.jkernelmachines.type.TrainingSample;
 
 /**
@@ -142,11 +140,11 @@ public class ThreadedProductKernel<T> extends Kernel<T> {
 	@Override
 	public double valueOf(T t1, T t2) {
 		double sum = 1.;
-		for(Kernel<T> k : kernels.keySet())
+		for(Map.Entry<Kernel<T>, Double> e : kernels.entrySet())
 		{
-			double w = kernels.get(k);
+			double w = e.getValue();
 			if(w != 0)
-				sum *= Math.pow(k.valueOf(t1, t2), kernels.get(k));
+				sum *= Math.pow(e.getKey().valueOf(t1, t2), w);
 		}
 		
 		return sum;
@@ -166,46 +164,14 @@ public class ThreadedProductKernel<T> extends Kernel<T> {
 		return kernels;
 	}
 	
+	/**
+	 * Computes the Gram matrix in a single pass over tiles of the matrix, in
+	 * which the powers of all minor kernels of non zero weight are multiplied.
+	 * Matrices of cached minor kernels are read instead of being computed.
+	 */
 	@Override
 	public double[][] getKernelMatrix(List<TrainingSample<T>> list)
 	{
-		final List<TrainingSample<T>> l = list;
-		//init matrix with ones
-		double matrix[][] = new double[l.size()][l.size()];
-		for(double[] lines : matrix)
-			Arrays.fill(lines, 1.);
-		
-
-		for(final Kernel<T> k : kernels.keySet())
-		{
-			final double w = kernels.get(k);
-			
-			//check w
-			if(w == 0)
-				continue;
-			
-
-			final double[][] m = k.getKernelMatrix(l);
-			// specific factory
-			ThreadedMatrixOperator tmo = new ThreadedMatrixOperator(){
-				
-				@Override
-				public void doLines(double[][] matrix , int from , int to) {
-					
-					for(int index = from ; index < to ; index++)
-					{
-						for(int i = 0 ; i < m[index].length ; i++)
-						{
-							matrix[index][i] *= Math.pow(m[index][i], w);
-						}
-					}
-				};
-				
-			};
-			
-			matrix = tmo.getMatrix(matrix);
-		}
-		
-		return matrix;
+		return FusedKernelMatrix.fromMap(FusedKernelMatrix.PRODUCT, kernels).getKernelMatrix(list);
 	}
 }
@@ -40,7 +40,6 @@ import java.util.concurrent.ThreadPoolExecutor;
 
 import net.jkernelmachines.kernel.Kernel;
 import net.jkernelmachines.threading.ThreadPoolServer;
-import net.jkernelmachines.threading.ThreadedMatrixOperator;
 import net.jkernelmachines.type.TrainingSample;
 import net.jkernelmachines.util.DebugPrinter;
 import net.jkernelmachines.util.algebra.VectorOperations;
@@ -141,10 +140,10 @@ public class ThreadedSumKernel<T> extends Kernel<T> {
 	@Override
 	public double valueOf(T t1, T t2) {
 		double sum = 0.;
-		for (Kernel<T> k : kernels.keySet()) {
-			double w = kernels.get(k);
+		for (Map.Entry<Kernel<T>, Double> e : kernels.entrySet()) {
+			double w = e.getValue();
 			if (w != 0)
-				sum += k.valueOf(t1, t2) * kernels.get(k);
+				sum += e.getKey().valueOf(t1, t2) * w;
 		}
 
 		return sum;
@@ -164,39 +163,14 @@ public class ThreadedSumKernel<T> extends Kernel<T> {
 		return kernels;
 	}
 
+	/**
+	 * Computes the Gram matrix in a single pass over tiles of the matrix, in
+	 * which all minor kernels of non zero weight are accumulated. Matrices of
+	 * cached minor kernels are read instead of being computed.
+	 */
 	@Override
 	public double[][] getKernelMatrix(List<TrainingSample<T>> list) {
-		final List<TrainingSample<T>> l = list;
-		// init matrix with zeros
-		double matrix[][] = new double[l.size()][l.size()];
-
-		for (final Kernel<T> k : kernels.keySet()) {
-			final double w = kernels.get(k);
-
-			// check w
-			if (w == 0)
-				continue;
-
-			final double[][] m = k.getKernelMatrix(l);
-			// specific factory
-			ThreadedMatrixOperator tmo = new ThreadedMatrixOperator() {
-
-				@Override
-				public void doLines(double[][] matrix, int from, int to) {
-					for (int index = from; index < to; index++) {
-						for (int j = index; j < matrix[index].length; j++) {
-							matrix[index][j] += m[index][j] * w;
-							matrix[j][index] = matrix[index][j];
-						}
-					}
-				};
-
-			};
-
-			matrix = tmo.getMatrix(matrix);
-		}
-
-		return matrix;
+		return FusedKernelMatrix.fromMap(FusedKernelMatrix.SUM, kernels).getKernelMatrix(list);
 	}
 
 	@Override
@@ -30,8 +30,10 @@
 package net.jkernelmachines.kernel.adaptative;
 
 import java.util.ArrayList;
+import java.util.List;
 
 import net.jkernelmachines.kernel.Kernel;
+import net.jkernelmachines.type.TrainingSample;
 
 /**
  * performs a weighted product of several minor kernels, non threaded version.
@@ -96,13 +98,28 @@ public class WeightedProductKernel<T> extends Kernel<T> {
 		weights.add(w);
 	}
 	
+	/**
+	 * Computes the Gram matrix in a single pass over tiles of the matrix, in
+	 * which the powers of all minor kernels of non zero weight are multiplied.
+	 * Matrices of cached minor kernels are read instead of being computed.
+	 */
+	@Override
+	public double[][] getKernelMatrix(List<TrainingSample<T>> l)
+	{
+		return new FusedKernelMatrix<T>(FusedKernelMatrix.PRODUCT, kernels, weights).getKernelMatrix(l);
+	}
+	
 	/**
 	 * removes a kernel from the product
 	 * @param k kernel
 	 */
 	public void removeKernel(Kernel<T> k)
 	{
-		kernels.remove(k);
+		int i = kernels.indexOf(k);
+		if(i >= 0) {
+			kernels.remove(i);
+			weights.remove(i);
+		}
 	}
 
 }
@@ -31,6 +31,7 @@ package net.jkernelmachines.kernel.adaptative;
 
 import java.util.Hashtable;
 import java.util.List;
+import java.util.Map;
 
 import net.jkernelmachines.kernel.Kernel;
 import net.jkernelmachines.type.TrainingSample;
@@ -122,8 +123,8 @@ public class WeightedSumKernel<T> extends Kernel<T> {
 	@Override
 	public double valueOf(T t1, T t2) {
 		double sum = 0.;
-		for(Kernel<T> k : kernels.keySet())
-			sum += kernels.get(k)*k.valueOf(t1, t2);
+		for(Map.Entry<Kernel<T>, Double> e : kernels.entrySet())
+			sum += e.getValue()*e.getKey().valueOf(t1, t2);
 		
 		return sum;
 	}
@@ -131,8 +132,8 @@ public class WeightedSumKernel<T> extends Kernel<T> {
 	@Override
 	public double valueOf(T t1) {
 		double sum = 0.;
-		for(Kernel<T> k : kernels.keySet())
-			sum += kernels.get(k)*k.valueOf(t1);
+		for(Map.Entry<Kernel<T>, Double> e : kernels.entrySet())
+			sum += e.getValue()*e.getKey().valueOf(t1);
 		
 		return sum;
 	}
@@ -146,28 +147,14 @@ public class WeightedSumKernel<T> extends Kernel<T> {
 		return kernels;
 	}
 
-	/* (non-Javadoc)
-	 * @see fr.lip6.kernel.Kernel#getKernelMatrix(java.util.ArrayList)
+	/**
+	 * Computes the Gram matrix in a single pass over tiles of the matrix, in
+	 * which all minor kernels of non zero weight are accumulated. Matrices of
+	 * cached minor kernels are read instead of being computed.
 	 */
 	@Override
 	public double[][] getKernelMatrix(List<TrainingSample<T>> e) {
-		double matrix[][] = new double[e.size()][e.size()];
-		
-		for(Kernel<T> k : kernels.keySet())
-		{
-			double[][] m = k.getKernelMatrix(e);
-			double w = kernels.get(k)/100;
-			w = w*100;
-			for(int i = 0 ; i < e.size() ; i++)
-			for(int j = i ; j < e.size() ; j++)
-			{
-				matrix[i][j] += w*m[i][j];
-				if(i != j)
-					matrix[j][i] += w*m[j][i];
-			}
-		}
-		
-		return matrix;
+		return FusedKernelMatrix.fromMap(FusedKernelMatrix.SUM, kernels).getKernelMatrix(e);
 	}
 
 	@Override
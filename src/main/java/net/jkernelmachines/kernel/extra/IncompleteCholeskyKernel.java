@@ -0,0 +1,369 @@
+/*******************************************************************************
+ * Copyright (c) 2016, David Picard.
+ * All rights reserved.
+ *
+ * Redistribution and use in source and binary forms, with or without modification,
+ * are permitted provided that the following conditions are met:
+ *
+ * 1. Redistributions of source code must retain the above copyright notice, this
+ * list of conditions and the following disclaimer.
+ *
+ * 2. Redistributions in binary form must reproduce the above copyright notice,
+ * this list of conditions and the following disclaimer in the documentation and/or
+ * other materials provided with the distribution.
+ *
+ * 3. Neither the name of the copyright holder nor the names of its contributors
+ * may be used to endorse or promote products derived from this software without
+ * specific prior written permission.
+ *
+ * THIS SOFTWARE IS PROVIDED BY THE COPYRIGHT HOLDERS AND CONTRIBUTORS "AS IS" AND
+ * ANY EXPRESS OR IMPLIED WARRANTIES, INCLUDING, BUT NOT LIMITED TO, THE IMPLIED
+ * WARRANTIES OF MERCHANTABILITY AND FITNESS FOR A PARTICULAR PURPOSE ARE
+ * DISCLAIMED. IN NO EVENT SHALL THE COPYRIGHT HOLDER OR CONTRIBUTORS BE LIABLE FOR
+ * ANY DIRECT, INDIRECT, INCIDENTAL, SPECIAL, EXEMPLARY, OR CONSEQUENTIAL DAMAGES
+ * (INCLUDING, BUT NOT LIMITED TO, PROCUREMENT OF SUBSTITUTE GOODS OR SERVICES;
+ * LOSS OF USE, DATA, OR PROFITS; OR BUSINESS INTERRUPTION) HOWEVER CAUSED AND ON
+ * ANY THEORY OF LIABILITY, WHETHER IN CONTRACT, STRICT LIABILITY, OR TORT
+ * (INCLUDING NEGLIGENCE OR OTHERWISE) ARISING IN ANY WAY OUT OF THE USE OF THIS
+ * SOFTWARE, EVEN IF ADVISED OF THE POSSIBILITY OF SUCH DAMAGE.
+ *******************************************************************************/
+package net.jkernelmachines.kernel.extra;
+
+import static java.lang.Math.min;
+
+import java.util.ArrayList;
+import java.util.LinkedList;
+import java.util.List;
+import java.util.Queue;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.Future;
+import java.util.concurrent.ThreadPoolExecutor;
+
+import net.jkernelmachines.kernel.Kernel;
+import net.jkernelmachines.kernel.typed.DoubleLinear;
+import net.jkernelmachines.threading.ThreadPoolServer;
+import net.jkernelmachines.type.TrainingSample;
+import net.jkernelmachines.util.DebugPrinter;
+
+/**
+ * <p>
+ * Low-rank approximation of a kernel by pivoted incomplete Cholesky
+ * decomposition: K ~ G*G' with G a n x r matrix.
+ * </p>
+ * <p>
+ * At each step, the sample with largest residual diagonal is chosen as pivot
+ * and only its kernel column is computed, until the trace of the residual falls
+ * below a tolerance relative to the trace of the kernel matrix, or the maximum
+ * rank is reached. The full Gram matrix is never computed.
+ * </p>
+ * <p>
+ * Any sample is projected to a vector of dimension r, with one kernel
+ * evaluation per pivot, such that linear learners or a linear PCA can be
+ * trained on the projected samples. The projections of the training samples
+ * are the lines of G.
+ * </p>
+ * 
+ * @author picard
+ * 
+ * @param <T>
+ *            datatype of input space
+ */
+public class IncompleteCholeskyKernel<T> extends Kernel<T> {
+
+	private static final long serialVersionUID = -2838402935128305402L;
+
+	private static DebugPrinter debug = new DebugPrinter();
+
+	private Kernel<T> kernel;
+	private DoubleLinear linear = new DoubleLinear();
+	private double tolerance = 1e-6;
+	private int maxRank = Integer.MAX_VALUE;
+
+	// pivots and lines of G for the pivots (lower triangular)
+	private List<TrainingSample<T>> pivots;
+	private double[][] factor;
+	// lines of G for the training samples
+	private double[][] trainFactor;
+
+	// number of samples per block of computation
+	private static final int BLOCK = 64;
+
+	/**
+	 * Default constructor with kernel to approximate as argument
+	 * 
+	 * @param kernel
+	 *            the kernel to be approximated
+	 */
+	public IncompleteCholeskyKernel(Kernel<T> kernel) {
+		this.kernel = kernel;
+	}
+
+	/**
+	 * Computes the incomplete Cholesky decomposition of the kernel matrix of a
+	 * list of samples.
+	 * 
+	 * @param list
+	 *            the training list of samples
+	 */
+	public void train(final List<TrainingSample<T>> list) {
+		final int n = list.size();
+		int R = min(maxRank, n);
+
+		// residual diagonal
+		final double[] diag = new double[n];
+		double trace = 0;
+		for (int i = 0; i < n; i++) {
+			diag[i] = kernel.valueOf(list.get(i).sample);
+			trace += diag[i];
+		}
+
+		// columns of G
+		final List<double[]> columns = new ArrayList<double[]>();
+		pivots = new ArrayList<TrainingSample<T>>();
+		final List<Integer> pivotIndices = new ArrayList<Integer>();
+
+		ThreadPoolExecutor exec = ThreadPoolServer.getThreadPoolExecutor();
+		try {
+			while (columns.size() < R) {
+				int p = 0;
+				double residual = 0;
+				for (int i = 0; i < n; i++) {
+					residual += diag[i];
+					if (diag[i] > diag[p]) {
+						p = i;
+					}
+				}
+				if (residual <= tolerance * trace || diag[p] <= 0) {
+					break;
+				}
+
+				final int pivot = p;
+				final T x = list.get(p).sample;
+				final double norm = Math.sqrt(diag[p]);
+				final double[] g = new double[n];
+				Queue<Future<?>> futures = new LinkedList<Future<?>>();
+				for (int b = 0; b < n; b += BLOCK) {
+					final int from = b;
+					final int to = min(n, b + BLOCK);
+					futures.add(exec.submit(new Runnable() {
+						@Override
+						public void run() {
+							for (int i = from; i < to; i++) {
+								if (diag[i] <= 0) {
+									continue;
+								}
+								double v = kernel.valueOf(list.get(i).sample, x);
+								for (double[] c : columns) {
+									v -= c[i] * c[pivot];
+								}
+								g[i] = v / norm;
+							}
+						}
+					}));
+				}
+				while (!futures.isEmpty()) {
+					futures.remove().get();
+				}
+				g[p] = norm;
+				for (int i = 0; i < n; i++) {
+					diag[i] -= g[i] * g[i];
+				}
+				// remove pivots and round-off residuals
+				for (int j : pivotIndices) {
+					diag[j] = 0;
+				}
+				diag[p] = 0;
+
+				columns.add(g);
+				pivots.add(list.get(p));
+				pivotIndices.add(p);
+			}
+		} catch (InterruptedException | ExecutionException e) {
+			throw new RuntimeException("Failed threading incomplete Cholesky",
+					e);
+		} finally {
+			ThreadPoolServer.shutdownNow(exec);
+		}
+
+		int r = columns.size();
+		debug.println(3, "incomplete Cholesky rank : " + r);
+		trainFactor = new double[n][r];
+		for (int d = 0; d < r; d++) {
+			double[] c = columns.get(d);
+			for (int i = 0; i < n; i++) {
+				trainFactor[i][d] = c[i];
+			}
+		}
+		factor = new double[r][];
+		for (int d = 0; d < r; d++) {
+			factor[d] = trainFactor[pivotIndices.get(d)];
+		}
+	}
+
+	/**
+	 * Project a sample to the space induced by the decomposition, by forward
+	 * substitution on the lines of G of the pivots.
+	 * 
+	 * @param sample
+	 *            the sample
+	 * @return projection of the sample
+	 */
+	public double[] projectSample(T sample) {
+		if (factor == null) {
+			return new double[1];
+		}
+		int r = factor.length;
+		double[] out = new double[r];
+		for (int d = 0; d < r; d++) {
+			double[] l = factor[d];
+			double v = kernel.valueOf(pivots.get(d).sample, sample);
+			for (int i = 0; i < d; i++) {
+				v -= l[i] * out[i];
+			}
+			out[d] = v / l[d];
+		}
+		return out;
+	}
+
+	/**
+	 * Project a list of samples to the space induced by the decomposition
+	 * 
+	 * @param l
+	 *            the list of samples
+	 * @return the list of projected samples, with the same labels
+	 */
+	public List<TrainingSample<double[]>> projectList(List<TrainingSample<T>> l) {
+		double[][] m = projectMatrix(l);
+		List<TrainingSample<double[]>> out = new ArrayList<TrainingSample<double[]>>(
+				l.size());
+		for (int i = 0; i < m.length; i++) {
+			out.add(new TrainingSample<double[]>(m[i], l.get(i).label));
+		}
+		return out;
+	}
+
+	/**
+	 * Project a list of samples to the space induced by the decomposition. The
+	 * projection is computed in parallel, by blocks of samples.
+	 * 
+	 * @param l
+	 *            the list of samples
+	 * @return the matrix of projected samples, one per line
+	 */
+	public double[][] projectMatrix(final List<TrainingSample<T>> l) {
+		final double[][] out = new double[l.size()][];
+		ThreadPoolExecutor exec = ThreadPoolServer.getThreadPoolExecutor();
+		Queue<Future<?>> futures = new LinkedList<Future<?>>();
+		try {
+			for (int b = 0; b < out.length; b += BLOCK) {
+				final int from = b;
+				final int to = min(out.length, b + BLOCK);
+				futures.add(exec.submit(new Runnable() {
+					@Override
+					public void run() {
+						for (int i = from; i < to; i++) {
+							out[i] = projectSample(l.get(i).sample);
+						}
+					}
+				}));
+			}
+			while (!futures.isEmpty()) {
+				futures.remove().get();
+			}
+		} catch (InterruptedException | ExecutionException e) {
+			throw new RuntimeException("Failed threading projection", e);
+		} finally {
+			ThreadPoolServer.shutdownNow(exec);
+		}
+		return out;
+	}
+
+	@Override
+	public double valueOf(T t1, T t2) {
+		return linear.valueOf(projectSample(t1), projectSample(t2));
+	}
+
+	@Override
+	public double valueOf(T t1) {
+		double[] s = projectSample(t1);
+		return linear.valueOf(s, s);
+	}
+
+	/**
+	 * Returns the n x r factor G of the training samples, one line per sample
+	 * in the order of the training list
+	 * 
+	 * @return the factor G
+	 */
+	public double[][] getFactor() {
+		return trainFactor;
+	}
+
+	/**
+	 * Returns the samples chosen as pivots, in order of selection
+	 * 
+	 * @return the list of pivots
+	 */
+	public List<TrainingSample<T>> getPivots() {
+		return pivots;
+	}
+
+	/**
+	 * Tells the rank of the decomposition
+	 * 
+	 * @return the rank
+	 */
+	public int getRank() {
+		return (factor == null) ? 0 : factor.length;
+	}
+
+	/**
+	 * Tells the tolerance on the trace of the residual, relative to the trace
+	 * of the kernel matrix
+	 * 
+	 * @return the tolerance
+	 */
+	public double getTolerance() {
+		return tolerance;
+	}
+
+	/**
+	 * Sets the tolerance on the trace of the residual, relative to the trace
+	 * of the kernel matrix (default 1e-6)
+	 * 
+	 * @param tolerance
+	 *            the tolerance
+	 */
+	public void setTolerance(double tolerance) {
+		this.tolerance = tolerance;
+	}
+
+	/**
+	 * Tells the maximum rank of the decomposition
+	 * 
+	 * @return the maximum rank
+	 */
+	public int getMaxRank() {
+		return maxRank;
+	}
+
+	/**
+	 * Sets the maximum rank of the decomposition (default unbounded)
+	 * 
+	 * @param maxRank
+	 *            the maximum rank
+	 */
+	public void setMaxRank(int maxRank) {
+		this.maxRank = maxRank;
+	}
+
+	/**
+	 * Get the approximated kernel
+	 * 
+	 * @return the approximated kernel
+	 */
+	public Kernel<T> getKernel() {
+		return kernel;
+	}
+
+}
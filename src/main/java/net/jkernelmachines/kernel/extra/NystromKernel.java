@@ -32,12 +32,23 @@ package net.jkernelmachines.kernel.extra;
 import static java.lang.Math.min;
 
 import java.util.ArrayList;
+import java.util.Arrays;
 import java.util.Collections;
 import java.util.Comparator;
+import java.util.IdentityHashMap;
+import java.util.LinkedList;
 import java.util.List;
+import java.util.Map;
+import java.util.Queue;
+import java.util.Random;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.Future;
+import java.util.concurrent.ThreadPoolExecutor;
 
+import net.jkernelmachines.density.DoubleKMeans;
 import net.jkernelmachines.kernel.Kernel;
 import net.jkernelmachines.kernel.typed.DoubleLinear;
+import net.jkernelmachines.threading.ThreadPoolServer;
 import net.jkernelmachines.type.TrainingSample;
 import net.jkernelmachines.util.DebugPrinter;
 import net.jkernelmachines.util.algebra.MatrixOperations;
@@ -54,6 +65,12 @@ import net.jkernelmachines.util.algebra.ThreadedMatrixOperations;
  * British Machine Vision Conference, Sep 2013, United Kingdom. British Machine
  * Vision Conference
  * </p>
+ * <p>
+ * Landmarks can also be selected by k-means (on vectors, or by kernel
+ * k-means++ seeding on any type), or sampled according to approximate ridge
+ * leverage scores, or taken as the pivots of an incomplete Cholesky
+ * decomposition. Lists are projected in parallel, by blocks of samples.
+ * </p>
  * 
  * @author picard
  * 
@@ -73,6 +90,14 @@ public class NystromKernel<T> extends Kernel<T> {
 	private double[] eigenvalues;
 	private List<TrainingSample<T>> list;
 	private int dim = -1;
+	// projectors scaled by the inverse square root of eigenvalues, or
+	// inverse of the Cholesky factor of the landmarks Gram matrix
+	private double[][] scaledProjectors;
+	// rows of the Cholesky factor, null if trained by eigen decomposition
+	private List<double[]> factor;
+
+	// number of samples per block of projection
+	private static final int BLOCK = 64;
 
 	/**
 	 * Default constructor with kernel to approximate as argument
@@ -99,6 +124,7 @@ public class NystromKernel<T> extends Kernel<T> {
 	public void train(List<TrainingSample<T>> list) {
 		this.list = new ArrayList<TrainingSample<T>>();
 		this.list.addAll(list);
+		factor = null;
 		dim = list.size();
 		debug.println(3, "matrix size : " + dim);
 		double[][] matrix = kernel.getKernelMatrix(list);
@@ -112,15 +138,238 @@ public class NystromKernel<T> extends Kernel<T> {
 				eigenvalues[d] = 1. / Math.sqrt(p);
 			}
 		}
+		scaledProjectors = new double[dim][];
+		for (int d = 0; d < dim; d++) {
+			scaledProjectors[d] = new double[dim];
+			for (int i = 0; i < dim; i++) {
+				scaledProjectors[d][i] = projectors[d][i] * eigenvalues[d];
+			}
+		}
+
+	}
+
+	/**
+	 * Train the Nystrom approx using m landmarks selected by k-means. For
+	 * samples of type double[], the landmarks are the means computed by
+	 * {@link DoubleKMeans}. For other types, the landmarks are samples
+	 * selected by the k-means++ seeding procedure using the distance induced
+	 * by the kernel.
+	 * 
+	 * @param list
+	 *            the training list of samples
+	 * @param m
+	 *            the number of landmarks
+	 */
+	@SuppressWarnings("unchecked")
+	public void trainKMeans(List<TrainingSample<T>> list, int m) {
+		m = min(m, list.size());
+		List<TrainingSample<T>> landmarks = new ArrayList<TrainingSample<T>>(m);
+		if (list.get(0).sample instanceof double[]) {
+			List<double[]> vectors = new ArrayList<double[]>(list.size());
+			for (TrainingSample<T> t : list) {
+				vectors.add((double[]) t.sample);
+			}
+			DoubleKMeans km = new DoubleKMeans(m);
+			km.train(vectors);
+			for (double[] mu : km.getMeans()) {
+				landmarks.add(new TrainingSample<T>((T) mu, 0));
+			}
+		} else {
+			landmarks = kmeansppSeeding(list, m);
+		}
+		train(landmarks);
+	}
+
+	/**
+	 * kernel k-means++ seeding: each new landmark is drawn with probability
+	 * proportional to its squared distance in feature space to the closest
+	 * landmark.
+	 */
+	private List<TrainingSample<T>> kmeansppSeeding(
+			final List<TrainingSample<T>> list, int m) {
+		final int n = list.size();
+		Random rand = new Random();
+		final double[] self = new double[n];
+		final double[] d2 = new double[n];
+		for (int i = 0; i < n; i++) {
+			self[i] = kernel.valueOf(list.get(i).sample);
+			d2[i] = Double.POSITIVE_INFINITY;
+		}
+
+		List<TrainingSample<T>> landmarks = new ArrayList<TrainingSample<T>>(m);
+		int c = rand.nextInt(n);
+		ThreadPoolExecutor exec = ThreadPoolServer.getThreadPoolExecutor();
+		try {
+			for (int l = 0; l < m; l++) {
+				landmarks.add(list.get(c));
+				final T x = list.get(c).sample;
+				final double kcc = self[c];
+				// update distances to the closest landmark
+				Queue<Future<?>> futures = new LinkedList<Future<?>>();
+				for (int b = 0; b < n; b += BLOCK) {
+					final int from = b;
+					final int to = min(n, b + BLOCK);
+					futures.add(exec.submit(new Runnable() {
+						@Override
+						public void run() {
+							for (int i = from; i < to; i++) {
+								double d = self[i] + kcc - 2
+										* kernel.valueOf(list.get(i).sample, x);
+								// round-off below which samples are duplicates
+								if (d < 1e-10 * (self[i] + kcc)) {
+									d = 0;
+								}
+								if (d < d2[i]) {
+									d2[i] = d;
+								}
+							}
+						}
+					}));
+				}
+				while (!futures.isEmpty()) {
+					futures.remove().get();
+				}
+
+				// draw the next landmark
+				double sum = 0;
+				for (int i = 0; i < n; i++) {
+					sum += d2[i];
+				}
+				if (sum <= 0) {
+					break;
+				}
+				double r = rand.nextDouble() * sum;
+				c = 0;
+				for (double acc = d2[0]; acc < r && c < n - 1;) {
+					acc += d2[++c];
+				}
+			}
+		} catch (InterruptedException | ExecutionException e) {
+			throw new RuntimeException("Failed threading k-means++ seeding", e);
+		} finally {
+			ThreadPoolServer.shutdownNow(exec);
+		}
+		return landmarks;
+	}
+
+	/**
+	 * Train the Nystrom approx using m landmarks sampled according to their
+	 * ridge leverage scores. The scores are approximated using a preliminary
+	 * Nystrom approximation on 2m landmarks taken at random.
+	 * 
+	 * @param list
+	 *            the training list of samples
+	 * @param m
+	 *            the number of landmarks
+	 * @param lambda
+	 *            the ridge regularization of the leverage scores
+	 */
+	public void trainLeverage(List<TrainingSample<T>> list, int m,
+			double lambda) {
+		int n = list.size();
+		m = min(m, n);
+		Random rand = new Random();
+
+		// preliminary uniform approximation
+		List<TrainingSample<T>> dup = new ArrayList<TrainingSample<T>>(list);
+		Collections.shuffle(dup, rand);
+		train(dup.subList(0, min(n, 2 * m)));
+		double[][] phi = projectMatrix(list);
+
+		// scores tau_i = phi_i' (Phi' Phi + lambda I)^-1 phi_i
+		double[][] c = ThreadedMatrixOperations.transMul(phi, phi);
+		for (int d = 0; d < c.length; d++) {
+			c[d][d] += lambda;
+		}
+		double[][] ci = MatrixOperations.inv(c);
+		final double[] keys = new double[n];
+		for (int i = 0; i < n; i++) {
+			double tau = 0;
+			for (int d = 0; d < ci.length; d++) {
+				double s = 0;
+				for (int e = 0; e < ci.length; e++) {
+					s += ci[d][e] * phi[i][e];
+				}
+				tau += phi[i][d] * s;
+			}
+			// weighted sampling without replacement (Efraimidis-Spirakis)
+			keys[i] = (tau > 0) ? Math.log(rand.nextDouble()) / tau
+					: Double.NEGATIVE_INFINITY;
+		}
+
+		List<Integer> indices = new ArrayList<Integer>(n);
+		for (int i = 0; i < n; i++) {
+			indices.add(i);
+		}
+		Collections.sort(indices, new Comparator<Integer>() {
+			@Override
+			public int compare(Integer i1, Integer i2) {
+				return -Double.compare(keys[i1], keys[i2]);
+			}
+		});
+		List<TrainingSample<T>> landmarks = new ArrayList<TrainingSample<T>>(m);
+		for (int i = 0; i < m; i++) {
+			landmarks.add(list.get(indices.get(i)));
+		}
+		train(landmarks);
+	}
+
+	/**
+	 * Train the Nystrom approx using as landmarks the m first pivots of the
+	 * incomplete Cholesky decomposition of the kernel matrix. The
+	 * approximation is then the same as that of the decomposition.
+	 * 
+	 * @param list
+	 *            the training list of samples
+	 * @param m
+	 *            the number of landmarks
+	 */
+	public void trainIncompleteCholesky(List<TrainingSample<T>> list, int m) {
+		IncompleteCholeskyKernel<T> ick = new IncompleteCholeskyKernel<T>(
+				kernel);
+		ick.setMaxRank(m);
+		ick.train(list);
 
+		this.list = new ArrayList<TrainingSample<T>>();
+		scaledProjectors = new double[0][];
+		factor = new ArrayList<double[]>();
+		dim = 0;
+		for (TrainingSample<T> t : ick.getPivots()) {
+			addLandmark(t);
+		}
 	}
 
+	/**
+	 * Train the Nystrom approx by active selection of landmarks. At each
+	 * iteration, a pool of samples is drawn at random and the samples with
+	 * highest approximation error are added to the landmarks.
+	 * <p>
+	 * The approximation is updated incrementally: each landmark adds a row to
+	 * the Cholesky factor of the landmarks Gram matrix, and the projections of
+	 * the samples already computed are extended by one coordinate, such that
+	 * adding a landmark costs O(m^2) instead of O(m^3).
+	 * </p>
+	 * 
+	 * @param list
+	 *            the training list of samples
+	 * @param iterations
+	 *            the number of iterations
+	 * @param samples
+	 *            the number of landmarks added per iteration
+	 * @param pool
+	 *            the size of the pool of candidates
+	 */
 	public void activeTrain(List<TrainingSample<T>> list, int iterations,
 			int samples, int pool) {
 		this.list = new ArrayList<TrainingSample<T>>();
+		scaledProjectors = new double[0][];
+		factor = new ArrayList<double[]>();
+		dim = 0;
 		List<TrainingSample<T>> dup = new ArrayList<TrainingSample<T>>();
 		List<TrainingSample<T>> poolList = new ArrayList<TrainingSample<T>>();
 		dup.addAll(list);
+		// projections of the samples, extended as landmarks are added
+		Map<TrainingSample<T>, double[]> features = new IdentityHashMap<TrainingSample<T>, double[]>();
 
 		for (int i = 0; i < iterations; i++) {
 			debug.println(3, "active iteration " + i);
@@ -142,14 +391,19 @@ public class NystromKernel<T> extends Kernel<T> {
 			List<TrainingSample<T>> subPool = poolList.subList(0,
 					min(pool, poolList.size()));
 			double[][] mori = kernel.getKernelMatrix(subPool);
-			double[][] mapp = getKernelMatrix(subPool);
+			double[][] f = new double[subPool.size()][];
+			for (int j = 0; j < f.length; j++) {
+				TrainingSample<T> t = subPool.get(j);
+				f[j] = extendProjection(t.sample, features.get(t));
+				features.put(t, f[j]);
+			}
 
 			for (int j = 0; j < min(pool, poolList.size()); j++) {
 				TrainingSample<T> t = poolList.get(j);
 				double e = 0;
 				for (int k = 0; k < min(pool, poolList.size()); k++) {
 					double v1 = mori[j][k];
-					double v2 = mapp[j][k];
+					double v2 = linear.valueOf(f[j], f[k]);
 					double d = (v1 - v2);
 					e += d * d;
 				}
@@ -166,18 +420,95 @@ public class NystromKernel<T> extends Kernel<T> {
 			});
 
 			// add high error to the list
-			for (int k = 0; k < samples; k++) {
-				this.list.add(errors.remove(0).t);
+			for (int k = 0; k < samples && !errors.isEmpty(); k++) {
+				TrainingSample<T> t = errors.remove(0).t;
+				features.remove(t);
+				addLandmark(t);
 			}
 			// add low error samples back to the pool
 			while (!errors.isEmpty()) {
 				dup.add(errors.remove(0).t);
 			}
+		}
 
-			// train
-			this.train(this.list);
+	}
+
+	/**
+	 * Adds a landmark to the Nystrom approx, by a rank-one update of the
+	 * Cholesky factor of the landmarks Gram matrix and of its inverse. The
+	 * landmark is not added if it lies in the span of the current landmarks.
+	 * 
+	 * @param t
+	 *            the new landmark
+	 * @return true if the landmark was added
+	 */
+	public boolean addLandmark(TrainingSample<T> t) {
+		if (dim < 0 || list == null) {
+			list = new ArrayList<TrainingSample<T>>();
+			scaledProjectors = new double[0][];
+			factor = new ArrayList<double[]>();
+			dim = 0;
 		}
+		// coordinates of the landmark on the current factor
+		double[] l = (dim == 0) ? new double[0] : projectSample(t.sample);
+		double kzz = kernel.valueOf(t.sample);
+		double d2 = kzz - linear.valueOf(l, l);
+		if (d2 <= 1e-12 * kzz) {
+			return false;
+		}
+		double d = Math.sqrt(d2);
 
+		// new row of the inverse factor: [-l' L^-1, 1] / d
+		double[] row = new double[dim + 1];
+		for (int j = 0; j < dim; j++) {
+			double[] p = scaledProjectors[j];
+			for (int i = 0; i < p.length; i++) {
+				row[i] -= l[j] * p[i];
+			}
+		}
+		for (int i = 0; i < dim; i++) {
+			row[i] /= d;
+		}
+		row[dim] = 1. / d;
+		scaledProjectors = Arrays.copyOf(scaledProjectors, dim + 1);
+		scaledProjectors[dim] = row;
+
+		if (factor != null) {
+			double[] r = Arrays.copyOf(l, dim + 1);
+			r[dim] = d;
+			factor.add(r);
+		}
+		list.add(t);
+		dim++;
+		return true;
+	}
+
+	/**
+	 * Extends a projection computed before landmarks were added. Each missing
+	 * coordinate costs a single kernel evaluation, using the rows of the
+	 * Cholesky factor.
+	 */
+	private double[] extendProjection(T sample, double[] f) {
+		if (f == null || factor == null) {
+			f = new double[0];
+		}
+		if (f.length == dim) {
+			return f;
+		}
+		if (factor == null) {
+			return projectSample(sample);
+		}
+		int from = f.length;
+		f = Arrays.copyOf(f, dim);
+		for (int r = from; r < dim; r++) {
+			double[] l = factor.get(r);
+			double v = kernel.valueOf(list.get(r).sample, sample);
+			for (int i = 0; i < r; i++) {
+				v -= l[i] * f[i];
+			}
+			f[r] = v / l[r];
+		}
+		return f;
 	}
 
 	/**
@@ -197,21 +528,98 @@ public class NystromKernel<T> extends Kernel<T> {
 			km[i] = kernel.valueOf(list.get(i).sample, sample);
 
 		for (int d = 0; d < dim; d++) {
-			for (int i = 0; i < list.size(); i++) {
-				out[d] += projectors[d][i] * km[i];
+			double[] p = scaledProjectors[d];
+			double sum = 0;
+			for (int i = 0; i < p.length; i++) {
+				sum += p[i] * km[i];
 			}
-			out[d] *= eigenvalues[d];
+			out[d] = sum;
 		}
 
 		return out;
 	}
 
+	/**
+	 * Tells the dimension of the space induced by the Nystrom approx
+	 * 
+	 * @return the dimension of projected samples
+	 */
+	public int getDimension() {
+		return (dim <= 0) ? 1 : dim;
+	}
+
+	/**
+	 * Project a list of samples to the space induced by the Nystrom approx
+	 * 
+	 * @param l
+	 *            the list of samples
+	 * @return the list of projected samples, with the same labels
+	 */
 	public List<TrainingSample<double[]>> projectList(List<TrainingSample<T>> l) {
+		double[][] m = projectMatrix(l);
 		List<TrainingSample<double[]>> out = new ArrayList<TrainingSample<double[]>>(
 				l.size());
-		for (TrainingSample<T> t : l) {
-			double[] d = projectSample(t.sample);
-			out.add(new TrainingSample<double[]>(d, t.label));
+		for (int i = 0; i < m.length; i++) {
+			out.add(new TrainingSample<double[]>(m[i], l.get(i).label));
+		}
+		return out;
+	}
+
+	/**
+	 * Project a list of samples to the space induced by the Nystrom approx.
+	 * The projection is computed in parallel, by blocks of samples.
+	 * 
+	 * @param l
+	 *            the list of samples
+	 * @return the matrix of projected samples, one per line
+	 */
+	public double[][] projectMatrix(final List<TrainingSample<T>> l) {
+		final double[][] out = new double[l.size()][];
+		if (dim <= 0) {
+			for (int i = 0; i < out.length; i++) {
+				out[i] = new double[1];
+			}
+			return out;
+		}
+
+		ThreadPoolExecutor exec = ThreadPoolServer.getThreadPoolExecutor();
+		Queue<Future<?>> futures = new LinkedList<Future<?>>();
+		try {
+			for (int b = 0; b < out.length; b += BLOCK) {
+				final int from = b;
+				final int to = min(out.length, b + BLOCK);
+				futures.add(exec.submit(new Runnable() {
+					@Override
+					public void run() {
+						int m = list.size();
+						double[] km = new double[m];
+						for (int r = from; r < to; r++) {
+							T sample = l.get(r).sample;
+							for (int i = 0; i < m; i++) {
+								km[i] = kernel.valueOf(list.get(i).sample,
+										sample);
+							}
+							double[] o = new double[dim];
+							for (int d = 0; d < dim; d++) {
+								double[] p = scaledProjectors[d];
+								double sum = 0;
+								for (int i = 0; i < p.length; i++) {
+									sum += p[i] * km[i];
+								}
+								o[d] = sum;
+							}
+							out[r] = o;
+						}
+					}
+				}));
+			}
+			while (!futures.isEmpty()) {
+				futures.remove().get();
+			}
+		} catch (InterruptedException | ExecutionException e) {
+			throw new RuntimeException("Failed threading projection", e);
+		} finally {
+			ThreadPoolServer.shutdownNow(exec);
 		}
 		return out;
 	}
@@ -0,0 +1,451 @@
+/*******************************************************************************
+ * Copyright (c) 2016, David Picard.
+ * All rights reserved.
+ *
+ * Redistribution and use in source and binary forms, with or without modification,
+ * are permitted provided that the following conditions are met:
+ *
+ * 1. Redistributions of source code must retain the above copyright notice, this
+ * list of conditions and the following disclaimer.
+ *
+ * 2. Redistributions in binary form must reproduce the above copyright notice,
+ * this list of conditions and the following disclaimer in the documentation and/or
+ * other materials provided with the distribution.
+ *
+ * 3. Neither the name of the copyright holder nor the names of its contributors
+ * may be used to endorse or promote products derived from this software without
+ * specific prior written permission.
+ *
+ * THIS SOFTWARE IS PROVIDED BY THE COPYRIGHT HOLDERS AND CONTRIBUTORS "AS IS" AND
+ * ANY EXPRESS OR IMPLIED WARRANTIES, INCLUDING, BUT NOT LIMITED TO, THE IMPLIED
+ * WARRANTIES OF MERCHANTABILITY AND FITNESS FOR A PARTICULAR PURPOSE ARE
+ * DISCLAIMED. IN NO EVENT SHALL THE COPYRIGHT HOLDER OR CONTRIBUTORS BE LIABLE FOR
+ * ANY DIRECT, INDIRECT, INCIDENTAL, SPECIAL, EXEMPLARY, OR CONSEQUENTIAL DAMAGES
+ * (INCLUDING, BUT NOT LIMITED TO, PROCUREMENT OF SUBSTITUTE GOODS OR SERVICES;
+ * LOSS OF USE, DATA, OR PROFITS; OR BUSINESS INTERRUPTION) HOWEVER CAUSED AND ON
+ * ANY THEORY OF LIABILITY, WHETHER IN CONTRACT, STRICT LIABILITY, OR TORT
+ * (INCLUDING NEGLIGENCE OR OTHERWISE) ARISING IN ANY WAY OUT OF THE USE OF THIS
+ * SOFTWARE, EVEN IF ADVISED OF THE POSSIBILITY OF SUCH DAMAGE.
+ *******************************************************************************/
+package net.jkernelmachines.kernel.extra.bag;
+
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+
+import net.jkernelmachines.kernel.Kernel;
+import net.jkernelmachines.threading.ThreadedMatrixOperator;
+import net.jkernelmachines.type.TrainingSample;
+import net.jkernelmachines.util.DebugPrinter;
+import net.jkernelmachines.util.metrics.Metrics;
+
+/**
+ * <p>
+ * Cache of a minor kernel for kernels on bags. The distinct elements of all
+ * bags of a dataset (in the sense of equals) are indexed once, and their
+ * pairwise kernel values are computed in parallel and stored in a matrix.
+ * Arrays do not override equals, hence elements of type double[] are only
+ * shared when the same array instance appears in several bags.
+ * </p>
+ * <p>
+ * If the matrix does not fit in the memory budget, the rows of the matrix are
+ * computed on demand and the least recently used ones are kept within the
+ * budget.
+ * </p>
+ * <p>
+ * Used as the minor kernel of a bag kernel, the values of the kernel are read
+ * from the matrix instead of being computed, and the Gram matrices of the bag
+ * kernels are computed as sums (or max) over blocks of this matrix, in
+ * parallel. Elements that were not indexed are evaluated by the minor kernel.
+ * </p>
+ * 
+ * @author picard
+ * 
+ * @param <S>
+ *            type of element in the bags
+ */
+public class ElementCacheKernel<S> extends Kernel<S> {
+
+	private static final long serialVersionUID = -4126306251807936525L;
+
+	private Kernel<S> kernel;
+	private Map<S, Integer> map;
+	private List<S> elements;
+	// full matrix, or least recently used rows if it does not fit
+	private double[][] matrix;
+	private transient RowCache rows;
+	private int capacity;
+
+	DebugPrinter debug = new DebugPrinter();
+
+	/**
+	 * Constructor using the minor kernel and the list of bags of the dataset,
+	 * with a memory budget of half the maximum heap size
+	 * 
+	 * @param k
+	 *            the minor kernel
+	 * @param l
+	 *            the list of samples, each sample being a bag of elements
+	 */
+	public ElementCacheKernel(Kernel<S> k,
+			List<? extends TrainingSample<? extends List<S>>> l) {
+		this(k, l, Runtime.getRuntime().maxMemory() / 2);
+	}
+
+	/**
+	 * Constructor using the minor kernel, the list of bags of the dataset and
+	 * the memory budget of the cache
+	 * 
+	 * @param k
+	 *            the minor kernel
+	 * @param l
+	 *            the list of samples, each sample being a bag of elements
+	 * @param memoryBudget
+	 *            the maximum size of the cached values in bytes
+	 * @throws IllegalArgumentException
+	 *             if the budget is too small to hold one row of the matrix
+	 */
+	public ElementCacheKernel(Kernel<S> k,
+			List<? extends TrainingSample<? extends List<S>>> l,
+			long memoryBudget) {
+		this.kernel = k;
+
+		// index of distinct elements
+		map = new HashMap<S, Integer>();
+		elements = new ArrayList<S>();
+		for (TrainingSample<? extends List<S>> t : l) {
+			for (S s : t.sample) {
+				if (!map.containsKey(s)) {
+					map.put(s, elements.size());
+					elements.add(s);
+				}
+			}
+		}
+
+		long n = elements.size();
+		if (8 * n * n > memoryBudget) {
+			long c = memoryBudget / (8 * n);
+			if (c < 1) {
+				throw new IllegalArgumentException("Memory budget of "
+						+ memoryBudget + " bytes is too small for a row of "
+						+ n + " elements");
+			}
+			capacity = (int) Math.min(c, n);
+			rows = new RowCache(capacity);
+			debug.println(2, "Caching " + capacity + " rows of " + n
+					+ " elements");
+			return;
+		}
+
+		// pairwise values
+		ThreadedMatrixOperator factory = new ThreadedMatrixOperator() {
+			@Override
+			public void doLines(double[][] matrix, int from, int to) {
+				for (int i = from; i < to; i++) {
+					S s1 = elements.get(i);
+					for (int j = i; j < matrix.length; j++) {
+						matrix[i][j] = kernel.valueOf(s1, elements.get(j));
+						matrix[j][i] = matrix[i][j];
+					}
+				}
+			}
+		};
+		matrix = factory.getMatrix(new double[elements.size()][elements
+				.size()]);
+	}
+
+	@Override
+	public double valueOf(S t1, S t2) {
+		Integer i = map.get(t1);
+		Integer j = map.get(t2);
+		if (i == null || j == null) {
+			return kernel.valueOf(t1, t2);
+		}
+		if (matrix != null) {
+			return matrix[i][j];
+		}
+		double[] row = rows().get(i);
+		if (row == null) {
+			return kernel.valueOf(t1, t2);
+		}
+		return row[j];
+	}
+
+	@Override
+	public double valueOf(S t1) {
+		Integer i = map.get(t1);
+		if (i == null || matrix == null) {
+			return kernel.valueOf(t1);
+		}
+		return matrix[i][i];
+	}
+
+	/**
+	 * row of the matrix, computed and cached if needed
+	 */
+	private double[] row(int i) {
+		if (matrix != null) {
+			return matrix[i];
+		}
+		RowCache cache = rows();
+		double[] row = cache.get(i);
+		if (row == null) {
+			row = new double[elements.size()];
+			S s = elements.get(i);
+			for (int j = 0; j < row.length; j++) {
+				row[j] = kernel.valueOf(s, elements.get(j));
+			}
+			Metrics.count(Metrics.KERNEL_EVALUATIONS, kernel, row.length);
+			cache.put(i, row);
+		}
+		return row;
+	}
+
+	/**
+	 * row cache, rebuilt empty after deserialization
+	 */
+	private synchronized RowCache rows() {
+		if (rows == null) {
+			rows = new RowCache(capacity);
+		}
+		return rows;
+	}
+
+	/**
+	 * Returns the indices of the elements of each bag of a list
+	 * 
+	 * @param l
+	 *            the list of samples
+	 * @return the indices of the elements of each sample, or null if an element
+	 *         was not indexed
+	 */
+	public int[][] indexOf(List<? extends TrainingSample<? extends List<S>>> l) {
+		int[][] bags = new int[l.size()][];
+		for (int b = 0; b < bags.length; b++) {
+			List<S> bag = l.get(b).sample;
+			bags[b] = new int[bag.size()];
+			for (int i = 0; i < bags[b].length; i++) {
+				Integer index = map.get(bag.get(i));
+				if (index == null) {
+					return null;
+				}
+				bags[b][i] = index;
+			}
+		}
+		return bags;
+	}
+
+	/**
+	 * Sum of the cached values above a threshold between two ranges of bags
+	 * 
+	 * @param b1
+	 *            indices of the first bag
+	 * @param fr1
+	 *            beginning bound for the first bag (inclusive)
+	 * @param to1
+	 *            end bound for the first bag (exclusive)
+	 * @param b2
+	 *            indices of the second bag
+	 * @param fr2
+	 *            beginning bound for the second bag (inclusive)
+	 * @param to2
+	 *            end bound for the second bag (exclusive)
+	 * @param eps
+	 *            values lower or equal to this threshold are not summed
+	 * @return the sum of values
+	 */
+	public double sum(int[] b1, int fr1, int to1, int[] b2, int fr2, int to2,
+			double eps) {
+		double sum = 0;
+		for (int i = fr1; i < to1; i++) {
+			double[] row = row(b1[i]);
+			for (int j = fr2; j < to2; j++) {
+				double d = row[b2[j]];
+				if (d > eps) {
+					sum += d;
+				}
+			}
+		}
+		return sum;
+	}
+
+	/**
+	 * Max of the cached values between two ranges of bags, and zero
+	 * 
+	 * @param b1
+	 *            indices of the first bag
+	 * @param fr1
+	 *            beginning bound for the first bag (inclusive)
+	 * @param to1
+	 *            end bound for the first bag (exclusive)
+	 * @param b2
+	 *            indices of the second bag
+	 * @param fr2
+	 *            beginning bound for the second bag (inclusive)
+	 * @param to2
+	 *            end bound for the second bag (exclusive)
+	 * @return the max value
+	 */
+	public double max(int[] b1, int fr1, int to1, int[] b2, int fr2, int to2) {
+		double max = 0;
+		for (int i = fr1; i < to1; i++) {
+			double[] row = row(b1[i]);
+			for (int j = fr2; j < to2; j++) {
+				if (row[b2[j]] > max) {
+					max = row[b2[j]];
+				}
+			}
+		}
+		return max;
+	}
+
+	/**
+	 * Value of a bag kernel between two bags given by the indices of their
+	 * elements, computed from the cached values
+	 * 
+	 * @param <S>
+	 *            type of the elements
+	 */
+	public interface BlockFunction<S> {
+
+		/**
+		 * Computes the bag kernel between two bags
+		 * 
+		 * @param cache
+		 *            the cache of the elements
+		 * @param b1
+		 *            indices of the first bag
+		 * @param b2
+		 *            indices of the second bag
+		 * @return the kernel value
+		 */
+		public double valueOf(ElementCacheKernel<S> cache, int[] b1, int[] b2);
+	}
+
+	/**
+	 * Computes the Gram matrix of a symmetric bag kernel by blocks of the
+	 * cached matrix, when its minor kernel is an {@link ElementCacheKernel}.
+	 * 
+	 * @param kernel
+	 *            the minor kernel of the bag kernel
+	 * @param l
+	 *            the list of bags
+	 * @param f
+	 *            the bag kernel between two bags of indices
+	 * @return the Gram matrix, or null if the minor kernel is not a cache or
+	 *         an element is not in the cache
+	 */
+	public static <S> double[][] getBagKernelMatrix(Kernel<S> kernel,
+			List<? extends TrainingSample<? extends List<S>>> l,
+			BlockFunction<S> f) {
+		return getBagKernelMatrix(kernel, l, f, true);
+	}
+
+	/**
+	 * Computes the Gram matrix of a bag kernel by blocks of the cached matrix,
+	 * when its minor kernel is an {@link ElementCacheKernel}.
+	 * 
+	 * @param kernel
+	 *            the minor kernel of the bag kernel
+	 * @param l
+	 *            the list of bags
+	 * @param f
+	 *            the bag kernel between two bags of indices
+	 * @param symmetric
+	 *            true to compute only the upper triangle and mirror it
+	 * @return the Gram matrix, or null if the minor kernel is not a cache or
+	 *         an element is not in the cache
+	 */
+	public static <S> double[][] getBagKernelMatrix(Kernel<S> kernel,
+			List<? extends TrainingSample<? extends List<S>>> l,
+			final BlockFunction<S> f, final boolean symmetric) {
+		if (!(kernel instanceof ElementCacheKernel)) {
+			return null;
+		}
+		final ElementCacheKernel<S> cache = (ElementCacheKernel<S>) kernel;
+		final int[][] bags = cache.indexOf(l);
+		if (bags == null) {
+			return null;
+		}
+
+		ThreadedMatrixOperator factory = new ThreadedMatrixOperator() {
+			@Override
+			public void doLines(double[][] matrix, int from, int to) {
+				for (int i = from; i < to; i++) {
+					for (int j = symmetric ? i : 0; j < matrix.length; j++) {
+						matrix[i][j] = f.valueOf(cache, bags[i], bags[j]);
+						if (symmetric) {
+							matrix[j][i] = matrix[i][j];
+						}
+					}
+				}
+			}
+		};
+		return factory.getMatrix(new double[l.size()][l.size()]);
+	}
+
+	/**
+	 * Tells the number of distinct elements in the cache
+	 * 
+	 * @return the number of elements
+	 */
+	public int getSize() {
+		return elements.size();
+	}
+
+	/**
+	 * Tells if the whole matrix is stored, or only the least recently used
+	 * rows
+	 * 
+	 * @return true if the whole matrix is stored
+	 */
+	public boolean isFullMatrix() {
+		return matrix != null;
+	}
+
+	/**
+	 * Get the minor kernel
+	 * 
+	 * @return the minor kernel
+	 */
+	public Kernel<S> getKernel() {
+		return kernel;
+	}
+
+	/**
+	 * Least recently used rows of the matrix, shared between threads.
+	 */
+	private static class RowCache {
+
+		private final Map<Integer, double[]> rows;
+
+		@SuppressWarnings("serial")
+		RowCache(final int capacity) {
+			rows = new LinkedHashMap<Integer, double[]>(16, 0.75f, true) {
+				@Override
+				protected boolean removeEldestEntry(
+						Map.Entry<Integer, double[]> eldest) {
+					if (size() > capacity) {
+						Metrics.count(Metrics.CACHE_EVICTIONS, RowCache.this, 1);
+						return true;
+					}
+					return false;
+				}
+			};
+		}
+
+		synchronized double[] get(int i) {
+			double[] row = rows.get(i);
+			Metrics.count((row == null) ? Metrics.CACHE_MISSES
+					: Metrics.CACHE_HITS, this, 1);
+			return row;
+		}
+
+		synchronized void put(int i, double[] row) {
+			rows.put(i, row);
+		}
+	}
+
+}
@@ -32,10 +32,16 @@ public class MapLinearKernel<T> extends Kernel<Map<T, Double>> {
 	 */
 	@Override
 	public double valueOf(Map<T, Double> t1, Map<T, Double> t2) {
+		if (t2.size() < t1.size()) {
+			Map<T, Double> t = t1;
+			t1 = t2;
+			t2 = t;
+		}
 		double r = 0;
-		for (T x : t1.keySet()) {
-			if (t2.containsKey(x)) {
-				r += t1.get(x) * t2.get(x);
+		for (Map.Entry<T, Double> e : t1.entrySet()) {
+			Double d = t2.get(e.getKey());
+			if (d != null) {
+				r += e.getValue() * d;
 			}
 		}
 		return r;
@@ -49,8 +55,7 @@ public class MapLinearKernel<T> extends Kernel<Map<T, Double>> {
 	@Override
 	public double valueOf(Map<T, Double> t1) {
 		double r = 0;
-		for (T x : t1.keySet()) {
-			double d = t1.get(x);
+		for (double d : t1.values()) {
 			r += d * d;
 		}
 		return r;
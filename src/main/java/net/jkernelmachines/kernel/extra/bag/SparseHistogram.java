@@ -0,0 +1,224 @@
+/*******************************************************************************
+ * Copyright (c) 2016, David Picard.
+ * All rights reserved.
+ *
+ * Redistribution and use in source and binary forms, with or without modification,
+ * are permitted provided that the following conditions are met:
+ *
+ * 1. Redistributions of source code must retain the above copyright notice, this
+ * list of conditions and the following disclaimer.
+ *
+ * 2. Redistributions in binary form must reproduce the above copyright notice,
+ * this list of conditions and the following disclaimer in the documentation and/or
+ * other materials provided with the distribution.
+ *
+ * 3. Neither the name of the copyright holder nor the names of its contributors
+ * may be used to endorse or promote products derived from this software without
+ * specific prior written permission.
+ *
+ * THIS SOFTWARE IS PROVIDED BY THE COPYRIGHT HOLDERS AND CONTRIBUTORS "AS IS" AND
+ * ANY EXPRESS OR IMPLIED WARRANTIES, INCLUDING, BUT NOT LIMITED TO, THE IMPLIED
+ * WARRANTIES OF MERCHANTABILITY AND FITNESS FOR A PARTICULAR PURPOSE ARE
+ * DISCLAIMED. IN NO EVENT SHALL THE COPYRIGHT HOLDER OR CONTRIBUTORS BE LIABLE FOR
+ * ANY DIRECT, INDIRECT, INCIDENTAL, SPECIAL, EXEMPLARY, OR CONSEQUENTIAL DAMAGES
+ * (INCLUDING, BUT NOT LIMITED TO, PROCUREMENT OF SUBSTITUTE GOODS OR SERVICES;
+ * LOSS OF USE, DATA, OR PROFITS; OR BUSINESS INTERRUPTION) HOWEVER CAUSED AND ON
+ * ANY THEORY OF LIABILITY, WHETHER IN CONTRACT, STRICT LIABILITY, OR TORT
+ * (INCLUDING NEGLIGENCE OR OTHERWISE) ARISING IN ANY WAY OUT OF THE USE OF THIS
+ * SOFTWARE, EVEN IF ADVISED OF THE POSSIBILITY OF SUCH DAMAGE.
+ *******************************************************************************/
+package net.jkernelmachines.kernel.extra.bag;
+
+import java.io.Serializable;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.Map;
+
+import net.jkernelmachines.type.TrainingSample;
+
+/**
+ * <p>
+ * Compact sparse histogram, stored as sorted arrays of integer keys and
+ * values, such that kernels are computed by merge-join on primitive arrays.
+ * </p>
+ * <p>
+ * Histograms on any type of words (e.g. bags of words or of visual words
+ * stored as Map&lt;T, Double&gt;) are converted using a codebook giving the
+ * index of each word.
+ * </p>
+ * 
+ * @author picard
+ * 
+ */
+public final class SparseHistogram implements Serializable {
+
+	private static final long serialVersionUID = 6893158640916738221L;
+
+	private final int[] keys;
+	private final double[] values;
+
+	/**
+	 * Constructor from arrays of keys and values, in any order. Values of
+	 * identical keys are summed.
+	 * 
+	 * @param keys
+	 *            the keys
+	 * @param values
+	 *            the values associated with the keys
+	 */
+	public SparseHistogram(int[] keys, double[] values) {
+		int n = keys.length;
+		// sort keys and positions together
+		long[] order = new long[n];
+		for (int i = 0; i < n; i++) {
+			order[i] = ((long) keys[i] << 32) | i;
+		}
+		Arrays.sort(order);
+		int m = 0;
+		for (int i = 0; i < n; i++) {
+			if (i == 0 || (int) (order[i] >> 32) != (int) (order[i - 1] >> 32)) {
+				m++;
+			}
+		}
+		this.keys = new int[m];
+		this.values = new double[m];
+		int j = -1;
+		for (int i = 0; i < n; i++) {
+			int k = (int) (order[i] >> 32);
+			if (i == 0 || k != (int) (order[i - 1] >> 32)) {
+				this.keys[++j] = k;
+			}
+			this.values[j] += values[(int) order[i]];
+		}
+	}
+
+	/**
+	 * Builds the histogram of a map of words, using a codebook. Words not
+	 * present in the codebook are added with the next index.
+	 * 
+	 * @param m
+	 *            the map of words and values
+	 * @param codebook
+	 *            the index of each word
+	 * @return the compact histogram
+	 */
+	public static <T> SparseHistogram fromMap(Map<T, Double> m,
+			Map<T, Integer> codebook) {
+		int[] keys = new int[m.size()];
+		double[] values = new double[m.size()];
+		int i = 0;
+		for (Map.Entry<T, Double> e : m.entrySet()) {
+			Integer k = codebook.get(e.getKey());
+			if (k == null) {
+				k = codebook.size();
+				codebook.put(e.getKey(), k);
+			}
+			keys[i] = k;
+			values[i] = e.getValue();
+			i++;
+		}
+		return new SparseHistogram(keys, values);
+	}
+
+	/**
+	 * Builds the histograms of a list of maps of words, using a codebook.
+	 * Words not present in the codebook are added with the next index.
+	 * 
+	 * @param l
+	 *            the list of samples
+	 * @param codebook
+	 *            the index of each word
+	 * @return a new list of compact histograms with the same labels
+	 */
+	public static <T> List<TrainingSample<SparseHistogram>> fromMaps(
+			List<TrainingSample<Map<T, Double>>> l, Map<T, Integer> codebook) {
+		List<TrainingSample<SparseHistogram>> out = new ArrayList<TrainingSample<SparseHistogram>>(
+				l.size());
+		for (TrainingSample<Map<T, Double>> t : l) {
+			out.add(new TrainingSample<SparseHistogram>(fromMap(t.sample,
+					codebook), t.label));
+		}
+		return out;
+	}
+
+	/**
+	 * Dot product with another histogram, by merge-join of the keys
+	 * 
+	 * @param h
+	 *            the other histogram
+	 * @return the sum over common keys of products of values
+	 */
+	public double dot(SparseHistogram h) {
+		int[] k1 = keys, k2 = h.keys;
+		double[] v1 = values, v2 = h.values;
+		double r = 0;
+		int i = 0, j = 0;
+		while (i < k1.length && j < k2.length) {
+			if (k1[i] < k2[j]) {
+				i++;
+			} else if (k1[i] > k2[j]) {
+				j++;
+			} else {
+				r += v1[i++] * v2[j++];
+			}
+		}
+		return r;
+	}
+
+	/**
+	 * Intersection with another histogram, by merge-join of the keys
+	 * 
+	 * @param h
+	 *            the other histogram
+	 * @return the sum over common keys of min of values
+	 */
+	public double intersection(SparseHistogram h) {
+		int[] k1 = keys, k2 = h.keys;
+		double[] v1 = values, v2 = h.values;
+		double r = 0;
+		int i = 0, j = 0;
+		while (i < k1.length && j < k2.length) {
+			if (k1[i] < k2[j]) {
+				i++;
+			} else if (k1[i] > k2[j]) {
+				j++;
+			} else {
+				r += Math.min(v1[i++], v2[j++]);
+			}
+		}
+		return r;
+	}
+
+	/**
+	 * Sum of the values
+	 * 
+	 * @return the sum of values
+	 */
+	public double sum() {
+		double r = 0;
+		for (double v : values) {
+			r += v;
+		}
+		return r;
+	}
+
+	/**
+	 * Sorted keys of the histogram
+	 * 
+	 * @return the array of keys
+	 */
+	public int[] getKeys() {
+		return keys;
+	}
+
+	/**
+	 * Values of the histogram, in the order of keys
+	 * 
+	 * @return the array of values
+	 */
+	public double[] getValues() {
+		return values;
+	}
+
+}
@@ -33,6 +33,7 @@ import java.io.Serializable;
 import java.util.List;
 
 import net.jkernelmachines.kernel.Kernel;
+import net.jkernelmachines.type.TrainingSample;
 
 
 /**
@@ -98,6 +99,25 @@ public class SubListKernel2<S,T extends List<S>> extends Kernel<T> implements Se
 		return valueOf(t1, t1);
 	}
 
+	/**
+	 * Computes the Gram matrix by blocks of the cached matrix when the minor
+	 * kernel is an {@link ElementCacheKernel}.
+	 */
+	@Override
+	public double[][] getKernelMatrix(final List<TrainingSample<T>> l) {
+		double[][] m = ElementCacheKernel.getBagKernelMatrix(kernel, l,
+				new ElementCacheKernel.BlockFunction<S>() {
+			@Override
+			public double valueOf(ElementCacheKernel<S> cache, int[] b1, int[] b2) {
+				int t1 = Math.min(to1, b1.length);
+				int t2 = Math.min(to2, b2.length);
+				return cache.sum(b1, fr1, t1, b2, fr2, t2, eps)
+						/ ((double) ((t1 - fr1) * (t2 - fr2)));
+			}
+		}, false);
+		return (m != null) ? m : super.getKernelMatrix(l);
+	}
+
 
 
 	
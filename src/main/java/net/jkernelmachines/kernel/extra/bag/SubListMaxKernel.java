@@ -33,6 +33,7 @@ import java.io.Serializable;
 import java.util.List;
 
 import net.jkernelmachines.kernel.Kernel;
+import net.jkernelmachines.type.TrainingSample;
 
 /**
  * max value of kernel between two bags
@@ -92,6 +93,23 @@ public class SubListMaxKernel<S,T extends List<S>> extends Kernel<T> implements
 		return valueOf(t1, t1);
 	}
 
+	/**
+	 * Computes the Gram matrix by blocks of the cached matrix when the minor
+	 * kernel is an {@link ElementCacheKernel}.
+	 */
+	@Override
+	public double[][] getKernelMatrix(final List<TrainingSample<T>> l) {
+		double[][] m = ElementCacheKernel.getBagKernelMatrix(kernel, l,
+				new ElementCacheKernel.BlockFunction<S>() {
+			@Override
+			public double valueOf(ElementCacheKernel<S> cache, int[] b1, int[] b2) {
+				int t = Math.min(to, Math.min(b1.length, b2.length));
+				return cache.max(b1, from, t, b2, from, t);
+			}
+		});
+		return (m != null) ? m : super.getKernelMatrix(l);
+	}
+
 
 
 	
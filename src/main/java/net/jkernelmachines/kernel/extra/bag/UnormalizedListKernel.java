@@ -33,6 +33,7 @@ import java.io.Serializable;
 import java.util.List;
 
 import net.jkernelmachines.kernel.Kernel;
+import net.jkernelmachines.type.TrainingSample;
 
 
 /**
@@ -82,6 +83,23 @@ public class UnormalizedListKernel<S,T extends List<S>> extends Kernel<T> implem
 		return valueOf(t1, t1);
 	}
 
+	/**
+	 * Computes the Gram matrix by blocks of the cached matrix when the minor
+	 * kernel is an {@link ElementCacheKernel}.
+	 */
+	@Override
+	public double[][] getKernelMatrix(final List<TrainingSample<T>> l) {
+		double[][] m = ElementCacheKernel.getBagKernelMatrix(kernel, l,
+				new ElementCacheKernel.BlockFunction<S>() {
+			@Override
+			public double valueOf(ElementCacheKernel<S> cache, int[] b1, int[] b2) {
+				return cache.sum(b1, 0, b1.length, b2, 0, b2.length,
+						Double.NEGATIVE_INFINITY);
+			}
+		});
+		return (m != null) ? m : super.getKernelMatrix(l);
+	}
+
 
 
 	
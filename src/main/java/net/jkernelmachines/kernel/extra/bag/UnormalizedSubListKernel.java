@@ -33,6 +33,7 @@ import java.io.Serializable;
 import java.util.List;
 
 import net.jkernelmachines.kernel.Kernel;
+import net.jkernelmachines.type.TrainingSample;
 
 
 /**
@@ -95,6 +96,23 @@ public class UnormalizedSubListKernel<S,T extends List<S>> extends Kernel<T> imp
 		return valueOf(t1, t1);
 	}
 
+	/**
+	 * Computes the Gram matrix by blocks of the cached matrix when the minor
+	 * kernel is an {@link ElementCacheKernel}.
+	 */
+	@Override
+	public double[][] getKernelMatrix(final List<TrainingSample<T>> l) {
+		double[][] m = ElementCacheKernel.getBagKernelMatrix(kernel, l,
+				new ElementCacheKernel.BlockFunction<S>() {
+			@Override
+			public double valueOf(ElementCacheKernel<S> cache, int[] b1, int[] b2) {
+				int t = Math.min(to, Math.min(b1.length, b2.length));
+				return cache.sum(b1, from, t, b2, from, t, eps);
+			}
+		});
+		return (m != null) ? m : super.getKernelMatrix(l);
+	}
+
 
 
 	
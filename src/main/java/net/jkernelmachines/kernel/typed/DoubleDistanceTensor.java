@@ -0,0 +1,359 @@
+/*******************************************************************************
+ * Copyright (c) 2016, David Picard.
+ * All rights reserved.
+ *
+ * Redistribution and use in source and binary forms, with or without modification,
+ * are permitted provided that the following conditions are met:
+ *
+ * 1. Redistributions of source code must retain the above copyright notice, this
+ * list of conditions and the following disclaimer.
+ *
+ * 2. Redistributions in binary form must reproduce the above copyright notice,
+ * this list of conditions and the following disclaimer in the documentation and/or
+ * other materials provided with the distribution.
+ *
+ * 3. Neither the name of the copyright holder nor the names of its contributors
+ * may be used to endorse or promote products derived from this software without
+ * specific prior written permission.
+ *
+ * THIS SOFTWARE IS PROVIDED BY THE COPYRIGHT HOLDERS AND CONTRIBUTORS "AS IS" AND
+ * ANY EXPRESS OR IMPLIED WARRANTIES, INCLUDING, BUT NOT LIMITED TO, THE IMPLIED
+ * WARRANTIES OF MERCHANTABILITY AND FITNESS FOR A PARTICULAR PURPOSE ARE
+ * DISCLAIMED. IN NO EVENT SHALL THE COPYRIGHT HOLDER OR CONTRIBUTORS BE LIABLE FOR
+ * ANY DIRECT, INDIRECT, INCIDENTAL, SPECIAL, EXEMPLARY, OR CONSEQUENTIAL DAMAGES
+ * (INCLUDING, BUT NOT LIMITED TO, PROCUREMENT OF SUBSTITUTE GOODS OR SERVICES;
+ * LOSS OF USE, DATA, OR PROFITS; OR BUSINESS INTERRUPTION) HOWEVER CAUSED AND ON
+ * ANY THEORY OF LIABILITY, WHETHER IN CONTRACT, STRICT LIABILITY, OR TORT
+ * (INCLUDING NEGLIGENCE OR OTHERWISE) ARISING IN ANY WAY OUT OF THE USE OF THIS
+ * SOFTWARE, EVEN IF ADVISED OF THE POSSIBILITY OF SUCH DAMAGE.
+ *******************************************************************************/
+package net.jkernelmachines.kernel.typed;
+
+import java.io.File;
+import java.io.IOException;
+import java.io.RandomAccessFile;
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+import java.nio.FloatBuffer;
+import java.nio.channels.FileChannel;
+import java.util.LinkedList;
+import java.util.List;
+import java.util.Queue;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.Future;
+import java.util.concurrent.ThreadPoolExecutor;
+
+import net.jkernelmachines.threading.ThreadPoolServer;
+import net.jkernelmachines.type.TrainingSample;
+import net.jkernelmachines.util.algebra.VectorOperations;
+
+/**
+ * <p>
+ * Per dimension squared differences (x_i[d]-x_j[d])^2 of a list of double
+ * arrays, used to compute the gradient of the Gram matrix of
+ * {@link GeneralizedDoubleGaussL2} with respect to the gammas without
+ * evaluating the samples again.
+ * </p>
+ * <p>
+ * The differences are stored in single precision for the upper triangle only
+ * (the diagonal is zero), one packed array per dimension. For high
+ * dimensional data, the arrays can be written to a temporary file in a
+ * specified directory and memory mapped instead of being kept on the heap.
+ * The file is mapped in segments of 1 GB, and is deleted as soon as it is
+ * mapped (or on exit if the platform does not allow it).
+ * </p>
+ * 
+ * @author picard
+ * 
+ */
+public class DoubleDistanceTensor {
+
+	// number of pairs processed by a single job
+	private static final int CHUNK = 8192;
+	// number of floats per mapped segment, a multiple of CHUNK
+	private static final int SEGMENT = 1 << 28;
+
+	private final int size;
+	private final int dim;
+	private final long pairs;
+
+	// packed upper triangle per dimension, either on the heap or mapped
+	private float[][] data;
+	private FloatBuffer[][] mapped;
+
+	/**
+	 * Computes the tensor of a list of samples and keeps it on the heap.
+	 * 
+	 * @param l
+	 *            the list of samples
+	 */
+	public DoubleDistanceTensor(List<TrainingSample<double[]>> l) {
+		this(l, null);
+	}
+
+	/**
+	 * Computes the tensor of a list of samples in a temporary file of the
+	 * specified directory, which is deleted once mapped in memory.
+	 * 
+	 * @param l
+	 *            the list of samples
+	 * @param directory
+	 *            the directory for the temporary file, or null to keep the
+	 *            tensor on the heap
+	 */
+	public DoubleDistanceTensor(final List<TrainingSample<double[]>> l,
+			File directory) {
+		size = l.size();
+		dim = l.get(0).sample.length;
+		pairs = (long) size * (size - 1) / 2;
+		if (pairs > Integer.MAX_VALUE) {
+			throw new IllegalArgumentException("Too many samples for a tensor : " + size);
+		}
+
+		final double[][] x = new double[dim][size];
+		for (int i = 0; i < size; i++) {
+			double[] s = l.get(i).sample;
+			for (int d = 0; d < dim; d++) {
+				x[d][i] = s[d];
+			}
+		}
+
+		if (directory == null) {
+			data = new float[dim][];
+			forEachDimension(new Dimension() {
+				@Override
+				public void run(int d) {
+					data[d] = differences(x[d]);
+				}
+			});
+		} else {
+			File file = null;
+			try {
+				file = File.createTempFile("distances", ".bin", directory);
+				try (RandomAccessFile raf = new RandomAccessFile(file, "rw")) {
+					final FileChannel channel = raf.getChannel();
+					final long bytes = pairs * 4;
+					forEachDimension(new Dimension() {
+						@Override
+						public void run(int d) throws IOException {
+							float[] f = differences(x[d]);
+							for (int s = 0; s < f.length; s += SEGMENT) {
+								int len = Math.min(SEGMENT, f.length - s);
+								ByteBuffer b = ByteBuffer.allocate(len * 4).order(ByteOrder.nativeOrder());
+								b.asFloatBuffer().put(f, s, len);
+								long position = d * bytes + 4L * s;
+								while (b.hasRemaining()) {
+									position += channel.write(b, position);
+								}
+							}
+						}
+					});
+					int segments = (int) ((pairs + SEGMENT - 1) / SEGMENT);
+					mapped = new FloatBuffer[dim][segments];
+					for (int d = 0; d < dim; d++) {
+						for (int s = 0; s < segments; s++) {
+							long offset = (long) s * SEGMENT;
+							long len = Math.min(SEGMENT, pairs - offset);
+							mapped[d][s] = channel.map(FileChannel.MapMode.READ_ONLY,
+									d * bytes + 4 * offset, 4 * len)
+									.order(ByteOrder.nativeOrder()).asFloatBuffer();
+						}
+					}
+				}
+			} catch (IOException e) {
+				throw new RuntimeException("Failed writing distance tensor", e);
+			} finally {
+				// the mappings stay valid once the file is deleted
+				if (file != null && !file.delete()) {
+					file.deleteOnExit();
+				}
+			}
+		}
+	}
+
+	/**
+	 * packed squared differences of a single dimension
+	 */
+	private float[] differences(double[] x) {
+		float[] f = new float[(int) pairs];
+		int p = 0;
+		for (int i = 0; i < size; i++) {
+			double xi = x[i];
+			for (int j = i + 1; j < size; j++) {
+				double t = xi - x[j];
+				f[p++] = (float) (t * t);
+			}
+		}
+		return f;
+	}
+
+	/**
+	 * Computes for all dimensions d the sum over all pairs i != j of
+	 * w_ij (x_i[d]-x_j[d])^2
+	 * 
+	 * @param w
+	 *            the matrix of pair weights, null lines are considered as zeros
+	 * @return the array of sums per dimension
+	 */
+	public double[] gradient(final double[][] w) {
+		final double[] grad = new double[dim];
+		forEachChunk(new Chunk() {
+			@Override
+			public void run(int p0, int p1, int i, int j) {
+				// symmetric weights of the pairs
+				double[] lam = new double[p1 - p0];
+				boolean empty = true;
+				for (int p = 0; p < lam.length; p++) {
+					double v = 0;
+					if (w[i] != null) {
+						v += w[i][j];
+					}
+					if (w[j] != null) {
+						v += w[j][i];
+					}
+					lam[p] = v;
+					empty &= (v == 0);
+					if (++j == size) {
+						i++;
+						j = i + 1;
+					}
+				}
+				if (empty) {
+					return;
+				}
+				double[] part = new double[dim];
+				float[] buf = new float[lam.length];
+				for (int d = 0; d < dim; d++) {
+					read(d, p0, buf);
+					double sum = 0;
+					for (int p = 0; p < buf.length; p++) {
+						sum += buf[p] * lam[p];
+					}
+					part[d] = sum;
+				}
+				synchronized (grad) {
+					VectorOperations.addi(grad, grad, 1.0, part);
+				}
+			}
+		});
+		return grad;
+	}
+
+	/**
+	 * copies the packed differences of dimension d starting at pair p0
+	 */
+	private void read(int d, int p0, float[] buf) {
+		if (data != null) {
+			System.arraycopy(data[d], p0, buf, 0, buf.length);
+		} else {
+			int s = p0 / SEGMENT;
+			int offset = p0 % SEGMENT;
+			int done = 0;
+			while (done < buf.length) {
+				FloatBuffer b = mapped[d][s].duplicate();
+				b.position(offset);
+				int len = Math.min(buf.length - done, b.remaining());
+				b.get(buf, done, len);
+				done += len;
+				s++;
+				offset = 0;
+			}
+		}
+	}
+
+	private interface Dimension {
+		void run(int d) throws IOException;
+	}
+
+	private interface Chunk {
+		/**
+		 * processes pairs [p0, p1[, the first one being (i, j)
+		 */
+		void run(int p0, int p1, int i, int j);
+	}
+
+	private void forEachDimension(final Dimension job) {
+		ThreadPoolExecutor exec = ThreadPoolServer.getThreadPoolExecutor();
+		Queue<Future<?>> futures = new LinkedList<Future<?>>();
+		try {
+			for (int d = 0; d < dim; d++) {
+				final int dd = d;
+				futures.add(exec.submit(new Callable<Void>() {
+					@Override
+					public Void call() throws IOException {
+						job.run(dd);
+						return null;
+					}
+				}));
+			}
+			while (!futures.isEmpty()) {
+				futures.remove().get();
+			}
+		} catch (InterruptedException | ExecutionException e) {
+			throw new RuntimeException("Failed threading distance tensor", e);
+		} finally {
+			ThreadPoolServer.shutdownNow(exec);
+		}
+	}
+
+	private void forEachChunk(final Chunk job) {
+		ThreadPoolExecutor exec = ThreadPoolServer.getThreadPoolExecutor();
+		Queue<Future<?>> futures = new LinkedList<Future<?>>();
+		try {
+			int i = 0;
+			int j = 1;
+			for (long p = 0; p < pairs; p += CHUNK) {
+				final int p0 = (int) p;
+				final int p1 = (int) Math.min(pairs, p + CHUNK);
+				final int i0 = i;
+				final int j0 = j;
+				futures.add(exec.submit(new Runnable() {
+					@Override
+					public void run() {
+						job.run(p0, p1, i0, j0);
+					}
+				}));
+				// first pair of the next chunk
+				int r = p1 - p0;
+				while (r > 0) {
+					int left = size - j;
+					if (r < left) {
+						j += r;
+						r = 0;
+					} else {
+						r -= left;
+						i++;
+						j = i + 1;
+					}
+				}
+			}
+			while (!futures.isEmpty()) {
+				futures.remove().get();
+			}
+		} catch (InterruptedException | ExecutionException e) {
+			throw new RuntimeException("Failed threading distance tensor", e);
+		} finally {
+			ThreadPoolServer.shutdownNow(exec);
+		}
+	}
+
+	/**
+	 * Tells the number of samples
+	 * 
+	 * @return the number of samples
+	 */
+	public int getSize() {
+		return size;
+	}
+
+	/**
+	 * Tells the dimension of the samples
+	 * 
+	 * @return the dimension
+	 */
+	public int getDimension() {
+		return dim;
+	}
+
+}
@@ -109,4 +109,8 @@ public class DoubleGaussChi1 extends GaussianKernel<double[]> {
 		return sum;
 	}
 
+	@Override
+	public boolean isSameDistance(GaussianKernel<double[]> k) {
+		return k != null && k.getClass() == getClass() && ((DoubleGaussChi1) k).eps == eps;
+	}
 }
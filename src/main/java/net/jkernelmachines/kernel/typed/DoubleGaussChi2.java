@@ -110,4 +110,9 @@ public class DoubleGaussChi2 extends GaussianKernel<double[]> {
 			}
 		return sum;
 	}
+
+	@Override
+	public boolean isSameDistance(GaussianKernel<double[]> k) {
+		return k != null && k.getClass() == getClass() && ((DoubleGaussChi2) k).eps == eps;
+	}
 }
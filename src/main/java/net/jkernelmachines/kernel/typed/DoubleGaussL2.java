@@ -106,4 +106,9 @@ public class DoubleGaussL2 extends GaussianKernel<double[]> {
 		}
 		return sum;
 	}
+
+	@Override
+	public boolean isSameDistance(GaussianKernel<double[]> k) {
+		return k != null && k.getClass() == getClass();
+	}
 }
@@ -106,4 +106,19 @@ public class DoubleTriangleL2 extends GaussianKernel<double[]> {
 		}
 		return sum;
 	}
+
+	@Override
+	public double valueOfDistance(double d) {
+		return Math.max(0, 1 - gamma * d);
+	}
+
+	@Override
+	public boolean isExponential() {
+		return false;
+	}
+
+	@Override
+	public boolean isSameDistance(GaussianKernel<double[]> k) {
+		return k != null && k.getClass() == getClass();
+	}
 }
@@ -89,4 +89,9 @@ public class IntGaussChi1 extends GaussianKernel<int[]> {
 				sum += Math.abs(t1[i] - t2[i]) / tmp; //chi1
 		return sum;
 	}
+
+	@Override
+	public boolean isSameDistance(GaussianKernel<int[]> k) {
+		return k != null && k.getClass() == getClass() && ((IntGaussChi1) k).eps == eps;
+	}
 }
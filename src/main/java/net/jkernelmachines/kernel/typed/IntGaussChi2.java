@@ -89,4 +89,9 @@ public class IntGaussChi2 extends GaussianKernel<int[]> {
 				sum += (t1[i] - t2[i])*(t1[i] - t2[i]) / tmp; //chi2
 		return sum;
 	}
+
+	@Override
+	public boolean isSameDistance(GaussianKernel<int[]> k) {
+		return k != null && k.getClass() == getClass() && ((IntGaussChi2) k).eps == eps;
+	}
 }
@@ -81,4 +81,9 @@ public class IntGaussL2 extends GaussianKernel<int[]> {
 			sum += (t1[i]-t2[i])*(t1[i] - t2[i]);
 		return sum;
 	}
+
+	@Override
+	public boolean isSameDistance(GaussianKernel<int[]> k) {
+		return k != null && k.getClass() == getClass();
+	}
 }
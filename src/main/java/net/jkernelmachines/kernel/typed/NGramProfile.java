@@ -0,0 +1,245 @@
+/*******************************************************************************
+ * Copyright (c) 2016, David Picard.
+ * All rights reserved.
+ *
+ * Redistribution and use in source and binary forms, with or without modification,
+ * are permitted provided that the following conditions are met:
+ *
+ * 1. Redistributions of source code must retain the above copyright notice, this
+ * list of conditions and the following disclaimer.
+ *
+ * 2. Redistributions in binary form must reproduce the above copyright notice,
+ * this list of conditions and the following disclaimer in the documentation and/or
+ * other materials provided with the distribution.
+ *
+ * 3. Neither the name of the copyright holder nor the names of its contributors
+ * may be used to endorse or promote products derived from this software without
+ * specific prior written permission.
+ *
+ * THIS SOFTWARE IS PROVIDED BY THE COPYRIGHT HOLDERS AND CONTRIBUTORS "AS IS" AND
+ * ANY EXPRESS OR IMPLIED WARRANTIES, INCLUDING, BUT NOT LIMITED TO, THE IMPLIED
+ * WARRANTIES OF MERCHANTABILITY AND FITNESS FOR A PARTICULAR PURPOSE ARE
+ * DISCLAIMED. IN NO EVENT SHALL THE COPYRIGHT HOLDER OR CONTRIBUTORS BE LIABLE FOR
+ * ANY DIRECT, INDIRECT, INCIDENTAL, SPECIAL, EXEMPLARY, OR CONSEQUENTIAL DAMAGES
+ * (INCLUDING, BUT NOT LIMITED TO, PROCUREMENT OF SUBSTITUTE GOODS OR SERVICES;
+ * LOSS OF USE, DATA, OR PROFITS; OR BUSINESS INTERRUPTION) HOWEVER CAUSED AND ON
+ * ANY THEORY OF LIABILITY, WHETHER IN CONTRACT, STRICT LIABILITY, OR TORT
+ * (INCLUDING NEGLIGENCE OR OTHERWISE) ARISING IN ANY WAY OUT OF THE USE OF THIS
+ * SOFTWARE, EVEN IF ADVISED OF THE POSSIBILITY OF SUCH DAMAGE.
+ *******************************************************************************/
+package net.jkernelmachines.kernel.typed;
+
+import java.io.Serializable;
+import java.util.Arrays;
+import java.util.LinkedList;
+import java.util.List;
+import java.util.Queue;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.Future;
+import java.util.concurrent.ThreadPoolExecutor;
+
+import net.jkernelmachines.threading.ThreadPoolServer;
+import net.jkernelmachines.type.TrainingSample;
+
+/**
+ * <p>
+ * Sparse histogram of the n-grams of a string, stored as sorted arrays of
+ * n-gram keys and counts, such that dot products are computed by merge-join
+ * without allocation.
+ * </p>
+ * <p>
+ * Keys are computed by a rolling hash. For n &lt;= 4, the key is the exact
+ * concatenation of the 16 bits characters. For larger n, the key is a
+ * polynomial hash on 64 bits. Optionally, keys are hashed on a given number of
+ * bits (hashing trick), merging the counts of colliding n-grams.
+ * </p>
+ * 
+ * @author picard
+ * 
+ */
+public final class NGramProfile implements Serializable {
+
+	private static final long serialVersionUID = -2329427561097417683L;
+
+	private static final long BASE = 0x100000001B3L;
+	private static final long MIX = 0x9E3779B97F4A7C15L;
+	// number of strings per block of computation
+	private static final int BLOCK = 64;
+
+	private final long[] keys;
+	private final double[] counts;
+	private final double norm2;
+
+	private NGramProfile(long[] keys, double[] counts) {
+		this.keys = keys;
+		this.counts = counts;
+		double r = 0;
+		for (double c : counts) {
+			r += c * c;
+		}
+		this.norm2 = r;
+	}
+
+	/**
+	 * Computes the profile of n-grams of a string
+	 * 
+	 * @param s
+	 *            the string
+	 * @param n
+	 *            length of considered sub-sequences
+	 * @param hashBits
+	 *            number of bits of the hashed keys, or 0 for no hashing
+	 * @return the profile
+	 */
+	public static NGramProfile compute(String s, int n, int hashBits) {
+		int L = s.length() - n + 1;
+		if (L <= 0 || n <= 0) {
+			return new NGramProfile(new long[0], new double[0]);
+		}
+
+		// rolling keys
+		long[] h = new long[L];
+		long key = 0;
+		if (n <= 4) {
+			long mask = (n == 4) ? -1L : (1L << (16 * n)) - 1;
+			for (int i = 0; i < s.length(); i++) {
+				key = ((key << 16) | s.charAt(i)) & mask;
+				if (i >= n - 1) {
+					h[i - n + 1] = key;
+				}
+			}
+		} else {
+			long pow = 1;
+			for (int i = 1; i < n; i++) {
+				pow *= BASE;
+			}
+			for (int i = 0; i < n; i++) {
+				key = key * BASE + s.charAt(i);
+			}
+			h[0] = key;
+			for (int i = 1; i < L; i++) {
+				key = (key - s.charAt(i - 1) * pow) * BASE
+						+ s.charAt(i + n - 1);
+				h[i] = key;
+			}
+		}
+		if (hashBits > 0 && hashBits < 64) {
+			for (int i = 0; i < L; i++) {
+				long k = h[i] * MIX;
+				h[i] = (k ^ (k >>> 32)) * MIX >>> (64 - hashBits);
+			}
+		}
+
+		// sorted distinct keys and counts
+		Arrays.sort(h);
+		int m = 0;
+		for (int i = 0; i < L; i++) {
+			if (i == 0 || h[i] != h[i - 1]) {
+				m++;
+			}
+		}
+		long[] keys = new long[m];
+		double[] counts = new double[m];
+		int j = -1;
+		for (int i = 0; i < L; i++) {
+			if (i == 0 || h[i] != h[i - 1]) {
+				keys[++j] = h[i];
+			}
+			counts[j]++;
+		}
+		return new NGramProfile(keys, counts);
+	}
+
+	/**
+	 * Computes the profiles of a list of strings, in parallel by blocks of
+	 * samples
+	 * 
+	 * @param l
+	 *            the list of samples
+	 * @param n
+	 *            length of considered sub-sequences
+	 * @param hashBits
+	 *            number of bits of the hashed keys, or 0 for no hashing
+	 * @return the profiles in the order of the list
+	 */
+	public static NGramProfile[] compute(final List<TrainingSample<String>> l,
+			final int n, final int hashBits) {
+		final NGramProfile[] out = new NGramProfile[l.size()];
+		ThreadPoolExecutor exec = ThreadPoolServer.getThreadPoolExecutor();
+		Queue<Future<?>> futures = new LinkedList<Future<?>>();
+		try {
+			for (int b = 0; b < out.length; b += BLOCK) {
+				final int from = b;
+				final int to = Math.min(out.length, b + BLOCK);
+				futures.add(exec.submit(new Runnable() {
+					@Override
+					public void run() {
+						for (int i = from; i < to; i++) {
+							out[i] = compute(l.get(i).sample, n, hashBits);
+						}
+					}
+				}));
+			}
+			while (!futures.isEmpty()) {
+				futures.remove().get();
+			}
+		} catch (InterruptedException | ExecutionException e) {
+			throw new RuntimeException("Failed threading n-gram profiles", e);
+		} finally {
+			ThreadPoolServer.shutdownNow(exec);
+		}
+		return out;
+	}
+
+	/**
+	 * Dot product with another profile, by merge-join of the sorted keys
+	 * 
+	 * @param p
+	 *            the other profile
+	 * @return the sum over common n-grams of the products of counts
+	 */
+	public double dot(NGramProfile p) {
+		long[] k1 = keys, k2 = p.keys;
+		double[] c1 = counts, c2 = p.counts;
+		double r = 0;
+		int i = 0, j = 0;
+		while (i < k1.length && j < k2.length) {
+			if (k1[i] < k2[j]) {
+				i++;
+			} else if (k1[i] > k2[j]) {
+				j++;
+			} else {
+				r += c1[i++] * c2[j++];
+			}
+		}
+		return r;
+	}
+
+	/**
+	 * Squared norm of the profile
+	 * 
+	 * @return the sum of squared counts
+	 */
+	public double getSquaredNorm() {
+		return norm2;
+	}
+
+	/**
+	 * Sorted keys of the n-grams
+	 * 
+	 * @return the array of keys
+	 */
+	public long[] getKeys() {
+		return keys;
+	}
+
+	/**
+	 * Counts of the n-grams, in the order of keys
+	 * 
+	 * @return the array of counts
+	 */
+	public double[] getCounts() {
+		return counts;
+	}
+
+}
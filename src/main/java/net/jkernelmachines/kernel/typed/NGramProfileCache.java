@@ -0,0 +1,84 @@
+/*******************************************************************************
+ * Copyright (c) 2016, David Picard.
+ * All rights reserved.
+ *
+ * Redistribution and use in source and binary forms, with or without modification,
+ * are permitted provided that the following conditions are met:
+ *
+ * 1. Redistributions of source code must retain the above copyright notice, this
+ * list of conditions and the following disclaimer.
+ *
+ * 2. Redistributions in binary form must reproduce the above copyright notice,
+ * this list of conditions and the following disclaimer in the documentation and/or
+ * other materials provided with the distribution.
+ *
+ * 3. Neither the name of the copyright holder nor the names of its contributors
+ * may be used to endorse or promote products derived from this software without
+ * specific prior written permission.
+ *
+ * THIS SOFTWARE IS PROVIDED BY THE COPYRIGHT HOLDERS AND CONTRIBUTORS "AS IS" AND
+ * ANY EXPRESS OR IMPLIED WARRANTIES, INCLUDING, BUT NOT LIMITED TO, THE IMPLIED
+ * WARRANTIES OF MERCHANTABILITY AND FITNESS FOR A PARTICULAR PURPOSE ARE
+ * DISCLAIMED. IN NO EVENT SHALL THE COPYRIGHT HOLDER OR CONTRIBUTORS BE LIABLE FOR
+ * ANY DIRECT, INDIRECT, INCIDENTAL, SPECIAL, EXEMPLARY, OR CONSEQUENTIAL DAMAGES
+ * (INCLUDING, BUT NOT LIMITED TO, PROCUREMENT OF SUBSTITUTE GOODS OR SERVICES;
+ * LOSS OF USE, DATA, OR PROFITS; OR BUSINESS INTERRUPTION) HOWEVER CAUSED AND ON
+ * ANY THEORY OF LIABILITY, WHETHER IN CONTRACT, STRICT LIABILITY, OR TORT
+ * (INCLUDING NEGLIGENCE OR OTHERWISE) ARISING IN ANY WAY OUT OF THE USE OF THIS
+ * SOFTWARE, EVEN IF ADVISED OF THE POSSIBILITY OF SUCH DAMAGE.
+ *******************************************************************************/
+package net.jkernelmachines.kernel.typed;
+
+import java.util.LinkedHashMap;
+import java.util.Map;
+
+import net.jkernelmachines.util.metrics.Metrics;
+
+/**
+ * Bounded cache of the n-gram profiles of the last used strings, such that
+ * pairwise evaluations (e.g. scoring with the support vectors of an SVM) do
+ * not profile the same strings at each call. Least recently used profiles are
+ * evicted first.
+ * 
+ * @author picard
+ * 
+ */
+final class NGramProfileCache {
+
+	private final Map<String, NGramProfile> profiles;
+
+	@SuppressWarnings("serial")
+	NGramProfileCache(final int capacity) {
+		profiles = new LinkedHashMap<String, NGramProfile>(16, 0.75f, true) {
+			@Override
+			protected boolean removeEldestEntry(
+					Map.Entry<String, NGramProfile> eldest) {
+				if (size() > capacity) {
+					Metrics.count(Metrics.CACHE_EVICTIONS, NGramProfileCache.this, 1);
+					return true;
+				}
+				return false;
+			}
+		};
+	}
+
+	/**
+	 * profile of a string, computed if not in the cache
+	 */
+	NGramProfile get(String s, int n, int hashBits) {
+		NGramProfile p;
+		synchronized (this) {
+			p = profiles.get(s);
+		}
+		Metrics.count((p == null) ? Metrics.CACHE_MISSES : Metrics.CACHE_HITS,
+				this, 1);
+		if (p == null) {
+			p = NGramProfile.compute(s, n, hashBits);
+			synchronized (this) {
+				profiles.put(s, p);
+			}
+		}
+		return p;
+	}
+
+}
@@ -0,0 +1,98 @@
+/*******************************************************************************
+ * Copyright (c) 2016, David Picard.
+ * All rights reserved.
+ *
+ * Redistribution and use in source and binary forms, with or without modification,
+ * are permitted provided that the following conditions are met:
+ *
+ * 1. Redistributions of source code must retain the above copyright notice, this
+ * list of conditions and the following disclaimer.
+ *
+ * 2. Redistributions in binary form must reproduce the above copyright notice,
+ * this list of conditions and the following disclaimer in the documentation and/or
+ * other materials provided with the distribution.
+ *
+ * 3. Neither the name of the copyright holder nor the names of its contributors
+ * may be used to endorse or promote products derived from this software without
+ * specific prior written permission.
+ *
+ * THIS SOFTWARE IS PROVIDED BY THE COPYRIGHT HOLDERS AND CONTRIBUTORS "AS IS" AND
+ * ANY EXPRESS OR IMPLIED WARRANTIES, INCLUDING, BUT NOT LIMITED TO, THE IMPLIED
+ * WARRANTIES OF MERCHANTABILITY AND FITNESS FOR A PARTICULAR PURPOSE ARE
+ * DISCLAIMED. IN NO EVENT SHALL THE COPYRIGHT HOLDER OR CONTRIBUTORS BE LIABLE FOR
+ * ANY DIRECT, INDIRECT, INCIDENTAL, SPECIAL, EXEMPLARY, OR CONSEQUENTIAL DAMAGES
+ * (INCLUDING, BUT NOT LIMITED TO, PROCUREMENT OF SUBSTITUTE GOODS OR SERVICES;
+ * LOSS OF USE, DATA, OR PROFITS; OR BUSINESS INTERRUPTION) HOWEVER CAUSED AND ON
+ * ANY THEORY OF LIABILITY, WHETHER IN CONTRACT, STRICT LIABILITY, OR TORT
+ * (INCLUDING NEGLIGENCE OR OTHERWISE) ARISING IN ANY WAY OUT OF THE USE OF THIS
+ * SOFTWARE, EVEN IF ADVISED OF THE POSSIBILITY OF SUCH DAMAGE.
+ *******************************************************************************/
+package net.jkernelmachines.kernel.typed;
+
+import static java.lang.Math.sqrt;
+
+import net.jkernelmachines.kernel.Kernel;
+
+/**
+ * Kernel on precomputed n-gram profiles (see
+ * {@link net.jkernelmachines.projection.StringNGramProjection#projectList(java.util.List, int, int)}),
+ * computed by merge-join of the sorted keys. Same values as
+ * {@link StringNGram}, or {@link NormalizedStringNGram} if normalized, on the
+ * strings the profiles were computed from.
+ * 
+ * @author picard
+ * 
+ */
+public class NGramProfileKernel extends Kernel<NGramProfile> {
+
+	private static final long serialVersionUID = -1290547853394527717L;
+
+	private boolean normalized = false;
+
+	/**
+	 * Default constructor, unnormalized kernel
+	 */
+	public NGramProfileKernel() {
+	}
+
+	/**
+	 * Constructor specifying the normalization
+	 * 
+	 * @param normalized
+	 *            true for k(x, x) = 1
+	 */
+	public NGramProfileKernel(boolean normalized) {
+		this.normalized = normalized;
+	}
+
+	@Override
+	public double valueOf(NGramProfile t1, NGramProfile t2) {
+		if (!normalized) {
+			return t1.dot(t2);
+		}
+		double r1 = t1.getSquaredNorm();
+		double r2 = t2.getSquaredNorm();
+		if (r1 == 0 || r2 == 0) {
+			return 0;
+		}
+		return t1.dot(t2) / sqrt(r1 * r2);
+	}
+
+	@Override
+	public double valueOf(NGramProfile t1) {
+		if (normalized) {
+			return 1;
+		}
+		return t1.getSquaredNorm();
+	}
+
+	/**
+	 * Tells if the kernel is normalized
+	 * 
+	 * @return true if k(x, x) = 1
+	 */
+	public boolean isNormalized() {
+		return normalized;
+	}
+
+}
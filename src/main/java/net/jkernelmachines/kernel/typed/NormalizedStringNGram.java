@@ -31,11 +31,18 @@ package net.jkernelmachines.kernel.typed;
 
 import static java.lang.Math.sqrt;
 
-import java.util.HashMap;
+import java.util.List;
 
 import net.jkernelmachines.kernel.Kernel;
+import net.jkernelmachines.threading.ThreadedMatrixOperator;
+import net.jkernelmachines.type.TrainingSample;
 
 /**
+ * Kernel counting the common n-grams of two strings, normalized such that
+ * k(x, x) = 1. Strings are profiled into sorted arrays of n-gram keys (see
+ * {@link NGramProfile}), and the kernel is computed by merge-join. As for
+ * {@link StringNGram}, the profiles of the last used strings are cached.
+ * 
  * @author picard
  *
  */
@@ -45,7 +52,12 @@ public class NormalizedStringNGram extends Kernel<String> {
 	 * 
 	 */
 	private static final long serialVersionUID = -6437260079523365632L;
+	// number of profiles kept for pairwise evaluations
+	private static final int PROFILE_CACHE_SIZE = 1024;
 	int n = 2;
+	int hashBits = 0;
+	// profiles of the last used strings
+	private transient NGramProfileCache profiles;
 
 	public NormalizedStringNGram(int n) {
 		this.n = n;
@@ -59,51 +71,45 @@ public class NormalizedStringNGram extends Kernel<String> {
 	 */
 	@Override
 	public double valueOf(String t1, String t2) {
-		double r = 0;
+		return valueOf(profile(t1), profile(t2));
+	}
 
-		HashMap<String, Double> m1 = new HashMap<>();
-		for (int i = 0; i < t1.length() - n + 1; i++) {
-			String s = t1.substring(i, i + n);
-			double d = m1.containsKey(s) ? m1.get(s) : 0;
-			m1.put(s, d + 1);
-		}
-		double r1 = 0;
-		for (double d : m1.values()) {
-			r1 += d * d;
-		}
-		if( r1 == 0) {
-			return 0;
-		}
-		
-		HashMap<String, Double> m2 = new HashMap<>();
-		for (int i = 0; i < t2.length() - n + 1; i++) {
-			String s = t2.substring(i, i + n);
-			double d = m2.containsKey(s) ? m2.get(s) : 0;
-			m2.put(s, d + 1);
-		}
-		double r2 = 0;
-		for (double d : m2.values()) {
-			r2 += d * d;
-		}
-		if(r2 == 0) {
+	/**
+	 * Computes the kernel between two precomputed profiles
+	 * 
+	 * @param p1
+	 *            first profile
+	 * @param p2
+	 *            second profile
+	 * @return the kernel value
+	 */
+	public double valueOf(NGramProfile p1, NGramProfile p2) {
+		double r1 = p1.getSquaredNorm();
+		double r2 = p2.getSquaredNorm();
+		if (r1 == 0 || r2 == 0) {
 			return 0;
 		}
+		return p1.dot(p2) / sqrt(r1 * r2);
+	}
 
-		if (m2.size() < m1.size()) {
-			for (String s : m2.keySet()) {
-				if (m1.containsKey(s)) {
-					r += m1.get(s) * m2.get(s);
-				}
-			}
-		} else {
-			for (String s : m1.keySet()) {
-				if (m2.containsKey(s)) {
-					r += m2.get(s) * m1.get(s);
+	/**
+	 * Computes the Gram matrix, profiling each string only once.
+	 */
+	@Override
+	public double[][] getKernelMatrix(final List<TrainingSample<String>> l) {
+		final NGramProfile[] p = NGramProfile.compute(l, n, hashBits);
+		ThreadedMatrixOperator factory = new ThreadedMatrixOperator() {
+			@Override
+			public void doLines(double[][] matrix, int from, int to) {
+				for (int i = from; i < to; i++) {
+					for (int j = i; j < matrix.length; j++) {
+						matrix[i][j] = valueOf(p[i], p[j]);
+						matrix[j][i] = matrix[i][j];
+					}
 				}
 			}
-		}
-
-		return r / sqrt(r1 * r2);
+		};
+		return factory.getMatrix(new double[l.size()][l.size()]);
 	}
 
 	/*
@@ -116,4 +122,37 @@ public class NormalizedStringNGram extends Kernel<String> {
 		return 1;
 	}
 
+	/**
+	 * Tells the number of bits of the hashed n-gram keys
+	 * 
+	 * @return the number of bits, 0 if keys are not hashed
+	 */
+	public int getHashBits() {
+		return hashBits;
+	}
+
+	/**
+	 * Sets the number of bits of the hashed n-gram keys (hashing trick). 0
+	 * (default) means no hashing.
+	 * 
+	 * @param hashBits
+	 *            the number of bits
+	 */
+	public void setHashBits(int hashBits) {
+		this.hashBits = hashBits;
+		profiles = null;
+	}
+
+	/**
+	 * profile of a string, from the cache of the last used strings
+	 */
+	private NGramProfile profile(String s) {
+		NGramProfileCache c = profiles;
+		if (c == null) {
+			c = new NGramProfileCache(PROFILE_CACHE_SIZE);
+			profiles = c;
+		}
+		return c.get(s, n, hashBits);
+	}
+
 }
@@ -29,11 +29,22 @@
  *******************************************************************************/
 package net.jkernelmachines.kernel.typed;
 
-import java.util.HashMap;
+import java.util.List;
 
 import net.jkernelmachines.kernel.Kernel;
+import net.jkernelmachines.threading.ThreadedMatrixOperator;
+import net.jkernelmachines.type.TrainingSample;
 
 /**
+ * Kernel counting the common n-grams of two strings. Strings are profiled into
+ * sorted arrays of n-gram keys (see {@link NGramProfile}), and the kernel is
+ * computed by merge-join. The profiles of the last used strings are cached,
+ * such that repeated evaluations with the same strings (e.g. scoring with the
+ * support vectors of an SVM) do not profile them again. For large sets of
+ * strings, profile them once with
+ * {@link net.jkernelmachines.projection.StringNGramProjection#projectList(List, int, int)}
+ * and use a {@link NGramProfileKernel}.
+ * 
  * @author picard
  *
  */
@@ -43,7 +54,12 @@ public class StringNGram extends Kernel<String> {
 	 * 
 	 */
 	private static final long serialVersionUID = -6437260079523365632L;
+	// number of profiles kept for pairwise evaluations
+	private static final int PROFILE_CACHE_SIZE = 1024;
 	int n = 2;
+	int hashBits = 0;
+	// profiles of the last used strings
+	private transient NGramProfileCache profiles;
 	
 	public StringNGram(int n) {
 		this.n = n;
@@ -54,40 +70,40 @@ public class StringNGram extends Kernel<String> {
 	 */
 	@Override
 	public double valueOf(String t1, String t2) {
-		double r = 0;
-		String s1, s2;
-		
-		if(t1.length() < t2.length()) {
-			s1 = t1;
-			s2 = t2;
-		}
-		else {
-			s1 = t2; 
-			s2 = t1;
-		}
-		
-		HashMap<String, Double> m1 = new HashMap<>();
-		for(int i = 0 ; i < s1.length()-n+1 ; i++) {
-			String s = s1.substring(i, i+n);
-			double d = m1.containsKey(s)?m1.get(s):0;
-			m1.put(s, d+1);
-		}
+		return profile(t1).dot(profile(t2));
+	}
 
-		HashMap<String, Double> m2 = new HashMap<>();
-		for(int i = 0 ; i < s2.length()-n+1 ; i++) {
-			String s = s2.substring(i, i+n);
-			if(m1.containsKey(s)) {
-				double d = m2.containsKey(s)?m2.get(s):0;
-				m2.put(s, d+1);
+	/**
+	 * Computes the kernel between two precomputed profiles
+	 * 
+	 * @param p1
+	 *            first profile
+	 * @param p2
+	 *            second profile
+	 * @return the kernel value
+	 */
+	public double valueOf(NGramProfile p1, NGramProfile p2) {
+		return p1.dot(p2);
+	}
+
+	/**
+	 * Computes the Gram matrix, profiling each string only once.
+	 */
+	@Override
+	public double[][] getKernelMatrix(final List<TrainingSample<String>> l) {
+		final NGramProfile[] p = NGramProfile.compute(l, n, hashBits);
+		ThreadedMatrixOperator factory = new ThreadedMatrixOperator() {
+			@Override
+			public void doLines(double[][] matrix, int from, int to) {
+				for (int i = from; i < to; i++) {
+					for (int j = i; j < matrix.length; j++) {
+						matrix[i][j] = p[i].dot(p[j]);
+						matrix[j][i] = matrix[i][j];
+					}
+				}
 			}
-		}
-		
-		for(String s : m2.keySet()) {
-			double d = m2.get(s);
-			r += m1.get(s)*d;
-		}
-		
-		return r;
+		};
+		return factory.getMatrix(new double[l.size()][l.size()]);
 	}
 
 	/* (non-Javadoc)
@@ -95,7 +111,40 @@ public class StringNGram extends Kernel<String> {
 	 */
 	@Override
 	public double valueOf(String t1) {
-		return valueOf(t1, t1);
+		return profile(t1).getSquaredNorm();
+	}
+
+	/**
+	 * Tells the number of bits of the hashed n-gram keys
+	 * 
+	 * @return the number of bits, 0 if keys are not hashed
+	 */
+	public int getHashBits() {
+		return hashBits;
+	}
+
+	/**
+	 * Sets the number of bits of the hashed n-gram keys (hashing trick). 0
+	 * (default) means no hashing.
+	 * 
+	 * @param hashBits
+	 *            the number of bits
+	 */
+	public void setHashBits(int hashBits) {
+		this.hashBits = hashBits;
+		profiles = null;
+	}
+
+	/**
+	 * profile of a string, from the cache of the last used strings
+	 */
+	private NGramProfile profile(String s) {
+		NGramProfileCache c = profiles;
+		if (c == null) {
+			c = new NGramProfileCache(PROFILE_CACHE_SIZE);
+			profiles = c;
+		}
+		return c.get(s, n, hashBits);
 	}
 
 }
@@ -99,7 +99,7 @@ public class IndexDoubleGaussChi2 extends GaussianKernel<double[]> {
 	@Override
 	public double distanceValueOf(double[] t1, double[] t2) {
 		if(t1[ind] == 0. && t2[ind] == 0.)
-			return 1.;
+			return 0.;
 		
 		double tmp = 0;
 		double min = 0;
@@ -112,4 +112,10 @@ public class IndexDoubleGaussChi2 extends GaussianKernel<double[]> {
 		}
 		return min;
 	}
+
+	@Override
+	public boolean isSameDistance(GaussianKernel<double[]> k) {
+		return k != null && k.getClass() == getClass()
+				&& ((IndexDoubleGaussChi2) k).ind == ind && ((IndexDoubleGaussChi2) k).eps == eps;
+	}
 }
@@ -79,6 +79,15 @@ public class IndexDoubleGaussL2 extends GaussianKernel<double[]> {
 	{
 		this.ind = i;
 	}
+	
+	/**
+	 * Tells the index of the component used by this kernel
+	 * @return the index of the component
+	 */
+	public int getIndex()
+	{
+		return ind;
+	}
 
 	public double getGamma() {
 		return gamma;
@@ -89,4 +98,9 @@ public class IndexDoubleGaussL2 extends GaussianKernel<double[]> {
 		double v =t1[ind] - t2[ind]; 
 		return v*v;
 	}
+
+	@Override
+	public boolean isSameDistance(GaussianKernel<double[]> k) {
+		return k != null && k.getClass() == getClass() && ((IndexDoubleGaussL2) k).ind == ind;
+	}
 }
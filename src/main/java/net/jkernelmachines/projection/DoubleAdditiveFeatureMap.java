@@ -0,0 +1,366 @@
+/*******************************************************************************
+ * Copyright (c) 2016, David Picard.
+ * All rights reserved.
+ *
+ * Redistribution and use in source and binary forms, with or without modification,
+ * are permitted provided that the following conditions are met:
+ *
+ * 1. Redistributions of source code must retain the above copyright notice, this
+ * list of conditions and the following disclaimer.
+ *
+ * 2. Redistributions in binary form must reproduce the above copyright notice,
+ * this list of conditions and the following disclaimer in the documentation and/or
+ * other materials provided with the distribution.
+ *
+ * 3. Neither the name of the copyright holder nor the names of its contributors
+ * may be used to endorse or promote products derived from this software without
+ * specific prior written permission.
+ *
+ * THIS SOFTWARE IS PROVIDED BY THE COPYRIGHT HOLDERS AND CONTRIBUTORS "AS IS" AND
+ * ANY EXPRESS OR IMPLIED WARRANTIES, INCLUDING, BUT NOT LIMITED TO, THE IMPLIED
+ * WARRANTIES OF MERCHANTABILITY AND FITNESS FOR A PARTICULAR PURPOSE ARE
+ * DISCLAIMED. IN NO EVENT SHALL THE COPYRIGHT HOLDER OR CONTRIBUTORS BE LIABLE FOR
+ * ANY DIRECT, INDIRECT, INCIDENTAL, SPECIAL, EXEMPLARY, OR CONSEQUENTIAL DAMAGES
+ * (INCLUDING, BUT NOT LIMITED TO, PROCUREMENT OF SUBSTITUTE GOODS OR SERVICES;
+ * LOSS OF USE, DATA, OR PROFITS; OR BUSINESS INTERRUPTION) HOWEVER CAUSED AND ON
+ * ANY THEORY OF LIABILITY, WHETHER IN CONTRACT, STRICT LIABILITY, OR TORT
+ * (INCLUDING NEGLIGENCE OR OTHERWISE) ARISING IN ANY WAY OUT OF THE USE OF THIS
+ * SOFTWARE, EVEN IF ADVISED OF THE POSSIBILITY OF SUCH DAMAGE.
+ *******************************************************************************/
+package net.jkernelmachines.projection;
+
+import java.io.Serializable;
+import java.util.ArrayList;
+import java.util.LinkedList;
+import java.util.List;
+import java.util.Map;
+import java.util.Queue;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.Future;
+import java.util.concurrent.ThreadPoolExecutor;
+
+import net.jkernelmachines.threading.ThreadPoolServer;
+import net.jkernelmachines.type.TrainingSample;
+
+/**
+ * <p>
+ * Explicit feature maps for additive homogeneous kernels on histograms, such
+ * that the dot product of two mapped vectors approximates the kernel:
+ * </p>
+ * <ul>
+ * <li>chi2: k(x, y) = sum_d 2 x[d] y[d] / (x[d] + y[d])</li>
+ * <li>intersection: k(x, y) = sum_d min(x[d], y[d])</li>
+ * </ul>
+ * <p>
+ * Each component is mapped to 2n+1 features by sampling the spectrum of the
+ * kernel with period L. The map can be composed with random Fourier features
+ * to approximate the Gaussian kernel exp(-gamma d(x,y)) where d(x, y) = k(x,x)
+ * + k(y,y) - 2k(x,y), which is the chi2 distance of DoubleGaussChi2,
+ * FloatGaussChi2 and IntGaussChi2 for the chi2 kernel.
+ * </p>
+ * <p>
+ * <b>Efficient Additive Kernels via Explicit Feature Maps</b>, Andrea Vedaldi
+ * and Andrew Zisserman, <i>IEEE PAMI 2012</i>.
+ * </p>
+ * 
+ * @author picard
+ * 
+ */
+public class DoubleAdditiveFeatureMap implements Serializable {
+
+	private static final long serialVersionUID = 4405628213307935724L;
+
+	/** Type of kernel chi2 */
+	public static final int CHI2 = 1;
+	/** Type of kernel intersection */
+	public static final int INTERSECTION = 2;
+
+	// number of samples per block of computation
+	private static final int BLOCK = 64;
+
+	private int kernel;
+	private int order;
+	private double period;
+
+	// coefficients of the map
+	private double[] coef;
+
+	// optional random Fourier features
+	private DoubleRandomFourierProjection rff;
+
+	/**
+	 * Constructor with the type of kernel and the order n of the map, using
+	 * the default sampling period
+	 * 
+	 * @param kernel
+	 *            the type of kernel (CHI2 or INTERSECTION)
+	 * @param order
+	 *            the order n, each component is mapped to 2n+1 features
+	 */
+	public DoubleAdditiveFeatureMap(int kernel, int order) {
+		if (kernel != CHI2 && kernel != INTERSECTION) {
+			throw new UnsupportedOperationException("Unknown kernel type "
+					+ kernel);
+		}
+		this.kernel = kernel;
+		this.order = order;
+		// default periods from VLFeat
+		double p;
+		if (kernel == CHI2) {
+			p = 5.86 * Math.sqrt(order) + 3.65;
+		} else {
+			p = 2.38 * Math.log(order + 0.8) + 5.6;
+		}
+		setPeriod(2 * Math.PI / p);
+	}
+
+	/**
+	 * spectrum of the kernel signature
+	 */
+	private double kappa(double lambda) {
+		if (kernel == CHI2) {
+			return 1 / Math.cosh(Math.PI * lambda);
+		}
+		return 2 / (Math.PI * (1 + 4 * lambda * lambda));
+	}
+
+	/**
+	 * Sets the sampling period L of the spectrum
+	 * 
+	 * @param period
+	 *            the sampling period
+	 */
+	public void setPeriod(double period) {
+		this.period = period;
+		coef = new double[order + 1];
+		coef[0] = Math.sqrt(period * kappa(0));
+		for (int j = 1; j <= order; j++) {
+			coef[j] = Math.sqrt(2 * period * kappa(j * period));
+		}
+	}
+
+	/**
+	 * Tells the sampling period L of the spectrum
+	 * 
+	 * @return the sampling period
+	 */
+	public double getPeriod() {
+		return period;
+	}
+
+	/**
+	 * Tells the order n of the map
+	 * 
+	 * @return the order
+	 */
+	public int getOrder() {
+		return order;
+	}
+
+	/**
+	 * Composes the map with random Fourier features approximating
+	 * exp(-gamma d(x, y)). The projection has to be trained afterwards.
+	 * 
+	 * @param gamma
+	 *            the gamma of the Gaussian kernel
+	 * @param dimension
+	 *            the number of random features
+	 * @param seed
+	 *            the seed of the random features
+	 */
+	public void setGaussian(double gamma, int dimension, long seed) {
+		rff = new DoubleRandomFourierProjection(gamma, dimension);
+		rff.setSeed(seed);
+	}
+
+	/**
+	 * Removes the composition with random Fourier features
+	 */
+	public void unsetGaussian() {
+		rff = null;
+	}
+
+	/**
+	 * Draws the random Fourier features, if any, for samples of the same
+	 * dimension as the given list.
+	 * 
+	 * @param list
+	 *            the list of training samples
+	 */
+	public void train(List<TrainingSample<double[]>> list) {
+		train(list.get(0).sample.length);
+	}
+
+	/**
+	 * Draws the random Fourier features, if any, for samples of the given
+	 * dimension.
+	 * 
+	 * @param dim
+	 *            the dimension of input samples
+	 */
+	public void train(int dim) {
+		if (rff != null) {
+			rff.train((2 * order + 1) * dim);
+		}
+	}
+
+	/**
+	 * Tells the dimension of the mapped vectors
+	 * 
+	 * @param dim
+	 *            the dimension of input vectors
+	 * @return the dimension of mapped vectors
+	 */
+	public int getDimension(int dim) {
+		if (rff != null) {
+			return rff.getDimension();
+		}
+		return (2 * order + 1) * dim;
+	}
+
+	/**
+	 * maps value v of component d in z
+	 */
+	private void map(double v, int d, double[] z) {
+		if (v == 0) {
+			return;
+		}
+		int o = (2 * order + 1) * d;
+		double s = Math.signum(v);
+		double a = Math.abs(v);
+		double r = s * Math.sqrt(a);
+		z[o] = r * coef[0];
+		if (order > 0) {
+			// cos and sin of j*L*log(x) by recurrence
+			double t = period * Math.log(a);
+			double c1 = Math.cos(t);
+			double s1 = Math.sin(t);
+			double c = c1;
+			double sn = s1;
+			for (int j = 1; j <= order; j++) {
+				z[o + 2 * j - 1] = r * coef[j] * c;
+				z[o + 2 * j] = r * coef[j] * sn;
+				double cn = c * c1 - sn * s1;
+				sn = sn * c1 + c * s1;
+				c = cn;
+			}
+		}
+	}
+
+	/**
+	 * Projects a single vector.
+	 * 
+	 * @param x
+	 *            the vector to project
+	 * @return the mapped vector
+	 */
+	public double[] project(double[] x) {
+		double[] z = new double[(2 * order + 1) * x.length];
+		for (int d = 0; d < x.length; d++) {
+			map(x[d], d, z);
+		}
+		return (rff != null) ? rff.project(z) : z;
+	}
+
+	/**
+	 * Projects a single vector of floats.
+	 * 
+	 * @param x
+	 *            the vector to project
+	 * @return the mapped vector
+	 */
+	public double[] project(float[] x) {
+		double[] z = new double[(2 * order + 1) * x.length];
+		for (int d = 0; d < x.length; d++) {
+			map(x[d], d, z);
+		}
+		return (rff != null) ? rff.project(z) : z;
+	}
+
+	/**
+	 * Projects a single vector of integers.
+	 * 
+	 * @param x
+	 *            the vector to project
+	 * @return the mapped vector
+	 */
+	public double[] project(int[] x) {
+		double[] z = new double[(2 * order + 1) * x.length];
+		for (int d = 0; d < x.length; d++) {
+			map(x[d], d, z);
+		}
+		return (rff != null) ? rff.project(z) : z;
+	}
+
+	/**
+	 * Projects a sparse histogram, as used by MapIntersectionKernel.
+	 * 
+	 * @param x
+	 *            the sparse histogram, indexed by component
+	 * @param dim
+	 *            the dimension of the histograms
+	 * @return the mapped vector
+	 */
+	public double[] project(Map<Integer, Double> x, int dim) {
+		double[] z = new double[(2 * order + 1) * dim];
+		for (Map.Entry<Integer, Double> e : x.entrySet()) {
+			map(e.getValue(), e.getKey(), z);
+		}
+		return (rff != null) ? rff.project(z) : z;
+	}
+
+	/**
+	 * Projects a single sample.
+	 * 
+	 * @param s
+	 *            the sample to project
+	 * @return a new sample with the mapped vector, and the same label
+	 */
+	public TrainingSample<double[]> project(TrainingSample<double[]> s) {
+		return new TrainingSample<double[]>(project(s.sample), s.label);
+	}
+
+	/**
+	 * Performs the projection on a list of samples, in parallel by blocks of
+	 * samples.
+	 * 
+	 * @param list
+	 *            the list of input samples
+	 * @return a new list with projected samples
+	 */
+	public List<TrainingSample<double[]>> projectList(
+			final List<TrainingSample<double[]>> list) {
+		final double[][] z = new double[list.size()][];
+
+		ThreadPoolExecutor exec = ThreadPoolServer.getThreadPoolExecutor();
+		Queue<Future<?>> futures = new LinkedList<Future<?>>();
+		try {
+			for (int i = 0; i < z.length; i += BLOCK) {
+				final int from = i;
+				final int to = Math.min(z.length, i + BLOCK);
+				futures.add(exec.submit(new Runnable() {
+					@Override
+					public void run() {
+						for (int i = from; i < to; i++) {
+							z[i] = project(list.get(i).sample);
+						}
+					}
+				}));
+			}
+			while (!futures.isEmpty()) {
+				futures.remove().get();
+			}
+		} catch (InterruptedException | ExecutionException e) {
+			throw new RuntimeException("Failed threading projection", e);
+		} finally {
+			ThreadPoolServer.shutdownNow(exec);
+		}
+
+		List<TrainingSample<double[]>> out = new ArrayList<TrainingSample<double[]>>(
+				list.size());
+		for (int i = 0; i < z.length; i++) {
+			out.add(new TrainingSample<double[]>(z[i], list.get(i).label));
+		}
+		return out;
+	}
+}
@@ -0,0 +1,245 @@
+/*******************************************************************************
+ * Copyright (c) 2016, David Picard.
+ * All rights reserved.
+ *
+ * Redistribution and use in source and binary forms, with or without modification,
+ * are permitted provided that the following conditions are met:
+ *
+ * 1. Redistributions of source code must retain the above copyright notice, this
+ * list of conditions and the following disclaimer.
+ *
+ * 2. Redistributions in binary form must reproduce the above copyright notice,
+ * this list of conditions and the following disclaimer in the documentation and/or
+ * other materials provided with the distribution.
+ *
+ * 3. Neither the name of the copyright holder nor the names of its contributors
+ * may be used to endorse or promote products derived from this software without
+ * specific prior written permission.
+ *
+ * THIS SOFTWARE IS PROVIDED BY THE COPYRIGHT HOLDERS AND CONTRIBUTORS "AS IS" AND
+ * ANY EXPRESS OR IMPLIED WARRANTIES, INCLUDING, BUT NOT LIMITED TO, THE IMPLIED
+ * WARRANTIES OF MERCHANTABILITY AND FITNESS FOR A PARTICULAR PURPOSE ARE
+ * DISCLAIMED. IN NO EVENT SHALL THE COPYRIGHT HOLDER OR CONTRIBUTORS BE LIABLE FOR
+ * ANY DIRECT, INDIRECT, INCIDENTAL, SPECIAL, EXEMPLARY, OR CONSEQUENTIAL DAMAGES
+ * (INCLUDING, BUT NOT LIMITED TO, PROCUREMENT OF SUBSTITUTE GOODS OR SERVICES;
+ * LOSS OF USE, DATA, OR PROFITS; OR BUSINESS INTERRUPTION) HOWEVER CAUSED AND ON
+ * ANY THEORY OF LIABILITY, WHETHER IN CONTRACT, STRICT LIABILITY, OR TORT
+ * (INCLUDING NEGLIGENCE OR OTHERWISE) ARISING IN ANY WAY OUT OF THE USE OF THIS
+ * SOFTWARE, EVEN IF ADVISED OF THE POSSIBILITY OF SUCH DAMAGE.
+ *******************************************************************************/
+package net.jkernelmachines.projection;
+
+import java.io.Serializable;
+import java.util.ArrayList;
+import java.util.LinkedList;
+import java.util.List;
+import java.util.Queue;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.Future;
+import java.util.concurrent.ThreadPoolExecutor;
+
+import net.jkernelmachines.kernel.extra.NystromKernel;
+import net.jkernelmachines.threading.ThreadPoolServer;
+import net.jkernelmachines.type.TrainingSample;
+
+/**
+ * <p>
+ * Explicit mean embedding of bags of double arrays. Each bag is mapped to the
+ * average of the features of its elements, obtained either by random Fourier
+ * features or by a Nystrom approximation of the minor kernel.
+ * </p>
+ * <p>
+ * The dot product of two embeddings approximates the kernel on bags
+ * K(B1, B2) = 1/(|B1||B2|) sum_{x in B1} sum_{y in B2} k(x, y), as computed by
+ * {@link net.jkernelmachines.kernel.extra.bag.ListKernel} (or the
+ * unnormalized sum of
+ * {@link net.jkernelmachines.kernel.extra.bag.UnormalizedListKernel} if
+ * embeddings are not normalized), in O(D) instead of O(|B1||B2|) minor kernel
+ * evaluations. The embeddings can be used with linear classifiers.
+ * </p>
+ * 
+ * @author picard
+ * 
+ */
+public class DoubleBagMeanEmbedding implements Serializable {
+
+	private static final long serialVersionUID = 4806723183350858601L;
+
+	// number of bags per block of computation
+	private static final int BLOCK = 16;
+
+	private DoubleRandomFourierProjection rff;
+	private NystromKernel<double[]> nystrom;
+	private boolean normalized = true;
+
+	/**
+	 * Constructor using trained random Fourier features for the elements
+	 * 
+	 * @param rff
+	 *            the random Fourier features projection
+	 */
+	public DoubleBagMeanEmbedding(DoubleRandomFourierProjection rff) {
+		this.rff = rff;
+	}
+
+	/**
+	 * Constructor using a trained Nystrom approximation for the elements
+	 * 
+	 * @param nystrom
+	 *            the Nystrom kernel
+	 */
+	public DoubleBagMeanEmbedding(NystromKernel<double[]> nystrom) {
+		this.nystrom = nystrom;
+	}
+
+	/**
+	 * Projects a single bag.
+	 * 
+	 * @param bag
+	 *            the bag to project
+	 * @return the mean embedding of the bag
+	 */
+	public double[] project(List<double[]> bag) {
+		double[][] x = bag.toArray(new double[bag.size()][]);
+		return average(features(x), 0, x.length);
+	}
+
+	/**
+	 * Projects a single sample.
+	 * 
+	 * @param s
+	 *            the sample to project
+	 * @return a new sample with the mean embedding, and the same label
+	 */
+	public TrainingSample<double[]> project(
+			TrainingSample<? extends List<double[]>> s) {
+		return new TrainingSample<double[]>(project(s.sample), s.label);
+	}
+
+	/**
+	 * Performs the projection on a list of bags. The projection is computed in
+	 * parallel, by blocks of bags whose elements are projected together.
+	 * 
+	 * @param list
+	 *            the list of input samples
+	 * @return a new list with projected samples
+	 */
+	public List<TrainingSample<double[]>> projectList(
+			final List<? extends TrainingSample<? extends List<double[]>>> list) {
+		final double[][] z = new double[list.size()][];
+
+		ThreadPoolExecutor exec = ThreadPoolServer.getThreadPoolExecutor();
+		Queue<Future<?>> futures = new LinkedList<Future<?>>();
+		try {
+			for (int i = 0; i < z.length; i += BLOCK) {
+				final int from = i;
+				final int to = Math.min(z.length, i + BLOCK);
+				futures.add(exec.submit(new Runnable() {
+					@Override
+					public void run() {
+						// elements of the block of bags, bag by bag
+						List<double[]> elements = new ArrayList<double[]>();
+						int[] offsets = new int[to - from + 1];
+						for (int b = from; b < to; b++) {
+							elements.addAll(list.get(b).sample);
+							offsets[b - from + 1] = elements.size();
+						}
+						double[][] x = elements
+								.toArray(new double[elements.size()][]);
+						double[][] f = features(x);
+						for (int b = from; b < to; b++) {
+							z[b] = average(f, offsets[b - from],
+									offsets[b - from + 1]);
+						}
+					}
+				}));
+			}
+			while (!futures.isEmpty()) {
+				futures.remove().get();
+			}
+		} catch (InterruptedException | ExecutionException e) {
+			throw new RuntimeException("Failed threading projection", e);
+		} finally {
+			ThreadPoolServer.shutdownNow(exec);
+		}
+
+		List<TrainingSample<double[]>> out = new ArrayList<TrainingSample<double[]>>(
+				list.size());
+		for (int i = 0; i < z.length; i++) {
+			out.add(new TrainingSample<double[]>(z[i], list.get(i).label));
+		}
+		return out;
+	}
+
+	/**
+	 * features of all rows of x
+	 */
+	private double[][] features(double[][] x) {
+		double[][] f = new double[x.length][];
+		if (rff != null) {
+			for (int i = 0; i < f.length; i++) {
+				f[i] = new double[rff.getDimension()];
+			}
+			rff.project(x, f, 0, x.length);
+		} else {
+			for (int i = 0; i < f.length; i++) {
+				f[i] = nystrom.projectSample(x[i]);
+			}
+		}
+		return f;
+	}
+
+	/**
+	 * sum or average of rows from to to of f
+	 */
+	private double[] average(double[][] f, int from, int to) {
+		double[] z = new double[getDimension()];
+		for (int i = from; i < to; i++) {
+			double[] fi = f[i];
+			for (int d = 0; d < z.length; d++) {
+				z[d] += fi[d];
+			}
+		}
+		if (normalized && to > from) {
+			double c = 1. / (to - from);
+			for (int d = 0; d < z.length; d++) {
+				z[d] *= c;
+			}
+		}
+		return z;
+	}
+
+	/**
+	 * Tells the dimension of the embeddings
+	 * 
+	 * @return the dimension
+	 */
+	public int getDimension() {
+		if (rff != null) {
+			return rff.getDimension();
+		}
+		return nystrom.getDimension();
+	}
+
+	/**
+	 * Tells if the embeddings are averages (true) or sums (false) of the
+	 * features of the elements
+	 * 
+	 * @return true if normalized
+	 */
+	public boolean isNormalized() {
+		return normalized;
+	}
+
+	/**
+	 * Sets if the embeddings are averages (true, default) or sums (false) of
+	 * the features of the elements
+	 * 
+	 * @param normalized
+	 *            true to normalize
+	 */
+	public void setNormalized(boolean normalized) {
+		this.normalized = normalized;
+	}
+
+}
@@ -0,0 +1,340 @@
+/*******************************************************************************
+ * Copyright (c) 2016, David Picard.
+ * All rights reserved.
+ *
+ * Redistribution and use in source and binary forms, with or without modification,
+ * are permitted provided that the following conditions are met:
+ *
+ * 1. Redistributions of source code must retain the above copyright notice, this
+ * list of conditions and the following disclaimer.
+ *
+ * 2. Redistributions in binary form must reproduce the above copyright notice,
+ * this list of conditions and the following disclaimer in the documentation and/or
+ * other materials provided with the distribution.
+ *
+ * 3. Neither the name of the copyright holder nor the names of its contributors
+ * may be used to endorse or promote products derived from this software without
+ * specific prior written permission.
+ *
+ * THIS SOFTWARE IS PROVIDED BY THE COPYRIGHT HOLDERS AND CONTRIBUTORS "AS IS" AND
+ * ANY EXPRESS OR IMPLIED WARRANTIES, INCLUDING, BUT NOT LIMITED TO, THE IMPLIED
+ * WARRANTIES OF MERCHANTABILITY AND FITNESS FOR A PARTICULAR PURPOSE ARE
+ * DISCLAIMED. IN NO EVENT SHALL THE COPYRIGHT HOLDER OR CONTRIBUTORS BE LIABLE FOR
+ * ANY DIRECT, INDIRECT, INCIDENTAL, SPECIAL, EXEMPLARY, OR CONSEQUENTIAL DAMAGES
+ * (INCLUDING, BUT NOT LIMITED TO, PROCUREMENT OF SUBSTITUTE GOODS OR SERVICES;
+ * LOSS OF USE, DATA, OR PROFITS; OR BUSINESS INTERRUPTION) HOWEVER CAUSED AND ON
+ * ANY THEORY OF LIABILITY, WHETHER IN CONTRACT, STRICT LIABILITY, OR TORT
+ * (INCLUDING NEGLIGENCE OR OTHERWISE) ARISING IN ANY WAY OUT OF THE USE OF THIS
+ * SOFTWARE, EVEN IF ADVISED OF THE POSSIBILITY OF SUCH DAMAGE.
+ *******************************************************************************/
+package net.jkernelmachines.projection;
+
+import static net.jkernelmachines.util.algebra.VectorOperations.dot;
+
+import java.io.Serializable;
+import java.util.ArrayList;
+import java.util.LinkedList;
+import java.util.List;
+import java.util.Queue;
+import java.util.Random;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.Future;
+import java.util.concurrent.ThreadPoolExecutor;
+
+import net.jkernelmachines.kernel.Kernel;
+import net.jkernelmachines.kernel.typed.DoubleGaussL2;
+import net.jkernelmachines.kernel.typed.GeneralizedDoubleGaussL2;
+import net.jkernelmachines.kernel.typed.index.IndexDoubleGaussL2;
+import net.jkernelmachines.threading.ThreadPoolServer;
+import net.jkernelmachines.type.TrainingSample;
+
+/**
+ * <p>
+ * Random Fourier features approximating a Gaussian kernel k(x, y) = exp(-sum_d
+ * gamma_d (x[d]-y[d])^2) by a dot product in a space of dimension D:
+ * </p>
+ * <p>
+ * z(x)_j = sqrt(2/D) cos(w_j.x + b_j), with w_j drawn from N(0, 2 diag(gamma))
+ * and b_j uniform in [0, 2 pi].
+ * </p>
+ * <p>
+ * The projected samples can be used with linear classifiers (DoubleSGD,
+ * DoubleSAG, DoublePegasosSVM, ...), giving linear training time and O(D)
+ * evaluation. Frequencies can optionally be drawn by blocks of orthogonal
+ * vectors, which lowers the variance of the approximation.
+ * </p>
+ * <p>
+ * <b>Random Features for Large-Scale Kernel Machines</b>, Ali Rahimi and Ben
+ * Recht, <i>NIPS 2007</i>.<br>
+ * <b>Orthogonal Random Features</b>, Felix X. Yu, Ananda Theertha Suresh,
+ * Krzysztof Choromanski, Daniel Holtmann-Rice, Sanjiv Kumar, <i>NIPS 2016</i>.
+ * </p>
+ * 
+ * @author picard
+ * 
+ */
+public class DoubleRandomFourierProjection implements Serializable {
+
+	private static final long serialVersionUID = -3285713460834729347L;
+
+	// number of samples and features per block of computation
+	private static final int BLOCK = 64;
+
+	private int dimension;
+	private double gamma;
+	private double[] gammas;
+	private int index = -1;
+	private boolean orthogonal = false;
+	private long seed = System.nanoTime();
+
+	double[][] frequencies;
+	double[] phases;
+
+	/**
+	 * Constructor for an isotropic Gaussian kernel exp(-gamma ||x-y||^2).
+	 * 
+	 * @param gamma
+	 *            the gamma of the kernel
+	 * @param dimension
+	 *            the number of random features D
+	 */
+	public DoubleRandomFourierProjection(double gamma, int dimension) {
+		this.gamma = gamma;
+		this.dimension = dimension;
+	}
+
+	/**
+	 * Constructor matching the parameters of a Gaussian kernel. Supported
+	 * kernels are {@link DoubleGaussL2}, {@link GeneralizedDoubleGaussL2} and
+	 * {@link IndexDoubleGaussL2}.
+	 * 
+	 * @param kernel
+	 *            the Gaussian kernel to approximate
+	 * @param dimension
+	 *            the number of random features D
+	 */
+	public DoubleRandomFourierProjection(Kernel<double[]> kernel, int dimension) {
+		this.dimension = dimension;
+		if (kernel instanceof DoubleGaussL2) {
+			gamma = ((DoubleGaussL2) kernel).getGamma();
+		} else if (kernel instanceof GeneralizedDoubleGaussL2) {
+			gammas = ((GeneralizedDoubleGaussL2) kernel).getGammas();
+		} else if (kernel instanceof IndexDoubleGaussL2) {
+			gamma = ((IndexDoubleGaussL2) kernel).getGamma();
+			index = ((IndexDoubleGaussL2) kernel).getIndex();
+		} else {
+			throw new UnsupportedOperationException(kernel.getClass()
+					.getSimpleName() + " has no random Fourier features.");
+		}
+	}
+
+	/**
+	 * Draws the random features for samples of the same dimension as the
+	 * given list.
+	 * 
+	 * @param list
+	 *            the list of training samples
+	 */
+	public void train(List<TrainingSample<double[]>> list) {
+		train(list.get(0).sample.length);
+	}
+
+	/**
+	 * Draws the random features for samples of the given dimension.
+	 * 
+	 * @param dim
+	 *            the dimension of input samples
+	 */
+	public void train(int dim) {
+		Random rand = new Random(seed);
+
+		// per component standard deviation of the frequencies
+		double[] scale = new double[dim];
+		for (int d = 0; d < dim; d++) {
+			double g = (gammas != null) ? gammas[d] : gamma;
+			if (index < 0 || index == d) {
+				scale[d] = Math.sqrt(2 * g);
+			}
+		}
+
+		frequencies = new double[dimension][dim];
+		phases = new double[dimension];
+		for (int j = 0; j < dimension; j++) {
+			for (int d = 0; d < dim; d++) {
+				frequencies[j][d] = rand.nextGaussian();
+			}
+			phases[j] = 2 * Math.PI * rand.nextDouble();
+		}
+
+		if (orthogonal) {
+			// blocks of dim orthogonal directions (Gram-Schmidt), keeping the
+			// chi distributed norms of the gaussian vectors
+			for (int b = 0; b < dimension; b += dim) {
+				int e = Math.min(dimension, b + dim);
+				for (int j = b; j < e; j++) {
+					double[] w = frequencies[j];
+					double norm = Math.sqrt(dot(w, w));
+					for (int i = b; i < j; i++) {
+						double[] v = frequencies[i];
+						double p = dot(w, v) / dot(v, v);
+						for (int d = 0; d < dim; d++) {
+							w[d] -= p * v[d];
+						}
+					}
+					double n = Math.sqrt(dot(w, w));
+					for (int d = 0; d < dim; d++) {
+						w[d] *= norm / n;
+					}
+				}
+			}
+		}
+
+		for (int j = 0; j < dimension; j++) {
+			for (int d = 0; d < dim; d++) {
+				frequencies[j][d] *= scale[d];
+			}
+		}
+	}
+
+	/**
+	 * Projects a single vector.
+	 * 
+	 * @param x
+	 *            the vector to project
+	 * @return the vector of random features
+	 */
+	public double[] project(double[] x) {
+		double[] z = new double[dimension];
+		project(new double[][] { x }, new double[][] { z }, 0, 1);
+		return z;
+	}
+
+	/**
+	 * Projects a single sample.
+	 * 
+	 * @param s
+	 *            the sample to project
+	 * @return a new sample with the random features, and the same label
+	 */
+	public TrainingSample<double[]> project(TrainingSample<double[]> s) {
+		return new TrainingSample<double[]>(project(s.sample), s.label);
+	}
+
+	/**
+	 * Performs the projection on a list of samples. The projection is
+	 * computed in parallel, by blocks of samples and features.
+	 * 
+	 * @param list
+	 *            the list of input samples
+	 * @return a new list with projected samples
+	 */
+	public List<TrainingSample<double[]>> projectList(
+			final List<TrainingSample<double[]>> list) {
+		final double[][] x = new double[list.size()][];
+		final double[][] z = new double[list.size()][dimension];
+		for (int i = 0; i < x.length; i++) {
+			x[i] = list.get(i).sample;
+		}
+
+		ThreadPoolExecutor exec = ThreadPoolServer.getThreadPoolExecutor();
+		Queue<Future<?>> futures = new LinkedList<Future<?>>();
+		try {
+			for (int i = 0; i < x.length; i += BLOCK) {
+				final int from = i;
+				final int to = Math.min(x.length, i + BLOCK);
+				futures.add(exec.submit(new Runnable() {
+					@Override
+					public void run() {
+						project(x, z, from, to);
+					}
+				}));
+			}
+			while (!futures.isEmpty()) {
+				futures.remove().get();
+			}
+		} catch (InterruptedException | ExecutionException e) {
+			throw new RuntimeException("Failed threading projection", e);
+		} finally {
+			ThreadPoolServer.shutdownNow(exec);
+		}
+
+		List<TrainingSample<double[]>> out = new ArrayList<TrainingSample<double[]>>(
+				list.size());
+		for (int i = 0; i < z.length; i++) {
+			out.add(new TrainingSample<double[]>(z[i], list.get(i).label));
+		}
+		return out;
+	}
+
+	/**
+	 * projects rows from to to of x into z, by blocks of features
+	 */
+	void project(double[][] x, double[][] z, int from, int to) {
+		double c = Math.sqrt(2.0 / dimension);
+		for (int f = 0; f < dimension; f += BLOCK) {
+			int g = Math.min(dimension, f + BLOCK);
+			for (int i = from; i < to; i++) {
+				double[] xi = x[i];
+				double[] zi = z[i];
+				for (int j = f; j < g; j++) {
+					double[] w = frequencies[j];
+					double sum = phases[j];
+					for (int d = 0; d < xi.length; d++) {
+						sum += w[d] * xi[d];
+					}
+					zi[j] = c * Math.cos(sum);
+				}
+			}
+		}
+	}
+
+	/**
+	 * Tells the number of random features
+	 * 
+	 * @return the dimension D of the projected space
+	 */
+	public int getDimension() {
+		return dimension;
+	}
+
+	/**
+	 * Sets the number of random features. The projection has to be trained
+	 * again.
+	 * 
+	 * @param dimension
+	 *            the dimension D of the projected space
+	 */
+	public void setDimension(int dimension) {
+		this.dimension = dimension;
+	}
+
+	/**
+	 * Tells if frequencies are drawn by blocks of orthogonal vectors
+	 * 
+	 * @return true if orthogonal random features are used
+	 */
+	public boolean isOrthogonal() {
+		return orthogonal;
+	}
+
+	/**
+	 * Sets if frequencies are drawn by blocks of orthogonal vectors (default
+	 * false). The projection has to be trained again.
+	 * 
+	 * @param orthogonal
+	 *            true for orthogonal random features
+	 */
+	public void setOrthogonal(boolean orthogonal) {
+		this.orthogonal = orthogonal;
+	}
+
+	/**
+	 * Sets the seed of the random generator used for drawing the features
+	 * 
+	 * @param seed
+	 *            the seed
+	 */
+	public void setSeed(long seed) {
+		this.seed = seed;
+	}
+}
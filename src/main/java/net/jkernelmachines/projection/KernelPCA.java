@@ -36,10 +36,16 @@ import java.util.ArrayList;
 import java.util.List;
 
 import net.jkernelmachines.kernel.Kernel;
+import net.jkernelmachines.kernel.extra.IncompleteCholeskyKernel;
 import net.jkernelmachines.type.TrainingSample;
 
 /**
  * Kernel principal component analysis, using generic datatypes.
+ * <p>
+ * The full kernel matrix of the training set is decomposed. For large training
+ * sets, {@link #train(List, IncompleteCholeskyKernel)} decomposes a low-rank
+ * approximation of the kernel instead, without computing this matrix.
+ * </p>
  * 
  * @author picard
  * 
@@ -52,6 +58,9 @@ public class KernelPCA<T> {
 	private double[] whiteningCoefficients;
 	private List<TrainingSample<T>> list;
 	private int dim;
+	// low-rank approximation of the kernel and mean of the projected samples
+	private IncompleteCholeskyKernel<T> cholesky;
+	private double[] featureMean;
 
 	public KernelPCA(Kernel<T> k) {
 		this.kernel = k;
@@ -59,6 +68,8 @@ public class KernelPCA<T> {
 
 	public void train(List<TrainingSample<T>> list) {
 		this.list = list;
+		cholesky = null;
+		featureMean = null;
 
 		// SVD of kernel matrix
 		double[][] K = kernel.getKernelMatrix(list);
@@ -95,10 +106,92 @@ public class KernelPCA<T> {
 		}
 	}
 
+	/**
+	 * Trains on a low-rank approximation of the kernel. The incomplete Cholesky
+	 * decomposition is trained on the list, and the principal components are
+	 * those of the samples it projects, centered in the feature space. Only
+	 * the kernel columns of the pivots are computed, and the eigenvalue
+	 * decomposition is of the size of the rank.
+	 * 
+	 * @param list
+	 *            the list of training samples
+	 * @param cholesky
+	 *            the decomposition approximating the kernel
+	 */
+	public void train(List<TrainingSample<T>> list,
+			IncompleteCholeskyKernel<T> cholesky) {
+		this.list = list;
+		this.cholesky = cholesky;
+		cholesky.train(list);
+		double[][] G = cholesky.getFactor();
+		int n = G.length;
+		dim = cholesky.getRank();
+
+		// centering in the feature space
+		featureMean = new double[dim];
+		for (double[] g : G) {
+			for (int d = 0; d < dim; d++) {
+				featureMean[d] += g[d];
+			}
+		}
+		mean = 0;
+		for (int d = 0; d < dim; d++) {
+			featureMean[d] /= n;
+			mean += featureMean[d] * featureMean[d];
+		}
+
+		// covariance of the projected samples
+		double[][] C = new double[dim][dim];
+		for (double[] g : G) {
+			for (int d = 0; d < dim; d++) {
+				double v = g[d] - featureMean[d];
+				for (int e = d; e < dim; e++) {
+					C[d][e] += v * (g[e] - featureMean[e]);
+				}
+			}
+		}
+		for (int d = 0; d < dim; d++) {
+			for (int e = d; e < dim; e++) {
+				C[e][d] = C[d][e];
+			}
+		}
+		if (dim == 0) {
+			projectors = new double[0][0];
+			whiteningCoefficients = new double[0];
+			return;
+		}
+		double[][][] eig = eig(C);
+
+		// projectors
+		projectors = transi(eig[0]);
+
+		// whitening coeff
+		whiteningCoefficients = new double[dim];
+		for (int d = 0; d < dim; d++) {
+			double p = eig[1][d][d];
+			if (p > 1e-15) {
+				whiteningCoefficients[d] = 1. / Math.sqrt(p);
+			}
+		}
+	}
+
 	public TrainingSample<double[]> project(TrainingSample<T> t,
 			boolean whitening) {
 		double[] proj = new double[dim];
 
+		if (cholesky != null) {
+			double[] g = cholesky.projectSample(t.sample);
+			for (int d = 0; d < dim; d++) {
+				for (int e = 0; e < dim; e++) {
+					proj[d] += projectors[d][e] * (g[e] - featureMean[e]);
+				}
+				if (whitening) {
+					proj[d] *= whiteningCoefficients[d];
+				}
+			}
+			return new TrainingSample<double[]>(proj, t.label);
+		}
+
 		for (int i = 0; i < list.size(); i++) {
 			double v = (kernel.valueOf(list.get(i).sample, t.sample) - mean);
 			for (int d = 0; d < dim; d++) {
@@ -190,7 +283,8 @@ public class KernelPCA<T> {
 	/**
 	 * Get the projector coefficients obtained after learning
 	 * 
-	 * @return the kernel expansion coefficients
+	 * @return the kernel expansion coefficients, or the principal axes in the
+	 *         space of the incomplete Cholesky decomposition if trained on it
 	 */
 	public double[][] getProjectors() {
 		return projectors;
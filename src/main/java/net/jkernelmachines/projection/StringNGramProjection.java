@@ -38,6 +38,9 @@ import java.util.HashMap;
 import java.util.List;
 import java.util.Map;
 
+import net.jkernelmachines.kernel.typed.NGramProfile;
+import net.jkernelmachines.type.TrainingSample;
+
 /**
  * Utility class that computes histograms of n-grams from a string
  * 
@@ -151,18 +154,7 @@ public class StringNGramProjection {
 	 */
 	public static Map<String, Integer> generateMinimumNGramAlphabet(List<String> l, int n, int thresh) {
 		
-		Map<String, Double> occ = computeNGram(l.get(0), n);
-		for(int i = 1 ; i < l.size() ; i++) {
-			Map<String, Double> m = computeNGram(l.get(i), n);
-			for(String s : m.keySet()) {
-				if(occ.containsKey(s)) {
-					occ.put(s, occ.get(s)+m.get(s));
-				}
-				else {
-					occ.put(s,  m.get(s));
-				}
-			}
-		}
+		Map<String, Double> occ = countNGram(l, n);
 		
 		int index = 0;
 		Map<String, Integer> map = new HashMap<>();
@@ -183,18 +175,7 @@ public class StringNGramProjection {
 	 * @return
 	 */
 	public static Map<String, Integer> generateMostFrequentNGramAlphabet(List<String> l , int n, int nb) {
-		Map<String, Double> occ = computeNGram(l.get(0), n);
-		for(int i = 1 ; i < l.size() ; i++) {
-			Map<String, Double> m = computeNGram(l.get(i), n);
-			for(String s : m.keySet()) {
-				if(occ.containsKey(s)) {
-					occ.put(s, occ.get(s)+m.get(s));
-				}
-				else {
-					occ.put(s,  m.get(s));
-				}
-			}
-		}
+		Map<String, Double> occ = countNGram(l, n);
 		
 		int thresh = 0;
 		if(occ.size() > nb) {
@@ -216,4 +197,59 @@ public class StringNGramProjection {
 		return map;
 	}
 
+	/**
+	 * counts the occurrences of n-grams over a list of strings in a single map
+	 */
+	private static Map<String, Double> countNGram(List<String> l, int n) {
+		HashMap<String, Double> occ = new HashMap<>();
+		for (String input : l) {
+			for (int i = 0; i < input.length() - n + 1; i++) {
+				String s = input.substring(i, i + n);
+				Double d = occ.get(s);
+				occ.put(s, (d == null) ? 1 : d + 1);
+			}
+		}
+		return occ;
+	}
+
+	/**
+	 * Computes the sparse histogram of n-grams, as sorted arrays of n-gram keys
+	 * and counts
+	 * 
+	 * @param input
+	 *            input string
+	 * @param n
+	 *            length of considered sub-sequences
+	 * @param hashBits
+	 *            number of bits of the hashed keys, or 0 for no hashing
+	 * @return the profile of n-grams
+	 */
+	public static NGramProfile computeNGramProfile(String input, int n, int hashBits) {
+		return NGramProfile.compute(input, n, hashBits);
+	}
+
+	/**
+	 * Computes the sparse histograms of n-grams of a list of strings, in
+	 * parallel. The projected list is used with a
+	 * {@link net.jkernelmachines.kernel.typed.NGramProfileKernel}.
+	 * 
+	 * @param list
+	 *            the list of input samples
+	 * @param n
+	 *            length of considered sub-sequences
+	 * @param hashBits
+	 *            number of bits of the hashed keys, or 0 for no hashing
+	 * @return a new list with the profiles of the samples, and the same labels
+	 */
+	public static List<TrainingSample<NGramProfile>> projectList(
+			List<TrainingSample<String>> list, int n, int hashBits) {
+		NGramProfile[] p = NGramProfile.compute(list, n, hashBits);
+		List<TrainingSample<NGramProfile>> out = new ArrayList<TrainingSample<NGramProfile>>(
+				p.length);
+		for (int i = 0; i < p.length; i++) {
+			out.add(new TrainingSample<NGramProfile>(p[i], list.get(i).label));
+		}
+		return out;
+	}
+
 }
@@ -29,7 +29,12 @@
  *******************************************************************************/
 package net.jkernelmachines.threading;
 
+import java.util.Queue;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
 import java.util.concurrent.LinkedBlockingQueue;
+import java.util.concurrent.ThreadFactory;
 import java.util.concurrent.ThreadPoolExecutor;
 import java.util.concurrent.TimeUnit;
 
@@ -48,6 +53,9 @@ public class ThreadPoolServer {
 
 	static int nbcpu = Runtime.getRuntime().availableProcessors();
 
+	private static ThreadPoolExecutor sharedExecutor;
+	private static final ThreadLocal<Boolean> sharedThread = new ThreadLocal<Boolean>();
+
 	/**
 	 * Tells the system wide ThreadPoolServer (Singleton pattern)
 	 * 
@@ -62,6 +70,105 @@ public class ThreadPoolServer {
 		return executor;
 	}
 
+	/**
+	 * Tells a pool of threads limited to the given number of threads
+	 * (and never more than the number of processors).
+	 * 
+	 * @param nbThreads
+	 *            maximum number of threads
+	 * @return a new pool of at most nbThreads threads
+	 */
+	public static ThreadPoolExecutor getThreadPoolExecutor(int nbThreads) {
+		int n = Math.max(1, Math.min(nbcpu, nbThreads));
+		ThreadPoolExecutor executor;
+		executor = new ThreadPoolExecutor(n, n, 1, TimeUnit.SECONDS,
+				new LinkedBlockingQueue<Runnable>());
+		executor.prestartAllCoreThreads();
+		executor.allowCoreThreadTimeOut(true);
+		return executor;
+	}
+
+	/**
+	 * Tells the pool of threads shared by the whole library. This pool is never
+	 * shut down (idle threads are released after one second), and should be used
+	 * for short tasks that do not wait for other tasks of the same pool.
+	 * 
+	 * @return the shared pool of threads
+	 */
+	public static synchronized ThreadPoolExecutor getSharedThreadPoolExecutor() {
+		if (sharedExecutor == null) {
+			sharedExecutor = new ThreadPoolExecutor(nbcpu, nbcpu, 1,
+					TimeUnit.SECONDS, new LinkedBlockingQueue<Runnable>(),
+					new ThreadFactory() {
+						ThreadFactory factory = Executors.defaultThreadFactory();
+
+						@Override
+						public Thread newThread(final Runnable r) {
+							Thread t = factory.newThread(new Runnable() {
+								@Override
+								public void run() {
+									sharedThread.set(true);
+									r.run();
+								}
+							});
+							t.setDaemon(true);
+							return t;
+						}
+					});
+			sharedExecutor.allowCoreThreadTimeOut(true);
+		}
+		return sharedExecutor;
+	}
+
+	/**
+	 * Tells if the current thread belongs to the shared pool, in which case
+	 * waiting for other tasks of the shared pool may dead lock.
+	 * 
+	 * @return true if called from a thread of the shared pool
+	 */
+	public static boolean isSharedThread() {
+		return sharedThread.get() != null;
+	}
+
+	/**
+	 * Tells the number of processors used by the pools of threads
+	 * 
+	 * @return the number of processors
+	 */
+	public static int getNbCpu() {
+		return nbcpu;
+	}
+
+	/**
+	 * Waits for the completion of all the jobs of a queue. The jobs are
+	 * completed even if the calling thread is interrupted, its interrupt
+	 * status being restored afterwards, such that training procedures can
+	 * stop at their next check with consistent data.
+	 * 
+	 * @param futures
+	 *            the queue of jobs, emptied by this method
+	 * @throws ExecutionException
+	 *             if a job threw an exception
+	 */
+	public static void awaitAll(Queue<? extends Future<?>> futures)
+			throws ExecutionException {
+		boolean interrupted = false;
+		try {
+			while (!futures.isEmpty()) {
+				try {
+					futures.peek().get();
+					futures.remove();
+				} catch (InterruptedException e) {
+					interrupted = true;
+				}
+			}
+		} finally {
+			if (interrupted) {
+				Thread.currentThread().interrupt();
+			}
+		}
+	}
+
 	/**
 	 * Stops the server.
 	 * @param executor the executor to stop
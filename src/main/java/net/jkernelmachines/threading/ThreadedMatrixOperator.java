@@ -78,19 +78,12 @@ public abstract class ThreadedMatrixOperator {
 				futures.add(threadPool.submit(r));
 			}
 
-			//wait for all jobs
-			while(!futures.isEmpty())
-			{
-				futures.remove().get();
-			}
+			//wait for all jobs, even if the thread is interrupted
+			ThreadPoolServer.awaitAll(futures);
 
 			ThreadPoolServer.shutdownNow(threadPool);
 			
 			return matrix;
-		} catch (InterruptedException e) {
-
-			debug.println(3, "MatrixWorkerFactory : getMatrix interrupted");
-			return null;
 		} catch (ExecutionException e) {
 			debug.println(1, "MatrixWorkerFactory : Exception in execution, matrix unavailable.");
 			e.printStackTrace();
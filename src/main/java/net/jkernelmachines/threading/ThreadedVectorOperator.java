@@ -72,18 +72,12 @@ public abstract class ThreadedVectorOperator {
 				futures.add(threadPool.submit(r));
 			}
 
-			//wait for all jobs
-			while(!futures.isEmpty())
-				futures.remove().get();
+			//wait for all jobs, even if the thread is interrupted
+			ThreadPoolServer.awaitAll(futures);
 
 			ThreadPoolServer.shutdownNow(threadPool);
 			
 			return vector;
-		} catch (InterruptedException e) {
-
-			System.err.println("MatrixWorkerFactory : getMatrix impossible");
-			e.printStackTrace();
-			return null;
 		} catch (ExecutionException e) {
 			System.err.println("MatrixWorkerFactory : Exception in execution, matrix unavailable.");
 			e.printStackTrace();
@@ -575,6 +575,36 @@ public class MatrixOperations {
 		return mul(u, mul(l, trans(u)));
 	}
 	
+	/**
+	 * Performs the Cholesky decomposition of a symmetric positive definite
+	 * matrix: A = L * L'
+	 * @param A input matrix
+	 * @return the lower triangular matrix L
+	 * @throws ArithmeticException if A is not positive definite
+	 */
+	public static double[][] cholesky(final double[][] A) throws ArithmeticException {
+		int n = A.length;
+		double[][] L = new double[n][n];
+		for(int j = 0 ; j < n ; j++) {
+			double[] Lj = L[j];
+			double d = A[j][j];
+			for(int k = 0 ; k < j ; k++)
+				d -= Lj[k] * Lj[k];
+			if(!(d > 0))
+				throw new ArithmeticException("Matrix is not positive definite");
+			double ljj = sqrt(d);
+			Lj[j] = ljj;
+			for(int i = j+1 ; i < n ; i++) {
+				double[] Li = L[i];
+				double s = A[i][j];
+				for(int k = 0 ; k < j ; k++)
+					s -= Li[k] * Lj[k];
+				Li[j] = s / ljj;
+			}
+		}
+		return L;
+	}
+	
 	
 	
 	/**
@@ -0,0 +1,166 @@
+/*******************************************************************************
+ * Copyright (c) 2016, David Picard.
+ * All rights reserved.
+ *
+ * Redistribution and use in source and binary forms, with or without modification,
+ * are permitted provided that the following conditions are met:
+ *
+ * 1. Redistributions of source code must retain the above copyright notice, this
+ * list of conditions and the following disclaimer.
+ *
+ * 2. Redistributions in binary form must reproduce the above copyright notice,
+ * this list of conditions and the following disclaimer in the documentation and/or
+ * other materials provided with the distribution.
+ *
+ * 3. Neither the name of the copyright holder nor the names of its contributors
+ * may be used to endorse or promote products derived from this software without
+ * specific prior written permission.
+ *
+ * THIS SOFTWARE IS PROVIDED BY THE COPYRIGHT HOLDERS AND CONTRIBUTORS "AS IS" AND
+ * ANY EXPRESS OR IMPLIED WARRANTIES, INCLUDING, BUT NOT LIMITED TO, THE IMPLIED
+ * WARRANTIES OF MERCHANTABILITY AND FITNESS FOR A PARTICULAR PURPOSE ARE
+ * DISCLAIMED. IN NO EVENT SHALL THE COPYRIGHT HOLDER OR CONTRIBUTORS BE LIABLE FOR
+ * ANY DIRECT, INDIRECT, INCIDENTAL, SPECIAL, EXEMPLARY, OR CONSEQUENTIAL DAMAGES
+ * (INCLUDING, BUT NOT LIMITED TO, PROCUREMENT OF SUBSTITUTE GOODS OR SERVICES;
+ * LOSS OF USE, DATA, OR PROFITS; OR BUSINESS INTERRUPTION) HOWEVER CAUSED AND ON
+ * ANY THEORY OF LIABILITY, WHETHER IN CONTRACT, STRICT LIABILITY, OR TORT
+ * (INCLUDING NEGLIGENCE OR OTHERWISE) ARISING IN ANY WAY OUT OF THE USE OF THIS
+ * SOFTWARE, EVEN IF ADVISED OF THE POSSIBILITY OF SUCH DAMAGE.
+ *******************************************************************************/
+package net.jkernelmachines.util.metrics;
+
+import java.util.Map;
+import java.util.TreeMap;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * Recorder keeping in memory the totals of all counters, and the number of
+ * calls and total duration of all timers, per metric and per source.
+ * 
+ * @author picard
+ * 
+ */
+public class AggregatingRecorder implements MetricsRecorder {
+
+	/** separator between metric and source in keys */
+	public static final String SEPARATOR = "/";
+
+	private final ConcurrentMap<String, AtomicLong> counters = new ConcurrentHashMap<String, AtomicLong>();
+	private final ConcurrentMap<String, AtomicLong> timerCalls = new ConcurrentHashMap<String, AtomicLong>();
+	private final ConcurrentMap<String, AtomicLong> timerNanos = new ConcurrentHashMap<String, AtomicLong>();
+
+	@Override
+	public void count(String metric, String source, long delta) {
+		get(counters, metric + SEPARATOR + source).addAndGet(delta);
+	}
+
+	@Override
+	public void time(String metric, String source, long nanos) {
+		String key = metric + SEPARATOR + source;
+		get(timerCalls, key).incrementAndGet();
+		get(timerNanos, key).addAndGet(nanos);
+	}
+
+	private static AtomicLong get(ConcurrentMap<String, AtomicLong> map, String key) {
+		AtomicLong v = map.get(key);
+		if (v == null) {
+			AtomicLong n = new AtomicLong();
+			v = map.putIfAbsent(key, n);
+			if (v == null) {
+				v = n;
+			}
+		}
+		return v;
+	}
+
+	/**
+	 * Tells the value of a counter for a given source
+	 * 
+	 * @param metric
+	 *            name of the counter
+	 * @param source
+	 *            the instance emitting the metric
+	 * @return the total of the counter
+	 */
+	public long getCount(String metric, Object source) {
+		AtomicLong v = counters.get(metric + SEPARATOR + Metrics.source(source));
+		return (v == null) ? 0 : v.get();
+	}
+
+	/**
+	 * Tells the value of a counter summed over all sources
+	 * 
+	 * @param metric
+	 *            name of the counter
+	 * @return the total of the counter
+	 */
+	public long getCount(String metric) {
+		return sum(counters, metric);
+	}
+
+	/**
+	 * Tells the number of durations recorded by a timer, over all sources
+	 * 
+	 * @param metric
+	 *            name of the timer
+	 * @return the number of calls
+	 */
+	public long getTimerCalls(String metric) {
+		return sum(timerCalls, metric);
+	}
+
+	/**
+	 * Tells the total duration recorded by a timer, over all sources
+	 * 
+	 * @param metric
+	 *            name of the timer
+	 * @return the total duration in nanoseconds
+	 */
+	public long getTimerNanos(String metric) {
+		return sum(timerNanos, metric);
+	}
+
+	private static long sum(Map<String, AtomicLong> map, String metric) {
+		long s = 0;
+		String prefix = metric + SEPARATOR;
+		for (Map.Entry<String, AtomicLong> e : map.entrySet()) {
+			if (e.getKey().startsWith(prefix)) {
+				s += e.getValue().get();
+			}
+		}
+		return s;
+	}
+
+	/**
+	 * Tells all values recorded so far, with keys "metric/source" for
+	 * counters, and "metric/source.calls" and "metric/source.nanos" for
+	 * timers.
+	 * 
+	 * @return a sorted copy of all values
+	 */
+	public Map<String, Long> snapshot() {
+		Map<String, Long> m = new TreeMap<String, Long>();
+		for (Map.Entry<String, AtomicLong> e : counters.entrySet()) {
+			m.put(e.getKey(), e.getValue().get());
+		}
+		for (Map.Entry<String, AtomicLong> e : timerCalls.entrySet()) {
+			m.put(e.getKey() + ".calls", e.getValue().get());
+		}
+		for (Map.Entry<String, AtomicLong> e : timerNanos.entrySet()) {
+			m.put(e.getKey() + ".nanos", e.getValue().get());
+		}
+		return m;
+	}
+
+	/**
+	 * Clears all values
+	 */
+	public void reset() {
+		counters.clear();
+		timerCalls.clear();
+		timerNanos.clear();
+	}
+
+}
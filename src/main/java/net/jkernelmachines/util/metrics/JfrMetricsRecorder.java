@@ -0,0 +1,106 @@
+/*******************************************************************************
+ * Copyright (c) 2016, David Picard.
+ * All rights reserved.
+ *
+ * Redistribution and use in source and binary forms, with or without modification,
+ * are permitted provided that the following conditions are met:
+ *
+ * 1. Redistributions of source code must retain the above copyright notice, this
+ * list of conditions and the following disclaimer.
+ *
+ * 2. Redistributions in binary form must reproduce the above copyright notice,
+ * this list of conditions and the following disclaimer in the documentation and/or
+ * other materials provided with the distribution.
+ *
+ * 3. Neither the name of the copyright holder nor the names of its contributors
+ * may be used to endorse or promote products derived from this software without
+ * specific prior written permission.
+ *
+ * THIS SOFTWARE IS PROVIDED BY THE COPYRIGHT HOLDERS AND CONTRIBUTORS "AS IS" AND
+ * ANY EXPRESS OR IMPLIED WARRANTIES, INCLUDING, BUT NOT LIMITED TO, THE IMPLIED
+ * WARRANTIES OF MERCHANTABILITY AND FITNESS FOR A PARTICULAR PURPOSE ARE
+ * DISCLAIMED. IN NO EVENT SHALL THE COPYRIGHT HOLDER OR CONTRIBUTORS BE LIABLE FOR
+ * ANY DIRECT, INDIRECT, INCIDENTAL, SPECIAL, EXEMPLARY, OR CONSEQUENTIAL DAMAGES
+ * (INCLUDING, BUT NOT LIMITED TO, PROCUREMENT OF SUBSTITUTE GOODS OR SERVICES;
+ * LOSS OF USE, DATA, OR PROFITS; OR BUSINESS INTERRUPTION) HOWEVER CAUSED AND ON
+ * ANY THEORY OF LIABILITY, WHETHER IN CONTRACT, STRICT LIABILITY, OR TORT
+ * (INCLUDING NEGLIGENCE OR OTHERWISE) ARISING IN ANY WAY OUT OF THE USE OF THIS
+ * SOFTWARE, EVEN IF ADVISED OF THE POSSIBILITY OF SUCH DAMAGE.
+ *******************************************************************************/
+package net.jkernelmachines.util.metrics;
+
+import jdk.jfr.Category;
+import jdk.jfr.Description;
+import jdk.jfr.Event;
+import jdk.jfr.Label;
+import jdk.jfr.Name;
+import jdk.jfr.Timespan;
+
+/**
+ * Recorder emitting each metric as a Java Flight Recorder event, such that
+ * metrics can be inspected along the rest of a recording. Events are only
+ * created when enabled in the recording settings. Requires a Java 11 or
+ * later runtime, and is left out of builds with older JDKs (profile
+ * pre-jdk11).
+ * 
+ * @author picard
+ * 
+ */
+public class JfrMetricsRecorder implements MetricsRecorder {
+
+	/**
+	 * Event of a counter increment
+	 */
+	@Name("net.jkernelmachines.Counter")
+	@Label("Counter")
+	@Category("jkernelmachines")
+	@Description("Increment of a jkernelmachines counter")
+	public static class CounterEvent extends Event {
+		@Label("Metric")
+		public String metric;
+		@Label("Source")
+		public String source;
+		@Label("Delta")
+		public long delta;
+	}
+
+	/**
+	 * Event of a timed operation
+	 */
+	@Name("net.jkernelmachines.Timer")
+	@Label("Timer")
+	@Category("jkernelmachines")
+	@Description("Duration of a jkernelmachines operation")
+	public static class TimerEvent extends Event {
+		@Label("Metric")
+		public String metric;
+		@Label("Source")
+		public String source;
+		@Label("Time")
+		@Timespan(Timespan.NANOSECONDS)
+		public long time;
+	}
+
+	@Override
+	public void count(String metric, String source, long delta) {
+		CounterEvent e = new CounterEvent();
+		if (e.isEnabled()) {
+			e.metric = metric;
+			e.source = source;
+			e.delta = delta;
+			e.commit();
+		}
+	}
+
+	@Override
+	public void time(String metric, String source, long nanos) {
+		TimerEvent e = new TimerEvent();
+		if (e.isEnabled()) {
+			e.metric = metric;
+			e.source = source;
+			e.time = nanos;
+			e.commit();
+		}
+	}
+
+}
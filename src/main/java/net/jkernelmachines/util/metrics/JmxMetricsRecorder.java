@@ -0,0 +1,159 @@
+/*******************************************************************************
+ * Copyright (c) 2016, David Picard.
+ * All rights reserved.
+ *
+ * Redistribution and use in source and binary forms, with or without modification,
+ * are permitted provided that the following conditions are met:
+ *
+ * 1. Redistributions of source code must retain the above copyright notice, this
+ * list of conditions and the following disclaimer.
+ *
+ * 2. Redistributions in binary form must reproduce the above copyright notice,
+ * this list of conditions and the following disclaimer in the documentation and/or
+ * other materials provided with the distribution.
+ *
+ * 3. Neither the name of the copyright holder nor the names of its contributors
+ * may be used to endorse or promote products derived from this software without
+ * specific prior written permission.
+ *
+ * THIS SOFTWARE IS PROVIDED BY THE COPYRIGHT HOLDERS AND CONTRIBUTORS "AS IS" AND
+ * ANY EXPRESS OR IMPLIED WARRANTIES, INCLUDING, BUT NOT LIMITED TO, THE IMPLIED
+ * WARRANTIES OF MERCHANTABILITY AND FITNESS FOR A PARTICULAR PURPOSE ARE
+ * DISCLAIMED. IN NO EVENT SHALL THE COPYRIGHT HOLDER OR CONTRIBUTORS BE LIABLE FOR
+ * ANY DIRECT, INDIRECT, INCIDENTAL, SPECIAL, EXEMPLARY, OR CONSEQUENTIAL DAMAGES
+ * (INCLUDING, BUT NOT LIMITED TO, PROCUREMENT OF SUBSTITUTE GOODS OR SERVICES;
+ * LOSS OF USE, DATA, OR PROFITS; OR BUSINESS INTERRUPTION) HOWEVER CAUSED AND ON
+ * ANY THEORY OF LIABILITY, WHETHER IN CONTRACT, STRICT LIABILITY, OR TORT
+ * (INCLUDING NEGLIGENCE OR OTHERWISE) ARISING IN ANY WAY OUT OF THE USE OF THIS
+ * SOFTWARE, EVEN IF ADVISED OF THE POSSIBILITY OF SUCH DAMAGE.
+ *******************************************************************************/
+package net.jkernelmachines.util.metrics;
+
+import java.lang.management.ManagementFactory;
+import java.util.Map;
+
+import javax.management.Attribute;
+import javax.management.AttributeList;
+import javax.management.AttributeNotFoundException;
+import javax.management.DynamicMBean;
+import javax.management.JMException;
+import javax.management.MBeanAttributeInfo;
+import javax.management.MBeanInfo;
+import javax.management.MBeanOperationInfo;
+import javax.management.MBeanServer;
+import javax.management.ObjectName;
+import javax.management.ReflectionException;
+
+/**
+ * Aggregating recorder exposed as a JMX MBean, with one read only attribute
+ * per value of {@link AggregatingRecorder#snapshot()} and a reset operation.
+ * 
+ * @author picard
+ * 
+ */
+public class JmxMetricsRecorder extends AggregatingRecorder implements DynamicMBean {
+
+	/** default name of the MBean */
+	public static final String DEFAULT_NAME = "net.jkernelmachines:type=Metrics";
+
+	private ObjectName name;
+
+	/**
+	 * Registers this recorder in the platform MBean server with the default
+	 * name
+	 */
+	public void register() {
+		register(DEFAULT_NAME);
+	}
+
+	/**
+	 * Registers this recorder in the platform MBean server
+	 * 
+	 * @param objectName
+	 *            the name of the MBean
+	 */
+	public void register(String objectName) {
+		try {
+			name = new ObjectName(objectName);
+			ManagementFactory.getPlatformMBeanServer().registerMBean(this, name);
+		} catch (JMException e) {
+			throw new IllegalStateException("Failed registering metrics MBean", e);
+		}
+	}
+
+	/**
+	 * Removes this recorder from the platform MBean server
+	 */
+	public void unregister() {
+		if (name == null) {
+			return;
+		}
+		try {
+			MBeanServer server = ManagementFactory.getPlatformMBeanServer();
+			if (server.isRegistered(name)) {
+				server.unregisterMBean(name);
+			}
+		} catch (JMException e) {
+			throw new IllegalStateException("Failed unregistering metrics MBean", e);
+		}
+		name = null;
+	}
+
+	@Override
+	public Object getAttribute(String attribute) throws AttributeNotFoundException {
+		Long v = snapshot().get(attribute);
+		if (v == null) {
+			throw new AttributeNotFoundException(attribute);
+		}
+		return v;
+	}
+
+	@Override
+	public void setAttribute(Attribute attribute) throws AttributeNotFoundException {
+		throw new AttributeNotFoundException("Metrics are read only");
+	}
+
+	@Override
+	public AttributeList getAttributes(String[] attributes) {
+		Map<String, Long> m = snapshot();
+		AttributeList list = new AttributeList();
+		for (String a : attributes) {
+			Long v = m.get(a);
+			if (v != null) {
+				list.add(new Attribute(a, v));
+			}
+		}
+		return list;
+	}
+
+	@Override
+	public AttributeList setAttributes(AttributeList attributes) {
+		return new AttributeList();
+	}
+
+	@Override
+	public Object invoke(String actionName, Object[] params, String[] signature)
+			throws ReflectionException {
+		if ("reset".equals(actionName)) {
+			reset();
+			return null;
+		}
+		throw new ReflectionException(new NoSuchMethodException(actionName));
+	}
+
+	@Override
+	public MBeanInfo getMBeanInfo() {
+		Map<String, Long> m = snapshot();
+		MBeanAttributeInfo[] attributes = new MBeanAttributeInfo[m.size()];
+		int i = 0;
+		for (String key : m.keySet()) {
+			attributes[i++] = new MBeanAttributeInfo(key, Long.class.getName(),
+					key, true, false, false);
+		}
+		MBeanOperationInfo[] operations = { new MBeanOperationInfo("reset",
+				"Clears all metrics", null, "void", MBeanOperationInfo.ACTION) };
+		return new MBeanInfo(getClass().getName(), "jkernelmachines metrics",
+				attributes, null, operations, null);
+	}
+
+}
@@ -0,0 +1,178 @@
+/*******************************************************************************
+ * Copyright (c) 2016, David Picard.
+ * All rights reserved.
+ *
+ * Redistribution and use in source and binary forms, with or without modification,
+ * are permitted provided that the following conditions are met:
+ *
+ * 1. Redistributions of source code must retain the above copyright notice, this
+ * list of conditions and the following disclaimer.
+ *
+ * 2. Redistributions in binary form must reproduce the above copyright notice,
+ * this list of conditions and the following disclaimer in the documentation and/or
+ * other materials provided with the distribution.
+ *
+ * 3. Neither the name of the copyright holder nor the names of its contributors
+ * may be used to endorse or promote products derived from this software without
+ * specific prior written permission.
+ *
+ * THIS SOFTWARE IS PROVIDED BY THE COPYRIGHT HOLDERS AND CONTRIBUTORS "AS IS" AND
+ * ANY EXPRESS OR IMPLIED WARRANTIES, INCLUDING, BUT NOT LIMITED TO, THE IMPLIED
+ * WARRANTIES OF MERCHANTABILITY AND FITNESS FOR A PARTICULAR PURPOSE ARE
+ * DISCLAIMED. IN NO EVENT SHALL THE COPYRIGHT HOLDER OR CONTRIBUTORS BE LIABLE FOR
+ * ANY DIRECT, INDIRECT, INCIDENTAL, SPECIAL, EXEMPLARY, OR CONSEQUENTIAL DAMAGES
+ * (INCLUDING, BUT NOT LIMITED TO, PROCUREMENT OF SUBSTITUTE GOODS OR SERVICES;
+ * LOSS OF USE, DATA, OR PROFITS; OR BUSINESS INTERRUPTION) HOWEVER CAUSED AND ON
+ * ANY THEORY OF LIABILITY, WHETHER IN CONTRACT, STRICT LIABILITY, OR TORT
+ * (INCLUDING NEGLIGENCE OR OTHERWISE) ARISING IN ANY WAY OUT OF THE USE OF THIS
+ * SOFTWARE, EVEN IF ADVISED OF THE POSSIBILITY OF SUCH DAMAGE.
+ *******************************************************************************/
+package net.jkernelmachines.util.metrics;
+
+/**
+ * <p>
+ * Library wide entry point for metrics. Counters and timers are forwarded to
+ * the current {@link MetricsRecorder}, which does nothing by default. When no
+ * recorder is set, emitting a metric costs a single static field test.
+ * </p>
+ * <p>
+ * Usage:
+ * </p>
+ * 
+ * <pre>
+ * JmxMetricsRecorder r = new JmxMetricsRecorder();
+ * r.register();
+ * Metrics.setRecorder(r);
+ * </pre>
+ * 
+ * @author picard
+ * 
+ */
+public final class Metrics {
+
+	/** number of kernel evaluations, per kernel */
+	public static final String KERNEL_EVALUATIONS = "kernel.evaluations";
+	/** cache lookups that found the value */
+	public static final String CACHE_HITS = "cache.hits";
+	/** cache lookups that did not find the value */
+	public static final String CACHE_MISSES = "cache.misses";
+	/** entries removed from a cache to make room */
+	public static final String CACHE_EVICTIONS = "cache.evictions";
+	/** iterations of a solver */
+	public static final String SOLVER_ITERATIONS = "solver.iterations";
+	/** samples found violating the KKT conditions by a solver */
+	public static final String SOLVER_KKT_VIOLATIONS = "solver.kkt.violations";
+	/** time spent computing Gram matrices */
+	public static final String TIME_GRAM = "time.gram";
+	/** time spent in the optimization of a solver */
+	public static final String TIME_OPTIMIZATION = "time.optimization";
+	/** time spent computing predictions */
+	public static final String TIME_PREDICTION = "time.prediction";
+
+	private static volatile MetricsRecorder recorder = null;
+	private static volatile boolean enabled = false;
+
+	private Metrics() {
+	}
+
+	/**
+	 * Sets the recorder receiving all metrics
+	 * 
+	 * @param r
+	 *            the recorder, or null to disable metrics
+	 */
+	public static void setRecorder(MetricsRecorder r) {
+		recorder = r;
+		enabled = (r != null);
+	}
+
+	/**
+	 * Tells the current recorder
+	 * 
+	 * @return the recorder, or null if metrics are disabled
+	 */
+	public static MetricsRecorder getRecorder() {
+		return recorder;
+	}
+
+	/**
+	 * Tells if metrics are recorded
+	 * 
+	 * @return true if a recorder is set
+	 */
+	public static boolean isEnabled() {
+		return enabled;
+	}
+
+	/**
+	 * Increments a counter
+	 * 
+	 * @param metric
+	 *            name of the counter
+	 * @param source
+	 *            instance emitting the metric, see {@link #source(Object)}
+	 * @param delta
+	 *            increment
+	 */
+	public static void count(String metric, Object source, long delta) {
+		if (!enabled) {
+			return;
+		}
+		MetricsRecorder r = recorder;
+		if (r != null) {
+			r.count(metric, source(source), delta);
+		}
+	}
+
+	/**
+	 * Starts a timer
+	 * 
+	 * @return the start time to give to
+	 *         {@link #stop(String, Object, long)}, 0 if metrics are disabled
+	 */
+	public static long start() {
+		return enabled ? System.nanoTime() : 0;
+	}
+
+	/**
+	 * Stops a timer and records its duration
+	 * 
+	 * @param metric
+	 *            name of the timer
+	 * @param source
+	 *            instance emitting the metric, see {@link #source(Object)}
+	 * @param start
+	 *            value returned by {@link #start()}
+	 */
+	public static void stop(String metric, Object source, long start) {
+		if (!enabled || start == 0) {
+			return;
+		}
+		long nanos = System.nanoTime() - start;
+		MetricsRecorder r = recorder;
+		if (r != null) {
+			r.time(metric, source(source), nanos);
+		}
+	}
+
+	/**
+	 * Name of an instance emitting metrics: its simple class name followed by
+	 * its identity hash code, such that different instances of the same class
+	 * are told apart.
+	 * 
+	 * @param o
+	 *            the instance
+	 * @return the name of the instance
+	 */
+	public static String source(Object o) {
+		if (o == null) {
+			return "null";
+		}
+		if (o instanceof String) {
+			return (String) o;
+		}
+		return o.getClass().getSimpleName() + "@"
+				+ Integer.toHexString(System.identityHashCode(o));
+	}
+
+}
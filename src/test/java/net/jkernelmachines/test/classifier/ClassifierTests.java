@@ -41,8 +41,11 @@ import org.junit.runners.Suite.SuiteClasses;
 @SuiteClasses({ DoublePegasosSVMTest.class, DoubleQNPKLTest.class,
 		DoubleSGDQNTest.class, DoubleSGDTest.class, DoubleSAGTest.class,
 		GradMKLTest.class, LaSVMITest.class, LaSVMTest.class,
-		SimpleMKLTest.class, SMOSVMTest.class, TSMKLTest.class,
-		MulticlassLaSVMTest.class, NystromLSSVMTest.class, DoubleLLSVMTest.class })
+		SimpleMKLTest.class, SMOSVMTest.class, SDCATest.class,
+		TSMKLTest.class, MulticlassLaSVMTest.class,
+		MulticlassOneAgainstOneTest.class, MulticlassSDCATest.class,
+		NystromLSSVMTest.class, DoubleLLSVMTest.class,
+		TrainingControlTest.class })
 public class ClassifierTests {
 
 }
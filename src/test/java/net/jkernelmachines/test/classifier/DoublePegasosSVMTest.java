@@ -29,6 +29,7 @@
  *******************************************************************************/
 package net.jkernelmachines.test.classifier;
 
+import static org.junit.Assert.assertArrayEquals;
 import static org.junit.Assert.assertEquals;
 import static org.junit.Assert.assertTrue;
 
@@ -168,4 +169,19 @@ public class DoublePegasosSVMTest {
 		assertEquals(1.0, svm.getC(), 1e-15);
 	}
 
+	@Test
+	public final void testParallelTrain() {
+		svm.setNbThreads(4);
+		svm.train(train);
+		for(TrainingSample<double[]> t : train) {
+			double v = t.label * svm.valueOf(t.sample);
+			assertTrue(v > 0);
+		}
+		
+		// deterministic
+		DoublePegasosSVM svm2 = new DoublePegasosSVM();
+		svm2.setNbThreads(4);
+		svm2.train(train);
+		assertArrayEquals(svm.getW(), svm2.getW(), 1e-15);
+	}
 }
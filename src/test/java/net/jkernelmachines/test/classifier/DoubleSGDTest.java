@@ -29,6 +29,7 @@
  *******************************************************************************/
 package net.jkernelmachines.test.classifier;
 
+import static org.junit.Assert.assertArrayEquals;
 import static org.junit.Assert.assertEquals;
 import static org.junit.Assert.assertTrue;
 
@@ -159,4 +160,31 @@ public class DoubleSGDTest {
 		assertTrue(svm.isShuffle());
 	}
 
+	@Test
+	public final void testHogwildTrain() {
+		svm.setNbThreads(4);
+		svm.train(train);
+		for(TrainingSample<double[]> t : train) {
+			double v = t.label * svm.valueOf(t.sample);
+			assertTrue(v > 0);
+		}
+	}
+
+	@Test
+	public final void testAveragingTrain() {
+		svm.setNbThreads(4);
+		svm.setAveraging(true);
+		svm.train(train);
+		for(TrainingSample<double[]> t : train) {
+			double v = t.label * svm.valueOf(t.sample);
+			assertTrue(v > 0);
+		}
+		
+		// deterministic
+		DoubleSGD svm2 = new DoubleSGD();
+		svm2.setNbThreads(4);
+		svm2.setAveraging(true);
+		svm2.train(train);
+		assertArrayEquals(svm.getW(), svm2.getW(), 1e-15);
+	}
 }
@@ -91,4 +91,23 @@ public class LaSVMTest {
 		assertEquals(k, svm.getKernel());
 	}
 
+	@Test
+	public final void testWarmStart() {
+		svm.setC(10.0);
+		svm.setKeepKernelCache(true);
+		svm.train(train);
+		
+		// regularisation path: restart from previous weights with a smaller C
+		svm.setC(1.0);
+		svm.setInitialAlphas(svm.getAlphas());
+		svm.train(train);
+		for(double a : svm.getAlphas()) {
+			assertTrue(a >= 0 && a <= 1.0);
+		}
+		for(TrainingSample<double[]> t : train) {
+			double v = t.label * svm.valueOf(t.sample);
+			assertTrue(v > 0);
+		}
+	}
+
 }
@@ -32,7 +32,9 @@ package net.jkernelmachines.test.classifier;
 import static org.junit.Assert.assertEquals;
 
 import java.util.List;
+import java.util.Map;
 
+import net.jkernelmachines.classifier.Classifier;
 import net.jkernelmachines.classifier.LaSVM;
 import net.jkernelmachines.classifier.multiclass.OneAgainstAll;
 import net.jkernelmachines.kernel.typed.DoubleGaussL2;
@@ -76,4 +78,27 @@ public class MulticlassLaSVMTest {
 			assertEquals(v, t.label, 1e-15);
 		}
 	}
+
+	@Test
+	public final void testTrainWithoutSharedCache() {
+		multisvm.setShareKernelCache(false);
+		multisvm.setMemoryBudget(1);
+		multisvm.train(train);
+		for(TrainingSample<double[]> t : train) {
+			double v = multisvm.valueOf(t.sample);
+			assertEquals(v, t.label, 1e-15);
+		}
+	}
+
+	@Test
+	public final void testGetConfidences() {
+		multisvm.train(train);
+		Map<Integer, Classifier<double[]>> map = multisvm.getMapOfClassifiers();
+		for(TrainingSample<double[]> t : train) {
+			Map<Integer, Double> conf = multisvm.getConfidences(t.sample);
+			for(int c : map.keySet()) {
+				assertEquals(map.get(c).valueOf(t.sample), conf.get(c), 1e-8);
+			}
+		}
+	}
 }
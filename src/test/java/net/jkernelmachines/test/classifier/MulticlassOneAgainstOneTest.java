@@ -0,0 +1,111 @@
+/*******************************************************************************
+ * Copyright (c) 2016, David Picard.
+ * All rights reserved.
+ *
+ * Redistribution and use in source and binary forms, with or without modification,
+ * are permitted provided that the following conditions are met:
+ *
+ * 1. Redistributions of source code must retain the above copyright notice, this
+ * list of conditions and the following disclaimer.
+ *
+ * 2. Redistributions in binary form must reproduce the above copyright notice,
+ * this list of conditions and the following disclaimer in the documentation and/or
+ * other materials provided with the distribution.
+ *
+ * 3. Neither the name of the copyright holder nor the names of its contributors
+ * may be used to endorse or promote products derived from this software without
+ * specific prior written permission.
+ *
+ * THIS SOFTWARE IS PROVIDED BY THE COPYRIGHT HOLDERS AND CONTRIBUTORS "AS IS" AND
+ * ANY EXPRESS OR IMPLIED WARRANTIES, INCLUDING, BUT NOT LIMITED TO, THE IMPLIED
+ * WARRANTIES OF MERCHANTABILITY AND FITNESS FOR A PARTICULAR PURPOSE ARE
+ * DISCLAIMED. IN NO EVENT SHALL THE COPYRIGHT HOLDER OR CONTRIBUTORS BE LIABLE FOR
+ * ANY DIRECT, INDIRECT, INCIDENTAL, SPECIAL, EXEMPLARY, OR CONSEQUENTIAL DAMAGES
+ * (INCLUDING, BUT NOT LIMITED TO, PROCUREMENT OF SUBSTITUTE GOODS OR SERVICES;
+ * LOSS OF USE, DATA, OR PROFITS; OR BUSINESS INTERRUPTION) HOWEVER CAUSED AND ON
+ * ANY THEORY OF LIABILITY, WHETHER IN CONTRACT, STRICT LIABILITY, OR TORT
+ * (INCLUDING NEGLIGENCE OR OTHERWISE) ARISING IN ANY WAY OUT OF THE USE OF THIS
+ * SOFTWARE, EVEN IF ADVISED OF THE POSSIBILITY OF SUCH DAMAGE.
+ *******************************************************************************/
+package net.jkernelmachines.test.classifier;
+
+import static org.junit.Assert.assertEquals;
+
+import java.util.List;
+
+import net.jkernelmachines.classifier.Classifier;
+import net.jkernelmachines.classifier.LaSVM;
+import net.jkernelmachines.classifier.multiclass.OneAgainstOne;
+import net.jkernelmachines.kernel.typed.DoubleGaussL2;
+import net.jkernelmachines.type.TrainingSample;
+import net.jkernelmachines.util.generators.MultiClassGaussianGenerator;
+
+import org.junit.Before;
+import org.junit.Test;
+
+/**
+ * @author picard
+ *
+ */
+public class MulticlassOneAgainstOneTest {
+	
+	List<TrainingSample<double[]>> train;
+	OneAgainstOne<double[]> multisvm;
+	
+	/**
+	 * @throws java.lang.Exception
+	 */
+	@Before
+	public void setUp() throws Exception {
+		MultiClassGaussianGenerator mcgg = new MultiClassGaussianGenerator(4);
+		mcgg.setP(10);
+		mcgg.setSigma(1);
+		train = mcgg.generateList(5);
+		
+		DoubleGaussL2 k = new DoubleGaussL2();
+		k.setGamma(0.5);
+		LaSVM<double[]> svm = new LaSVM<double[]>(k);
+		svm.setC(10);
+		multisvm = new OneAgainstOne<double[]>(svm);
+	}
+
+	@Test
+	public final void testTrainListOfTrainingSampleOfT() {
+		multisvm.train(train);
+		assertEquals(6, multisvm.getListOfClassifiers().size());
+		for(TrainingSample<double[]> t : train) {
+			double v = multisvm.valueOf(t.sample);
+			assertEquals(v, t.label, 1e-15);
+		}
+	}
+
+	@Test
+	public final void testTrainWithoutSharedCache() {
+		multisvm.setShareKernelCache(false);
+		multisvm.setMemoryBudget(1);
+		multisvm.train(train);
+		for(TrainingSample<double[]> t : train) {
+			double v = multisvm.valueOf(t.sample);
+			assertEquals(v, t.label, 1e-15);
+		}
+	}
+
+	@Test
+	public final void testVotes() {
+		multisvm.train(train);
+		List<int[]> pairs = multisvm.getPairs();
+		List<Classifier<double[]>> cls = multisvm.getListOfClassifiers();
+		for(TrainingSample<double[]> t : train) {
+			int votes = 0;
+			for(int p = 0 ; p < pairs.size() ; p++) {
+				int[] pair = pairs.get(p);
+				double v = cls.get(p).valueOf(t.sample);
+				if((v > 0 && pair[0] == t.label) || (v <= 0 && pair[1] == t.label)) {
+					votes++;
+				}
+			}
+			double conf = multisvm.getConfidences(t.sample).get(t.label);
+			assertEquals(votes, Math.floor(conf), 1e-15);
+		}
+	}
+}
@@ -78,4 +78,19 @@ public class NystromLSSVMTest {
 		}
 	}
 
+	/**
+	 * Test method for {@link net.jkernelmachines.classifier.NystromLSSVM#setLandmarkSelection(int)}.
+	 */
+	@Test
+	public final void testLandmarkSelection() {
+		for(int s : new int[] { NystromLSSVM.KMEANS, NystromLSSVM.LEVERAGE, NystromLSSVM.CHOLESKY }) {
+			svm.setLandmarkSelection(s);
+			svm.train(train);
+			for(TrainingSample<double[]> t : train) {
+				double v = t.label * svm.valueOf(t.sample);
+				assertTrue(v > 0);
+			}
+		}
+	}
+
 }
@@ -29,6 +29,7 @@
  *******************************************************************************/
 package net.jkernelmachines.test.classifier;
 
+import static org.junit.Assert.assertArrayEquals;
 import static org.junit.Assert.assertEquals;
 import static org.junit.Assert.assertTrue;
 
@@ -106,4 +107,46 @@ public class SMOSVMTest {
 		assertEquals(k, svm.getKernel());
 	}
 
+	/**
+	 * Test method for {@link net.jkernelmachines.classifier.SMOSVM#setInitialAlphas(double[])}.
+	 */
+	@Test
+	public final void testWarmStart() {
+		svm.setC(10.0);
+		svm.setKeepKernelCache(true);
+		svm.train(train);
+		
+		// regularisation path: restart from previous weights with a smaller C
+		svm.setC(1.0);
+		svm.setInitialAlphas(svm.getAlphas());
+		svm.train(train);
+		for(double a : svm.getAlphas()) {
+			assertTrue(a >= 0 && a <= 1.0);
+		}
+		for(TrainingSample<double[]> t : train) {
+			double v = t.label * svm.valueOf(t.sample);
+			assertTrue(v > 0);
+		}
+	}
+
+	/**
+	 * Test method for {@link net.jkernelmachines.classifier.SMOSVM#setKeepKernelCache(boolean)}.
+	 */
+	@Test
+	public final void testKeepKernelCache() {
+		DoubleGaussL2 k = new DoubleGaussL2(1.0);
+		svm.setKernel(k);
+		svm.setKeepKernelCache(true);
+		svm.train(train);
+		
+		// kernel modified in place, the kept matrix is dropped by setKernel
+		k.setGamma(0.01);
+		svm.setKernel(k);
+		svm.train(train);
+		
+		SMOSVM<double[]> ref = new SMOSVM<double[]>(new DoubleGaussL2(0.01));
+		ref.train(train);
+		assertArrayEquals(ref.getAlphas(), svm.getAlphas(), 1e-10);
+	}
+
 }
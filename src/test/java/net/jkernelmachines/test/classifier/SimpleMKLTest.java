@@ -87,6 +87,30 @@ public class SimpleMKLTest {
 		}
 	}
 
+	/**
+	 * Test method for {@link net.jkernelmachines.classifier.SimpleMKL#train(java.util.List)}.
+	 */
+	@Test
+	public final void testTrainMultipleKernels() {
+		SimpleMKL<double[]> mkl = new SimpleMKL<double[]>();
+		for(int i = 0 ; i < 6 ; i++) {
+			mkl.addKernel(new DoubleGaussL2(Math.pow(2, -i)));
+		}
+		GaussianGenerator g = new GaussianGenerator(10, 2.0f, 1.0);
+		List<TrainingSample<double[]>> l = g.generateList(50);
+		mkl.train(l);
+		
+		double sum = 0;
+		for(double d : mkl.getKernelWeights()) {
+			assertTrue(d >= 0);
+			sum += d;
+		}
+		assertEquals(1.0, sum, 1e-10);
+		for(TrainingSample<double[]> t : l) {
+			assertTrue(t.label * mkl.valueOf(t.sample) > 0);
+		}
+	}
+
 	/**
 	 * Test method for {@link net.jkernelmachines.classifier.SimpleMKL#setC(double)}.
 	 */
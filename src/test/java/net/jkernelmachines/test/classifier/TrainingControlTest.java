@@ -0,0 +1,311 @@
+/*******************************************************************************
+ * Copyright (c) 2016, David Picard.
+ * All rights reserved.
+ *
+ * Redistribution and use in source and binary forms, with or without modification,
+ * are permitted provided that the following conditions are met:
+ *
+ * 1. Redistributions of source code must retain the above copyright notice, this
+ * list of conditions and the following disclaimer.
+ *
+ * 2. Redistributions in binary form must reproduce the above copyright notice,
+ * this list of conditions and the following disclaimer in the documentation and/or
+ * other materials provided with the distribution.
+ *
+ * 3. Neither the name of the copyright holder nor the names of its contributors
+ * may be used to endorse or promote products derived from this software without
+ * specific prior written permission.
+ *
+ * THIS SOFTWARE IS PROVIDED BY THE COPYRIGHT HOLDERS AND CONTRIBUTORS "AS IS" AND
+ * ANY EXPRESS OR IMPLIED WARRANTIES, INCLUDING, BUT NOT LIMITED TO, THE IMPLIED
+ * WARRANTIES OF MERCHANTABILITY AND FITNESS FOR A PARTICULAR PURPOSE ARE
+ * DISCLAIMED. IN NO EVENT SHALL THE COPYRIGHT HOLDER OR CONTRIBUTORS BE LIABLE FOR
+ * ANY DIRECT, INDIRECT, INCIDENTAL, SPECIAL, EXEMPLARY, OR CONSEQUENTIAL DAMAGES
+ * (INCLUDING, BUT NOT LIMITED TO, PROCUREMENT OF SUBSTITUTE GOODS OR SERVICES;
+ * LOSS OF USE, DATA, OR PROFITS; OR BUSINESS INTERRUPTION) HOWEVER CAUSED AND ON
+ * ANY THEORY OF LIABILITY, WHETHER IN CONTRACT, STRICT LIABILITY, OR TORT
+ * (INCLUDING NEGLIGENCE OR OTHERWISE) ARISING IN ANY WAY OUT OF THE USE OF THIS
+ * SOFTWARE, EVEN IF ADVISED OF THE POSSIBILITY OF SUCH DAMAGE.
+ *******************************************************************************/
+package net.jkernelmachines.test.classifier;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+
+import java.util.ArrayList;
+import java.util.List;
+
+import net.jkernelmachines.classifier.Classifier;
+import net.jkernelmachines.classifier.DoubleSGD;
+import net.jkernelmachines.classifier.DoubleSGDQN;
+import net.jkernelmachines.classifier.IterativeClassifier;
+import net.jkernelmachines.classifier.LaSVM;
+import net.jkernelmachines.classifier.SDCA;
+import net.jkernelmachines.classifier.SMOSVM;
+import net.jkernelmachines.classifier.SimpleMKL;
+import net.jkernelmachines.classifier.TrainingControl;
+import net.jkernelmachines.classifier.TrainingListener;
+import net.jkernelmachines.kernel.typed.DoubleGaussL2;
+import net.jkernelmachines.type.TrainingSample;
+import net.jkernelmachines.util.generators.GaussianGenerator;
+
+import org.junit.Before;
+import org.junit.Test;
+
+/**
+ * @author picard
+ *
+ */
+public class TrainingControlTest {
+
+	List<TrainingSample<double[]>> train;
+	List<IterativeClassifier<double[]>> classifiers;
+
+	@Before
+	public void setUp() throws Exception {
+		GaussianGenerator g = new GaussianGenerator(10, 5.0f, 1.0);
+		train = g.generateList(50);
+
+		classifiers = new ArrayList<IterativeClassifier<double[]>>();
+		classifiers.add(new SMOSVM<double[]>(new DoubleGaussL2(1.0)));
+		LaSVM<double[]> lasvm = new LaSVM<double[]>(new DoubleGaussL2(1.0));
+		lasvm.setC(10);
+		classifiers.add(lasvm);
+		SDCA<double[]> sdca = new SDCA<double[]>(new DoubleGaussL2(1.0));
+		sdca.setC(10);
+		sdca.setE(20);
+		classifiers.add(sdca);
+		SimpleMKL<double[]> mkl = new SimpleMKL<double[]>();
+		mkl.addKernel(new DoubleGaussL2(0.1));
+		mkl.addKernel(new DoubleGaussL2(1.0));
+		classifiers.add(mkl);
+		classifiers.add(new DoubleSGD());
+		classifiers.add(new DoubleSGDQN());
+	}
+
+	/**
+	 * Test method for {@link net.jkernelmachines.classifier.TrainingControl#progress(Classifier, long, double, double)}.
+	 */
+	@Test
+	public final void testProgress() {
+		for (IterativeClassifier<double[]> c : classifiers) {
+			final List<double[]> calls = new ArrayList<double[]>();
+			c.getTrainingControl().addListener(new TrainingListener() {
+				@Override
+				public boolean iteration(Classifier<?> classifier,
+						long iteration, double objective, double gap) {
+					calls.add(new double[] { iteration, objective, gap });
+					return true;
+				}
+			});
+			c.train(train);
+			assertFalse(c.getTrainingControl().isStopped());
+			assertFalse(c.toString(), calls.isEmpty());
+			for (int i = 0; i < calls.size(); i++) {
+				assertEquals(i + 1, calls.get(i)[0], 0);
+				assertFalse(Double.isNaN(calls.get(i)[1]));
+				// primal objective over dual objective
+				if (!Double.isNaN(calls.get(i)[2])
+						&& !(c instanceof LaSVM)) {
+					assertTrue(calls.get(i)[2] > -1e-8);
+				}
+			}
+			assertCorrect(c, 2);
+		}
+	}
+
+	/**
+	 * Test method for {@link net.jkernelmachines.classifier.TrainingListener#iteration(Classifier, long, double, double)}.
+	 */
+	@Test
+	public final void testStopFromListener() {
+		for (IterativeClassifier<double[]> c : classifiers) {
+			final int[] calls = new int[1];
+			c.getTrainingControl().addListener(new TrainingListener() {
+				@Override
+				public boolean iteration(Classifier<?> classifier,
+						long iteration, double objective, double gap) {
+					calls[0]++;
+					return false;
+				}
+			});
+			c.train(train);
+			assertEquals(1, calls[0]);
+			assertTrue(c.getTrainingControl().isStopped());
+			// model after a single iteration
+			assertCorrect(c, 10);
+		}
+	}
+
+	/**
+	 * Test of the best epoch kept by the stochastic gradient learners when
+	 * stopped early
+	 */
+	@Test
+	public final void testBestEpoch() {
+		List<IterativeClassifier<double[]>> sgd = new ArrayList<IterativeClassifier<double[]>>();
+		sgd.add(new DoubleSGD());
+		sgd.add(new DoubleSGDQN());
+		// overlapping classes, on which the objective is not always decreasing
+		final List<TrainingSample<double[]>> noisy = new GaussianGenerator(10, 0.2f, 1.0).generateList(200);
+		for (IterativeClassifier<double[]> c : sgd) {
+			final List<double[]> outputs = new ArrayList<double[]>();
+			final List<Double> objectives = new ArrayList<Double>();
+			c.getTrainingControl().addListener(new TrainingListener() {
+				@SuppressWarnings("unchecked")
+				@Override
+				public boolean iteration(Classifier<?> classifier,
+						long iteration, double objective, double gap) {
+					double[] o = new double[noisy.size()];
+					for (int i = 0; i < o.length; i++) {
+						o[i] = ((Classifier<double[]>) classifier).valueOf(noisy.get(i).sample);
+					}
+					outputs.add(o);
+					objectives.add(objective);
+					return iteration < 4;
+				}
+			});
+			c.train(noisy);
+			assertTrue(c.getTrainingControl().isStopped());
+			assertEquals(4, objectives.size());
+			int best = 0;
+			for (int e = 1; e < objectives.size(); e++) {
+				if (objectives.get(e) < objectives.get(best)) {
+					best = e;
+				}
+			}
+			for (int i = 0; i < noisy.size(); i++) {
+				assertEquals(outputs.get(best)[i], c.valueOf(noisy.get(i).sample), 0);
+			}
+		}
+	}
+
+	/**
+	 * Test method for {@link net.jkernelmachines.classifier.TrainingControl#setTimeBudget(long)}.
+	 */
+	@Test
+	public final void testTimeBudget() {
+		for (IterativeClassifier<double[]> c : classifiers) {
+			final int[] calls = new int[1];
+			TrainingControl tc = c.getTrainingControl();
+			tc.setTimeBudget(1);
+			tc.addListener(new TrainingListener() {
+				@Override
+				public boolean iteration(Classifier<?> classifier,
+						long iteration, double objective, double gap) {
+					calls[0]++;
+					try {
+						Thread.sleep(5);
+					} catch (InterruptedException e) {
+						Thread.currentThread().interrupt();
+					}
+					return true;
+				}
+			});
+			c.train(train);
+			assertTrue(calls[0] <= 1);
+			assertTrue(tc.isStopped());
+			c.valueOf(train.get(0).sample);
+		}
+	}
+
+	/**
+	 * Test method for {@link net.jkernelmachines.classifier.TrainingControl#cancel()}.
+	 */
+	@Test
+	public final void testCancel() {
+		TrainingControl tc = new TrainingControl();
+		tc.cancel();
+		for (IterativeClassifier<double[]> c : classifiers) {
+			c.setTrainingControl(tc);
+			c.train(train);
+			assertTrue(tc.isStopped());
+			c.valueOf(train.get(0).sample);
+		}
+		tc.reset();
+		assertFalse(tc.isCancelled());
+		for (IterativeClassifier<double[]> c : classifiers) {
+			c.train(train);
+			assertFalse(tc.isStopped());
+			assertCorrect(c, 2);
+		}
+	}
+
+	/**
+	 * Test of a control shared by concurrent trainings
+	 */
+	@Test
+	public final void testSharedControl() throws InterruptedException {
+		TrainingControl tc = new TrainingControl();
+		tc.setTimeBudget(20);
+		TrainingControl.Run first = tc.start();
+		Thread.sleep(40);
+		// starting another training does not extend the first deadline
+		TrainingControl.Run second = tc.start();
+		assertTrue(first.shouldStop());
+		assertFalse(second.shouldStop());
+		assertTrue(first.isStopped());
+		assertFalse(second.isStopped());
+
+		tc.cancel();
+		assertTrue(second.shouldStop());
+	}
+
+	/**
+	 * Test of the control of an inner solver
+	 */
+	@Test
+	public final void testNestedControl() {
+		TrainingControl tc = new TrainingControl();
+		TrainingControl.Run run = tc.start();
+		TrainingControl inner = run.nested();
+		TrainingControl.Run innerRun = inner.start();
+		assertFalse(innerRun.shouldStop());
+		tc.cancel();
+		assertTrue(innerRun.shouldStop());
+
+		// the inner svm of SimpleMKL is stopped with the outer training
+		SimpleMKL<double[]> mkl = new SimpleMKL<double[]>();
+		mkl.addKernel(new DoubleGaussL2(0.1));
+		mkl.addKernel(new DoubleGaussL2(1.0));
+		final List<Classifier<?>> trained = new ArrayList<Classifier<?>>();
+		mkl.getTrainingControl().addListener(new TrainingListener() {
+			@Override
+			public boolean iteration(Classifier<?> classifier, long iteration,
+					double objective, double gap) {
+				trained.add(classifier);
+				return false;
+			}
+		});
+		mkl.train(train);
+		assertTrue(mkl.getTrainingControl().isStopped());
+		assertEquals(1, trained.size());
+		mkl.valueOf(train.get(0).sample);
+	}
+
+	/**
+	 * Test of training on an interrupted thread
+	 */
+	@Test
+	public final void testInterrupt() {
+		for (IterativeClassifier<double[]> c : classifiers) {
+			Thread.currentThread().interrupt();
+			c.train(train);
+			// the interrupt status is kept for the caller
+			assertTrue(c.toString(), Thread.interrupted());
+			assertTrue(c.getTrainingControl().isStopped());
+			c.valueOf(train.get(0).sample);
+		}
+	}
+
+	private void assertCorrect(Classifier<double[]> c, int maxErrors) {
+		int errors = 0;
+		for (TrainingSample<double[]> t : train) {
+			if (t.label * c.valueOf(t.sample) <= 0) {
+				errors++;
+			}
+		}
+		assertTrue(c.toString() + " errors " + errors, errors <= maxErrors);
+	}
+}
@@ -39,8 +39,9 @@ import org.junit.runners.Suite.SuiteClasses;
  *
  */
 @RunWith(Suite.class)
-@SuiteClasses({ DoubleGaussianMixtureModelTest.class, ParzenDensityTest.class,
-		SDCADensityTest.class, SimpleMKLDensityTest.class, SMODensityTest.class })
+@SuiteClasses({ DoubleGaussianMixtureModelTest.class, DoubleKMeansTest.class,
+		ParzenDensityTest.class, SDCADensityTest.class,
+		SimpleMKLDensityTest.class, SMODensityTest.class })
 public class DensityTests {
 
 }
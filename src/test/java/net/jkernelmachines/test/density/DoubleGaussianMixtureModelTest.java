@@ -29,12 +29,15 @@
  *******************************************************************************/
 package net.jkernelmachines.test.density;
 
+import static org.junit.Assert.assertEquals;
 import static org.junit.Assert.assertTrue;
 
 import java.util.ArrayList;
 import java.util.List;
+import java.util.Random;
 
 import net.jkernelmachines.density.DoubleGaussianMixtureModel;
+import net.jkernelmachines.type.ListSampleStream;
 import net.jkernelmachines.type.TrainingSample;
 import net.jkernelmachines.util.generators.GaussianGenerator;
 
@@ -50,6 +53,8 @@ import org.junit.Test;
 public class DoubleGaussianMixtureModelTest {
 
 	List<double[]> train;
+	List<double[]> blobs;
+	int K = 4;
 	
 	/**
 	 * @throws java.lang.Exception
@@ -62,6 +67,18 @@ public class DoubleGaussianMixtureModelTest {
 		for(TrainingSample<double[]> t : list) {
 			train.add(t.sample);
 		}
+
+		// K well separated blobs of unit variance
+		Random ran = new Random(0);
+		blobs = new ArrayList<double[]>();
+		for (int i = 0; i < 4000; i++) {
+			double[] x = new double[5];
+			int g = i % K;
+			for (int d = 0; d < x.length; d++) {
+				x[d] = ran.nextGaussian() + ((d == g) ? 20 : 0);
+			}
+			blobs.add(x);
+		}
 	}
 
 	/**
@@ -78,4 +95,144 @@ public class DoubleGaussianMixtureModelTest {
 		}
 	}
 
+	/**
+	 * Test method for {@link net.jkernelmachines.density.DoubleGaussianMixtureModel#setCovariance(int)}.
+	 */
+	@Test
+	public final void testDiagonal() {
+		DoubleGaussianMixtureModel gmm = new DoubleGaussianMixtureModel(K);
+		gmm.setCovariance(DoubleGaussianMixtureModel.DIAGONAL_COVARIANCE);
+		gmm.train(blobs);
+		assertBlobs(gmm);
+	}
+
+	/**
+	 * Test method for {@link net.jkernelmachines.density.DoubleGaussianMixtureModel#setCovariance(int)}.
+	 */
+	@Test
+	public final void testSpherical() {
+		DoubleGaussianMixtureModel gmm = new DoubleGaussianMixtureModel(K);
+		gmm.setCovariance(DoubleGaussianMixtureModel.SPHERICAL_COVARIANCE);
+		gmm.train(blobs);
+		assertBlobs(gmm);
+		for (double[][] s : gmm.getSigma()) {
+			for (int d = 1; d < s.length; d++) {
+				assertEquals(s[0][0], s[d][d], 1e-12);
+			}
+		}
+	}
+
+	/**
+	 * Test method for {@link net.jkernelmachines.density.DoubleGaussianMixtureModel#logDensity(double[])}.
+	 */
+	@Test
+	public final void testLogDensity() {
+		// correlated Gaussian in dimension 2
+		Random ran = new Random(0);
+		List<double[]> l = new ArrayList<double[]>();
+		for (int i = 0; i < 1000; i++) {
+			double a = ran.nextGaussian();
+			l.add(new double[] { a + 1, a + 0.5 * ran.nextGaussian() });
+		}
+		DoubleGaussianMixtureModel gmm = new DoubleGaussianMixtureModel(1);
+		gmm.train(l);
+		double[] mu = gmm.getMu()[0];
+		double[][] s = gmm.getSigma()[0];
+		double det = s[0][0] * s[1][1] - s[0][1] * s[1][0];
+		for (double[] x : l) {
+			double a = x[0] - mu[0];
+			double b = x[1] - mu[1];
+			double m = a * (s[0][0] * a + s[0][1] * b) + b
+					* (s[1][0] * a + s[1][1] * b);
+			double p = Math.sqrt(det) / (2 * Math.PI) * Math.exp(-0.5 * m);
+			assertEquals(Math.log(p), gmm.logDensity(x), 1e-9);
+			assertEquals(Math.exp(-0.5 * m), gmm.valueOf(x), 1e-9);
+		}
+	}
+
+	/**
+	 * Test method for {@link net.jkernelmachines.density.DoubleGaussianMixtureModel#posterior(double[])}.
+	 */
+	@Test
+	public final void testPosterior() {
+		DoubleGaussianMixtureModel gmm = new DoubleGaussianMixtureModel(K);
+		gmm.train(blobs);
+		for (double[] x : blobs) {
+			double[] r = gmm.posterior(x);
+			double sum = 0;
+			for (int g = 0; g < K; g++) {
+				sum += r[g];
+			}
+			assertEquals(1, sum, 1e-12);
+		}
+		assertBlobs(gmm);
+	}
+
+	/**
+	 * Test method for {@link net.jkernelmachines.density.DoubleGaussianMixtureModel#setSigma(double[][][])}.
+	 */
+	@Test
+	public final void testSetSigma() {
+		DoubleGaussianMixtureModel gmm = new DoubleGaussianMixtureModel(K);
+		gmm.setCovariance(DoubleGaussianMixtureModel.DIAGONAL_COVARIANCE);
+		gmm.train(blobs);
+		double ll = averageLogLikelihood(gmm, blobs);
+		double[][][] sigma = gmm.getSigma();
+
+		gmm.setSigma(sigma);
+		assertEquals(DoubleGaussianMixtureModel.FULL_COVARIANCE,
+				gmm.getCovariance());
+		assertEquals(ll, averageLogLikelihood(gmm, blobs), 1e-9);
+	}
+
+	/**
+	 * Test method for {@link net.jkernelmachines.density.DoubleGaussianMixtureModel#onlineTrain(net.jkernelmachines.type.TrainingSampleStream)}.
+	 */
+	@Test
+	public final void testOnlineTrain() {
+		List<TrainingSample<double[]>> list = new ArrayList<TrainingSample<double[]>>();
+		for (double[] x : blobs) {
+			list.add(new TrainingSample<double[]>(x, 1));
+		}
+		DoubleGaussianMixtureModel gmm = new DoubleGaussianMixtureModel(K);
+		gmm.setBatchSize(100);
+		gmm.onlineTrain(new ListSampleStream<double[]>(list));
+		assertBlobs(gmm);
+
+		DoubleGaussianMixtureModel ref = new DoubleGaussianMixtureModel(K);
+		ref.train(blobs);
+		assertTrue(averageLogLikelihood(gmm, blobs) > averageLogLikelihood(
+				ref, blobs) - 0.1);
+	}
+
+	/**
+	 * one component of unit variance per blob
+	 */
+	private void assertBlobs(DoubleGaussianMixtureModel gmm) {
+		double[] w = gmm.getW();
+		double[][][] sigma = gmm.getSigma();
+		for (int g = 0; g < K; g++) {
+			assertEquals(1. / K, w[g], 1e-2);
+			for (int d = 0; d < sigma[g].length; d++) {
+				assertEquals(1, sigma[g][d][d], 0.2);
+			}
+		}
+		for (int i = 0; i < blobs.size(); i++) {
+			double[] r = gmm.posterior(blobs.get(i));
+			double[] ref = gmm.posterior(blobs.get(i % K));
+			for (int g = 0; g < K; g++) {
+				assertEquals(ref[g], r[g], 1e-6);
+			}
+		}
+	}
+
+	private double averageLogLikelihood(DoubleGaussianMixtureModel gmm,
+			List<double[]> l) {
+		double ll = 0;
+		for (double[] x : l) {
+			ll += gmm.logDensity(x);
+		}
+		return ll / l.size();
+	}
+
 }
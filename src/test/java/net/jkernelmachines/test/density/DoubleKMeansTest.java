@@ -0,0 +1,160 @@
+/*******************************************************************************
+ * Copyright (c) 2016, David Picard.
+ * All rights reserved.
+ *
+ * Redistribution and use in source and binary forms, with or without modification,
+ * are permitted provided that the following conditions are met:
+ *
+ * 1. Redistributions of source code must retain the above copyright notice, this
+ * list of conditions and the following disclaimer.
+ *
+ * 2. Redistributions in binary form must reproduce the above copyright notice,
+ * this list of conditions and the following disclaimer in the documentation and/or
+ * other materials provided with the distribution.
+ *
+ * 3. Neither the name of the copyright holder nor the names of its contributors
+ * may be used to endorse or promote products derived from this software without
+ * specific prior written permission.
+ *
+ * THIS SOFTWARE IS PROVIDED BY THE COPYRIGHT HOLDERS AND CONTRIBUTORS "AS IS" AND
+ * ANY EXPRESS OR IMPLIED WARRANTIES, INCLUDING, BUT NOT LIMITED TO, THE IMPLIED
+ * WARRANTIES OF MERCHANTABILITY AND FITNESS FOR A PARTICULAR PURPOSE ARE
+ * DISCLAIMED. IN NO EVENT SHALL THE COPYRIGHT HOLDER OR CONTRIBUTORS BE LIABLE FOR
+ * ANY DIRECT, INDIRECT, INCIDENTAL, SPECIAL, EXEMPLARY, OR CONSEQUENTIAL DAMAGES
+ * (INCLUDING, BUT NOT LIMITED TO, PROCUREMENT OF SUBSTITUTE GOODS OR SERVICES;
+ * LOSS OF USE, DATA, OR PROFITS; OR BUSINESS INTERRUPTION) HOWEVER CAUSED AND ON
+ * ANY THEORY OF LIABILITY, WHETHER IN CONTRACT, STRICT LIABILITY, OR TORT
+ * (INCLUDING NEGLIGENCE OR OTHERWISE) ARISING IN ANY WAY OUT OF THE USE OF THIS
+ * SOFTWARE, EVEN IF ADVISED OF THE POSSIBILITY OF SUCH DAMAGE.
+ *******************************************************************************/
+package net.jkernelmachines.test.density;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Random;
+
+import net.jkernelmachines.density.DoubleKMeans;
+import net.jkernelmachines.type.ListSampleStream;
+import net.jkernelmachines.type.TrainingSample;
+import net.jkernelmachines.util.algebra.VectorOperations;
+
+import org.junit.Before;
+import org.junit.Test;
+
+/**
+ * Test case for the DoubleKMeans class.
+ * 
+ * @author picard
+ *
+ */
+public class DoubleKMeansTest {
+
+	List<double[]> train;
+	int K = 4;
+
+	/**
+	 * @throws java.lang.Exception
+	 */
+	@Before
+	public void setUp() throws Exception {
+		// K well separated blobs
+		Random ran = new Random(0);
+		train = new ArrayList<double[]>();
+		for (int i = 0; i < 2000; i++) {
+			double[] x = new double[5];
+			int g = i % K;
+			for (int d = 0; d < x.length; d++) {
+				x[d] = ran.nextGaussian() + ((d == g) ? 20 : 0);
+			}
+			train.add(x);
+		}
+	}
+
+	/**
+	 * Test method for {@link net.jkernelmachines.density.DoubleKMeans#train(java.util.List)}.
+	 */
+	@Test
+	public final void testTrainListOfdouble() {
+		DoubleKMeans km = new DoubleKMeans(K);
+		km.train(train);
+		assertFixedPoint(km);
+
+		// one blob per cluster
+		for (int i = 0; i < train.size(); i++) {
+			assertEquals(km.valueOf(train.get(i % K)),
+					km.valueOf(train.get(i)), 0);
+		}
+	}
+
+	/**
+	 * Test method for {@link net.jkernelmachines.density.DoubleKMeans#setInit(int)}.
+	 */
+	@Test
+	public final void testRandomInit() {
+		DoubleKMeans km = new DoubleKMeans(16);
+		km.setInit(DoubleKMeans.RANDOM_INIT);
+		km.train(train);
+		assertFixedPoint(km);
+		assertEquals(16, km.getMeans().length);
+	}
+
+	/**
+	 * Test method for {@link net.jkernelmachines.density.DoubleKMeans#onlineTrain(net.jkernelmachines.type.TrainingSampleStream)}.
+	 */
+	@Test
+	public final void testOnlineTrain() {
+		List<TrainingSample<double[]>> list = new ArrayList<TrainingSample<double[]>>();
+		for (double[] x : train) {
+			list.add(new TrainingSample<double[]>(x, 1));
+		}
+		DoubleKMeans km = new DoubleKMeans(K);
+		km.setBatchSize(100);
+		km.onlineTrain(new ListSampleStream<double[]>(list));
+		assertEquals(K, km.getMeans().length);
+
+		DoubleKMeans ref = new DoubleKMeans(K);
+		ref.train(train);
+		assertTrue(distortion(km) < 1.1 * distortion(ref));
+	}
+
+	/**
+	 * Test method for {@link net.jkernelmachines.density.DoubleKMeans#train(java.util.List)}.
+	 */
+	@Test(expected = ArithmeticException.class)
+	public final void testTooFewSamples() {
+		DoubleKMeans km = new DoubleKMeans(K);
+		km.train(train.subList(0, K - 1));
+	}
+
+	/**
+	 * the means are the centroids of the samples nearest to them
+	 */
+	private void assertFixedPoint(DoubleKMeans km) {
+		double[][] means = km.getMeans();
+		double[][] sums = new double[means.length][train.get(0).length];
+		int[] w = new int[means.length];
+		for (double[] x : train) {
+			int g = (int) km.valueOf(x);
+			VectorOperations.addi(sums[g], sums[g], 1, x);
+			w[g]++;
+		}
+		for (int g = 0; g < means.length; g++) {
+			assertTrue(w[g] > 0);
+			for (int d = 0; d < sums[g].length; d++) {
+				assertEquals(sums[g][d] / w[g], means[g][d], 1e-9);
+			}
+		}
+	}
+
+	private double distortion(DoubleKMeans km) {
+		double dist = 0;
+		for (double[] x : train) {
+			double[] d = km.distanceToMean(x);
+			dist += d[(int) km.valueOf(x)];
+		}
+		return dist;
+	}
+}
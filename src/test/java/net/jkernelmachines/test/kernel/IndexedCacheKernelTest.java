@@ -0,0 +1,156 @@
+/*******************************************************************************
+ * Copyright (c) 2016, David Picard.
+ * All rights reserved.
+ *
+ * Redistribution and use in source and binary forms, with or without modification,
+ * are permitted provided that the following conditions are met:
+ *
+ * 1. Redistributions of source code must retain the above copyright notice, this
+ * list of conditions and the following disclaimer.
+ *
+ * 2. Redistributions in binary form must reproduce the above copyright notice,
+ * this list of conditions and the following disclaimer in the documentation and/or
+ * other materials provided with the distribution.
+ *
+ * 3. Neither the name of the copyright holder nor the names of its contributors
+ * may be used to endorse or promote products derived from this software without
+ * specific prior written permission.
+ *
+ * THIS SOFTWARE IS PROVIDED BY THE COPYRIGHT HOLDERS AND CONTRIBUTORS "AS IS" AND
+ * ANY EXPRESS OR IMPLIED WARRANTIES, INCLUDING, BUT NOT LIMITED TO, THE IMPLIED
+ * WARRANTIES OF MERCHANTABILITY AND FITNESS FOR A PARTICULAR PURPOSE ARE
+ * DISCLAIMED. IN NO EVENT SHALL THE COPYRIGHT HOLDER OR CONTRIBUTORS BE LIABLE FOR
+ * ANY DIRECT, INDIRECT, INCIDENTAL, SPECIAL, EXEMPLARY, OR CONSEQUENTIAL DAMAGES
+ * (INCLUDING, BUT NOT LIMITED TO, PROCUREMENT OF SUBSTITUTE GOODS OR SERVICES;
+ * LOSS OF USE, DATA, OR PROFITS; OR BUSINESS INTERRUPTION) HOWEVER CAUSED AND ON
+ * ANY THEORY OF LIABILITY, WHETHER IN CONTRACT, STRICT LIABILITY, OR TORT
+ * (INCLUDING NEGLIGENCE OR OTHERWISE) ARISING IN ANY WAY OUT OF THE USE OF THIS
+ * SOFTWARE, EVEN IF ADVISED OF THE POSSIBILITY OF SUCH DAMAGE.
+ *******************************************************************************/
+package net.jkernelmachines.test.kernel;
+
+import static org.junit.Assert.assertEquals;
+
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.ObjectInputStream;
+import java.io.ObjectOutputStream;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+
+import net.jkernelmachines.kernel.GaussianICKernel;
+import net.jkernelmachines.kernel.IndexedCacheKernel;
+import net.jkernelmachines.kernel.typed.DoubleGaussL2;
+import net.jkernelmachines.type.TrainingSample;
+import net.jkernelmachines.util.generators.GaussianGenerator;
+
+import org.junit.Before;
+import org.junit.Test;
+
+/**
+ * Test case for the IndexedCacheKernel class
+ * @author picard
+ *
+ */
+public class IndexedCacheKernelTest {
+
+	List<TrainingSample<double[]>> list;
+	Map<String, double[]> signatures;
+	List<TrainingSample<String>> keys;
+	DoubleGaussL2 k;
+	IndexedCacheKernel<String, double[]> ick;
+
+	/**
+	 * @throws java.lang.Exception
+	 */
+	@Before
+	public void setUp() throws Exception {
+		GaussianGenerator g = new GaussianGenerator(3, 1, 0.5);
+		list = g.generateList(40);
+		signatures = new HashMap<String, double[]>();
+		keys = new ArrayList<TrainingSample<String>>();
+		for(int i = 0 ; i < list.size() ; i++) {
+			signatures.put("s" + i, list.get(i).sample);
+			keys.add(new TrainingSample<String>("s" + i, list.get(i).label));
+		}
+		k = new DoubleGaussL2(0.5);
+		ick = new IndexedCacheKernel<String, double[]>(k, signatures);
+	}
+
+	/**
+	 * Test method for {@link net.jkernelmachines.kernel.IndexedCacheKernel#valueOf(java.lang.Object, java.lang.Object)}.
+	 */
+	@Test
+	public final void testValueOf() {
+		assertEquals(-1, ick.indexOf("unknown"));
+		for(int i = 0 ; i < list.size() ; i++) {
+			String s1 = "s" + i;
+			assertEquals((float) k.valueOf(list.get(i).sample), ick.valueOf(s1), 0);
+			for(int j = 0 ; j < list.size() ; j++) {
+				String s2 = "s" + j;
+				double v = (float) k.valueOf(list.get(i).sample, list.get(j).sample);
+				assertEquals(v, ick.valueOf(s1, s2), 0);
+				assertEquals(v, ick.valueOf(ick.indexOf(s1), ick.indexOf(s2)), 0);
+				assertEquals(v, ick.getCacheLine(ick.indexOf(s1))[ick.indexOf(s2)], 0);
+			}
+		}
+	}
+
+	/**
+	 * Test method for {@link net.jkernelmachines.kernel.IndexedCacheKernel#getKernelMatrix(java.util.List)}.
+	 */
+	@Test
+	public final void testGetKernelMatrix() {
+		double[][] m = ick.getKernelMatrix(keys);
+		double[][] ref = k.getKernelMatrix(list);
+		for(int i = 0 ; i < m.length ; i++) {
+			double[] line = ick.getKernelMatrixLine(keys.get(i).sample, keys);
+			for(int j = 0 ; j < m.length ; j++) {
+				assertEquals(ref[i][j], m[i][j], 1e-6);
+				assertEquals(m[i][j], line[j], 0);
+			}
+		}
+		assertEquals(list.size(), ick.getMap().size());
+	}
+
+	/**
+	 * Test of the serialization, which rebuilds the table of keys
+	 */
+	@Test
+	public final void testSerialization() throws Exception {
+		ByteArrayOutputStream bytes = new ByteArrayOutputStream();
+		ObjectOutputStream out = new ObjectOutputStream(bytes);
+		out.writeObject(ick);
+		out.close();
+		ObjectInputStream in = new ObjectInputStream(new ByteArrayInputStream(bytes.toByteArray()));
+		@SuppressWarnings("unchecked")
+		IndexedCacheKernel<String, double[]> copy = (IndexedCacheKernel<String, double[]>) in.readObject();
+		in.close();
+		
+		assertEquals(-1, copy.indexOf("unknown"));
+		assertEquals(ick.getMap(), copy.getMap());
+		for(TrainingSample<String> t1 : keys) {
+			for(TrainingSample<String> t2 : keys) {
+				assertEquals(ick.valueOf(t1.sample, t2.sample), copy.valueOf(t1.sample, t2.sample), 0);
+			}
+		}
+	}
+
+	/**
+	 * Test method for {@link net.jkernelmachines.kernel.GaussianICKernel#valueOf(java.lang.Object, java.lang.Object)}.
+	 */
+	@Test
+	public final void testGaussianICKernel() {
+		GaussianICKernel<String, double[]> gk = new GaussianICKernel<String, double[]>(ick);
+		gk.setGamma(2.0);
+		DoubleGaussL2 k2 = new DoubleGaussL2(1.0);
+		for(int i = 0 ; i < list.size() ; i++) {
+			for(int j = 0 ; j < list.size() ; j++) {
+				assertEquals(k2.valueOf(list.get(i).sample, list.get(j).sample), gk.valueOf("s" + i, "s" + j), 1e-3);
+			}
+		}
+	}
+
+}
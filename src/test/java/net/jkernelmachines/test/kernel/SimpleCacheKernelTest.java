@@ -0,0 +1,101 @@
+/*******************************************************************************
+ * Copyright (c) 2016, David Picard.
+ * All rights reserved.
+ *
+ * Redistribution and use in source and binary forms, with or without modification,
+ * are permitted provided that the following conditions are met:
+ *
+ * 1. Redistributions of source code must retain the above copyright notice, this
+ * list of conditions and the following disclaimer.
+ *
+ * 2. Redistributions in binary form must reproduce the above copyright notice,
+ * this list of conditions and the following disclaimer in the documentation and/or
+ * other materials provided with the distribution.
+ *
+ * 3. Neither the name of the copyright holder nor the names of its contributors
+ * may be used to endorse or promote products derived from this software without
+ * specific prior written permission.
+ *
+ * THIS SOFTWARE IS PROVIDED BY THE COPYRIGHT HOLDERS AND CONTRIBUTORS "AS IS" AND
+ * ANY EXPRESS OR IMPLIED WARRANTIES, INCLUDING, BUT NOT LIMITED TO, THE IMPLIED
+ * WARRANTIES OF MERCHANTABILITY AND FITNESS FOR A PARTICULAR PURPOSE ARE
+ * DISCLAIMED. IN NO EVENT SHALL THE COPYRIGHT HOLDER OR CONTRIBUTORS BE LIABLE FOR
+ * ANY DIRECT, INDIRECT, INCIDENTAL, SPECIAL, EXEMPLARY, OR CONSEQUENTIAL DAMAGES
+ * (INCLUDING, BUT NOT LIMITED TO, PROCUREMENT OF SUBSTITUTE GOODS OR SERVICES;
+ * LOSS OF USE, DATA, OR PROFITS; OR BUSINESS INTERRUPTION) HOWEVER CAUSED AND ON
+ * ANY THEORY OF LIABILITY, WHETHER IN CONTRACT, STRICT LIABILITY, OR TORT
+ * (INCLUDING NEGLIGENCE OR OTHERWISE) ARISING IN ANY WAY OUT OF THE USE OF THIS
+ * SOFTWARE, EVEN IF ADVISED OF THE POSSIBILITY OF SUCH DAMAGE.
+ *******************************************************************************/
+package net.jkernelmachines.test.kernel;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+
+import java.util.ArrayList;
+import java.util.List;
+
+import net.jkernelmachines.kernel.Kernel;
+import net.jkernelmachines.kernel.SimpleCacheKernel;
+import net.jkernelmachines.kernel.typed.DoubleGaussChi2;
+import net.jkernelmachines.kernel.typed.DoubleGaussL2;
+import net.jkernelmachines.kernel.typed.DoubleLinear;
+import net.jkernelmachines.kernel.typed.DoubleTriangleL2;
+import net.jkernelmachines.kernel.typed.index.IndexDoubleGaussL2;
+import net.jkernelmachines.type.TrainingSample;
+import net.jkernelmachines.util.generators.GaussianGenerator;
+
+import org.junit.Test;
+
+/**
+ * Test case for the SimpleCacheKernel class
+ * @author picard
+ *
+ */
+public class SimpleCacheKernelTest {
+
+	/**
+	 * Test method for {@link net.jkernelmachines.kernel.SimpleCacheKernel#cacheKernels(java.util.List, java.util.List)}.
+	 */
+	@Test
+	public final void testCacheKernels() {
+		GaussianGenerator g = new GaussianGenerator(4, 1, 0.5);
+		List<TrainingSample<double[]>> list = g.generateList(60);
+
+		List<Kernel<double[]>> kernels = new ArrayList<Kernel<double[]>>();
+		for(int i = 0 ; i < 5 ; i++) {
+			kernels.add(new DoubleGaussL2(0.1 * (i+1)));
+			kernels.add(new IndexDoubleGaussL2(i % 2));
+			kernels.add(new DoubleGaussChi2());
+		}
+		kernels.add(new DoubleTriangleL2(0.05));
+		kernels.add(new DoubleTriangleL2(0.01));
+		kernels.add(new DoubleLinear());
+
+		List<SimpleCacheKernel<double[]>> cache = SimpleCacheKernel.cacheKernels(kernels, list);
+		assertEquals(kernels.size(), cache.size());
+		for(int k = 0 ; k < kernels.size() ; k++) {
+			assertTrue(kernels.get(k) == cache.get(k).getKernel());
+			double[][] matrix = cache.get(k).getKernelMatrix(list);
+			for(int i = 0 ; i < list.size() ; i++) {
+				for(int j = 0 ; j < list.size() ; j++) {
+					assertEquals(kernels.get(k).valueOf(list.get(i).sample, list.get(j).sample), matrix[i][j], 1e-10);
+				}
+			}
+		}
+	}
+
+	/**
+	 * Test method for {@link net.jkernelmachines.kernel.GaussianKernel#isSameDistance(net.jkernelmachines.kernel.GaussianKernel)}.
+	 */
+	@Test
+	public final void testIsSameDistance() {
+		assertTrue(new DoubleGaussL2(0.1).isSameDistance(new DoubleGaussL2(2)));
+		assertTrue(new IndexDoubleGaussL2(1).isSameDistance(new IndexDoubleGaussL2(1)));
+		assertFalse(new IndexDoubleGaussL2(1).isSameDistance(new IndexDoubleGaussL2(2)));
+		assertFalse(new DoubleGaussL2().isSameDistance(new DoubleGaussChi2()));
+		assertFalse(new DoubleGaussL2().isSameDistance(new DoubleTriangleL2()));
+	}
+
+}
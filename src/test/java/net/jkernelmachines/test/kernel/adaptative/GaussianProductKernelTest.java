@@ -0,0 +1,109 @@
+/*******************************************************************************
+ * Copyright (c) 2016, David Picard.
+ * All rights reserved.
+ *
+ * Redistribution and use in source and binary forms, with or without modification,
+ * are permitted provided that the following conditions are met:
+ *
+ * 1. Redistributions of source code must retain the above copyright notice, this
+ * list of conditions and the following disclaimer.
+ *
+ * 2. Redistributions in binary form must reproduce the above copyright notice,
+ * this list of conditions and the following disclaimer in the documentation and/or
+ * other materials provided with the distribution.
+ *
+ * 3. Neither the name of the copyright holder nor the names of its contributors
+ * may be used to endorse or promote products derived from this software without
+ * specific prior written permission.
+ *
+ * THIS SOFTWARE IS PROVIDED BY THE COPYRIGHT HOLDERS AND CONTRIBUTORS "AS IS" AND
+ * ANY EXPRESS OR IMPLIED WARRANTIES, INCLUDING, BUT NOT LIMITED TO, THE IMPLIED
+ * WARRANTIES OF MERCHANTABILITY AND FITNESS FOR A PARTICULAR PURPOSE ARE
+ * DISCLAIMED. IN NO EVENT SHALL THE COPYRIGHT HOLDER OR CONTRIBUTORS BE LIABLE FOR
+ * ANY DIRECT, INDIRECT, INCIDENTAL, SPECIAL, EXEMPLARY, OR CONSEQUENTIAL DAMAGES
+ * (INCLUDING, BUT NOT LIMITED TO, PROCUREMENT OF SUBSTITUTE GOODS OR SERVICES;
+ * LOSS OF USE, DATA, OR PROFITS; OR BUSINESS INTERRUPTION) HOWEVER CAUSED AND ON
+ * ANY THEORY OF LIABILITY, WHETHER IN CONTRACT, STRICT LIABILITY, OR TORT
+ * (INCLUDING NEGLIGENCE OR OTHERWISE) ARISING IN ANY WAY OUT OF THE USE OF THIS
+ * SOFTWARE, EVEN IF ADVISED OF THE POSSIBILITY OF SUCH DAMAGE.
+ *******************************************************************************/
+package net.jkernelmachines.test.kernel.adaptative;
+
+import static org.junit.Assert.assertEquals;
+
+import java.util.List;
+
+import net.jkernelmachines.kernel.adaptative.GaussianProductKernel;
+import net.jkernelmachines.kernel.adaptative.WeightedProductKernel;
+import net.jkernelmachines.kernel.typed.DoubleGaussL2;
+import net.jkernelmachines.kernel.typed.DoubleTriangleL2;
+import net.jkernelmachines.kernel.typed.index.IndexDoubleGaussL2;
+import net.jkernelmachines.type.TrainingSample;
+import net.jkernelmachines.util.generators.GaussianGenerator;
+
+import org.junit.Test;
+
+/**
+ * @author picard
+ *
+ */
+public class GaussianProductKernelTest {
+
+	/**
+	 * Test method for {@link net.jkernelmachines.kernel.adaptative.GaussianProductKernel#getKernelMatrix(java.util.List)}.
+	 */
+	@Test
+	public final void testGetKernelMatrix() {
+		
+		GaussianGenerator gg = new GaussianGenerator(8);
+		List<TrainingSample<double[]>> l = gg.generateList(200);
+		
+		GaussianProductKernel<double[]> gpk = new GaussianProductKernel<>();
+		WeightedProductKernel<double[]> wpk = new WeightedProductKernel<>();
+		for(int i = 0 ; i < 8 ; i++) {
+			double w = (i == 5) ? 0 : Math.random();
+			IndexDoubleGaussL2 k = new IndexDoubleGaussL2(i);
+			k.setGamma(w);
+			gpk.addKernel(new IndexDoubleGaussL2(i), w);
+			wpk.addKernel(k, 1.0);
+		}
+		
+		double[][] matrix = gpk.getKernelMatrix(l);
+		double[][] prod = wpk.getKernelMatrix(l);
+		for(int i = 0 ; i < matrix.length ; i++) {
+			for(int j = 0 ; j < matrix.length ; j++) {
+				double v = wpk.valueOf(l.get(i).sample, l.get(j).sample);
+				assertEquals(v, matrix[i][j], 1e-10);
+				assertEquals(v, prod[i][j], 1e-10);
+				assertEquals(v, gpk.valueOf(l.get(i).sample, l.get(j).sample), 1e-10);
+			}
+		}
+	}
+
+	/**
+	 * Test of the product with a kernel which is not an exponential of its distance
+	 */
+	@Test
+	public final void testNonExponentialKernel() {
+		
+		GaussianGenerator gg = new GaussianGenerator(8);
+		List<TrainingSample<double[]>> l = gg.generateList(100);
+		
+		GaussianProductKernel<double[]> gpk = new GaussianProductKernel<>();
+		gpk.addKernel(new DoubleGaussL2(), 0.05);
+		gpk.addKernel(new DoubleTriangleL2(), 0.01);
+		WeightedProductKernel<double[]> wpk = new WeightedProductKernel<>();
+		wpk.addKernel(new DoubleGaussL2(0.05), 1.0);
+		wpk.addKernel(new DoubleTriangleL2(0.01), 1.0);
+		
+		double[][] matrix = gpk.getKernelMatrix(l);
+		for(int i = 0 ; i < matrix.length ; i++) {
+			for(int j = 0 ; j < matrix.length ; j++) {
+				double v = wpk.valueOf(l.get(i).sample, l.get(j).sample);
+				assertEquals(v, matrix[i][j], 1e-10);
+				assertEquals(v, gpk.valueOf(l.get(i).sample, l.get(j).sample), 1e-10);
+			}
+		}
+	}
+
+}
@@ -38,7 +38,7 @@ import org.junit.runners.Suite.SuiteClasses;
  *
  */
 @RunWith(Suite.class)
-@SuiteClasses({ ThreadedSumKernelTest.class })
+@SuiteClasses({ ThreadedSumKernelTest.class, GaussianProductKernelTest.class })
 public class KernelAdaptiveTests {
 
 }
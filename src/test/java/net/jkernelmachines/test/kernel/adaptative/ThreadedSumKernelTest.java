@@ -31,9 +31,14 @@ package net.jkernelmachines.test.kernel.adaptative;
 
 import static org.junit.Assert.assertEquals;
 
+import java.util.ArrayList;
 import java.util.List;
+import java.util.concurrent.atomic.AtomicInteger;
 
+import net.jkernelmachines.kernel.Kernel;
+import net.jkernelmachines.kernel.SimpleCacheKernel;
 import net.jkernelmachines.kernel.adaptative.ThreadedSumKernel;
+import net.jkernelmachines.kernel.typed.StringNGram;
 import net.jkernelmachines.kernel.typed.index.IndexDoubleGaussL2;
 import net.jkernelmachines.type.TrainingSample;
 import net.jkernelmachines.util.generators.GaussianGenerator;
@@ -83,4 +88,81 @@ public class ThreadedSumKernelTest {
 		}
 	}
 
+	/**
+	 * Test method for {@link net.jkernelmachines.kernel.adaptative.ThreadedSumKernel#getKernelMatrix(java.util.List)}.
+	 */
+	@Test
+	public final void testGetKernelMatrix() {
+		
+		GaussianGenerator gg = new GaussianGenerator(8);
+		List<TrainingSample<double[]>> l = gg.generateList(200);
+		
+		ThreadedSumKernel<double[]> tsk = new ThreadedSumKernel<>();
+		List<double[][]> matrices = new ArrayList<>();
+		double[] w = new double[8];
+		for(int i = 0 ; i < 8 ; i++) {
+			// half of the kernels are cached, one has a zero weight
+			Kernel<double[]> k = new IndexDoubleGaussL2(i);
+			if(i % 2 == 0) {
+				k = new SimpleCacheKernel<>(k, l);
+			}
+			w[i] = (i == 3) ? 0 : Math.random();
+			tsk.addKernel(k, w[i]);
+			matrices.add(k.getKernelMatrix(l));
+		}
+		
+		double[][] matrix = tsk.getKernelMatrix(l);
+		for(int i = 0 ; i < matrix.length ; i++) {
+			for(int j = 0 ; j < matrix.length ; j++) {
+				double sum = 0;
+				for(int k = 0 ; k < 8 ; k++) {
+					sum += w[k] * matrices.get(k)[i][j];
+				}
+				assertEquals(sum, matrix[i][j], 1e-10);
+				assertEquals(tsk.valueOf(l.get(i).sample, l.get(j).sample), matrix[i][j], 1e-10);
+			}
+		}
+	}
+
+	/**
+	 * Test of the sum of kernels computing their own Gram matrix, which are not
+	 * evaluated pair by pair
+	 */
+	@Test
+	public final void testGetKernelMatrixOwnGram() {
+		
+		List<TrainingSample<String>> l = new ArrayList<>();
+		String[] words = { "kernel", "machines", "matrix", "kernels", "machine", "gram", "program", "grammar" };
+		for(int i = 0 ; i < 40 ; i++) {
+			l.add(new TrainingSample<>(words[i % words.length] + i, 1));
+		}
+		
+		final AtomicInteger calls = new AtomicInteger();
+		ThreadedSumKernel<String> tsk = new ThreadedSumKernel<>();
+		StringNGram[] kernels = new StringNGram[3];
+		for(int n = 0 ; n < kernels.length ; n++) {
+			kernels[n] = new StringNGram(n + 1) {
+				private static final long serialVersionUID = 1L;
+				@Override
+				public double valueOf(String t1, String t2) {
+					calls.incrementAndGet();
+					return super.valueOf(t1, t2);
+				}
+			};
+			tsk.addKernel(kernels[n], n + 1);
+		}
+		
+		double[][] matrix = tsk.getKernelMatrix(l);
+		assertEquals(0, calls.get());
+		for(int i = 0 ; i < matrix.length ; i++) {
+			for(int j = 0 ; j < matrix.length ; j++) {
+				double sum = 0;
+				for(int n = 0 ; n < kernels.length ; n++) {
+					sum += (n + 1) * kernels[n].valueOf(l.get(i).sample, l.get(j).sample);
+				}
+				assertEquals(sum, matrix[i][j], 1e-10);
+			}
+		}
+	}
+
 }
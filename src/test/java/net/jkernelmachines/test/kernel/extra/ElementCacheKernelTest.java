@@ -0,0 +1,164 @@
+/*******************************************************************************
+ * Copyright (c) 2016, David Picard.
+ * All rights reserved.
+ *
+ * Redistribution and use in source and binary forms, with or without modification,
+ * are permitted provided that the following conditions are met:
+ *
+ * 1. Redistributions of source code must retain the above copyright notice, this
+ * list of conditions and the following disclaimer.
+ *
+ * 2. Redistributions in binary form must reproduce the above copyright notice,
+ * this list of conditions and the following disclaimer in the documentation and/or
+ * other materials provided with the distribution.
+ *
+ * 3. Neither the name of the copyright holder nor the names of its contributors
+ * may be used to endorse or promote products derived from this software without
+ * specific prior written permission.
+ *
+ * THIS SOFTWARE IS PROVIDED BY THE COPYRIGHT HOLDERS AND CONTRIBUTORS "AS IS" AND
+ * ANY EXPRESS OR IMPLIED WARRANTIES, INCLUDING, BUT NOT LIMITED TO, THE IMPLIED
+ * WARRANTIES OF MERCHANTABILITY AND FITNESS FOR A PARTICULAR PURPOSE ARE
+ * DISCLAIMED. IN NO EVENT SHALL THE COPYRIGHT HOLDER OR CONTRIBUTORS BE LIABLE FOR
+ * ANY DIRECT, INDIRECT, INCIDENTAL, SPECIAL, EXEMPLARY, OR CONSEQUENTIAL DAMAGES
+ * (INCLUDING, BUT NOT LIMITED TO, PROCUREMENT OF SUBSTITUTE GOODS OR SERVICES;
+ * LOSS OF USE, DATA, OR PROFITS; OR BUSINESS INTERRUPTION) HOWEVER CAUSED AND ON
+ * ANY THEORY OF LIABILITY, WHETHER IN CONTRACT, STRICT LIABILITY, OR TORT
+ * (INCLUDING NEGLIGENCE OR OTHERWISE) ARISING IN ANY WAY OUT OF THE USE OF THIS
+ * SOFTWARE, EVEN IF ADVISED OF THE POSSIBILITY OF SUCH DAMAGE.
+ *******************************************************************************/
+package net.jkernelmachines.test.kernel.extra;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Random;
+
+import net.jkernelmachines.kernel.Kernel;
+import net.jkernelmachines.kernel.extra.bag.ElementCacheKernel;
+import net.jkernelmachines.kernel.extra.bag.ListKernel;
+import net.jkernelmachines.kernel.extra.bag.SubListKernel2;
+import net.jkernelmachines.kernel.extra.bag.SubListMaxKernel;
+import net.jkernelmachines.kernel.extra.bag.UnormalizedListKernel;
+import net.jkernelmachines.kernel.typed.DoubleGaussL2;
+import net.jkernelmachines.type.TrainingSample;
+
+import org.junit.Before;
+import org.junit.Test;
+
+/**
+ * Test case for the ElementCacheKernel class
+ * @author picard
+ *
+ */
+public class ElementCacheKernelTest {
+
+	List<TrainingSample<List<double[]>>> list;
+	DoubleGaussL2 dk;
+	ElementCacheKernel<double[]> ck;
+
+	/**
+	 * @throws java.lang.Exception
+	 */
+	@Before
+	public void setUp() throws Exception {
+		Random rand = new Random(0);
+		// bags drawn from a small set of shared elements
+		double[][] elements = new double[20][3];
+		for(double[] e : elements) {
+			for(int d = 0 ; d < e.length ; d++) {
+				e[d] = rand.nextGaussian();
+			}
+		}
+		list = new ArrayList<TrainingSample<List<double[]>>>();
+		for(int i = 0 ; i < 30 ; i++) {
+			List<double[]> bag = new ArrayList<double[]>();
+			for(int j = 0 ; j < 5 ; j++) {
+				bag.add(elements[rand.nextInt(elements.length)]);
+			}
+			list.add(new TrainingSample<List<double[]>>(bag, 2 * (i % 2) - 1));
+		}
+		dk = new DoubleGaussL2(0.5);
+		ck = new ElementCacheKernel<double[]>(dk, list);
+	}
+
+	/**
+	 * Test method for {@link net.jkernelmachines.kernel.extra.bag.ElementCacheKernel#valueOf(java.lang.Object, java.lang.Object)}.
+	 */
+	@Test
+	public final void testValueOf() {
+		assertEquals(20, ck.getSize(), 0);
+		for(TrainingSample<List<double[]>> t1 : list) {
+			for(TrainingSample<List<double[]>> t2 : list) {
+				double[] s1 = t1.sample.get(0);
+				double[] s2 = t2.sample.get(0);
+				assertEquals(dk.valueOf(s1, s2), ck.valueOf(s1, s2), 1e-15);
+			}
+		}
+		double[] unknown = new double[] { 0, 1, 2 };
+		assertEquals(dk.valueOf(unknown, unknown), ck.valueOf(unknown, unknown), 1e-15);
+	}
+
+	/**
+	 * Test method for {@link net.jkernelmachines.kernel.extra.bag.ElementCacheKernel#sum(int[], int, int, int[], int, int, double)}.
+	 */
+	@Test
+	public final void testBagKernelMatrix() {
+		assertTrue(ck.isFullMatrix());
+		assertBagKernelMatrix(ck);
+	}
+
+	/**
+	 * Test method for {@link net.jkernelmachines.kernel.extra.bag.ElementCacheKernel#ElementCacheKernel(Kernel, List, long)}.
+	 */
+	@Test
+	public final void testRowCache() {
+		// room for 4 rows of 20 elements
+		ElementCacheKernel<double[]> rk = new ElementCacheKernel<double[]>(dk, list, 4 * 8 * 20);
+		assertFalse(rk.isFullMatrix());
+		assertEquals(20, rk.getSize(), 0);
+		assertBagKernelMatrix(rk);
+		for(TrainingSample<List<double[]>> t1 : list) {
+			for(TrainingSample<List<double[]>> t2 : list) {
+				double[] s1 = t1.sample.get(0);
+				double[] s2 = t2.sample.get(0);
+				assertEquals(dk.valueOf(s1, s2), rk.valueOf(s1, s2), 1e-15);
+			}
+		}
+	}
+
+	/**
+	 * Test method for {@link net.jkernelmachines.kernel.extra.bag.ElementCacheKernel#ElementCacheKernel(Kernel, List, long)}.
+	 */
+	@Test(expected = IllegalArgumentException.class)
+	public final void testBudgetTooSmall() {
+		new ElementCacheKernel<double[]>(dk, list, 8);
+	}
+
+	private void assertBagKernelMatrix(ElementCacheKernel<double[]> ck) {
+		List<Kernel<List<double[]>>> kernels = new ArrayList<Kernel<List<double[]>>>();
+		List<Kernel<List<double[]>>> cached = new ArrayList<Kernel<List<double[]>>>();
+		kernels.add(new ListKernel<double[], List<double[]>>(dk));
+		cached.add(new ListKernel<double[], List<double[]>>(ck));
+		kernels.add(new UnormalizedListKernel<double[], List<double[]>>(dk));
+		cached.add(new UnormalizedListKernel<double[], List<double[]>>(ck));
+		kernels.add(new SubListMaxKernel<double[], List<double[]>>(1, 4, dk));
+		cached.add(new SubListMaxKernel<double[], List<double[]>>(1, 4, ck));
+		kernels.add(new SubListKernel2<double[], List<double[]>>(dk, 0, 2, 1, 5));
+		cached.add(new SubListKernel2<double[], List<double[]>>(ck, 0, 2, 1, 5));
+
+		for(int k = 0 ; k < kernels.size() ; k++) {
+			double[][] m = cached.get(k).getKernelMatrix(list);
+			for(int i = 0 ; i < m.length ; i++) {
+				for(int j = 0 ; j < m.length ; j++) {
+					double v = kernels.get(k).valueOf(list.get(i).sample, list.get(j).sample);
+					assertEquals(v, m[i][j], 1e-12);
+				}
+			}
+		}
+	}
+
+}
@@ -0,0 +1,119 @@
+/*******************************************************************************
+ * Copyright (c) 2016, David Picard.
+ * All rights reserved.
+ *
+ * Redistribution and use in source and binary forms, with or without modification,
+ * are permitted provided that the following conditions are met:
+ *
+ * 1. Redistributions of source code must retain the above copyright notice, this
+ * list of conditions and the following disclaimer.
+ *
+ * 2. Redistributions in binary form must reproduce the above copyright notice,
+ * this list of conditions and the following disclaimer in the documentation and/or
+ * other materials provided with the distribution.
+ *
+ * 3. Neither the name of the copyright holder nor the names of its contributors
+ * may be used to endorse or promote products derived from this software without
+ * specific prior written permission.
+ *
+ * THIS SOFTWARE IS PROVIDED BY THE COPYRIGHT HOLDERS AND CONTRIBUTORS "AS IS" AND
+ * ANY EXPRESS OR IMPLIED WARRANTIES, INCLUDING, BUT NOT LIMITED TO, THE IMPLIED
+ * WARRANTIES OF MERCHANTABILITY AND FITNESS FOR A PARTICULAR PURPOSE ARE
+ * DISCLAIMED. IN NO EVENT SHALL THE COPYRIGHT HOLDER OR CONTRIBUTORS BE LIABLE FOR
+ * ANY DIRECT, INDIRECT, INCIDENTAL, SPECIAL, EXEMPLARY, OR CONSEQUENTIAL DAMAGES
+ * (INCLUDING, BUT NOT LIMITED TO, PROCUREMENT OF SUBSTITUTE GOODS OR SERVICES;
+ * LOSS OF USE, DATA, OR PROFITS; OR BUSINESS INTERRUPTION) HOWEVER CAUSED AND ON
+ * ANY THEORY OF LIABILITY, WHETHER IN CONTRACT, STRICT LIABILITY, OR TORT
+ * (INCLUDING NEGLIGENCE OR OTHERWISE) ARISING IN ANY WAY OUT OF THE USE OF THIS
+ * SOFTWARE, EVEN IF ADVISED OF THE POSSIBILITY OF SUCH DAMAGE.
+ *******************************************************************************/
+package net.jkernelmachines.test.kernel.extra;
+
+import static org.junit.Assert.assertArrayEquals;
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+
+import java.util.List;
+
+import net.jkernelmachines.kernel.extra.IncompleteCholeskyKernel;
+import net.jkernelmachines.kernel.typed.DoubleGaussL2;
+import net.jkernelmachines.type.TrainingSample;
+import net.jkernelmachines.util.generators.GaussianGenerator;
+
+import org.junit.Before;
+import org.junit.Test;
+
+/**
+ * Test case for the IncompleteCholeskyKernel class
+ * @author picard
+ *
+ */
+public class IncompleteCholeskyKernelTest {
+	
+	List<TrainingSample<double[]>> list;
+	DoubleGaussL2 dk;
+	IncompleteCholeskyKernel<double[]> ick;
+	int nb_samples = 50;
+
+	/**
+	 * @throws java.lang.Exception
+	 */
+	@Before
+	public void setUp() throws Exception {
+		GaussianGenerator g = new GaussianGenerator(2, 1, 0.5);
+		list = g.generateList(nb_samples);
+		dk = new DoubleGaussL2();
+		ick = new IncompleteCholeskyKernel<double[]>(dk);
+	}
+
+	/**
+	 * Test method for {@link net.jkernelmachines.kernel.extra.IncompleteCholeskyKernel#train(java.util.List)}.
+	 */
+	@Test
+	public final void testTrain() {
+		ick.setTolerance(1e-8);
+		ick.train(list);
+		assertTrue(ick.getRank() < nb_samples);
+		
+		double[][] matrix = dk.getKernelMatrix(list);
+		double[][] G = ick.getFactor();
+		for(int i = 0 ; i < matrix.length ; i++) {
+			for(int j = i ; j< matrix.length ; j++) {
+				double v = 0;
+				for(int d = 0 ; d < G[i].length ; d++) {
+					v += G[i][d] * G[j][d];
+				}
+				assertEquals(matrix[i][j], v, 1e-4);
+			}
+		}
+	}
+
+	/**
+	 * Test method for {@link net.jkernelmachines.kernel.extra.IncompleteCholeskyKernel#setMaxRank(int)}.
+	 */
+	@Test
+	public final void testMaxRank() {
+		ick.setTolerance(0);
+		ick.setMaxRank(5);
+		ick.train(list);
+		assertEquals(5, ick.getRank());
+		assertEquals(5, ick.getPivots().size());
+		assertEquals(5, ick.getFactor()[0].length);
+	}
+
+	/**
+	 * Test method for {@link net.jkernelmachines.kernel.extra.IncompleteCholeskyKernel#projectSample(java.lang.Object)}.
+	 */
+	@Test
+	public final void testProjectSample() {
+		ick.setMaxRank(10);
+		ick.train(list);
+		double[][] G = ick.getFactor();
+		double[][] m = ick.projectMatrix(list);
+		for(int i = 0 ; i < list.size() ; i++) {
+			assertArrayEquals(G[i], ick.projectSample(list.get(i).sample), 1e-8);
+			assertArrayEquals(m[i], ick.projectSample(list.get(i).sample), 1e-15);
+		}
+	}
+
+}
@@ -38,7 +38,9 @@ import org.junit.runners.Suite.SuiteClasses;
  *
  */
 @RunWith(Suite.class)
-@SuiteClasses({ CustomTrainTestMatrixKernelTest.class, NystromKernelTest.class })
+@SuiteClasses({ CustomTrainTestMatrixKernelTest.class, NystromKernelTest.class,
+		IncompleteCholeskyKernelTest.class, ElementCacheKernelTest.class,
+		SparseHistogramTest.class })
 public class KernelExtraTests {
 
 }
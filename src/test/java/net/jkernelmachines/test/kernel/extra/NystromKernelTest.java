@@ -29,10 +29,15 @@
  *******************************************************************************/
 package net.jkernelmachines.test.kernel.extra;
 
+import static org.junit.Assert.assertArrayEquals;
 import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
 
+import java.util.ArrayList;
 import java.util.List;
 
+import net.jkernelmachines.kernel.Kernel;
 import net.jkernelmachines.kernel.extra.NystromKernel;
 import net.jkernelmachines.kernel.typed.DoubleGaussL2;
 import net.jkernelmachines.type.TrainingSample;
@@ -96,4 +101,103 @@ public class NystromKernelTest {
 		}
 	}
 
+	/**
+	 * Test method for {@link net.jkernelmachines.kernel.extra.NystromKernel#trainKMeans(java.util.List, int)}.
+	 */
+	@Test
+	public final void testTrainKMeans() {
+		double[][] matrix = dk.getKernelMatrix(list);
+		nk.trainKMeans(list, nb_samples / 5);
+		double[][] nk_matrix = nk.getKernelMatrix(list);
+		
+		for(int i = 0 ; i < matrix.length ; i++) {
+			for(int j = i ; j< matrix.length ; j++) {
+				assertEquals(matrix[i][j], nk_matrix[i][j], 5e-2);
+			}
+		}
+	}
+
+	/**
+	 * Test method for {@link net.jkernelmachines.kernel.extra.NystromKernel#trainKMeans(java.util.List, int)} with kernel k-means++ seeding.
+	 */
+	@Test
+	public final void testTrainKMeansSeeding() {
+		List<TrainingSample<Object>> l = new ArrayList<TrainingSample<Object>>();
+		for(TrainingSample<double[]> t : list) {
+			l.add(new TrainingSample<Object>(t.sample, t.label));
+		}
+		NystromKernel<Object> ok = new NystromKernel<Object>(new Kernel<Object>() {
+			private static final long serialVersionUID = 1L;
+
+			@Override
+			public double valueOf(Object t1, Object t2) {
+				return dk.valueOf((double[]) t1, (double[]) t2);
+			}
+
+			@Override
+			public double valueOf(Object t1) {
+				return dk.valueOf((double[]) t1);
+			}
+		});
+		ok.trainKMeans(l, nb_samples / 5);
+		double[][] matrix = dk.getKernelMatrix(list);
+		double[][] nk_matrix = ok.getKernelMatrix(l);
+		
+		for(int i = 0 ; i < matrix.length ; i++) {
+			for(int j = i ; j< matrix.length ; j++) {
+				assertEquals(matrix[i][j], nk_matrix[i][j], 5e-2);
+			}
+		}
+	}
+
+	/**
+	 * Test method for {@link net.jkernelmachines.kernel.extra.NystromKernel#trainLeverage(java.util.List, int, double)}.
+	 */
+	@Test
+	public final void testTrainLeverage() {
+		double[][] matrix = dk.getKernelMatrix(list);
+		nk.trainLeverage(list, nb_samples / 2, 1e-3);
+		double[][] nk_matrix = nk.getKernelMatrix(list);
+		
+		for(int i = 0 ; i < matrix.length ; i++) {
+			for(int j = i ; j< matrix.length ; j++) {
+				assertEquals(matrix[i][j], nk_matrix[i][j], 5e-2);
+			}
+		}
+	}
+
+	/**
+	 * Test method for {@link net.jkernelmachines.kernel.extra.NystromKernel#projectMatrix(java.util.List)}.
+	 */
+	@Test
+	public final void testProjectMatrix() {
+		nk.train(list.subList(0, nb_samples / 2));
+		double[][] m = nk.projectMatrix(list);
+		for(int i = 0 ; i < list.size() ; i++) {
+			assertArrayEquals(nk.projectSample(list.get(i).sample), m[i], 1e-10);
+		}
+	}
+
+	/**
+	 * Test method for {@link net.jkernelmachines.kernel.extra.NystromKernel#addLandmark(net.jkernelmachines.type.TrainingSample)}.
+	 */
+	@Test
+	public final void testAddLandmark() {
+		List<TrainingSample<double[]>> landmarks = list.subList(0, nb_samples / 5);
+		NystromKernel<double[]> ek = new NystromKernel<double[]>(dk);
+		ek.train(landmarks);
+		for(TrainingSample<double[]> t : landmarks) {
+			assertTrue(nk.addLandmark(t));
+		}
+		assertFalse(nk.addLandmark(landmarks.get(0)));
+		
+		double[][] matrix = ek.getKernelMatrix(list);
+		double[][] nk_matrix = nk.getKernelMatrix(list);
+		for(int i = 0 ; i < matrix.length ; i++) {
+			for(int j = i ; j< matrix.length ; j++) {
+				assertEquals(matrix[i][j], nk_matrix[i][j], 1e-8);
+			}
+		}
+	}
+
 }
@@ -0,0 +1,118 @@
+/*******************************************************************************
+ * Copyright (c) 2016, David Picard.
+ * All rights reserved.
+ *
+ * Redistribution and use in source and binary forms, with or without modification,
+ * are permitted provided that the following conditions are met:
+ *
+ * 1. Redistributions of source code must retain the above copyright notice, this
+ * list of conditions and the following disclaimer.
+ *
+ * 2. Redistributions in binary form must reproduce the above copyright notice,
+ * this list of conditions and the following disclaimer in the documentation and/or
+ * other materials provided with the distribution.
+ *
+ * 3. Neither the name of the copyright holder nor the names of its contributors
+ * may be used to endorse or promote products derived from this software without
+ * specific prior written permission.
+ *
+ * THIS SOFTWARE IS PROVIDED BY THE COPYRIGHT HOLDERS AND CONTRIBUTORS "AS IS" AND
+ * ANY EXPRESS OR IMPLIED WARRANTIES, INCLUDING, BUT NOT LIMITED TO, THE IMPLIED
+ * WARRANTIES OF MERCHANTABILITY AND FITNESS FOR A PARTICULAR PURPOSE ARE
+ * DISCLAIMED. IN NO EVENT SHALL THE COPYRIGHT HOLDER OR CONTRIBUTORS BE LIABLE FOR
+ * ANY DIRECT, INDIRECT, INCIDENTAL, SPECIAL, EXEMPLARY, OR CONSEQUENTIAL DAMAGES
+ * (INCLUDING, BUT NOT LIMITED TO, PROCUREMENT OF SUBSTITUTE GOODS OR SERVICES;
+ * LOSS OF USE, DATA, OR PROFITS; OR BUSINESS INTERRUPTION) HOWEVER CAUSED AND ON
+ * ANY THEORY OF LIABILITY, WHETHER IN CONTRACT, STRICT LIABILITY, OR TORT
+ * (INCLUDING NEGLIGENCE OR OTHERWISE) ARISING IN ANY WAY OUT OF THE USE OF THIS
+ * SOFTWARE, EVEN IF ADVISED OF THE POSSIBILITY OF SUCH DAMAGE.
+ *******************************************************************************/
+package net.jkernelmachines.test.kernel.extra;
+
+import static org.junit.Assert.assertArrayEquals;
+import static org.junit.Assert.assertEquals;
+
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Random;
+
+import net.jkernelmachines.kernel.extra.bag.HistogramIntersectionKernel;
+import net.jkernelmachines.kernel.extra.bag.HistogramLinearKernel;
+import net.jkernelmachines.kernel.extra.bag.MapIntersectionKernel;
+import net.jkernelmachines.kernel.extra.bag.MapLinearKernel;
+import net.jkernelmachines.kernel.extra.bag.SparseHistogram;
+import net.jkernelmachines.type.TrainingSample;
+
+import org.junit.Before;
+import org.junit.Test;
+
+/**
+ * Test case for the SparseHistogram class and associated kernels
+ * @author picard
+ *
+ */
+public class SparseHistogramTest {
+
+	List<TrainingSample<Map<String, Double>>> list;
+	Map<String, Integer> codebook;
+	List<TrainingSample<SparseHistogram>> hlist;
+
+	/**
+	 * @throws java.lang.Exception
+	 */
+	@Before
+	public void setUp() throws Exception {
+		Random rand = new Random(0);
+		list = new ArrayList<TrainingSample<Map<String, Double>>>();
+		for(int i = 0 ; i < 20 ; i++) {
+			Map<String, Double> m = new HashMap<String, Double>();
+			int size = rand.nextInt(15);
+			for(int j = 0 ; j < size ; j++) {
+				m.put("w" + rand.nextInt(30), rand.nextDouble());
+			}
+			list.add(new TrainingSample<Map<String, Double>>(m, 2 * (i % 2) - 1));
+		}
+		codebook = new HashMap<String, Integer>();
+		hlist = SparseHistogram.fromMaps(list, codebook);
+	}
+
+	/**
+	 * Test method for {@link net.jkernelmachines.kernel.extra.bag.SparseHistogram#SparseHistogram(int[], double[])}.
+	 */
+	@Test
+	public final void testSparseHistogram() {
+		SparseHistogram h = new SparseHistogram(new int[] { 5, -1, 3, 5 }, new double[] { 1, 2, 3, 4 });
+		assertArrayEquals(new int[] { -1, 3, 5 }, h.getKeys());
+		assertArrayEquals(new double[] { 2, 3, 5 }, h.getValues(), 1e-15);
+		assertEquals(10, h.sum(), 1e-15);
+		assertEquals(4 + 9 + 25, h.dot(h), 1e-15);
+	}
+
+	/**
+	 * Test method for {@link net.jkernelmachines.kernel.extra.bag.HistogramIntersectionKernel#valueOf(net.jkernelmachines.kernel.extra.bag.SparseHistogram, net.jkernelmachines.kernel.extra.bag.SparseHistogram)}.
+	 */
+	@Test
+	public final void testKernels() {
+		assertEquals(list.size(), hlist.size());
+		MapIntersectionKernel<String> mik = new MapIntersectionKernel<String>();
+		MapLinearKernel<String> mlk = new MapLinearKernel<String>();
+		HistogramIntersectionKernel hik = new HistogramIntersectionKernel();
+		HistogramLinearKernel hlk = new HistogramLinearKernel();
+		
+		double[][] mi = hik.getKernelMatrix(hlist);
+		double[][] ml = hlk.getKernelMatrix(hlist);
+		for(int i = 0 ; i < list.size() ; i++) {
+			Map<String, Double> m1 = list.get(i).sample;
+			assertEquals(mik.valueOf(m1), hik.valueOf(hlist.get(i).sample), 1e-12);
+			assertEquals(mlk.valueOf(m1), hlk.valueOf(hlist.get(i).sample), 1e-12);
+			for(int j = 0 ; j < list.size() ; j++) {
+				Map<String, Double> m2 = list.get(j).sample;
+				assertEquals(mik.valueOf(m1, m2), mi[i][j], 1e-12);
+				assertEquals(mlk.valueOf(m1, m2), ml[i][j], 1e-12);
+			}
+		}
+	}
+
+}
@@ -0,0 +1,107 @@
+/*******************************************************************************
+ * Copyright (c) 2016, David Picard.
+ * All rights reserved.
+ *
+ * Redistribution and use in source and binary forms, with or without modification,
+ * are permitted provided that the following conditions are met:
+ *
+ * 1. Redistributions of source code must retain the above copyright notice, this
+ * list of conditions and the following disclaimer.
+ *
+ * 2. Redistributions in binary form must reproduce the above copyright notice,
+ * this list of conditions and the following disclaimer in the documentation and/or
+ * other materials provided with the distribution.
+ *
+ * 3. Neither the name of the copyright holder nor the names of its contributors
+ * may be used to endorse or promote products derived from this software without
+ * specific prior written permission.
+ *
+ * THIS SOFTWARE IS PROVIDED BY THE COPYRIGHT HOLDERS AND CONTRIBUTORS "AS IS" AND
+ * ANY EXPRESS OR IMPLIED WARRANTIES, INCLUDING, BUT NOT LIMITED TO, THE IMPLIED
+ * WARRANTIES OF MERCHANTABILITY AND FITNESS FOR A PARTICULAR PURPOSE ARE
+ * DISCLAIMED. IN NO EVENT SHALL THE COPYRIGHT HOLDER OR CONTRIBUTORS BE LIABLE FOR
+ * ANY DIRECT, INDIRECT, INCIDENTAL, SPECIAL, EXEMPLARY, OR CONSEQUENTIAL DAMAGES
+ * (INCLUDING, BUT NOT LIMITED TO, PROCUREMENT OF SUBSTITUTE GOODS OR SERVICES;
+ * LOSS OF USE, DATA, OR PROFITS; OR BUSINESS INTERRUPTION) HOWEVER CAUSED AND ON
+ * ANY THEORY OF LIABILITY, WHETHER IN CONTRACT, STRICT LIABILITY, OR TORT
+ * (INCLUDING NEGLIGENCE OR OTHERWISE) ARISING IN ANY WAY OUT OF THE USE OF THIS
+ * SOFTWARE, EVEN IF ADVISED OF THE POSSIBILITY OF SUCH DAMAGE.
+ *******************************************************************************/
+package net.jkernelmachines.test.kernel.typed;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+
+import java.util.List;
+
+import net.jkernelmachines.kernel.typed.DoubleDistanceTensor;
+import net.jkernelmachines.kernel.typed.GeneralizedDoubleGaussL2;
+import net.jkernelmachines.type.TrainingSample;
+import net.jkernelmachines.util.generators.GaussianGenerator;
+
+import org.junit.Before;
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
+
+/**
+ * @author picard
+ *
+ */
+public class DoubleDistanceTensorTest {
+
+	@Rule
+	public TemporaryFolder folder = new TemporaryFolder();
+
+	List<TrainingSample<double[]>> l;
+	double[] gammas;
+
+	/**
+	 * @throws java.lang.Exception
+	 */
+	@Before
+	public void setUp() throws Exception {
+		GaussianGenerator g = new GaussianGenerator(7, 1.0f, 1.0);
+		l = g.generateList(150);
+		gammas = new double[7];
+		for(int d = 0 ; d < gammas.length ; d++) {
+			gammas[d] = (d == 2) ? 0 : Math.random() / 7;
+		}
+	}
+
+	/**
+	 * Test method for {@link net.jkernelmachines.kernel.typed.DoubleDistanceTensor#gradient(double[][])}.
+	 */
+	@Test
+	public final void testGradient() throws Exception {
+		GeneralizedDoubleGaussL2 k = new GeneralizedDoubleGaussL2(gammas);
+		int n = l.size();
+		double[][] w = new double[n][];
+		for(int i = 0 ; i < n ; i++) {
+			if(i % 3 != 0) {
+				w[i] = new double[n];
+				for(int j = 0 ; j < n ; j++) {
+					w[i][j] = Math.random() - 0.5;
+				}
+			}
+		}
+		double[] heap = new DoubleDistanceTensor(l).gradient(w);
+		double[] disk = new DoubleDistanceTensor(l, folder.getRoot()).gradient(w);
+		// the file is deleted once mapped
+		assertTrue(folder.getRoot().list().length == 0);
+		for(int d = 0 ; d < gammas.length ; d++) {
+			double[][] m = k.distanceMatrixUnthreaded(l, d);
+			double sum = 0;
+			for(int i = 0 ; i < n ; i++) {
+				if(w[i] != null) {
+					for(int j = 0 ; j < n ; j++) {
+						sum += w[i][j] * m[i][j];
+					}
+				}
+			}
+			assertEquals(sum, heap[d], 1e-5 * (1 + Math.abs(sum)));
+			assertEquals(heap[d], disk[d], 1e-10 * (1 + Math.abs(sum)));
+		}
+	}
+
+}
@@ -35,7 +35,7 @@ import org.junit.runners.Suite.SuiteClasses;
 
 @RunWith(Suite.class)
 @SuiteClasses({ DoubleGaussChi1Test.class, DoubleGaussChi2Test.class, DoubleGaussL2Test.class,
-		DoubleLinearTest.class, DoubleTriangleL2Test.class})
+		DoubleLinearTest.class, DoubleTriangleL2Test.class, DoubleDistanceTensorTest.class})
 public class DoubleKernelTests {
 
 }
@@ -30,7 +30,19 @@
 package net.jkernelmachines.test.kernel.typed;
 
 import static org.junit.Assert.*;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Map;
+import java.util.Random;
+
+import net.jkernelmachines.classifier.SMOSVM;
+import net.jkernelmachines.kernel.typed.NGramProfile;
+import net.jkernelmachines.kernel.typed.NGramProfileKernel;
+import net.jkernelmachines.kernel.typed.NormalizedStringNGram;
 import net.jkernelmachines.kernel.typed.StringNGram;
+import net.jkernelmachines.projection.StringNGramProjection;
+import net.jkernelmachines.type.TrainingSample;
 
 import org.junit.Test;
 
@@ -70,4 +82,110 @@ public class StringNGramTest {
 		
 	}
 
+	/**
+	 * reference value computed on substrings
+	 */
+	private double reference(String s1, String s2, int n) {
+		Map<String, Double> m1 = StringNGramProjection.computeNGram(s1, n);
+		Map<String, Double> m2 = StringNGramProjection.computeNGram(s2, n);
+		double r = 0;
+		for(String s : m1.keySet()) {
+			if(m2.containsKey(s)) {
+				r += m1.get(s) * m2.get(s);
+			}
+		}
+		return r;
+	}
+
+	/**
+	 * Test method for {@link net.jkernelmachines.kernel.typed.StringNGram#getKernelMatrix(java.util.List)}.
+	 */
+	@Test
+	public final void testGetKernelMatrix() {
+		Random rand = new Random(0);
+		List<TrainingSample<String>> l = new ArrayList<TrainingSample<String>>();
+		for(int i = 0 ; i < 20 ; i++) {
+			StringBuilder b = new StringBuilder();
+			int size = rand.nextInt(40);
+			for(int j = 0 ; j < size ; j++) {
+				b.append((char)('a' + rand.nextInt(3)));
+			}
+			l.add(new TrainingSample<String>(b.toString(), 1));
+		}
+		
+		for(int n : new int[] { 1, 3, 4, 6 }) {
+			StringNGram k = new StringNGram(n);
+			NormalizedStringNGram nk = new NormalizedStringNGram(n);
+			double[][] m = k.getKernelMatrix(l);
+			double[][] nm = nk.getKernelMatrix(l);
+			for(int i = 0 ; i < l.size() ; i++) {
+				String s1 = l.get(i).sample;
+				assertEquals(reference(s1, s1, n), k.valueOf(s1), 1e-15);
+				for(int j = 0 ; j < l.size() ; j++) {
+					String s2 = l.get(j).sample;
+					double r = reference(s1, s2, n);
+					assertEquals(r, k.valueOf(s1, s2), 1e-15);
+					assertEquals(r, m[i][j], 1e-15);
+					double r12 = reference(s1, s1, n) * reference(s2, s2, n);
+					double v = (r12 == 0) ? 0 : r / Math.sqrt(r12);
+					assertEquals(v, nm[i][j], 1e-12);
+				}
+			}
+		}
+	}
+
+	/**
+	 * Test of training on the projected profiles, with the same model as on the strings.
+	 */
+	@Test
+	public final void testTrainProjectList() {
+		Random rand = new Random(0);
+		List<TrainingSample<String>> l = new ArrayList<TrainingSample<String>>();
+		for(int i = 0 ; i < 40 ; i++) {
+			int y = (i % 2 == 0) ? 1 : -1;
+			// positive strings favour 'a', negative strings favour 'c'
+			String alphabet = (y > 0) ? "aab" : "bcc";
+			StringBuilder b = new StringBuilder();
+			for(int j = 0 ; j < 30 ; j++) {
+				b.append(alphabet.charAt(rand.nextInt(alphabet.length())));
+			}
+			l.add(new TrainingSample<String>(b.toString(), y));
+		}
+		
+		List<TrainingSample<NGramProfile>> p = StringNGramProjection.projectList(l, 3, 0);
+		assertEquals(l.size(), p.size());
+		SMOSVM<NGramProfile> psvm = new SMOSVM<NGramProfile>(new NGramProfileKernel(true));
+		psvm.train(p);
+		SMOSVM<String> ssvm = new SMOSVM<String>(new NormalizedStringNGram(3));
+		ssvm.train(l);
+		
+		assertArrayEquals(ssvm.getAlphas(), psvm.getAlphas(), 1e-10);
+		for(int i = 0 ; i < l.size() ; i++) {
+			assertEquals(l.get(i).label, p.get(i).label);
+			double v = psvm.valueOf(p.get(i).sample);
+			assertEquals(ssvm.valueOf(l.get(i).sample), v, 1e-10);
+			assertTrue(l.get(i).label * v > 0);
+		}
+	}
+
+	/**
+	 * Test method for {@link net.jkernelmachines.kernel.typed.StringNGram#setHashBits(int)}.
+	 */
+	@Test
+	public final void testHashBits() {
+		StringNGram k = new StringNGram(2);
+		String s1 = "ababab";
+		String s2 = "abab";
+		
+		// collisions can only add counts
+		k.setHashBits(1);
+		assertTrue(k.valueOf(s1, s2) >= 8);
+		k.setHashBits(20);
+		assertEquals(8, k.valueOf(s1, s2), 1e-15);
+		
+		NGramProfile p = StringNGramProjection.computeNGramProfile(s1, 2, 1);
+		assertTrue(p.getKeys().length <= 2);
+		assertEquals(5, p.getCounts()[0] + (p.getCounts().length > 1 ? p.getCounts()[1] : 0), 1e-15);
+	}
+
 }
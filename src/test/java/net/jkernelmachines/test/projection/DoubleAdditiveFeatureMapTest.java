@@ -0,0 +1,151 @@
+/*******************************************************************************
+ * Copyright (c) 2016, David Picard.
+ * All rights reserved.
+ *
+ * Redistribution and use in source and binary forms, with or without modification,
+ * are permitted provided that the following conditions are met:
+ *
+ * 1. Redistributions of source code must retain the above copyright notice, this
+ * list of conditions and the following disclaimer.
+ *
+ * 2. Redistributions in binary form must reproduce the above copyright notice,
+ * this list of conditions and the following disclaimer in the documentation and/or
+ * other materials provided with the distribution.
+ *
+ * 3. Neither the name of the copyright holder nor the names of its contributors
+ * may be used to endorse or promote products derived from this software without
+ * specific prior written permission.
+ *
+ * THIS SOFTWARE IS PROVIDED BY THE COPYRIGHT HOLDERS AND CONTRIBUTORS "AS IS" AND
+ * ANY EXPRESS OR IMPLIED WARRANTIES, INCLUDING, BUT NOT LIMITED TO, THE IMPLIED
+ * WARRANTIES OF MERCHANTABILITY AND FITNESS FOR A PARTICULAR PURPOSE ARE
+ * DISCLAIMED. IN NO EVENT SHALL THE COPYRIGHT HOLDER OR CONTRIBUTORS BE LIABLE FOR
+ * ANY DIRECT, INDIRECT, INCIDENTAL, SPECIAL, EXEMPLARY, OR CONSEQUENTIAL DAMAGES
+ * (INCLUDING, BUT NOT LIMITED TO, PROCUREMENT OF SUBSTITUTE GOODS OR SERVICES;
+ * LOSS OF USE, DATA, OR PROFITS; OR BUSINESS INTERRUPTION) HOWEVER CAUSED AND ON
+ * ANY THEORY OF LIABILITY, WHETHER IN CONTRACT, STRICT LIABILITY, OR TORT
+ * (INCLUDING NEGLIGENCE OR OTHERWISE) ARISING IN ANY WAY OUT OF THE USE OF THIS
+ * SOFTWARE, EVEN IF ADVISED OF THE POSSIBILITY OF SUCH DAMAGE.
+ *******************************************************************************/
+package net.jkernelmachines.test.projection;
+
+import static org.junit.Assert.assertArrayEquals;
+import static org.junit.Assert.assertEquals;
+
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Random;
+
+import net.jkernelmachines.kernel.extra.bag.MapIntersectionKernel;
+import net.jkernelmachines.kernel.typed.DoubleGaussChi2;
+import net.jkernelmachines.kernel.typed.DoubleLinear;
+import net.jkernelmachines.projection.DoubleAdditiveFeatureMap;
+import net.jkernelmachines.type.TrainingSample;
+
+import org.junit.Before;
+import org.junit.Test;
+
+/**
+ * Test methods for additive homogeneous feature maps
+ * 
+ * @author picard
+ *
+ */
+public class DoubleAdditiveFeatureMapTest {
+	
+	private List<TrainingSample<double[]>> list;
+	
+	private int nbSamples = 20;
+	private int dim = 16;
+	
+	DoubleLinear linear = new DoubleLinear();
+
+	/**
+	 * @throws java.lang.Exception
+	 */
+	@Before
+	public void setUp() throws Exception {
+		// random histograms summing to 1
+		Random ran = new Random(0);
+		list = new ArrayList<TrainingSample<double[]>>();
+		for(int i = 0 ; i < nbSamples ; i++) {
+			double[] h = new double[dim];
+			double sum = 0;
+			for(int d = 0 ; d < dim ; d++) {
+				if(ran.nextDouble() < 0.8) {
+					h[d] = ran.nextDouble();
+					sum += h[d];
+				}
+			}
+			for(int d = 0 ; d < dim ; d++) {
+				h[d] /= sum;
+			}
+			list.add(new TrainingSample<double[]>(h, 2*(i%2)-1));
+		}
+	}
+
+	@Test
+	public final void testChi2() {
+		DoubleAdditiveFeatureMap map = new DoubleAdditiveFeatureMap(DoubleAdditiveFeatureMap.CHI2, 3);
+		map.train(list);
+		List<TrainingSample<double[]>> proj = map.projectList(list);
+		for(int i = 0 ; i < nbSamples ; i++) {
+			double[] x = list.get(i).sample;
+			assertEquals((2*3+1)*dim, proj.get(i).sample.length);
+			for(int j = 0 ; j < nbSamples ; j++) {
+				double[] y = list.get(j).sample;
+				double k = 0;
+				for(int d = 0 ; d < dim ; d++) {
+					if(x[d] + y[d] > 0) {
+						k += 2 * x[d] * y[d] / (x[d] + y[d]);
+					}
+				}
+				assertEquals(k, linear.valueOf(proj.get(i).sample, proj.get(j).sample), 1e-2);
+			}
+		}
+	}
+
+	@Test
+	public final void testIntersection() {
+		// the spectrum of the intersection kernel decays slowly, hence a coarser approximation
+		DoubleAdditiveFeatureMap map = new DoubleAdditiveFeatureMap(DoubleAdditiveFeatureMap.INTERSECTION, 5);
+		MapIntersectionKernel<Integer> k = new MapIntersectionKernel<Integer>();
+		for(TrainingSample<double[]> t1 : list) {
+			Map<Integer, Double> m1 = toMap(t1.sample);
+			for(TrainingSample<double[]> t2 : list) {
+				Map<Integer, Double> m2 = toMap(t2.sample);
+				assertEquals(k.valueOf(m1, m2), linear.valueOf(map.project(m1, dim), map.project(m2, dim)), 0.1);
+			}
+			assertArrayEquals(map.project(t1.sample), map.project(m1, dim), 1e-15);
+		}
+	}
+
+	@Test
+	public final void testGaussChi2() {
+		DoubleGaussChi2 k = new DoubleGaussChi2();
+		k.setGamma(1.0);
+		DoubleAdditiveFeatureMap map = new DoubleAdditiveFeatureMap(DoubleAdditiveFeatureMap.CHI2, 3);
+		map.setGaussian(k.getGamma(), 8000, 0);
+		map.train(list);
+		assertEquals(8000, map.getDimension(dim));
+		List<TrainingSample<double[]>> proj = map.projectList(list);
+		for(int i = 0 ; i < nbSamples ; i++) {
+			for(int j = 0 ; j < nbSamples ; j++) {
+				double v = k.valueOf(list.get(i).sample, list.get(j).sample);
+				assertEquals(v, linear.valueOf(proj.get(i).sample, proj.get(j).sample), 0.1);
+			}
+		}
+	}
+	
+	private Map<Integer, Double> toMap(double[] x) {
+		Map<Integer, Double> m = new HashMap<Integer, Double>();
+		for(int d = 0 ; d < x.length ; d++) {
+			if(x[d] != 0) {
+				m.put(d, x[d]);
+			}
+		}
+		return m;
+	}
+}
@@ -0,0 +1,129 @@
+/*******************************************************************************
+ * Copyright (c) 2016, David Picard.
+ * All rights reserved.
+ *
+ * Redistribution and use in source and binary forms, with or without modification,
+ * are permitted provided that the following conditions are met:
+ *
+ * 1. Redistributions of source code must retain the above copyright notice, this
+ * list of conditions and the following disclaimer.
+ *
+ * 2. Redistributions in binary form must reproduce the above copyright notice,
+ * this list of conditions and the following disclaimer in the documentation and/or
+ * other materials provided with the distribution.
+ *
+ * 3. Neither the name of the copyright holder nor the names of its contributors
+ * may be used to endorse or promote products derived from this software without
+ * specific prior written permission.
+ *
+ * THIS SOFTWARE IS PROVIDED BY THE COPYRIGHT HOLDERS AND CONTRIBUTORS "AS IS" AND
+ * ANY EXPRESS OR IMPLIED WARRANTIES, INCLUDING, BUT NOT LIMITED TO, THE IMPLIED
+ * WARRANTIES OF MERCHANTABILITY AND FITNESS FOR A PARTICULAR PURPOSE ARE
+ * DISCLAIMED. IN NO EVENT SHALL THE COPYRIGHT HOLDER OR CONTRIBUTORS BE LIABLE FOR
+ * ANY DIRECT, INDIRECT, INCIDENTAL, SPECIAL, EXEMPLARY, OR CONSEQUENTIAL DAMAGES
+ * (INCLUDING, BUT NOT LIMITED TO, PROCUREMENT OF SUBSTITUTE GOODS OR SERVICES;
+ * LOSS OF USE, DATA, OR PROFITS; OR BUSINESS INTERRUPTION) HOWEVER CAUSED AND ON
+ * ANY THEORY OF LIABILITY, WHETHER IN CONTRACT, STRICT LIABILITY, OR TORT
+ * (INCLUDING NEGLIGENCE OR OTHERWISE) ARISING IN ANY WAY OUT OF THE USE OF THIS
+ * SOFTWARE, EVEN IF ADVISED OF THE POSSIBILITY OF SUCH DAMAGE.
+ *******************************************************************************/
+package net.jkernelmachines.test.projection;
+
+import static org.junit.Assert.assertArrayEquals;
+import static org.junit.Assert.assertEquals;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Random;
+
+import net.jkernelmachines.kernel.Kernel;
+import net.jkernelmachines.kernel.extra.NystromKernel;
+import net.jkernelmachines.kernel.extra.bag.ListKernel;
+import net.jkernelmachines.kernel.extra.bag.UnormalizedListKernel;
+import net.jkernelmachines.kernel.typed.DoubleGaussL2;
+import net.jkernelmachines.kernel.typed.DoubleLinear;
+import net.jkernelmachines.projection.DoubleBagMeanEmbedding;
+import net.jkernelmachines.projection.DoubleRandomFourierProjection;
+import net.jkernelmachines.type.TrainingSample;
+
+import org.junit.Before;
+import org.junit.Test;
+
+/**
+ * Test methods for mean embeddings of bags
+ * 
+ * @author picard
+ *
+ */
+public class DoubleBagMeanEmbeddingTest {
+
+	private List<TrainingSample<List<double[]>>> list;
+	private List<TrainingSample<double[]>> elements;
+	private DoubleGaussL2 k;
+
+	/**
+	 * @throws java.lang.Exception
+	 */
+	@Before
+	public void setUp() throws Exception {
+		Random rand = new Random(0);
+		list = new ArrayList<TrainingSample<List<double[]>>>();
+		elements = new ArrayList<TrainingSample<double[]>>();
+		for(int i = 0 ; i < 20 ; i++) {
+			List<double[]> bag = new ArrayList<double[]>();
+			int size = 1 + rand.nextInt(5);
+			for(int j = 0 ; j < size ; j++) {
+				double[] x = new double[3];
+				for(int d = 0 ; d < x.length ; d++) {
+					x[d] = 0.5 * rand.nextGaussian();
+				}
+				bag.add(x);
+				elements.add(new TrainingSample<double[]>(x, 0));
+			}
+			list.add(new TrainingSample<List<double[]>>(bag, 2 * (i % 2) - 1));
+		}
+		k = new DoubleGaussL2(0.5);
+	}
+
+	/**
+	 * Test method for {@link net.jkernelmachines.projection.DoubleBagMeanEmbedding#projectList(java.util.List)}.
+	 */
+	@Test
+	public final void testRandomFourier() {
+		DoubleRandomFourierProjection rff = new DoubleRandomFourierProjection(k, 8000);
+		rff.setSeed(0);
+		rff.train(3);
+		DoubleBagMeanEmbedding emb = new DoubleBagMeanEmbedding(rff);
+		checkApproximation(emb, new ListKernel<double[], List<double[]>>(k), 0.05);
+		
+		emb.setNormalized(false);
+		checkApproximation(emb, new UnormalizedListKernel<double[], List<double[]>>(k), 0.05);
+	}
+
+	/**
+	 * Test method for {@link net.jkernelmachines.projection.DoubleBagMeanEmbedding#projectList(java.util.List)}.
+	 */
+	@Test
+	public final void testNystrom() {
+		NystromKernel<double[]> nk = new NystromKernel<double[]>(k);
+		nk.train(elements);
+		DoubleBagMeanEmbedding emb = new DoubleBagMeanEmbedding(nk);
+		// ListKernel drops values lower than 1e-5
+		checkApproximation(emb, new ListKernel<double[], List<double[]>>(k), 1e-4);
+	}
+
+	private void checkApproximation(DoubleBagMeanEmbedding emb, 
+			Kernel<List<double[]>> bk, double eps) {
+		List<TrainingSample<double[]>> proj = emb.projectList(list);
+		DoubleLinear linear = new DoubleLinear();
+		for(int i = 0 ; i < list.size() ; i++) {
+			assertEquals(emb.getDimension(), proj.get(i).sample.length);
+			assertArrayEquals(emb.project(list.get(i).sample), proj.get(i).sample, 1e-12);
+			for(int j = i ; j < list.size() ; j++) {
+				double v = bk.valueOf(list.get(i).sample, list.get(j).sample);
+				assertEquals(v, linear.valueOf(proj.get(i).sample, proj.get(j).sample), eps * Math.max(1, v));
+			}
+		}
+	}
+
+}
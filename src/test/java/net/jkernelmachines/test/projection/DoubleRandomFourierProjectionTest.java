@@ -0,0 +1,147 @@
+/*******************************************************************************
+ * Copyright (c) 2016, David Picard.
+ * All rights reserved.
+ *
+ * Redistribution and use in source and binary forms, with or without modification,
+ * are permitted provided that the following conditions are met:
+ *
+ * 1. Redistributions of source code must retain the above copyright notice, this
+ * list of conditions and the following disclaimer.
+ *
+ * 2. Redistributions in binary form must reproduce the above copyright notice,
+ * this list of conditions and the following disclaimer in the documentation and/or
+ * other materials provided with the distribution.
+ *
+ * 3. Neither the name of the copyright holder nor the names of its contributors
+ * may be used to endorse or promote products derived from this software without
+ * specific prior written permission.
+ *
+ * THIS SOFTWARE IS PROVIDED BY THE COPYRIGHT HOLDERS AND CONTRIBUTORS "AS IS" AND
+ * ANY EXPRESS OR IMPLIED WARRANTIES, INCLUDING, BUT NOT LIMITED TO, THE IMPLIED
+ * WARRANTIES OF MERCHANTABILITY AND FITNESS FOR A PARTICULAR PURPOSE ARE
+ * DISCLAIMED. IN NO EVENT SHALL THE COPYRIGHT HOLDER OR CONTRIBUTORS BE LIABLE FOR
+ * ANY DIRECT, INDIRECT, INCIDENTAL, SPECIAL, EXEMPLARY, OR CONSEQUENTIAL DAMAGES
+ * (INCLUDING, BUT NOT LIMITED TO, PROCUREMENT OF SUBSTITUTE GOODS OR SERVICES;
+ * LOSS OF USE, DATA, OR PROFITS; OR BUSINESS INTERRUPTION) HOWEVER CAUSED AND ON
+ * ANY THEORY OF LIABILITY, WHETHER IN CONTRACT, STRICT LIABILITY, OR TORT
+ * (INCLUDING NEGLIGENCE OR OTHERWISE) ARISING IN ANY WAY OUT OF THE USE OF THIS
+ * SOFTWARE, EVEN IF ADVISED OF THE POSSIBILITY OF SUCH DAMAGE.
+ *******************************************************************************/
+package net.jkernelmachines.test.projection;
+
+import static org.junit.Assert.assertArrayEquals;
+import static org.junit.Assert.assertEquals;
+
+import java.util.List;
+
+import net.jkernelmachines.kernel.Kernel;
+import net.jkernelmachines.kernel.typed.DoubleGaussL2;
+import net.jkernelmachines.kernel.typed.DoubleLinear;
+import net.jkernelmachines.kernel.typed.GeneralizedDoubleGaussL2;
+import net.jkernelmachines.kernel.typed.index.IndexDoubleGaussL2;
+import net.jkernelmachines.projection.DoubleRandomFourierProjection;
+import net.jkernelmachines.type.TrainingSample;
+import net.jkernelmachines.util.generators.GaussianGenerator;
+
+import org.junit.Before;
+import org.junit.Test;
+
+/**
+ * Test methods for random Fourier features
+ * 
+ * @author picard
+ *
+ */
+public class DoubleRandomFourierProjectionTest {
+	
+	private List<TrainingSample<double[]>> list;
+	
+	private int nbSamples = 20;
+	private int dim = 8;
+	private int D = 8000;
+
+	/**
+	 * @throws java.lang.Exception
+	 */
+	@Before
+	public void setUp() throws Exception {
+		GaussianGenerator gen = new GaussianGenerator(dim, 0.5f, 0.5);
+		list = gen.generateList(nbSamples);
+	}
+	
+	private void checkApproximation(Kernel<double[]> k, DoubleRandomFourierProjection rff) {
+		rff.setSeed(0);
+		rff.train(list);
+		List<TrainingSample<double[]>> proj = rff.projectList(list);
+		assertEquals(list.size(), proj.size());
+		
+		DoubleLinear linear = new DoubleLinear();
+		for(int i = 0 ; i < list.size() ; i++) {
+			assertEquals(D, proj.get(i).sample.length);
+			assertEquals(list.get(i).label, proj.get(i).label);
+			for(int j = 0 ; j < list.size() ; j++) {
+				double v = k.valueOf(list.get(i).sample, list.get(j).sample);
+				assertEquals(v, linear.valueOf(proj.get(i).sample, proj.get(j).sample), 0.1);
+			}
+		}
+	}
+
+	/**
+	 * Test method for {@link net.jkernelmachines.projection.DoubleRandomFourierProjection#projectList(java.util.List)}.
+	 */
+	@Test
+	public final void testProjectList() {
+		DoubleGaussL2 k = new DoubleGaussL2(0.1);
+		checkApproximation(k, new DoubleRandomFourierProjection(k, D));
+	}
+
+	/**
+	 * Test method for {@link net.jkernelmachines.projection.DoubleRandomFourierProjection#setOrthogonal(boolean)}.
+	 */
+	@Test
+	public final void testOrthogonal() {
+		DoubleGaussL2 k = new DoubleGaussL2(0.1);
+		DoubleRandomFourierProjection rff = new DoubleRandomFourierProjection(k, D);
+		rff.setOrthogonal(true);
+		checkApproximation(k, rff);
+	}
+
+	@Test
+	public final void testGeneralizedGaussL2() {
+		double[] gammas = new double[dim];
+		for(int d = 0 ; d < dim ; d++) {
+			gammas[d] = 0.05 * d;
+		}
+		GeneralizedDoubleGaussL2 k = new GeneralizedDoubleGaussL2(gammas);
+		checkApproximation(k, new DoubleRandomFourierProjection(k, D));
+	}
+
+	@Test
+	public final void testIndexGaussL2() {
+		IndexDoubleGaussL2 k = new IndexDoubleGaussL2(3);
+		k.setGamma(0.5);
+		DoubleRandomFourierProjection rff = new DoubleRandomFourierProjection(k, D);
+		rff.setSeed(0);
+		rff.train(list);
+		DoubleLinear linear = new DoubleLinear();
+		for(TrainingSample<double[]> t1 : list) {
+			for(TrainingSample<double[]> t2 : list) {
+				double v = Math.exp(-k.getGamma() * k.distanceValueOf(t1.sample, t2.sample));
+				assertEquals(v, linear.valueOf(rff.project(t1.sample), rff.project(t2.sample)), 0.1);
+			}
+		}
+	}
+
+	/**
+	 * Test method for {@link net.jkernelmachines.projection.DoubleRandomFourierProjection#project(double[])}.
+	 */
+	@Test
+	public final void testProject() {
+		DoubleRandomFourierProjection rff = new DoubleRandomFourierProjection(0.1, 100);
+		rff.train(list);
+		List<TrainingSample<double[]>> proj = rff.projectList(list);
+		for(int i = 0 ; i < list.size() ; i++) {
+			assertArrayEquals(proj.get(i).sample, rff.project(list.get(i).sample), 1e-12);
+		}
+	}
+}
@@ -33,6 +33,7 @@ import static org.junit.Assert.assertEquals;
 
 import java.util.List;
 
+import net.jkernelmachines.kernel.extra.IncompleteCholeskyKernel;
 import net.jkernelmachines.kernel.typed.DoubleGaussL2;
 import net.jkernelmachines.kernel.typed.DoubleLinear;
 import net.jkernelmachines.projection.KernelPCA;
@@ -91,4 +92,49 @@ public class KernelPCATest {
 
 	}
 
+	/**
+	 * Test method for {@link net.jkernelmachines.projection.KernelPCA#train(java.util.List, net.jkernelmachines.kernel.extra.IncompleteCholeskyKernel)}.
+	 */
+	@Test
+	public final void testTrainIncompleteCholesky() {
+		IncompleteCholeskyKernel<double[]> ick = new IncompleteCholeskyKernel<double[]>(k);
+		ick.setTolerance(1e-12);
+		pca.train(list, ick);
+		
+		// centered kernel matrix
+		double[][] m1 = k.getKernelMatrix(list);
+		int n = m1.length;
+		double[] rows = new double[n];
+		double all = 0;
+		for(int i = 0 ; i < n ; i++) {
+			for(int j = 0 ; j < n ; j++) {
+				rows[i] += m1[i][j] / n;
+			}
+			all += rows[i] / n;
+		}
+		
+		List<TrainingSample<double[]>> plist = pca.projectList(list);
+		DoubleLinear lin = new DoubleLinear();
+		double[][] m2 = lin.getKernelMatrix(plist);
+		
+		for(int i = 0 ; i < n ; i++) {
+			for(int j = i ; j < n ; j++) {
+				assertEquals(m1[i][j] - rows[i] - rows[j] + all, m2[i][j], 1e-6);
+			}
+		}
+		
+		// low rank
+		ick.setMaxRank(4);
+		pca.train(list, ick);
+		plist = pca.projectList(list, true);
+		assertEquals(4, plist.get(0).sample.length);
+		for(int d = 0 ; d < 4 ; d++) {
+			double var = 0;
+			for(TrainingSample<double[]> t : plist) {
+				var += t.sample[d] * t.sample[d];
+			}
+			assertEquals(1.0, var, 1e-6);
+		}
+	}
+
 }
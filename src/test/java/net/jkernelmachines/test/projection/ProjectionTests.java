@@ -39,7 +39,9 @@ import org.junit.runners.Suite.SuiteClasses;
  *
  */
 @RunWith(Suite.class)
-@SuiteClasses({ DoublePCATest.class, KernelPCATest.class })
+@SuiteClasses({ DoublePCATest.class, KernelPCATest.class,
+		DoubleRandomFourierProjectionTest.class,
+		DoubleAdditiveFeatureMapTest.class, DoubleBagMeanEmbeddingTest.class })
 public class ProjectionTests {
 
 }
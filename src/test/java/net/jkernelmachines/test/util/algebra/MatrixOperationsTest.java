@@ -421,6 +421,46 @@ public class MatrixOperationsTest {
 		}
 	}
 
+	/**
+	 * Test method for
+	 * {@link net.jkernelmachines.util.algebra.MatrixOperations#cholesky(double[][])}
+	 * .
+	 */
+	@Test
+	public final void testCholesky() {
+		int n = 64;
+		double[][] X = new double[n][n];
+		for (int i = 0; i < n; i++)
+			for (int j = 0; j < n; j++)
+				X[i][j] = Math.random() * 2 - 1.0;
+
+		double[][] G = MatrixOperations.transMul(X, X);
+		for (int i = 0; i < n; i++) {
+			G[i][i] += 1.0;
+		}
+		double[][] L = MatrixOperations.cholesky(G);
+		double[][] rec = MatrixOperations.mul(L, MatrixOperations.trans(L));
+		for (int i = 0; i < n; i++) {
+			for (int j = 0; j < n; j++) {
+				if (j > i) {
+					assertEquals(0.0, L[i][j], 0);
+				}
+				assertEquals(G[i][j], rec[i][j], 1e-10);
+			}
+		}
+	}
+
+	/**
+	 * Test method for
+	 * {@link net.jkernelmachines.util.algebra.MatrixOperations#cholesky(double[][])}
+	 * .
+	 */
+	@Test(expected = ArithmeticException.class)
+	public final void testCholeskyNotPositive() {
+		double[][] A = { { 1, 2 }, { 2, 1 } };
+		MatrixOperations.cholesky(A);
+	}
+
 	/**
 	 * Test method for
 	 * {@link net.jkernelmachines.util.algebra.MatrixOperations#tri(double[][])}
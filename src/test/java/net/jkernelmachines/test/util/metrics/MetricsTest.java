@@ -0,0 +1,156 @@
+/*******************************************************************************
+ * Copyright (c) 2016, David Picard.
+ * All rights reserved.
+ *
+ * Redistribution and use in source and binary forms, with or without modification,
+ * are permitted provided that the following conditions are met:
+ *
+ * 1. Redistributions of source code must retain the above copyright notice, this
+ * list of conditions and the following disclaimer.
+ *
+ * 2. Redistributions in binary form must reproduce the above copyright notice,
+ * this list of conditions and the following disclaimer in the documentation and/or
+ * other materials provided with the distribution.
+ *
+ * 3. Neither the name of the copyright holder nor the names of its contributors
+ * may be used to endorse or promote products derived from this software without
+ * specific prior written permission.
+ *
+ * THIS SOFTWARE IS PROVIDED BY THE COPYRIGHT HOLDERS AND CONTRIBUTORS "AS IS" AND
+ * ANY EXPRESS OR IMPLIED WARRANTIES, INCLUDING, BUT NOT LIMITED TO, THE IMPLIED
+ * WARRANTIES OF MERCHANTABILITY AND FITNESS FOR A PARTICULAR PURPOSE ARE
+ * DISCLAIMED. IN NO EVENT SHALL THE COPYRIGHT HOLDER OR CONTRIBUTORS BE LIABLE FOR
+ * ANY DIRECT, INDIRECT, INCIDENTAL, SPECIAL, EXEMPLARY, OR CONSEQUENTIAL DAMAGES
+ * (INCLUDING, BUT NOT LIMITED TO, PROCUREMENT OF SUBSTITUTE GOODS OR SERVICES;
+ * LOSS OF USE, DATA, OR PROFITS; OR BUSINESS INTERRUPTION) HOWEVER CAUSED AND ON
+ * ANY THEORY OF LIABILITY, WHETHER IN CONTRACT, STRICT LIABILITY, OR TORT
+ * (INCLUDING NEGLIGENCE OR OTHERWISE) ARISING IN ANY WAY OUT OF THE USE OF THIS
+ * SOFTWARE, EVEN IF ADVISED OF THE POSSIBILITY OF SUCH DAMAGE.
+ *******************************************************************************/
+package net.jkernelmachines.test.util.metrics;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertNotEquals;
+import static org.junit.Assert.assertTrue;
+
+import java.lang.management.ManagementFactory;
+import java.util.List;
+
+import javax.management.MBeanServer;
+import javax.management.ObjectName;
+
+import net.jkernelmachines.classifier.LaSVM;
+import net.jkernelmachines.classifier.SMOSVM;
+import net.jkernelmachines.kernel.typed.DoubleGaussL2;
+import net.jkernelmachines.type.TrainingSample;
+import net.jkernelmachines.util.generators.GaussianGenerator;
+import net.jkernelmachines.util.metrics.AggregatingRecorder;
+import net.jkernelmachines.util.metrics.JmxMetricsRecorder;
+import net.jkernelmachines.util.metrics.Metrics;
+
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+
+/**
+ * @author picard
+ *
+ */
+public class MetricsTest {
+
+	List<TrainingSample<double[]>> train;
+
+	/**
+	 * @throws java.lang.Exception
+	 */
+	@Before
+	public void setUp() throws Exception {
+		GaussianGenerator g = new GaussianGenerator(5, 2.0f, 1.0);
+		train = g.generateList(50);
+	}
+
+	/**
+	 * @throws java.lang.Exception
+	 */
+	@After
+	public void tearDown() throws Exception {
+		Metrics.setRecorder(null);
+	}
+
+	/**
+	 * Test method for {@link net.jkernelmachines.util.metrics.Metrics#setRecorder(net.jkernelmachines.util.metrics.MetricsRecorder)}.
+	 */
+	@Test
+	public final void testDisabled() {
+		assertFalse(Metrics.isEnabled());
+		assertEquals(0, Metrics.start());
+		// must not fail without recorder
+		Metrics.count(Metrics.CACHE_HITS, this, 1);
+		Metrics.stop(Metrics.TIME_GRAM, this, Metrics.start());
+	}
+
+	/**
+	 * Test method for {@link net.jkernelmachines.util.metrics.AggregatingRecorder#getCount(java.lang.String, java.lang.Object)}.
+	 */
+	@Test
+	public final void testKernelAndSolverMetrics() {
+		AggregatingRecorder r = new AggregatingRecorder();
+		Metrics.setRecorder(r);
+		assertTrue(Metrics.isEnabled());
+
+		DoubleGaussL2 k = new DoubleGaussL2();
+		k.getKernelMatrix(train);
+		assertEquals(50 * 51 / 2, r.getCount(Metrics.KERNEL_EVALUATIONS, k));
+		assertEquals(1, r.getTimerCalls(Metrics.TIME_GRAM));
+		k.getKernelMatrixLine(train.get(0).sample, train);
+		assertEquals(50 * 51 / 2 + 50, r.getCount(Metrics.KERNEL_EVALUATIONS, k));
+		// per instance
+		assertEquals(0, r.getCount(Metrics.KERNEL_EVALUATIONS, new DoubleGaussL2()));
+
+		SMOSVM<double[]> smo = new SMOSVM<double[]>(k);
+		smo.train(train);
+		assertTrue(r.getCount(Metrics.SOLVER_ITERATIONS, smo) > 0);
+		assertTrue(r.getCount(Metrics.SOLVER_KKT_VIOLATIONS, smo) > 0);
+		assertEquals(1, r.getCount(Metrics.CACHE_MISSES, smo));
+
+		LaSVM<double[]> lasvm = new LaSVM<double[]>(k);
+		lasvm.setKeepKernelCache(true);
+		lasvm.train(train);
+		lasvm.train(train);
+		assertEquals(1, r.getCount(Metrics.CACHE_MISSES, lasvm));
+		assertEquals(1, r.getCount(Metrics.CACHE_HITS, lasvm));
+		// one smo training and two lasvm trainings
+		assertEquals(3, r.getTimerCalls(Metrics.TIME_OPTIMIZATION));
+		assertTrue(r.getTimerNanos(Metrics.TIME_OPTIMIZATION) > 0);
+
+		r.reset();
+		assertTrue(r.snapshot().isEmpty());
+	}
+
+	/**
+	 * Test method for {@link net.jkernelmachines.util.metrics.JmxMetricsRecorder#register()}.
+	 */
+	@Test
+	public final void testJmx() throws Exception {
+		JmxMetricsRecorder r = new JmxMetricsRecorder();
+		r.register();
+		try {
+			Metrics.setRecorder(r);
+			DoubleGaussL2 k = new DoubleGaussL2();
+			k.getKernelMatrix(train);
+
+			MBeanServer server = ManagementFactory.getPlatformMBeanServer();
+			ObjectName name = new ObjectName(JmxMetricsRecorder.DEFAULT_NAME);
+			String key = Metrics.KERNEL_EVALUATIONS + AggregatingRecorder.SEPARATOR + Metrics.source(k);
+			assertEquals(50L * 51 / 2, server.getAttribute(name, key));
+			assertNotEquals(0, server.getMBeanInfo(name).getAttributes().length);
+
+			server.invoke(name, "reset", null, null);
+			assertTrue(r.snapshot().isEmpty());
+		} finally {
+			r.unregister();
+		}
+	}
+
+}